@@ -0,0 +1,120 @@
+package pl.ksef.hub.benchmark;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.ksef.hub.domain.entity.Invoice;
+import pl.ksef.hub.domain.entity.Tenant;
+import pl.ksef.hub.integration.ksef.service.KsefXmlGeneratorService;
+import pl.ksef.hub.integration.ksef.service.XmlSignatureService;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Date;
+
+/**
+ * Dane wspólne dla benchmarków: faktura testowa, XML FA(3) o zadanej liczbie wierszy
+ * i serwis podpisu skonfigurowany testowym certyfikatem PKCS12
+ */
+final class BenchmarkData {
+
+    static final String KEYSTORE_PASSWORD = "benchmark";
+    static final String KEY_ALIAS = "benchmark";
+
+    private static final String ROW_START = "  <FaWiersz>";
+    private static final String ROW_END = "</FaWiersz>\n";
+
+    private BenchmarkData() {
+    }
+
+    static Invoice invoice() {
+        Tenant tenant = new Tenant();
+        tenant.setId(1L);
+        tenant.setNip("1234567890");
+        tenant.setFullName("Benchmark Sp. z o.o.");
+        tenant.setName("Benchmark");
+        tenant.setAddress("ul. Testowa 10, 00-001 Warszawa");
+
+        Invoice invoice = new Invoice();
+        invoice.setId(1L);
+        invoice.setTenant(tenant);
+        invoice.setInvoiceNumber("FV/2026/02/001");
+        invoice.setInvoiceDate(LocalDate.of(2026, 2, 5));
+        invoice.setSaleDate(LocalDate.of(2026, 2, 5));
+        invoice.setSellerNip("1234567890");
+        invoice.setSellerName("Benchmark Sp. z o.o.");
+        invoice.setBuyerNip("9876543210");
+        invoice.setBuyerName("Klient Testowy");
+        invoice.setCreatedAt(LocalDateTime.of(2026, 2, 5, 10, 0));
+        invoice.setNetAmount(new BigDecimal("1000.00"));
+        invoice.setVatAmount(new BigDecimal("230.00"));
+        invoice.setGrossAmount(new BigDecimal("1230.00"));
+        invoice.setNotes("Usługa konsultingowa");
+        return invoice;
+    }
+
+    /**
+     * XML faktury z podaną liczbą pozycji - generator tworzy jedną pozycję (encja nie ma listy pozycji),
+     * więc wiersz FaWiersz jest powielany z kolejnymi numerami NrWierszaFa
+     */
+    static String invoiceXml(int lines) {
+        String xml = new KsefXmlGeneratorService().generateInvoiceXml(invoice());
+        int start = xml.indexOf(ROW_START);
+        int end = xml.indexOf(ROW_END, start) + ROW_END.length();
+        String row = xml.substring(start, end);
+
+        StringBuilder result = new StringBuilder(xml.length() + row.length() * lines);
+        result.append(xml, 0, start);
+        for (int i = 1; i <= lines; i++) {
+            result.append(row.replace("<NrWierszaFa>1</NrWierszaFa>", "<NrWierszaFa>" + i + "</NrWierszaFa>"));
+        }
+        result.append(xml, end, xml.length());
+        return result.toString();
+    }
+
+    /**
+     * Serwis podpisu z samopodpisanym certyfikatem RSA 2048 zapisanym w tymczasowym pliku PKCS12
+     */
+    static XmlSignatureService signatureService() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        X500Name subject = new X500Name("CN=KSeF Hub Benchmark, O=KSeF Hub, C=PL");
+        Date notBefore = new Date();
+        Date notAfter = new Date(notBefore.getTime() + 24L * 60 * 60 * 1000);
+        X509Certificate certificate = new JcaX509CertificateConverter().getCertificate(
+                new JcaX509v3CertificateBuilder(subject, BigInteger.ONE, notBefore, notAfter, subject, keyPair.getPublic())
+                        .build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry(KEY_ALIAS, keyPair.getPrivate(), KEYSTORE_PASSWORD.toCharArray(),
+                new X509Certificate[]{certificate});
+
+        Path keystoreFile = Files.createTempFile("ksef-benchmark", ".p12");
+        keystoreFile.toFile().deleteOnExit();
+        try (OutputStream out = Files.newOutputStream(keystoreFile)) {
+            keyStore.store(out, KEYSTORE_PASSWORD.toCharArray());
+        }
+
+        XmlSignatureService service = new XmlSignatureService();
+        ReflectionTestUtils.setField(service, "signatureEnabled", true);
+        ReflectionTestUtils.setField(service, "keystorePath", keystoreFile.toString());
+        ReflectionTestUtils.setField(service, "keystorePassword", KEYSTORE_PASSWORD);
+        ReflectionTestUtils.setField(service, "keyAlias", KEY_ALIAS);
+        ReflectionTestUtils.setField(service, "keyPassword", KEYSTORE_PASSWORD);
+        return service;
+    }
+}
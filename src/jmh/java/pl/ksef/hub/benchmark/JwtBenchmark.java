@@ -0,0 +1,44 @@
+package pl.ksef.hub.benchmark;
+
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.ksef.hub.security.JwtService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsowanie i weryfikacja tokenu JWT (wykonywane przy każdym żądaniu API)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+
+    private JwtService jwtService;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secretKey",
+                "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970");
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", 3_600_000L);
+        ReflectionTestUtils.setField(jwtService, "refreshExpiration", 86_400_000L);
+        ReflectionTestUtils.invokeMethod(jwtService, "init");
+
+        token = jwtService.generateToken(User.withUsername("benchmark@ksef.pl")
+                .password("n/a")
+                .roles("USER")
+                .build());
+    }
+
+    @Benchmark
+    public Claims parseToken() {
+        return jwtService.parseToken(token);
+    }
+}
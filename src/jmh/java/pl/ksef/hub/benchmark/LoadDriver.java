@@ -0,0 +1,208 @@
+package pl.ksef.hub.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generator obciążenia end-to-end: tworzy i wysyła faktury przez REST API Huba
+ * (JWT -> kontroler -> baza -> XML -> podpis -> KsefApiClient -> KSeF) i raportuje
+ * przepustowość (faktury/s) oraz percentyle czasu p50/p90/p99.
+ *
+ * Przeznaczony do uruchamiania przeciw Hubowi z profilem ksef-sim (lokalny symulator KSeF):
+ * <pre>
+ * mvn spring-boot:run -Dspring-boot.run.profiles=h2,ksef-sim
+ * mvn -P benchmarks test-compile exec:exec@load -Dload.args="--invoices 2000 --concurrency 32"
+ * </pre>
+ *
+ * Opcje: --hub-url, --email, --password, --tenant, --invoices, --concurrency, --warmup,
+ * --session-token (token początkowy KSeF), --simulator-url (wypisuje liczniki symulatora po teście).
+ */
+public final class LoadDriver {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final Map<String, String> options;
+    private final String hubUrl;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36).toUpperCase();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private String accessToken;
+    private long tenantId;
+
+    private LoadDriver(Map<String, String> options) {
+        this.options = options;
+        this.hubUrl = option("hub-url", "http://localhost:8080/api");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        new LoadDriver(options).run();
+    }
+
+    private void run() throws Exception {
+        int invoices = Integer.parseInt(option("invoices", "1000"));
+        int concurrency = Integer.parseInt(option("concurrency", "16"));
+        int warmup = Integer.parseInt(option("warmup", "50"));
+
+        login();
+        System.out.printf("Hub %s, tenant %d, %d invoices (+%d warmup), concurrency %d%n",
+                hubUrl, tenantId, invoices, warmup, concurrency);
+
+        if (warmup > 0) {
+            execute(warmup, concurrency);
+        }
+        Result result = execute(invoices, concurrency);
+        result.print();
+
+        String simulatorUrl = options.get("simulator-url");
+        if (simulatorUrl != null) {
+            HttpResponse<String> stats = httpClient.send(HttpRequest.newBuilder(URI.create(simulatorUrl + "/sim/stats"))
+                    .GET().build(), HttpResponse.BodyHandlers.ofString());
+            System.out.println("Simulator: " + objectMapper.readTree(stats.body()).toPrettyString());
+        }
+    }
+
+    private Result execute(int invoices, int concurrency) throws InterruptedException {
+        long[] latencies = new long[invoices];
+        AtomicInteger completed = new AtomicInteger();
+        Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long started = System.nanoTime();
+        for (int i = 0; i < invoices; i++) {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    createAndSend();
+                    latencies[completed.getAndIncrement()] = System.nanoTime() - start;
+                } catch (LoadException e) {
+                    errors.computeIfAbsent(e.getMessage(), key -> new LongAdder()).increment();
+                } catch (Exception e) {
+                    errors.computeIfAbsent(e.getClass().getSimpleName(), key -> new LongAdder()).increment();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        long elapsed = System.nanoTime() - started;
+
+        return new Result(Arrays.copyOf(latencies, completed.get()), elapsed, errors);
+    }
+
+    /**
+     * Jedna faktura end-to-end: utworzenie szkicu i wysyłka do KSeF
+     */
+    private void createAndSend() throws Exception {
+        int number = sequence.incrementAndGet();
+        Map<String, Object> invoice = new LinkedHashMap<>();
+        invoice.put("invoiceNumber", "LOAD/" + runId + "/" + number);
+        invoice.put("invoiceDate", LocalDate.now().toString());
+        invoice.put("saleDate", LocalDate.now().toString());
+        invoice.put("sellerNip", "1234567890");
+        invoice.put("sellerName", "Test Company Sp. z o.o.");
+        invoice.put("buyerNip", "9876543210");
+        invoice.put("buyerName", "Klient Obciążeniowy");
+        invoice.put("netAmount", new BigDecimal("1000.00"));
+        invoice.put("vatAmount", new BigDecimal("230.00"));
+        invoice.put("grossAmount", new BigDecimal("1230.00"));
+        invoice.put("currency", "PLN");
+        invoice.put("xmlContent", "<Faktura/>");
+
+        JsonNode created = call("POST", "/tenants/" + tenantId + "/invoices", invoice, "create");
+        long invoiceId = created.path("data").path("id").asLong();
+
+        String sessionToken = option("session-token", "sim-initial-token");
+        call("POST", "/tenants/" + tenantId + "/ksef/invoices/" + invoiceId + "/send?sessionToken=" + sessionToken,
+                null, "send");
+    }
+
+    private void login() throws Exception {
+        Map<String, Object> credentials = Map.of(
+                "email", option("email", "admin@testcompany.pl"),
+                "password", option("password", "Admin123!"));
+        JsonNode response = call("POST", "/auth/login", credentials, "login");
+        accessToken = response.path("data").path("accessToken").asText();
+        tenantId = options.containsKey("tenant")
+                ? Long.parseLong(options.get("tenant"))
+                : response.path("data").path("user").path("tenant").path("id").asLong(1);
+    }
+
+    private JsonNode call(String method, String path, Object body, String step) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(hubUrl + path))
+                .timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/json")
+                .method(method, body != null
+                        ? HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body), StandardCharsets.UTF_8)
+                        : HttpRequest.BodyPublishers.noBody());
+        if (accessToken != null) {
+            request.header("Authorization", "Bearer " + accessToken);
+        }
+        HttpResponse<String> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 300) {
+            throw new LoadException(step + " HTTP " + response.statusCode());
+        }
+        return objectMapper.readTree(response.body());
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private record Result(long[] latenciesNanos, long elapsedNanos, Map<String, LongAdder> errors) {
+
+        void print() {
+            long[] sorted = latenciesNanos.clone();
+            Arrays.sort(sorted);
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf("Completed %d invoices in %.1f s: %.1f invoices/s%n",
+                    sorted.length, seconds, sorted.length / seconds);
+            if (sorted.length > 0) {
+                System.out.printf("Latency ms: p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n",
+                        percentileMs(sorted, 0.50), percentileMs(sorted, 0.90),
+                        percentileMs(sorted, 0.99), sorted[sorted.length - 1] / 1e6);
+            }
+            if (!errors.isEmpty()) {
+                Map<String, Long> summary = new TreeMap<>();
+                errors.forEach((error, count) -> summary.put(error, count.sum()));
+                System.out.println("Errors: " + summary);
+            }
+        }
+
+        private static double percentileMs(long[] sorted, double percentile) {
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    private static class LoadException extends Exception {
+        LoadException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package pl.ksef.hub.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pl.ksef.hub.integration.ksef.client.KsefApiClient;
+import pl.ksef.hub.integration.ksef.client.KsefPayloadEncryption;
+import pl.ksef.hub.integration.ksef.dto.KsefInvoiceRequest;
+
+import java.security.KeyPairGenerator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Budowa żądania wysyłki faktury (SHA-256 + Base64, opcjonalnie AES-GCM) w KsefApiClient
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadBenchmark {
+
+    @Param({"1", "100", "1000", "10000"})
+    private int lines;
+
+    private String xml;
+
+    private KsefPayloadEncryption encryption;
+
+    private KsefPayloadEncryption.SessionKey sessionKey;
+
+    @Setup
+    public void setUp() throws Exception {
+        xml = BenchmarkData.invoiceXml(lines);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        encryption = new KsefPayloadEncryption(true, "AES/GCM/NoPadding", 256);
+        sessionKey = encryption.newSessionKey(generator.generateKeyPair().getPublic());
+    }
+
+    @Benchmark
+    public KsefInvoiceRequest buildInvoiceRequest() throws Exception {
+        return KsefApiClient.buildInvoiceRequest(xml);
+    }
+
+    @Benchmark
+    public KsefInvoiceRequest buildEncryptedInvoiceRequest() throws Exception {
+        return KsefApiClient.buildInvoiceRequest(xml, encryption, sessionKey);
+    }
+}
@@ -0,0 +1,38 @@
+package pl.ksef.hub.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pl.ksef.hub.service.QRCodeService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renderowanie kodu QR faktury (PNG i SVG)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QRCodeBenchmark {
+
+    private static final String DATA =
+            "FV/2026/02/001|2026-02-05|1230.00|1234567890|9876543210|1234567890-20260205-ABCDEF123456-01";
+
+    private QRCodeService qrCodeService;
+
+    @Setup
+    public void setUp() {
+        qrCodeService = new QRCodeService();
+    }
+
+    @Benchmark
+    public byte[] renderPng() throws Exception {
+        return qrCodeService.generateQRCodeBytes(DATA);
+    }
+
+    @Benchmark
+    public byte[] renderSvg() throws Exception {
+        return qrCodeService.generateQRCodeSvg(DATA);
+    }
+}
@@ -0,0 +1,33 @@
+package pl.ksef.hub.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pl.ksef.hub.domain.entity.Invoice;
+import pl.ksef.hub.integration.ksef.service.KsefXmlGeneratorService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generowanie XML FA(3) z encji faktury
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlGenerationBenchmark {
+
+    private KsefXmlGeneratorService generator;
+    private Invoice invoice;
+
+    @Setup
+    public void setUp() {
+        generator = new KsefXmlGeneratorService();
+        invoice = BenchmarkData.invoice();
+    }
+
+    @Benchmark
+    public String generateInvoiceXml() {
+        return generator.generateInvoiceXml(invoice);
+    }
+}
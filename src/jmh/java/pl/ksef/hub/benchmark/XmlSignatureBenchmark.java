@@ -0,0 +1,45 @@
+package pl.ksef.hub.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pl.ksef.hub.integration.ksef.service.XmlSignatureService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Podpis XMLDSig (RSA-SHA256, testowy PKCS12) i weryfikacja podpisu
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlSignatureBenchmark {
+
+    @Param({"1", "100", "1000", "10000"})
+    private int lines;
+
+    private XmlSignatureService signatureService;
+    private String xml;
+    private String signedXml;
+
+    @Setup
+    public void setUp() throws Exception {
+        signatureService = BenchmarkData.signatureService();
+        xml = BenchmarkData.invoiceXml(lines);
+        signedXml = signatureService.signXml(xml);
+        if (!signatureService.verifySignature(signedXml)) {
+            throw new IllegalStateException("Signature of benchmark document does not verify");
+        }
+    }
+
+    @Benchmark
+    public String signXml() throws Exception {
+        return signatureService.signXml(xml);
+    }
+
+    @Benchmark
+    public boolean verifySignature() {
+        return signatureService.verifySignature(signedXml);
+    }
+}
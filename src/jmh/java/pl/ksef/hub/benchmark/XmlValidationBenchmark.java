@@ -0,0 +1,42 @@
+package pl.ksef.hub.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pl.ksef.hub.integration.ksef.service.XmlValidationService;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walidacja XML faktury względem schemat.xsd (FA(3)) w zależności od liczby pozycji
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlValidationBenchmark {
+
+    @Param({"1", "100", "1000", "10000"})
+    private int lines;
+
+    private XmlValidationService validationService;
+    private String xml;
+
+    @Setup
+    public void setUp() throws Exception {
+        validationService = new XmlValidationService();
+        xml = BenchmarkData.invoiceXml(lines);
+        // Niepoprawny dokument mierzyłby ścieżkę błędu - przerwij od razu
+        // (schemat.xsd dołącza KodyKrajow z crd.gov.pl, bez dostępu do sieci ładuje się schemat zastępczy)
+        try {
+            validationService.validateInvoiceXml(xml);
+        } catch (XmlValidationService.ValidationException e) {
+            throw new IllegalStateException("Benchmark invoice does not validate against FA(3) schema", e);
+        }
+    }
+
+    @Benchmark
+    public void validateInvoiceXml() throws Exception {
+        validationService.validateInvoiceXml(xml);
+    }
+}
@@ -12,6 +12,8 @@ import org.springframework.web.bind.annotation.RestController;
 import pl.ksef.hub.api.dto.ApiResponse;
 import pl.ksef.hub.api.dto.AuthRequest;
 import pl.ksef.hub.api.dto.AuthResponse;
+import pl.ksef.hub.domain.entity.AuditLog.ActionType;
+import pl.ksef.hub.service.AuditRecorder;
 import pl.ksef.hub.service.AuthService;
 
 @Tag(name = "Authentication", description = "Authentication endpoints")
@@ -21,11 +23,15 @@ import pl.ksef.hub.service.AuthService;
 public class AuthController {
 
     private final AuthService authService;
+    private final AuditRecorder auditRecorder;
 
     @Operation(summary = "Login")
     @PostMapping("/login")
     public ResponseEntity<ApiResponse<AuthResponse>> login(@Valid @RequestBody AuthRequest request) {
         AuthResponse response = authService.authenticate(request);
+        Long tenantId = response.getUser().getTenant() != null ? response.getUser().getTenant().getId() : null;
+        auditRecorder.record(ActionType.LOGIN, tenantId, request.getEmail(), "User", response.getUser().getId(),
+                "User logged in", null);
         return ResponseEntity.ok(ApiResponse.success("Login successful", response));
     }
 
@@ -33,6 +39,7 @@ public class AuthController {
     @PostMapping("/logout")
     public ResponseEntity<ApiResponse<Void>> logout() {
         // JWT is stateless, logout is handled on client side
+        auditRecorder.record(ActionType.LOGOUT, null, "User", null, "User logged out");
         return ResponseEntity.ok(ApiResponse.success("Logout successful", null));
     }
 }
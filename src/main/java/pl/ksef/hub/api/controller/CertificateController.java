@@ -7,7 +7,9 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import pl.ksef.hub.api.dto.ApiResponse;
+import pl.ksef.hub.domain.entity.AuditLog.ActionType;
 import pl.ksef.hub.domain.entity.Certificate;
+import pl.ksef.hub.service.AuditRecorder;
 import pl.ksef.hub.service.CertificateService;
 
 import java.util.HashMap;
@@ -22,6 +24,7 @@ import java.util.stream.Collectors;
 public class CertificateController {
 
     private final CertificateService certificateService;
+    private final AuditRecorder auditRecorder;
 
     @Operation(summary = "Get all certificates for tenant")
     @GetMapping
@@ -63,6 +66,7 @@ public class CertificateController {
         Map<String, Object> result = new HashMap<>();
         result.put("status", "uploaded");
         result.put("message", "Certificate upload functionality will be implemented");
+        auditRecorder.record(ActionType.CERTIFICATE_UPLOAD, tenantId, "Certificate", null, "Certificate upload requested");
         
         return ResponseEntity.status(HttpStatus.CREATED)
                 .body(ApiResponse.success("Certificate uploaded successfully", result));
@@ -74,6 +78,7 @@ public class CertificateController {
             @PathVariable Long tenantId,
             @PathVariable Long id) {
         certificateService.activate(id);
+        auditRecorder.record(ActionType.UPDATE, tenantId, "Certificate", id, "Certificate activated");
         return ResponseEntity.ok(ApiResponse.success("Certificate activated successfully", null));
     }
 
@@ -83,6 +88,7 @@ public class CertificateController {
             @PathVariable Long tenantId,
             @PathVariable Long id) {
         certificateService.revoke(id);
+        auditRecorder.record(ActionType.CERTIFICATE_REVOKE, tenantId, "Certificate", id, "Certificate revoked");
         return ResponseEntity.ok(ApiResponse.success("Certificate revoked successfully", null));
     }
 
@@ -92,6 +98,7 @@ public class CertificateController {
             @PathVariable Long tenantId,
             @PathVariable Long id) {
         certificateService.delete(id);
+        auditRecorder.record(ActionType.DELETE, tenantId, "Certificate", id, "Certificate deleted");
         return ResponseEntity.ok(ApiResponse.success("Certificate deleted successfully", null));
     }
 
@@ -109,4 +116,19 @@ public class CertificateController {
         summary.put("createdAt", cert.getCreatedAt());
         return summary;
     }
+
+    private Map<String, Object> toSummary(CertificateService.CachedCertificate cert) {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("id", cert.id());
+        summary.put("certificateId", cert.certificateId());
+        summary.put("type", cert.type().name());
+        summary.put("status", cert.status().name());
+        summary.put("subjectDn", cert.subjectDn());
+        summary.put("issuerDn", cert.issuerDn());
+        summary.put("issuedAt", cert.issuedAt());
+        summary.put("expiresAt", cert.expiresAt());
+        summary.put("isValid", cert.isValid());
+        summary.put("createdAt", cert.createdAt());
+        return summary;
+    }
 }
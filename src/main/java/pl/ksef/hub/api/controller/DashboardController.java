@@ -88,8 +88,9 @@ public class DashboardController {
      * Konwertuje Invoice na MessageDTO dla frontendu
      */
     private MessageDTO toMessageDTO(Invoice invoice) {
-        String direction = invoice.getStatus() == Invoice.InvoiceStatus.SENT 
-                ? "outgoing" : "incoming";
+        // Kierunek z encji - faktury zakupowe pobierane są z KSeF przez IncomingInvoiceSyncService
+        String direction = invoice.getDirection() == Invoice.InvoiceDirection.INCOMING
+                ? "incoming" : "outgoing";
         
         String status = mapInvoiceStatus(invoice.getStatus());
         
@@ -1,12 +1,21 @@
 package pl.ksef.hub.api.controller;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import pl.ksef.hub.config.ReplicaRoutingDataSource;
 import pl.ksef.hub.integration.ksef.client.KsefApiClient;
+import pl.ksef.hub.service.AuditRecorder;
 import pl.ksef.hub.service.HubControlService;
+import pl.ksef.hub.service.IdempotencyService;
+import pl.ksef.hub.service.WorkPartitionService;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
@@ -18,6 +27,11 @@ public class HubControlController {
     
     private final HubControlService hubControlService;
     private final KsefApiClient ksefApiClient;
+    private final CacheManager cacheManager;
+    private final WorkPartitionService workPartitionService;
+    private final AuditRecorder auditRecorder;
+    private final IdempotencyService idempotencyService;
+    private final ObjectProvider<ReplicaRoutingDataSource> replicaRoutingDataSource;
     
     @PostMapping("/start")
     public ResponseEntity<Map<String, Object>> startHub() {
@@ -88,4 +102,45 @@ public class HubControlController {
             "message", connected ? "KSeF server is available" : "KSeF server is not available"
         ));
     }
+    
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (String name : cacheManager.getCacheNames()) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache) {
+                CacheStats cacheStats = nativeCache.stats();
+                stats.put(name, Map.of(
+                    "size", nativeCache.estimatedSize(),
+                    "hitCount", cacheStats.hitCount(),
+                    "missCount", cacheStats.missCount(),
+                    "hitRate", cacheStats.hitRate(),
+                    "evictionCount", cacheStats.evictionCount(),
+                    "loadFailureCount", cacheStats.loadFailureCount()
+                ));
+            }
+        }
+        return ResponseEntity.ok(stats);
+    }
+    
+    @GetMapping("/coordination")
+    public ResponseEntity<WorkPartitionService.CoordinationStats> getCoordinationStats() {
+        return ResponseEntity.ok(workPartitionService.getStats());
+    }
+    
+    @GetMapping("/audit/stats")
+    public ResponseEntity<AuditRecorder.AuditStats> getAuditStats() {
+        return ResponseEntity.ok(auditRecorder.getStats());
+    }
+    
+    @GetMapping("/idempotency/stats")
+    public ResponseEntity<IdempotencyService.IdempotencyStats> getIdempotencyStats() {
+        return ResponseEntity.ok(idempotencyService.getStats());
+    }
+    
+    @GetMapping("/datasource/stats")
+    public ResponseEntity<ReplicaRoutingDataSource.RoutingStats> getDataSourceStats() {
+        ReplicaRoutingDataSource routing = replicaRoutingDataSource.getIfAvailable();
+        return routing != null ? ResponseEntity.ok(routing.getStats()) : ResponseEntity.noContent().build();
+    }
 }
@@ -5,21 +5,32 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import pl.ksef.hub.api.dto.ApiResponse;
 import pl.ksef.hub.api.dto.CreateInvoiceRequest;
 import pl.ksef.hub.api.dto.InvoiceDTO;
+import pl.ksef.hub.domain.entity.AuditLog.ActionType;
 import pl.ksef.hub.domain.entity.Invoice;
+import pl.ksef.hub.service.AuditRecorder;
+import pl.ksef.hub.service.InvoiceQRCodeService;
 import pl.ksef.hub.service.InvoiceService;
+import pl.ksef.hub.service.QRCodeService;
+import pl.ksef.hub.service.ResourceVersionService;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Tag(name = "Invoices", description = "Invoice management endpoints")
@@ -29,15 +40,31 @@ import java.util.stream.Collectors;
 public class InvoiceController {
 
     private final InvoiceService invoiceService;
+    private final InvoiceQRCodeService invoiceQRCodeService;
+    private final AuditRecorder auditRecorder;
+    private final ResourceVersionService resourceVersionService;
 
-    @Operation(summary = "Get all invoices for tenant")
+    @Value("${hub.qrcode.max-age-seconds:300}")
+    private long qrCodeMaxAgeSeconds;
+
+    @Operation(summary = "Get all invoices for tenant",
+               description = "Supports If-None-Match (weak ETag of the tenant's invoice collection).")
     @GetMapping
     public ResponseEntity<ApiResponse<Page<InvoiceDTO>>> getInvoices(
             @PathVariable Long tenantId,
-            @PageableDefault(size = 20) Pageable pageable) {
+            @PageableDefault(size = 20) Pageable pageable,
+            WebRequest webRequest) {
+        // Wersja liczona przed odczytem - zmiana w międzyczasie da najwyżej zbędne pełne pobranie
+        String eTag = resourceVersionService.invoicesETag(tenantId, pageable);
+        if (webRequest.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
         Page<InvoiceDTO> invoices = invoiceService.findByTenant(tenantId, pageable)
                 .map(this::toDTO);
-        return ResponseEntity.ok(ApiResponse.success(invoices));
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(ApiResponse.success(invoices));
     }
 
     @Operation(summary = "Search invoices")
@@ -67,13 +94,21 @@ public class InvoiceController {
         return ResponseEntity.ok(ApiResponse.success(invoices));
     }
 
-    @Operation(summary = "Get invoice by ID")
+    @Operation(summary = "Get invoice by ID", description = "Supports If-None-Match (weak ETag).")
     @GetMapping("/{id}")
     public ResponseEntity<ApiResponse<InvoiceDTO>> getInvoiceById(
             @PathVariable Long tenantId,
-            @PathVariable Long id) {
+            @PathVariable Long id,
+            WebRequest webRequest) {
+        String currentETag = resourceVersionService.invoiceETag(id);
+        if (currentETag != null && webRequest.checkNotModified(currentETag)) {
+            return notModified(currentETag);
+        }
         Invoice invoice = invoiceService.findById(id);
-        return ResponseEntity.ok(ApiResponse.success(toDTO(invoice)));
+        return ResponseEntity.ok()
+                .eTag(resourceVersionService.invoiceETag(invoice))
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(ApiResponse.success(toDTO(invoice)));
     }
 
     @Operation(summary = "Get invoice by KSeF number")
@@ -81,7 +116,7 @@ public class InvoiceController {
     public ResponseEntity<ApiResponse<InvoiceDTO>> getInvoiceByKsefNumber(
             @PathVariable Long tenantId,
             @PathVariable String ksefNumber) {
-        Invoice invoice = invoiceService.findByKsefNumber(ksefNumber);
+        Invoice invoice = invoiceService.findByKsefNumber(tenantId, ksefNumber);
         return ResponseEntity.ok(ApiResponse.success(toDTO(invoice)));
     }
 
@@ -107,6 +142,8 @@ public class InvoiceController {
                 .build();
         
         Invoice created = invoiceService.create(tenantId, invoice);
+        auditRecorder.record(ActionType.CREATE, tenantId, "Invoice", created.getId(),
+                "Invoice created: " + created.getInvoiceNumber());
         return ResponseEntity.status(HttpStatus.CREATED)
                 .body(ApiResponse.success("Invoice created successfully", toDTO(created)));
     }
@@ -126,6 +163,8 @@ public class InvoiceController {
                 .build();
         
         Invoice updated = invoiceService.update(id, invoice);
+        auditRecorder.record(ActionType.UPDATE, tenantId, "Invoice", id,
+                "Invoice updated: " + updated.getInvoiceNumber());
         return ResponseEntity.ok(ApiResponse.success("Invoice updated successfully", toDTO(updated)));
     }
 
@@ -135,19 +174,51 @@ public class InvoiceController {
             @PathVariable Long tenantId,
             @PathVariable Long id) {
         invoiceService.delete(id);
+        auditRecorder.record(ActionType.DELETE, tenantId, "Invoice", id, "Invoice deleted");
         return ResponseEntity.ok(ApiResponse.success("Invoice deleted successfully", null));
     }
 
-    @Operation(summary = "Get invoice QR code")
+    @Operation(summary = "Get invoice QR code",
+               description = "Returns the invoice QR code as PNG or SVG image. Supports If-None-Match (ETag).")
     @GetMapping("/{id}/qrcode")
-    public ResponseEntity<ApiResponse<String>> getInvoiceQRCode(
+    public ResponseEntity<byte[]> getInvoiceQRCode(
             @PathVariable Long tenantId,
-            @PathVariable Long id) {
+            @PathVariable Long id,
+            @Parameter(description = "Image format: png or svg")
+            @RequestParam(defaultValue = "png") String format,
+            WebRequest webRequest) {
+        QRCodeService.ImageFormat imageFormat = parseImageFormat(format);
         Invoice invoice = invoiceService.findById(id);
-        if (invoice.getQrCode() == null) {
-            return ResponseEntity.ok(ApiResponse.error("QR code not available for this invoice"));
+
+        String eTag = invoiceQRCodeService.getETag(invoice, imageFormat);
+        CacheControl cacheControl = CacheControl.maxAge(qrCodeMaxAgeSeconds, TimeUnit.SECONDS).cachePrivate();
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(imageFormat.getContentType()))
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .body(invoiceQRCodeService.render(invoice, imageFormat));
+    }
+
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .build();
+    }
+
+    private QRCodeService.ImageFormat parseImageFormat(String format) {
+        try {
+            return QRCodeService.ImageFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported QR code format: " + format + " (use png or svg)");
         }
-        return ResponseEntity.ok(ApiResponse.success(invoice.getQrCode()));
     }
 
     private InvoiceDTO toDTO(Invoice invoice) {
@@ -158,6 +229,7 @@ public class InvoiceController {
                 .referenceNumber(invoice.getReferenceNumber())
                 .type(invoice.getType().name())
                 .status(invoice.getStatus().name())
+                .direction(invoice.getDirection().name())
                 .invoiceDate(invoice.getInvoiceDate())
                 .saleDate(invoice.getSaleDate())
                 .sellerNip(invoice.getSellerNip())
@@ -168,7 +240,12 @@ public class InvoiceController {
                 .vatAmount(invoice.getVatAmount())
                 .grossAmount(invoice.getGrossAmount())
                 .currency(invoice.getCurrency())
-                .qrCode(invoice.getQrCode())
+                .qrCodeUrl(invoice.getKsefNumber() != null
+                        ? ServletUriComponentsBuilder.fromCurrentContextPath()
+                                .path("/tenants/{tenantId}/invoices/{id}/qrcode")
+                                .buildAndExpand(invoice.getTenant().getId(), invoice.getId())
+                                .toUriString()
+                        : null)
                 .errorMessage(invoice.getErrorMessage())
                 .sentToKsefAt(invoice.getSentToKsefAt())
                 .acceptedByKsefAt(invoice.getAcceptedByKsefAt())
@@ -8,9 +8,17 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import pl.ksef.hub.api.dto.ApiResponse;
 import pl.ksef.hub.domain.entity.Invoice;
+import pl.ksef.hub.integration.ksef.client.KsefApiClient;
+import pl.ksef.hub.integration.ksef.client.SingleFlight;
 import pl.ksef.hub.integration.ksef.service.KsefInvoiceService;
+import pl.ksef.hub.integration.ksef.service.KsefSessionManager;
+import pl.ksef.hub.integration.ksef.service.IncomingInvoiceSyncService;
+import pl.ksef.hub.integration.ksef.service.KsefWorkScheduler;
+import pl.ksef.hub.integration.ksef.service.UpoHarvester;
 import pl.ksef.hub.integration.ksef.service.XmlSignatureService;
 
+import java.util.Map;
+
 /**
  * Kontroler do zarządzania integracją z KSeF
  */
@@ -23,6 +31,11 @@ public class KsefController {
     private final KsefInvoiceService ksefInvoiceService;
     private final XmlSignatureService xmlSignatureService;
     private final pl.ksef.hub.integration.ksef.service.KsefAuthService ksefAuthService;
+    private final UpoHarvester upoHarvester;
+    private final IncomingInvoiceSyncService incomingInvoiceSyncService;
+    private final KsefWorkScheduler ksefWorkScheduler;
+    private final KsefApiClient ksefApiClient;
+    private final KsefSessionManager ksefSessionManager;
 
     @Operation(summary = "Send invoice to KSeF", 
                description = "Sends an invoice to the KSeF system. The invoice will be validated, signed with certificate, and sent.")
@@ -74,6 +87,41 @@ public class KsefController {
         }
     }
 
+    @Operation(summary = "Get UPO harvester statistics",
+               description = "Returns statistics of the background UPO harvester (polled, accepted, acceptance latency)")
+    @GetMapping("/upo/harvester/stats")
+    public ResponseEntity<ApiResponse<UpoHarvester.HarvesterStats>> getUpoHarvesterStats() {
+        return ResponseEntity.ok(ApiResponse.success(upoHarvester.getStats()));
+    }
+
+    @Operation(summary = "Get incoming invoice sync statistics",
+               description = "Returns statistics of the incremental purchase invoice sync (queries, downloads, inserted, skipped)")
+    @GetMapping("/incoming-sync/stats")
+    public ResponseEntity<ApiResponse<IncomingInvoiceSyncService.SyncStats>> getIncomingSyncStats() {
+        return ResponseEntity.ok(ApiResponse.success(incomingInvoiceSyncService.getStats()));
+    }
+
+    @Operation(summary = "Get KSeF work scheduler statistics",
+               description = "Returns queue depth, running work and wait times per lane and per tenant of the fair KSeF scheduler")
+    @GetMapping("/scheduler/stats")
+    public ResponseEntity<ApiResponse<KsefWorkScheduler.SchedulerStats>> getSchedulerStats() {
+        return ResponseEntity.ok(ApiResponse.success(ksefWorkScheduler.getStats()));
+    }
+
+    @Operation(summary = "Get KSeF session pool statistics",
+               description = "Returns statistics of the per-tenant KSeF session pool (sessions, leases, refreshes)")
+    @GetMapping("/session-pool/stats")
+    public ResponseEntity<ApiResponse<KsefSessionManager.PoolStats>> getSessionPoolStats() {
+        return ResponseEntity.ok(ApiResponse.success(ksefSessionManager.getStats()));
+    }
+
+    @Operation(summary = "Get KSeF call deduplication statistics",
+               description = "Returns per-operation counts of executed and coalesced (joined in-flight) KSeF calls")
+    @GetMapping("/single-flight/stats")
+    public ResponseEntity<ApiResponse<Map<String, SingleFlight.FlightStats>>> getSingleFlightStats() {
+        return ResponseEntity.ok(ApiResponse.success(ksefApiClient.getSingleFlightStats()));
+    }
+
     @Operation(summary = "Check certificate status", 
                description = "Checks if XML signing certificate is configured and valid")
     @GetMapping("/certificate/status")
@@ -106,7 +154,7 @@ public class KsefController {
             @Parameter(description = "Initial token from KSeF portal") @RequestParam String initialToken) {
         
         try {
-            String sessionToken = ksefAuthService.initializeSession(nip, initialToken);
+            String sessionToken = ksefAuthService.openClientSession(nip, initialToken);
             
             SessionInitResponse response = SessionInitResponse.builder()
                     .nip(nip)
@@ -10,7 +10,9 @@ import pl.ksef.hub.api.dto.ApiResponse;
 import pl.ksef.hub.domain.entity.Invoice;
 import pl.ksef.hub.domain.entity.KsefSession;
 import pl.ksef.hub.domain.entity.KsefSession.SessionType;
+import pl.ksef.hub.integration.ksef.service.IncomingInvoiceSyncService;
 import pl.ksef.hub.integration.ksef.service.KsefInvoiceService;
+import pl.ksef.hub.integration.ksef.service.KsefSessionManager;
 import pl.ksef.hub.integration.ksef.service.KsefSessionService;
 
 import java.util.HashMap;
@@ -28,6 +30,8 @@ public class KsefIntegrationController {
 
     private final KsefInvoiceService ksefInvoiceService;
     private final KsefSessionService ksefSessionService;
+    private final KsefSessionManager ksefSessionManager;
+    private final IncomingInvoiceSyncService incomingInvoiceSyncService;
 
     @Operation(summary = "Send invoice to KSeF", 
                description = "Sends an invoice to the Polish National e-Invoice System (KSeF)")
@@ -99,7 +103,7 @@ public class KsefIntegrationController {
         
         log.info("Closing KSeF session {} for tenant {}", sessionId, tenantId);
         
-        ksefSessionService.closeSession(sessionId);
+        ksefSessionManager.closeSession(sessionId);
         
         return ResponseEntity.ok(ApiResponse.success("KSeF session closed successfully", null));
     }
@@ -123,4 +127,18 @@ public class KsefIntegrationController {
         
         return ResponseEntity.ok(ApiResponse.success(result));
     }
+
+    @Operation(summary = "Sync incoming invoices",
+               description = "Starts incremental download of purchase invoices from KSeF in the background")
+    @PostMapping("/incoming/sync")
+    public ResponseEntity<ApiResponse<Boolean>> syncIncomingInvoices(
+            @PathVariable Long tenantId) {
+
+        log.info("Incoming invoice sync requested for tenant {}", tenantId);
+
+        boolean started = incomingInvoiceSyncService.requestSync(tenantId);
+
+        return ResponseEntity.accepted().body(ApiResponse.success(
+                started ? "Incoming invoice sync started" : "Incoming invoice sync already running", started));
+    }
 }
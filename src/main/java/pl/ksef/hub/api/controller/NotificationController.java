@@ -8,6 +8,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import pl.ksef.hub.api.dto.NotificationDTO;
 import pl.ksef.hub.domain.entity.SystemNotification;
+import pl.ksef.hub.service.NotificationWriter;
 import pl.ksef.hub.service.SystemNotificationService;
 
 import java.time.ZoneId;
@@ -27,6 +28,7 @@ import java.util.stream.Collectors;
 public class NotificationController {
 
     private final SystemNotificationService notificationService;
+    private final NotificationWriter notificationWriter;
 
     @Operation(summary = "Get recent notifications")
     @GetMapping
@@ -98,6 +100,12 @@ public class NotificationController {
         return ResponseEntity.ok(Map.of("markedCount", count));
     }
 
+    @Operation(summary = "Get notification writer statistics")
+    @GetMapping("/writer/stats")
+    public ResponseEntity<NotificationWriter.WriterStats> getWriterStats() {
+        return ResponseEntity.ok(notificationWriter.getStats());
+    }
+
     /**
      * Konwertuje SystemNotification na NotificationDTO
      */
@@ -110,6 +118,7 @@ public class NotificationController {
                 .message(notification.getMessage())
                 .details(notification.getDetails())
                 .isRead(notification.getIsRead())
+                .occurrenceCount(notification.getOccurrenceCount())
                 .createdAt(notification.getCreatedAt() != null 
                         ? notification.getCreatedAt().atZone(ZoneId.systemDefault()).toOffsetDateTime()
                         : null)
@@ -7,13 +7,18 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import pl.ksef.hub.api.dto.ApiResponse;
 import pl.ksef.hub.api.dto.CreateTenantRequest;
 import pl.ksef.hub.api.dto.TenantDTO;
+import pl.ksef.hub.domain.entity.AuditLog.ActionType;
 import pl.ksef.hub.domain.entity.Tenant;
+import pl.ksef.hub.service.AuditRecorder;
+import pl.ksef.hub.service.ResourceVersionService;
 import pl.ksef.hub.service.TenantService;
 
 import java.util.List;
@@ -26,21 +31,38 @@ import java.util.stream.Collectors;
 public class TenantController {
 
     private final TenantService tenantService;
+    private final AuditRecorder auditRecorder;
+    private final ResourceVersionService resourceVersionService;
 
-    @Operation(summary = "Get all tenants")
+    @Operation(summary = "Get all tenants", description = "Supports If-None-Match (weak ETag).")
     @GetMapping
     public ResponseEntity<ApiResponse<Page<TenantDTO>>> getAllTenants(
-            @PageableDefault(size = 20) Pageable pageable) {
+            @PageableDefault(size = 20) Pageable pageable,
+            WebRequest webRequest) {
+        String eTag = resourceVersionService.tenantsETag(pageable);
+        if (webRequest.checkNotModified(eTag)) {
+            return notModified(eTag);
+        }
         Page<TenantDTO> tenants = tenantService.findAll(pageable)
                 .map(this::toDTO);
-        return ResponseEntity.ok(ApiResponse.success(tenants));
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(ApiResponse.success(tenants));
     }
 
-    @Operation(summary = "Get tenant by ID")
+    @Operation(summary = "Get tenant by ID", description = "Supports If-None-Match (weak ETag).")
     @GetMapping("/{id}")
-    public ResponseEntity<ApiResponse<TenantDTO>> getTenantById(@PathVariable Long id) {
-        Tenant tenant = tenantService.findById(id);
-        return ResponseEntity.ok(ApiResponse.success(toDTO(tenant)));
+    public ResponseEntity<ApiResponse<TenantDTO>> getTenantById(@PathVariable Long id, WebRequest webRequest) {
+        String currentETag = resourceVersionService.tenantETag(id);
+        if (currentETag != null && webRequest.checkNotModified(currentETag)) {
+            return notModified(currentETag);
+        }
+        TenantService.CachedTenant tenant = tenantService.findCachedById(id);
+        return ResponseEntity.ok()
+                .eTag(resourceVersionService.tenantETag(tenant.id(), tenant.updatedAt()))
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(ApiResponse.success(toDTO(tenant)));
     }
 
     @Operation(summary = "Get tenant by NIP")
@@ -65,6 +87,8 @@ public class TenantController {
                 .build();
         
         Tenant created = tenantService.create(tenant);
+        auditRecorder.record(ActionType.CREATE, created.getId(), "Tenant", created.getId(),
+                "Tenant created: " + created.getNip());
         return ResponseEntity.status(HttpStatus.CREATED)
                 .body(ApiResponse.success("Tenant created successfully", toDTO(created)));
     }
@@ -84,6 +108,7 @@ public class TenantController {
                 .build();
         
         Tenant updated = tenantService.update(id, tenant);
+        auditRecorder.record(ActionType.UPDATE, id, "Tenant", id, "Tenant updated");
         return ResponseEntity.ok(ApiResponse.success("Tenant updated successfully", toDTO(updated)));
     }
 
@@ -91,6 +116,7 @@ public class TenantController {
     @PostMapping("/{id}/activate")
     public ResponseEntity<ApiResponse<Void>> activateTenant(@PathVariable Long id) {
         tenantService.activate(id);
+        auditRecorder.record(ActionType.UPDATE, id, "Tenant", id, "Tenant activated");
         return ResponseEntity.ok(ApiResponse.success("Tenant activated successfully", null));
     }
 
@@ -98,6 +124,7 @@ public class TenantController {
     @PostMapping("/{id}/deactivate")
     public ResponseEntity<ApiResponse<Void>> deactivateTenant(@PathVariable Long id) {
         tenantService.deactivate(id);
+        auditRecorder.record(ActionType.UPDATE, id, "Tenant", id, "Tenant deactivated");
         return ResponseEntity.ok(ApiResponse.success("Tenant deactivated successfully", null));
     }
 
@@ -105,9 +132,17 @@ public class TenantController {
     @DeleteMapping("/{id}")
     public ResponseEntity<ApiResponse<Void>> deleteTenant(@PathVariable Long id) {
         tenantService.delete(id);
+        auditRecorder.record(ActionType.DELETE, id, "Tenant", id, "Tenant deleted");
         return ResponseEntity.ok(ApiResponse.success("Tenant deleted successfully", null));
     }
 
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .build();
+    }
+
     private TenantDTO toDTO(Tenant tenant) {
         return TenantDTO.builder()
                 .id(tenant.getId())
@@ -124,4 +159,21 @@ public class TenantController {
                 .updatedAt(tenant.getUpdatedAt())
                 .build();
     }
+
+    private TenantDTO toDTO(TenantService.CachedTenant tenant) {
+        return TenantDTO.builder()
+                .id(tenant.id())
+                .nip(tenant.nip())
+                .name(tenant.name())
+                .fullName(tenant.fullName())
+                .email(tenant.email())
+                .phone(tenant.phone())
+                .address(tenant.address())
+                .active(tenant.active())
+                .status(tenant.status().name())
+                .notes(tenant.notes())
+                .createdAt(tenant.createdAt())
+                .updatedAt(tenant.updatedAt())
+                .build();
+    }
 }
@@ -22,6 +22,7 @@ public class InvoiceDTO {
     private String referenceNumber;
     private String type;
     private String status;
+    private String direction;
     
     @JsonFormat(pattern = "yyyy-MM-dd")
     private LocalDate invoiceDate;
@@ -39,7 +40,7 @@ public class InvoiceDTO {
     private BigDecimal grossAmount;
     private String currency;
     
-    private String qrCode;
+    private String qrCodeUrl;
     private String errorMessage;
     
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
@@ -23,6 +23,7 @@ public class NotificationDTO {
     private String message;
     private String details;
     private Boolean isRead;
+    private Integer occurrenceCount;
     private OffsetDateTime createdAt;
     private OffsetDateTime readAt;
 }
@@ -0,0 +1,79 @@
+package pl.ksef.hub.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Konfiguracja cache (Caffeine) - każdy cache ma własny rozmiar i TTL
+ * w formacie specyfikacji Caffeine, np. "maximumSize=1000,expireAfterWrite=10m"
+ *
+ * Cache przechowują niemutowalne rekordy, nie encje JPA. put/evict wywołane w transakcji
+ * wykonywane są dopiero po jej zatwierdzeniu - równoległy odczyt nie odłoży do cache stanu sprzed
+ * commitu (TransactionAwareCacheManagerProxy).
+ */
+@Slf4j
+@Configuration
+public class CacheConfig {
+
+    public static final String TENANTS = "tenants";
+    public static final String ACTIVE_CERTIFICATES = "activeCertificates";
+    public static final String PRINCIPALS = "principals";
+    public static final String QR_CODES = "qrCodes";
+
+    @Value("${hub.cache.tenants:maximumSize=1000,expireAfterWrite=10m}")
+    private String tenantsSpec;
+
+    @Value("${hub.cache.active-certificates:maximumSize=1000,expireAfterWrite=1m}")
+    private String activeCertificatesSpec;
+
+    @Value("${hub.cache.principals:maximumSize=10000,expireAfterWrite=30s}")
+    private String principalsSpec;
+
+    @Value("${hub.cache.qr-codes.max-bytes:33554432}")
+    private long qrCodesMaxBytes;
+
+    @Value("${hub.cache.qr-codes.expire-after-access:1h}")
+    private Duration qrCodesExpireAfterAccess;
+
+    @Bean
+    public CacheManager cacheManager() {
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(List.of(
+                buildCache(TENANTS, tenantsSpec),
+                buildCache(ACTIVE_CERTIFICATES, activeCertificatesSpec),
+                buildCache(PRINCIPALS, principalsSpec),
+                buildQrCodesCache()
+        ));
+        cacheManager.initializeCaches();
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+
+    private CaffeineCache buildCache(String name, String spec) {
+        log.info("Configuring cache '{}': {}", name, spec);
+        return new CaffeineCache(name, Caffeine.from(spec).recordStats().build());
+    }
+
+    /**
+     * Cache wyrenderowanych kodów QR - ograniczony sumarycznym rozmiarem obrazów, nie liczbą wpisów
+     */
+    private CaffeineCache buildQrCodesCache() {
+        log.info("Configuring cache '{}': maxBytes={}, expireAfterAccess={}",
+                QR_CODES, qrCodesMaxBytes, qrCodesExpireAfterAccess);
+        return new CaffeineCache(QR_CODES, Caffeine.newBuilder()
+                .maximumWeight(qrCodesMaxBytes)
+                .weigher((Object key, Object value) -> value instanceof byte[] bytes ? bytes.length : 1)
+                .expireAfterAccess(qrCodesExpireAfterAccess)
+                .recordStats()
+                .build());
+    }
+}
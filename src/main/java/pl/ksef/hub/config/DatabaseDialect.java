@@ -0,0 +1,55 @@
+package pl.ksef.hub.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+/**
+ * Rodzaj bazy danych, na której działa Hub - wybór wariantu SQL (PostgreSQL lub H2 w profilu h2)
+ *
+ * Wykrywany raz przy starcie. Jeśli nie da się go ustalić albo baza nie jest obsługiwana,
+ * aplikacja nie startuje - zapytania w składni innej bazy zawiodłyby dopiero w trakcie pracy.
+ */
+@Slf4j
+@Component
+public class DatabaseDialect {
+
+    public enum Database {
+        POSTGRESQL, H2
+    }
+
+    private final Database database;
+
+    public DatabaseDialect(DataSource dataSource) {
+        this.database = detect(dataSource);
+        log.info("Database dialect: {}", database);
+    }
+
+    public Database getDatabase() {
+        return database;
+    }
+
+    public boolean isPostgreSql() {
+        return database == Database.POSTGRESQL;
+    }
+
+    static Database detect(DataSource dataSource) {
+        String productName;
+        try {
+            productName = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Could not determine database type", e);
+        }
+        if ("PostgreSQL".equalsIgnoreCase(productName)) {
+            return Database.POSTGRESQL;
+        }
+        if ("H2".equalsIgnoreCase(productName)) {
+            return Database.H2;
+        }
+        throw new IllegalStateException("Unsupported database: " + productName);
+    }
+}
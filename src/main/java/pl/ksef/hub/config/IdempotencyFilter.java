@@ -0,0 +1,277 @@
+package pl.ksef.hub.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import pl.ksef.hub.api.dto.ApiResponse;
+import pl.ksef.hub.domain.entity.IdempotencyRecord;
+import pl.ksef.hub.service.IdempotencyService;
+import pl.ksef.hub.service.IdempotencyService.StoredEntry;
+import pl.ksef.hub.service.IdempotencyService.StoredResponse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Obsługa nagłówka Idempotency-Key dla żądań modyfikujących (POST, PUT, PATCH, DELETE)
+ *
+ * Ponowienie żądania z tym samym kluczem (w obrębie użytkownika) zwraca zapisaną odpowiedź
+ * z nagłówkiem Idempotent-Replayed: true, bez ponownego utworzenia faktury czy wysyłki do KSeF.
+ * Ponowienie w trakcie oryginału czeka na jego wynik (ten sam węzeł) lub dostaje 409 z Retry-After
+ * (inny węzeł). Ten sam klucz z inną treścią żądania - 422. Odpowiedzi 5xx nie są zapamiętywane.
+ * Żądania bez nagłówka są obsługiwane bez zmian.
+ */
+@Slf4j
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Set<String> METHODS = Set.of("POST", "PUT", "PATCH", "DELETE");
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long inFlightWaitMs;
+
+    public IdempotencyFilter(IdempotencyService idempotencyService,
+                             ObjectMapper objectMapper,
+                             @Value("${hub.idempotency.enabled:true}") boolean enabled,
+                             @Value("${hub.idempotency.in-flight-wait-ms:30000}") long inFlightWaitMs) {
+        this.idempotencyService = idempotencyService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.inFlightWaitMs = inFlightWaitMs;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !enabled || !METHODS.contains(request.getMethod()) || request.getHeader(HEADER) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        String key = request.getHeader(HEADER).trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            writeError(response, HttpStatus.BAD_REQUEST, HEADER + " must be 1-" + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+
+        CachedBodyRequest cachedRequest = new CachedBodyRequest(request);
+        String keyHash = sha256(currentUser() + "\n" + key);
+        String requestHash = sha256(request.getMethod() + " " + request.getRequestURI()
+                + "?" + request.getQueryString() + "\n", cachedRequest.body);
+
+        // Ponowienie w trakcie oryginału na tym węźle - czekamy na jego wynik
+        CompletableFuture<StoredResponse> own = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> running = idempotencyService.joinInFlight(keyHash, own);
+        if (running != null) {
+            StoredResponse result = await(running);
+            if (result != null && sameRequest(keyHash, requestHash, response)) {
+                idempotencyService.recordReplay();
+                replay(response, result);
+            } else if (result == null) {
+                conflict(response);
+            }
+            return;
+        }
+
+        StoredResponse result = null;
+        try {
+            Optional<StoredEntry> stored = idempotencyService.find(keyHash);
+            if (stored.isPresent()) {
+                handleStored(stored.get(), requestHash, response);
+                return;
+            }
+            if (!idempotencyService.claim(keyHash, requestHash)) {
+                // Wyścig z innym węzłem - mógł już zakończyć
+                Optional<StoredEntry> winner = idempotencyService.find(keyHash);
+                if (winner.isPresent()) {
+                    handleStored(winner.get(), requestHash, response);
+                } else {
+                    conflict(response);
+                }
+                return;
+            }
+
+            ContentCachingResponseWrapper cachingResponse = new ContentCachingResponseWrapper(response);
+            filterChain.doFilter(cachedRequest, cachingResponse);
+            if (cachingResponse.getStatus() < 500) {
+                result = new StoredResponse(cachingResponse.getStatus(), cachingResponse.getContentType(),
+                        new String(cachingResponse.getContentAsByteArray(), StandardCharsets.UTF_8));
+                idempotencyService.complete(keyHash, result);
+            } else {
+                idempotencyService.release(keyHash);
+            }
+            cachingResponse.copyBodyToResponse();
+        } catch (RuntimeException | IOException | ServletException e) {
+            if (result == null) {
+                idempotencyService.release(keyHash);
+            }
+            throw e;
+        } finally {
+            idempotencyService.leaveInFlight(keyHash, own, result);
+        }
+    }
+
+    private void handleStored(StoredEntry stored, String requestHash, HttpServletResponse response)
+            throws IOException {
+        if (!stored.requestHash().equals(requestHash)) {
+            idempotencyService.recordMismatch();
+            writeError(response, HttpStatus.UNPROCESSABLE_ENTITY,
+                    HEADER + " was already used for a different request");
+        } else if (stored.status() == IdempotencyRecord.Status.COMPLETED && stored.response() != null) {
+            idempotencyService.recordReplay();
+            replay(response, stored.response());
+        } else {
+            conflict(response);
+        }
+    }
+
+    private boolean sameRequest(String keyHash, String requestHash, HttpServletResponse response) throws IOException {
+        Optional<StoredEntry> stored = idempotencyService.find(keyHash);
+        if (stored.isPresent() && !stored.get().requestHash().equals(requestHash)) {
+            idempotencyService.recordMismatch();
+            writeError(response, HttpStatus.UNPROCESSABLE_ENTITY,
+                    HEADER + " was already used for a different request");
+            return false;
+        }
+        return true;
+    }
+
+    private StoredResponse await(CompletableFuture<StoredResponse> running) {
+        try {
+            return running.get(inFlightWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    private void replay(HttpServletResponse response, StoredResponse stored) throws IOException {
+        response.setStatus(stored.status());
+        response.setHeader(REPLAYED_HEADER, "true");
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        if (stored.body() != null && !stored.body().isEmpty()) {
+            response.getOutputStream().write(stored.body().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void conflict(HttpServletResponse response) throws IOException {
+        idempotencyService.recordConflict();
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        writeError(response, HttpStatus.CONFLICT, "A request with this " + HEADER + " is still being processed");
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getOutputStream(), ApiResponse.error(message));
+    }
+
+    private static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "anonymous";
+    }
+
+    private static String sha256(String prefix, byte[]... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(prefix.getBytes(StandardCharsets.UTF_8));
+            for (byte[] part : parts) {
+                digest.update(part);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Treść żądania wczytana raz - do skrótu żądania i ponownie dla kontrolera
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request) throws IOException {
+            super(request);
+            this.body = request.getInputStream().readAllBytes();
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return input.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package pl.ksef.hub.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import pl.ksef.hub.security.UserPrincipalCache;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Klucz spójności odczytów żądania dla ReplicaRoutingDataSource (read-your-writes)
+ *
+ * Klient ze ścieżki /tenants/{id}/..., w drugiej kolejności klient zalogowanego użytkownika,
+ * a dla użytkowników bez klienta (administratorzy) - sam użytkownik.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "hub.datasource.replicas.enabled", havingValue = "true")
+public class ReadConsistencyFilter extends OncePerRequestFilter {
+
+    private static final Pattern TENANT_PATH = Pattern.compile("^/tenants/(\\d+)(/.*)?$");
+
+    private final UserPrincipalCache principalCache;
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        ReplicaRoutingDataSource.bind(consistencyKey(request));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.clear();
+        }
+    }
+
+    private String consistencyKey(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Matcher matcher = TENANT_PATH.matcher(path);
+        if (matcher.matches()) {
+            return "tenant:" + matcher.group(1);
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || "anonymousUser".equals(authentication.getPrincipal())) {
+            return null;
+        }
+        try {
+            Long tenantId = principalCache.get(authentication.getName()).tenantId();
+            return tenantId != null ? "tenant:" + tenantId : "user:" + authentication.getName();
+        } catch (RuntimeException e) {
+            return "user:" + authentication.getName();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package pl.ksef.hub.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Źródło danych z replikami do odczytu (hub.datasource.replicas.enabled)
+ *
+ * Primary konfigurowany jak dotąd przez spring.datasource (w tym pula spring.datasource.hikari),
+ * każda replika dostaje własną pulę tylko do odczytu. Aplikacja widzi jeden DataSource:
+ * LazyConnectionDataSourceProxy -> ReplicaRoutingDataSource.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "hub.datasource.replicas.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    // Opóźnienie odtwarzania WAL w ms (0 gdy replika odtworzyła wszystko, co odebrała) oraz pozycja
+    // odtworzonego WAL w bajtach - o aktualności odczytu decyduje pozycja, opóźnienie tylko o dostępności
+    static final String POSTGRES_PROBE_QUERY =
+            "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE COALESCE(EXTRACT(EPOCH FROM (now() - pg_last_xact_replay_timestamp())) * 1000, 0) END, " +
+            "pg_last_wal_replay_lsn() - '0/0'::pg_lsn";
+
+    // Bieżąca pozycja WAL primary w bajtach
+    static final String POSTGRES_PRIMARY_LSN_QUERY = "SELECT pg_current_wal_lsn() - '0/0'::pg_lsn";
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            HikariDataSource primaryDataSource,
+            DataSourceProperties properties,
+            @Value("${hub.datasource.replicas.urls}") List<String> urls,
+            @Value("${hub.datasource.replicas.username:${spring.datasource.username:}}") String username,
+            @Value("${hub.datasource.replicas.password:${spring.datasource.password:}}") String password,
+            @Value("${hub.datasource.replicas.pool-size:10}") int poolSize,
+            @Value("${hub.datasource.replicas.max-lag-ms:5000}") long maxLagMs,
+            @Value("${hub.datasource.replicas.probe-stale-ms:5000}") long probeStaleMs) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            String name = "replica-" + (replicas.size() + 1);
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName(name);
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setDriverClassName(properties.getDriverClassName());
+            replica.setMaximumPoolSize(poolSize);
+            replica.setReadOnly(true);
+            replicas.put(name, replica);
+        }
+        if (replicas.isEmpty()) {
+            throw new IllegalStateException("hub.datasource.replicas.enabled requires hub.datasource.replicas.urls");
+        }
+        log.info("Read-only transactions routed to {} replica(s), max lag {} ms", replicas.size(), maxLagMs);
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, maxLagMs, probeStaleMs,
+                POSTGRES_PROBE_QUERY, POSTGRES_PRIMARY_LSN_QUERY);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
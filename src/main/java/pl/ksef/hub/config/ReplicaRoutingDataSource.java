@@ -0,0 +1,251 @@
+package pl.ksef.hub.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kierowanie transakcji tylko do odczytu na repliki PostgreSQL
+ *
+ * Na replikę trafia transakcja readOnly wykonywana w ramach żądania HTTP (ReadConsistencyFilter) - zadania
+ * w tle czytają z primary, bo często zaraz potem zapisują na podstawie odczytu. Pozostałe połączenia
+ * (zapis, brak transakcji) idą na primary.
+ *
+ * Opóźnienie i pozycja odtworzenia WAL replik sprawdzane są cyklicznie
+ * (hub.datasource.replicas.lag-check-interval-ms); replika z opóźnieniem powyżej max-lag-ms, niedostępna
+ * lub bez pomiaru od probe-stale-ms jest pomijana. Read-your-writes: po zatwierdzeniu zapisu klienta
+ * (klucz z ReadConsistencyFilter) zapamiętywana jest bieżąca pozycja WAL primary (LSN), a odczyty klienta
+ * trafiają na replikę dopiero, gdy ta odtworzyła WAL co najmniej do tej pozycji - do tego czasu na primary.
+ * Pozycje porównywane są bezpośrednio, bez szacowania czasem - replika bezczynna, która jeszcze nie odebrała
+ * WAL zapisu, nie jest uznawana za aktualną.
+ *
+ * Musi być opakowane w LazyConnectionDataSourceProxy - flaga readOnly transakcji jest ustawiana
+ * po otwarciu połączenia przez menedżer transakcji, a proxy pobiera fizyczne połączenie dopiero
+ * przy pierwszym zapytaniu.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    public static final String PRIMARY = "primary";
+
+    /** Klucz spójności bieżącego żądania; "" - żądanie bez klucza, null - poza żądaniem HTTP */
+    private static final ThreadLocal<String> CONSISTENCY_KEY = new ThreadLocal<>();
+
+    // Pozycja WAL zapisu nieznana (błąd odczytu z primary) - odczyty klienta na primary przez ten czas
+    private static final long UNKNOWN_LSN_STICKY_MS = 60_000;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMs;
+    private final long probeStaleMs;
+    private final String probeQuery;
+    private final String primaryLsnQuery;
+
+    // Klucz spójności -> ostatni zatwierdzony zapis
+    private final Map<String, Write> lastWrites = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final AtomicLong primaryWrites = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong stickyReads = new AtomicLong();
+
+    /**
+     * @param probeQuery      zapytanie do repliki: (opóźnienie w ms, pozycja odtworzonego WAL)
+     * @param primaryLsnQuery zapytanie do primary: bieżąca pozycja WAL
+     */
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, long maxLagMs,
+                                    long probeStaleMs, String probeQuery, String primaryLsnQuery) {
+        this.primary = primary;
+        this.maxLagMs = maxLagMs;
+        this.probeStaleMs = probeStaleMs;
+        this.probeQuery = probeQuery;
+        this.primaryLsnQuery = primaryLsnQuery;
+        this.replicas = new ArrayList<>();
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicas.forEach((name, dataSource) -> {
+            this.replicas.add(new Replica(name, dataSource));
+            targets.put(name, dataSource);
+        });
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * Wiąże klucz spójności (klient lub użytkownik) z bieżącym żądaniem
+     */
+    public static void bind(String consistencyKey) {
+        CONSISTENCY_KEY.set(consistencyKey != null ? consistencyKey : "");
+    }
+
+    public static void clear() {
+        CONSISTENCY_KEY.remove();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String key = CONSISTENCY_KEY.get();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (key != null && !key.isEmpty() && TransactionSynchronizationManager.isSynchronizationActive()) {
+                trackWrite(key);
+            }
+            primaryWrites.incrementAndGet();
+            return PRIMARY;
+        }
+        if (key == null) {
+            primaryReads.incrementAndGet();
+            return PRIMARY;
+        }
+
+        Write lastWrite = key.isEmpty() ? null : lastWrites.get(key);
+        long requiredLsn = lastWrite != null ? lastWrite.lsn() : 0;
+        long now = System.currentTimeMillis();
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        boolean anyAvailable = false;
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.available(maxLagMs, now - probeStaleMs)) {
+                continue;
+            }
+            anyAvailable = true;
+            if (replica.replayedLsn >= requiredLsn) {
+                replica.reads.incrementAndGet();
+                return replica.name;
+            }
+        }
+        (anyAvailable ? stickyReads : primaryReads).incrementAndGet();
+        return PRIMARY;
+    }
+
+    private void trackWrite(String key) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                Write write = new Write(currentPrimaryLsn(), System.currentTimeMillis());
+                lastWrites.merge(key, write, (previous, current) -> current.lsn() >= previous.lsn() ? current : previous);
+            }
+        });
+    }
+
+    /**
+     * Bieżąca pozycja WAL primary - obejmuje właśnie zatwierdzony zapis. Osobne połączenie z puli primary,
+     * bo połączenie transakcji jest po zatwierdzeniu zwalniane.
+     */
+    private long currentPrimaryLsn() {
+        try (Connection connection = primary.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(primaryLsnQuery)) {
+            return rs.next() ? rs.getLong(1) : Long.MAX_VALUE;
+        } catch (Exception e) {
+            log.warn("Could not read primary WAL position, reads stay on primary: {}", e.getMessage());
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Pomiar opóźnienia i pozycji odtworzonego WAL replik
+     */
+    @Scheduled(fixedDelayString = "${hub.datasource.replicas.lag-check-interval-ms:1000}")
+    public void checkReplicaLag() {
+        long oldestReplayed = Long.MAX_VALUE;
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(probeQuery)) {
+                if (!rs.next()) {
+                    throw new IllegalStateException("Replica probe returned no rows");
+                }
+                replica.update(Math.max(0, rs.getLong(1)), rs.getLong(2), System.currentTimeMillis());
+            } catch (Exception e) {
+                if (replica.healthy) {
+                    log.warn("Replica {} unavailable, reads fall back to primary: {}", replica.name, e.getMessage());
+                }
+                replica.healthy = false;
+            }
+            oldestReplayed = Math.min(oldestReplayed, replica.replayedLsn);
+        }
+        // Zapisy odtworzone już na wszystkich replikach nie wymagają przyklejenia do primary
+        long threshold = oldestReplayed;
+        long unknownBefore = System.currentTimeMillis() - UNKNOWN_LSN_STICKY_MS;
+        lastWrites.values().removeIf(write -> write.lsn() <= threshold
+                || (write.lsn() == Long.MAX_VALUE && write.committedAt() < unknownBefore));
+    }
+
+    public RoutingStats getStats() {
+        List<ReplicaStats> replicaStats = replicas.stream()
+                .map(r -> new ReplicaStats(r.name, r.healthy, r.lagMs,
+                        r.available(maxLagMs, System.currentTimeMillis() - probeStaleMs), r.reads.get()))
+                .toList();
+        return new RoutingStats(primaryWrites.get(), primaryReads.get(), stickyReads.get(), lastWrites.size(),
+                maxLagMs, replicaStats);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private final AtomicLong reads = new AtomicLong();
+        // Do pierwszego pomiaru replika nie jest używana
+        private volatile boolean healthy;
+        private volatile long lagMs = Long.MAX_VALUE;
+        private volatile long replayedLsn;
+        private volatile long lastProbeAt;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        void update(long lagMs, long replayedLsn, long probedAt) {
+            if (!healthy) {
+                log.info("Replica {} available (lag {} ms)", name, lagMs);
+            }
+            this.lagMs = lagMs;
+            this.replayedLsn = replayedLsn;
+            this.lastProbeAt = probedAt;
+            this.healthy = true;
+        }
+
+        /**
+         * @param probedAfter pomiar starszy niż ten moment jest nieaktualny - replika pomijana
+         */
+        boolean available(long maxLagMs, long probedAfter) {
+            return healthy && lagMs <= maxLagMs && lastProbeAt >= probedAfter;
+        }
+    }
+
+    private record Write(long lsn, long committedAt) {
+    }
+
+    public record ReplicaStats(String name, boolean healthy, long lagMs, boolean available, long reads) {
+    }
+
+    public record RoutingStats(long primaryWrites, long primaryReads, long stickyReads, long trackedWriters,
+                               long maxLagMs, List<ReplicaStats> replicas) {
+    }
+}
@@ -36,7 +36,12 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/auth/**").permitAll()
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
+                        // Metryki (m.in. per klient) tylko po uwierzytelnieniu; health i info publiczne
+                        .requestMatchers("/actuator/prometheus").authenticated()
                         .requestMatchers("/actuator/**").permitAll()
+                        // Statystyki operacyjne (bufory, pule, koordynacja węzłów) tylko dla administratora
+                        .requestMatchers("/hub/cache/stats", "/hub/coordination", "/hub/audit/stats",
+                                "/hub/idempotency/stats", "/hub/datasource/stats").hasRole("ADMIN")
                         .requestMatchers("/status", "/messages", "/notifications/**", "/hub/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/tenants/**").authenticated()
                         .requestMatchers(HttpMethod.POST, "/tenants/**").hasAnyRole("ADMIN", "MANAGER")
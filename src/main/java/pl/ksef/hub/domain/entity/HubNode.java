@@ -0,0 +1,31 @@
+package pl.ksef.hub.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Węzeł Huba zgłaszający się heartbeatem (koordynacja zadań w tle między węzłami)
+ */
+@Entity
+@Table(name = "hub_nodes", indexes = {
+    @Index(name = "idx_hub_node_heartbeat", columnList = "heartbeatAt")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HubNode {
+
+    @Id
+    @Column(length = 100)
+    private String nodeId;
+
+    @Column(nullable = false)
+    private LocalDateTime heartbeatAt;
+
+    @Column(nullable = false)
+    private LocalDateTime startedAt;
+}
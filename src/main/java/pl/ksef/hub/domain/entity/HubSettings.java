@@ -7,6 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.OffsetDateTime;
+import java.time.temporal.ChronoUnit;
 
 @Entity
 @Table(name = "hub_settings")
@@ -35,6 +36,7 @@ public class HubSettings {
     @PrePersist
     @PreUpdate
     protected void onUpdate() {
-        this.updatedAt = OffsetDateTime.now();
+        // Precyzja kolumny (mikrosekundy) - migawka z zapisanej encji ma tę samą wersję co wiersz w bazie
+        this.updatedAt = OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS);
     }
 }
@@ -0,0 +1,54 @@
+package pl.ksef.hub.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Zapamiętany wynik żądania z nagłówkiem Idempotency-Key.
+ *
+ * Wiersz IN_PROGRESS zajmuje klucz na czas wykonania (także między węzłami),
+ * COMPLETED przechowuje odpowiedź odtwarzaną przy ponowieniu do expiresAt.
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = {
+    @Index(name = "idx_idempotency_expires", columnList = "expiresAt")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IdempotencyRecord {
+
+    @Id
+    @Column(length = 64)
+    private String keyHash;
+
+    @Column(nullable = false, length = 64)
+    private String requestHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status;
+
+    private Integer responseStatus;
+
+    @Column(length = 100)
+    private String contentType;
+
+    @Column(columnDefinition = "TEXT")
+    private String responseBody;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    public enum Status {
+        IN_PROGRESS,
+        COMPLETED
+    }
+}
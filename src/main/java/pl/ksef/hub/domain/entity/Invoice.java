@@ -11,15 +11,24 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 /**
- * Invoice entity representing invoices sent through KSeF
+ * Invoice entity representing invoices sent through KSeF (OUTGOING)
+ * and purchase invoices downloaded from KSeF (INCOMING)
  */
 @Entity
-@Table(name = "invoices", indexes = {
+@Table(name = "invoices", uniqueConstraints = {
+    // Ta sama faktura może być sprzedażą jednego klienta Huba i zakupem innego
+    @UniqueConstraint(name = "uq_invoice_tenant_ksef_number", columnNames = {"tenant_id", "ksefNumber"})
+}, indexes = {
     @Index(name = "idx_invoice_tenant", columnList = "tenant_id"),
+    @Index(name = "idx_invoice_tenant_direction_date", columnList = "tenant_id, direction, invoiceDate"),
+    @Index(name = "idx_invoice_tenant_updated_at", columnList = "tenant_id, updatedAt"),
     @Index(name = "idx_invoice_ksef_number", columnList = "ksefNumber"),
     @Index(name = "idx_invoice_number", columnList = "invoiceNumber"),
     @Index(name = "idx_invoice_status", columnList = "status"),
-    @Index(name = "idx_invoice_date", columnList = "invoiceDate")
+    @Index(name = "idx_invoice_date", columnList = "invoiceDate"),
+    @Index(name = "idx_invoice_upo_ksef_number", columnList = "upoKsefNumber"),
+    @Index(name = "idx_invoice_upo_accepted_at", columnList = "upoAcceptedAt"),
+    @Index(name = "idx_invoice_upo_document_hash", columnList = "upoDocumentHash")
 })
 @EntityListeners(AuditingEntityListener.class)
 @Getter
@@ -40,7 +49,7 @@ public class Invoice {
     @Column(nullable = false, length = 100)
     private String invoiceNumber;
 
-    @Column(unique = true, length = 100)
+    @Column(length = 100)
     private String ksefNumber; // KSeF reference number
 
     @Column(length = 100)
@@ -55,6 +64,11 @@ public class Invoice {
     @Builder.Default
     private InvoiceStatus status = InvoiceStatus.DRAFT;
 
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    @Builder.Default
+    private InvoiceDirection direction = InvoiceDirection.OUTGOING;
+
     @Column(nullable = false)
     private LocalDate invoiceDate;
 
@@ -92,10 +106,17 @@ public class Invoice {
 
     @Lob
     @Column(columnDefinition = "TEXT")
-    private String upoContent; // UPO XML from KSeF
+    private String upoContent; // UPO XML from KSeF (legacy, Base64)
 
-    @Column(length = 500)
-    private String qrCode; // Base64 encoded QR code
+    private byte[] upoCompressed; // UPO XML from KSeF, GZIP
+
+    @Column(length = 100)
+    private String upoKsefNumber; // KSeF number from UPO
+
+    private LocalDateTime upoAcceptedAt; // Acceptance timestamp from UPO
+
+    @Column(length = 128)
+    private String upoDocumentHash; // Document hash from UPO
 
     @Column(length = 1000)
     private String errorMessage;
@@ -122,6 +143,11 @@ public class Invoice {
         RR          // Rachunek/Rejestr
     }
 
+    public enum InvoiceDirection {
+        OUTGOING,   // Sprzedaż - wystawiona w Hubie i wysłana do KSeF
+        INCOMING    // Zakup - pobrana z KSeF (klient jest nabywcą)
+    }
+
     public enum InvoiceStatus {
         DRAFT,
         PENDING,
@@ -0,0 +1,41 @@
+package pl.ksef.hub.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Stan synchronizacji faktur zakupowych klienta z KSeF.
+ *
+ * highWaterMark - znacznik czasu przyjęcia do KSeF, do którego wszystkie faktury
+ * zostały już pobrane; kolejny przebieg odpytuje KSeF od tego miejsca.
+ */
+@Entity
+@Table(name = "invoice_sync_state")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InvoiceSyncState {
+
+    @Id
+    private Long tenantId;
+
+    @Column(nullable = false)
+    private LocalDateTime highWaterMark;
+
+    private LocalDateTime lastRunAt;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer lastRunSynced = 0;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Long totalSynced = 0L;
+
+    @Column(length = 1000)
+    private String lastError;
+}
@@ -14,7 +14,8 @@ import java.time.LocalDateTime;
 @Table(name = "ksef_sessions", indexes = {
     @Index(name = "idx_session_tenant", columnList = "tenant_id"),
     @Index(name = "idx_session_reference", columnList = "referenceNumber"),
-    @Index(name = "idx_session_status", columnList = "status")
+    @Index(name = "idx_session_status", columnList = "status"),
+    @Index(name = "idx_session_closed_at", columnList = "closedAt")
 })
 @EntityListeners(AuditingEntityListener.class)
 @Getter
@@ -0,0 +1,31 @@
+package pl.ksef.hub.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Zajęcie otwierania sesji KSeF klienta przez jeden węzeł (DatabaseKsefSessionStore).
+ *
+ * Wiersz zakładany jest pod blokadą klienta i usuwany po otwarciu sesji - wywołanie KSeF
+ * odbywa się już bez blokady. Zajęcie wygasa po expiresAt (awaria węzła w trakcie otwierania).
+ */
+@Entity
+@Table(name = "ksef_session_claims")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class KsefSessionClaim {
+
+    @Id
+    private Long tenantId;
+
+    @Column(nullable = false, length = 36)
+    private String claimId;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+}
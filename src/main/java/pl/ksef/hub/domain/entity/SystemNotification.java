@@ -63,7 +63,14 @@ public class SystemNotification {
     private Boolean isRead = false;
 
     /**
-     * Data utworzenia
+     * Liczba połączonych wystąpień tego samego powiadomienia w oknie czasowym
+     */
+    @Column(nullable = false)
+    @Builder.Default
+    private Integer occurrenceCount = 1;
+
+    /**
+     * Data utworzenia (pierwszego wystąpienia)
      */
     @Column(nullable = false)
     private LocalDateTime createdAt;
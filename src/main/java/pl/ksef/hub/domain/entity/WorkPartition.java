@@ -0,0 +1,36 @@
+package pl.ksef.hub.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Partycja pracy w tle (koszyk klientów wg tenant_id mod liczba partycji) dzierżawiona przez jeden węzeł.
+ *
+ * fencingToken rośnie przy każdym przejęciu partycji - zapis opatrzony starym tokenem
+ * (węzeł, który utracił dzierżawę) jest odrzucany.
+ */
+@Entity
+@Table(name = "work_partitions", indexes = {
+    @Index(name = "idx_work_partition_owner", columnList = "ownerNode")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WorkPartition {
+
+    @Id
+    private Integer partitionId;
+
+    @Column(length = 100)
+    private String ownerNode;
+
+    @Column(nullable = false)
+    private Long fencingToken;
+
+    @Column(nullable = false)
+    private LocalDateTime leaseUntil;
+}
@@ -0,0 +1,13 @@
+package pl.ksef.hub.domain.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Wersja kolekcji (liczba wierszy, najpóźniejsza modyfikacja) - podstawa ETag list bez ładowania encji
+ */
+public interface CollectionVersion {
+
+    long getTotal();
+
+    LocalDateTime getLastModified();
+}
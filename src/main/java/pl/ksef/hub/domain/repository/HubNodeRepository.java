@@ -0,0 +1,29 @@
+package pl.ksef.hub.domain.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import pl.ksef.hub.domain.entity.HubNode;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface HubNodeRepository extends JpaRepository<HubNode, String> {
+    
+    @Modifying
+    @Query("UPDATE HubNode n SET n.heartbeatAt = :now WHERE n.nodeId = :nodeId")
+    int heartbeat(@Param("nodeId") String nodeId, @Param("now") LocalDateTime now);
+    
+    /**
+     * Węzły z heartbeatem nowszym niż since, w stałej kolejności (podział partycji)
+     */
+    @Query("SELECT n.nodeId FROM HubNode n WHERE n.heartbeatAt > :since ORDER BY n.nodeId")
+    List<String> findLiveNodeIds(@Param("since") LocalDateTime since);
+    
+    @Modifying
+    @Query("DELETE FROM HubNode n WHERE n.heartbeatAt < :before")
+    int deleteStale(@Param("before") LocalDateTime before);
+}
@@ -1,13 +1,28 @@
 package pl.ksef.hub.domain.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import pl.ksef.hub.domain.entity.HubSettings;
 
+import java.time.OffsetDateTime;
 import java.util.Optional;
 
 @Repository
 public interface HubSettingsRepository extends JpaRepository<HubSettings, Long> {
     
     Optional<HubSettings> findFirstByOrderByIdDesc();
+
+    /**
+     * Lekkie sprawdzenie wersji najnowszych ustawień (id, updatedAt) bez ładowania encji
+     */
+    @Query("SELECT s.id AS id, s.updatedAt AS updatedAt FROM HubSettings s " +
+           "WHERE s.id = (SELECT MAX(h.id) FROM HubSettings h)")
+    Optional<SettingsVersion> findLatestVersion();
+
+    interface SettingsVersion {
+        Long getId();
+
+        OffsetDateTime getUpdatedAt();
+    }
 }
@@ -9,6 +9,8 @@ import org.springframework.stereotype.Repository;
 import pl.ksef.hub.domain.entity.Invoice;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,7 +19,14 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
     
     Page<Invoice> findByTenantId(Long tenantId, Pageable pageable);
     
-    Optional<Invoice> findByKsefNumber(String ksefNumber);
+    Optional<Invoice> findByTenantIdAndKsefNumber(Long tenantId, String ksefNumber);
+    
+    /**
+     * Numery KSeF z podanej listy, które klient ma już w bazie (pominięcie ponownego pobrania)
+     */
+    @Query("SELECT i.ksefNumber FROM Invoice i WHERE i.tenant.id = :tenantId AND i.ksefNumber IN :ksefNumbers")
+    List<String> findExistingKsefNumbers(@Param("tenantId") Long tenantId,
+                                         @Param("ksefNumbers") Collection<String> ksefNumbers);
     
     List<Invoice> findByTenantIdAndStatus(Long tenantId, Invoice.InvoiceStatus status);
     
@@ -35,7 +44,48 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long> {
                                   @Param("invoiceNumber") String invoiceNumber,
                                   Pageable pageable);
     
+    /**
+     * Lekkie sprawdzenie wersji faktury (If-None-Match) bez ładowania encji
+     */
+    @Query("SELECT i.updatedAt FROM Invoice i WHERE i.id = :id")
+    Optional<LocalDateTime> findUpdatedAtById(@Param("id") Long id);
+    
+    @Query("SELECT COUNT(i) AS total, MAX(i.updatedAt) AS lastModified FROM Invoice i WHERE i.tenant.id = :tenantId")
+    CollectionVersion findVersionByTenantId(@Param("tenantId") Long tenantId);
+    
     boolean existsByTenantIdAndInvoiceNumber(Long tenantId, String invoiceNumber);
     
     long countByStatus(Invoice.InvoiceStatus status);
+    
+    Optional<Invoice> findByUpoKsefNumber(String upoKsefNumber);
+    
+    List<Invoice> findByUpoDocumentHash(String upoDocumentHash);
+    
+    List<Invoice> findByTenantIdAndUpoAcceptedAtBetween(Long tenantId, LocalDateTime from, LocalDateTime to);
+    
+    /**
+     * Faktury wysłane do KSeF, dla których nie pobrano jeszcze UPO (bez ładowania treści XML)
+     * Stronicowanie po kluczu (id > afterId), tylko klienci z partycji pracy bieżącego węzła
+     * (tenant_id mod partitions)
+     */
+    @Query("SELECT i.id AS id, i.ksefNumber AS ksefNumber, i.tenant.id AS tenantId, " +
+           "i.sentToKsefAt AS sentToKsefAt FROM Invoice i " +
+           "WHERE i.status = :status AND i.upoCompressed IS NULL AND i.upoContent IS NULL " +
+           "AND i.ksefNumber IS NOT NULL AND i.id > :afterId " +
+           "AND MOD(i.tenant.id, :partitions) IN :ownedPartitions ORDER BY i.id")
+    List<PendingUpoView> findPendingUpo(@Param("status") Invoice.InvoiceStatus status,
+                                        @Param("afterId") Long afterId,
+                                        @Param("partitions") int partitions,
+                                        @Param("ownedPartitions") Collection<Integer> ownedPartitions,
+                                        Pageable pageable);
+    
+    interface PendingUpoView {
+        Long getId();
+        
+        String getKsefNumber();
+        
+        Long getTenantId();
+        
+        LocalDateTime getSentToKsefAt();
+    }
 }
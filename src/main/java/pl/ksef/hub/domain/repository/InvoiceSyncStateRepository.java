@@ -0,0 +1,9 @@
+package pl.ksef.hub.domain.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import pl.ksef.hub.domain.entity.InvoiceSyncState;
+
+@Repository
+public interface InvoiceSyncStateRepository extends JpaRepository<InvoiceSyncState, Long> {
+}
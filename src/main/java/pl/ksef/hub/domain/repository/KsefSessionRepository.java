@@ -1,9 +1,13 @@
 package pl.ksef.hub.domain.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pl.ksef.hub.domain.entity.KsefSession;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,4 +22,20 @@ public interface KsefSessionRepository extends JpaRepository<KsefSession, Long>
     
     Optional<KsefSession> findFirstByTenantIdAndStatusOrderByCreatedAtDesc(
         Long tenantId, KsefSession.SessionStatus status);
+    
+    /**
+     * Niezamknięte sesje klienta o danym statusie, których token jest ważny dłużej niż validAfter
+     */
+    @Query("SELECT s FROM KsefSession s WHERE s.tenant.id = :tenantId AND s.status = :status " +
+           "AND s.closedAt IS NULL AND s.tokenExpiresAt > :validAfter")
+    List<KsefSession> findValidSessions(@Param("tenantId") Long tenantId,
+                                        @Param("status") KsefSession.SessionStatus status,
+                                        @Param("validAfter") LocalDateTime validAfter);
+    
+    @Query("SELECT s.id FROM KsefSession s WHERE s.closedAt >= :since")
+    List<Long> findIdsClosedSince(@Param("since") LocalDateTime since);
+    
+    @Modifying
+    @Query("UPDATE KsefSession s SET s.closedAt = :closedAt WHERE s.id = :id AND s.closedAt IS NULL")
+    int markClosed(@Param("id") Long id, @Param("closedAt") LocalDateTime closedAt);
 }
@@ -2,8 +2,11 @@ package pl.ksef.hub.domain.repository;
 
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import pl.ksef.hub.domain.entity.SystemNotification;
 
 import java.time.LocalDateTime;
@@ -47,7 +50,21 @@ public interface SystemNotificationRepository extends JpaRepository<SystemNotifi
     );
 
     /**
-     * Usuń stare powiadomienia (starsze niż podana data)
+     * Oznacz wszystkie nieprzeczytane powiadomienia jako przeczytane (jedno zapytanie UPDATE)
      */
-    void deleteByCreatedAtBefore(LocalDateTime before);
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE SystemNotification n SET n.isRead = true, n.readAt = :readAt WHERE n.isRead = false")
+    int markAllAsRead(@Param("readAt") LocalDateTime readAt);
+
+    /**
+     * Usuń porcję starych powiadomień (starszych niż podana data).
+     * Każde wywołanie to osobna, krótka transakcja - bez ładowania encji.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM system_notifications WHERE id IN (" +
+            "SELECT id FROM system_notifications WHERE created_at < :before LIMIT :limit)",
+            nativeQuery = true)
+    int deleteChunkCreatedBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
 }
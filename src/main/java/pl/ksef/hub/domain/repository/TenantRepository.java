@@ -1,9 +1,13 @@
 package pl.ksef.hub.domain.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import pl.ksef.hub.domain.entity.Tenant;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,4 +16,16 @@ public interface TenantRepository extends JpaRepository<Tenant, Long> {
     Optional<Tenant> findByNip(String nip);
     
     boolean existsByNip(String nip);
+    
+    @Query("SELECT t.id FROM Tenant t WHERE t.active = true ORDER BY t.id")
+    List<Long> findActiveIds();
+    
+    /**
+     * Lekkie sprawdzenie wersji klienta (If-None-Match) bez ładowania encji
+     */
+    @Query("SELECT t.updatedAt FROM Tenant t WHERE t.id = :id")
+    Optional<LocalDateTime> findUpdatedAtById(@Param("id") Long id);
+    
+    @Query("SELECT COUNT(t) AS total, MAX(t.updatedAt) AS lastModified FROM Tenant t")
+    CollectionVersion findVersion();
 }
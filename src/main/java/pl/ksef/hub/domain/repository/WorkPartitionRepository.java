@@ -0,0 +1,66 @@
+package pl.ksef.hub.domain.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import pl.ksef.hub.domain.entity.WorkPartition;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface WorkPartitionRepository extends JpaRepository<WorkPartition, Integer> {
+    
+    /**
+     * Partycje z ważną dzierżawą węzła
+     */
+    @Query("SELECT p FROM WorkPartition p WHERE p.ownerNode = :node AND p.leaseUntil > :now " +
+           "ORDER BY p.partitionId")
+    List<WorkPartition> findOwned(@Param("node") String node, @Param("now") LocalDateTime now);
+    
+    /**
+     * Partycje wolne lub z wygasłą dzierżawą
+     */
+    @Query("SELECT p.partitionId FROM WorkPartition p WHERE p.ownerNode IS NULL OR p.leaseUntil <= :now " +
+           "ORDER BY p.partitionId")
+    List<Integer> findClaimable(@Param("now") LocalDateTime now);
+    
+    /**
+     * Przedłuża ważne dzierżawy węzła (wygasłe trzeba przejąć ponownie, z nowym tokenem)
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE WorkPartition p SET p.leaseUntil = :leaseUntil WHERE p.ownerNode = :node AND p.leaseUntil > :now")
+    int renew(@Param("node") String node, @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+    
+    /**
+     * Przejęcie partycji (compare-and-set) - zwiększa fencing token
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE WorkPartition p SET p.ownerNode = :node, p.fencingToken = p.fencingToken + 1, " +
+           "p.leaseUntil = :leaseUntil WHERE p.partitionId = :partitionId " +
+           "AND (p.ownerNode IS NULL OR p.leaseUntil <= :now)")
+    int claim(@Param("partitionId") Integer partitionId, @Param("node") String node,
+              @Param("now") LocalDateTime now, @Param("leaseUntil") LocalDateTime leaseUntil);
+    
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE WorkPartition p SET p.ownerNode = NULL, p.leaseUntil = :now " +
+           "WHERE p.partitionId = :partitionId AND p.ownerNode = :node")
+    int release(@Param("partitionId") Integer partitionId, @Param("node") String node,
+                @Param("now") LocalDateTime now);
+    
+    /**
+     * Zakłada wiersz partycji (konflikt klucza, gdy inny węzeł zrobił to równolegle)
+     */
+    @Modifying
+    @Query(value = "INSERT INTO work_partitions (partition_id, fencing_token, lease_until) " +
+                   "VALUES (:partitionId, 0, :now)", nativeQuery = true)
+    int insertIfAbsent(@Param("partitionId") Integer partitionId, @Param("now") LocalDateTime now);
+    
+    @Query("SELECT COUNT(p) > 0 FROM WorkPartition p WHERE p.partitionId = :partitionId " +
+           "AND p.ownerNode = :node AND p.fencingToken = :token AND p.leaseUntil > :now")
+    boolean isOwner(@Param("partitionId") Integer partitionId, @Param("node") String node,
+                    @Param("token") Long token, @Param("now") LocalDateTime now);
+}
@@ -4,19 +4,28 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import pl.ksef.hub.integration.ksef.client.KsefPayloadEncryption.SessionKey;
 import pl.ksef.hub.integration.ksef.dto.*;
+import pl.ksef.hub.service.PipelineMetrics;
 import pl.ksef.hub.service.SystemNotificationService;
 import reactor.core.publisher.Mono;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
 import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * KSeF API Client - handles communication with Polish National e-Invoice System
@@ -29,6 +38,8 @@ public class KsefApiClient {
 
     private final WebClient ksefWebClient;
     private final SystemNotificationService notificationService;
+    private final PipelineMetrics pipelineMetrics;
+    private final KsefPayloadEncryption payloadEncryption;
 
     @Value("${ksef.api.timeout:30000}")
     private int timeout;
@@ -42,11 +53,25 @@ public class KsefApiClient {
     // Track connection state to avoid duplicate notifications
     private volatile Boolean lastConnectionState = null;
 
+    // Równoległe identyczne wywołania idempotentne (sesja, UPO, status) dzielą jedno żądanie
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    // Klucz publiczny KSeF do szyfrowania kluczy sesji - pobierany raz
+    private volatile PublicKey ksefPublicKey;
+
+    // Klucze symetryczne otwartych sesji (token sesji -> klucz); nie opuszczają procesu
+    private final Map<String, KeyedSession> sessionKeys = new ConcurrentHashMap<>();
+
     /**
      * Otwiera sesję interaktywną w systemie KSeF
      * Endpoint: POST /api/online/Session/InitToken (KSeF 2.0)
      */
     public KsefSessionResponse initSession(String nip, String sessionToken) {
+        return singleFlight.execute("initSession", Arrays.asList(nip, sessionToken),
+                () -> doInitSession(nip, sessionToken));
+    }
+
+    private KsefSessionResponse doInitSession(String nip, String sessionToken) {
         log.info("Initializing KSeF session for NIP: {}", nip);
 
         KsefSessionRequest request = KsefSessionRequest.builder()
@@ -56,8 +81,17 @@ public class KsefApiClient {
                         .build())
                 .build();
 
+        SessionKey sessionKey = null;
+        if (payloadEncryption.isEnabled()) {
+            sessionKey = payloadEncryption.newSessionKey(getKsefPublicKey());
+            request.setEncryption(KsefSessionRequest.Encryption.builder()
+                    .encryptedSymmetricKey(sessionKey.encryptedKey())
+                    .algorithm(payloadEncryption.getAlgorithm())
+                    .build());
+        }
+
         try {
-            return ksefWebClient.post()
+            KsefSessionResponse response = pipelineMetrics.timeHttp("api.initSession", () -> ksefWebClient.post()
                     .uri("/api/online/Session/InitToken")
                     .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                     .header("SessionToken", sessionToken)
@@ -65,7 +99,16 @@ public class KsefApiClient {
                     .retrieve()
                     .bodyToMono(KsefSessionResponse.class)
                     .timeout(Duration.ofMillis(timeout))
-                    .block();
+                    .block());
+            if (sessionKey != null && response != null && response.getToken() != null) {
+                long now = System.currentTimeMillis();
+                // Sesje wygasłe bez Terminate
+                sessionKeys.values().removeIf(keyed -> keyed.expiresAtMs() < now);
+                long ttlSeconds = response.getSessionToken().getExpiresIn() != null
+                        ? response.getSessionToken().getExpiresIn() : Duration.ofDays(1).toSeconds();
+                sessionKeys.put(response.getToken(), new KeyedSession(sessionKey, now + ttlSeconds * 1000));
+            }
+            return response;
         } catch (WebClientResponseException e) {
             log.error("Failed to initialize KSeF session. Status: {}, Response: {}",
                     e.getStatusCode(), e.getResponseBodyAsString());
@@ -73,6 +116,22 @@ public class KsefApiClient {
         }
     }
 
+    /**
+     * Czy sesje otwarte przez ten proces mogą być używane przez inne węzły. Przy szyfrowaniu treści
+     * klucz AES sesji nie opuszcza procesu, więc sesji nie da się współdzielić.
+     */
+    public boolean isSessionSharable() {
+        return !payloadEncryption.isEnabled();
+    }
+
+    /**
+     * Czy proces może wysyłać faktury w sesji - przy włączonym szyfrowaniu tylko wtedy, gdy trzyma
+     * klucz symetryczny sesji (sesje otwarte przez inne węzły lub przed restartem go nie mają)
+     */
+    public boolean canSendInSession(String sessionToken) {
+        return !payloadEncryption.isEnabled() || sessionKeys.containsKey(sessionToken);
+    }
+
     /**
      * Wysyła fakturę do systemu KSeF
      * Endpoint: PUT /api/online/Invoice/Send (KSeF 2.0)
@@ -80,30 +139,17 @@ public class KsefApiClient {
     public KsefInvoiceResponse sendInvoice(String sessionToken, String invoiceXml) {
         log.info("Sending invoice to KSeF. XML size: {} bytes", invoiceXml.length());
 
+        KeyedSession keyed = sessionKeys.get(sessionToken);
+        if (payloadEncryption.isEnabled() && keyed == null) {
+            // Bez klucza sesji faktura poszłaby jawnym tekstem
+            throw new IllegalStateException("No payload encryption key held for KSeF session - invoice not sent");
+        }
+
         try {
-            // Oblicz hash SHA-256 z XML
-            String sha256Hash = calculateSHA256(invoiceXml);
-            
-            // Zakoduj XML do Base64
-            String base64Xml = Base64.getEncoder().encodeToString(
-                    invoiceXml.getBytes(StandardCharsets.UTF_8));
-
-            KsefInvoiceRequest request = KsefInvoiceRequest.builder()
-                    .invoiceHash(KsefInvoiceRequest.InvoiceHash.builder()
-                            .hashSHA(KsefInvoiceRequest.InvoiceHash.HashSHA.builder()
-                                    .algorithm("SHA-256")
-                                    .encoding("Base64")
-                                    .value(sha256Hash)
-                                    .build())
-                            .fileSize((long) invoiceXml.getBytes(StandardCharsets.UTF_8).length)
-                            .build())
-                    .invoicePayload(KsefInvoiceRequest.InvoicePayload.builder()
-                            .type("plain")
-                            .invoiceBody(base64Xml)
-                            .build())
-                    .build();
+            KsefInvoiceRequest request = buildInvoiceRequest(invoiceXml, payloadEncryption,
+                    keyed != null ? keyed.key() : null);
 
-            return ksefWebClient.put()
+            return pipelineMetrics.timeHttp("api.sendInvoice", () -> ksefWebClient.put()
                     .uri("/api/online/Invoice/Send")
                     .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                     .header("SessionToken", sessionToken)
@@ -111,7 +157,7 @@ public class KsefApiClient {
                     .retrieve()
                     .bodyToMono(KsefInvoiceResponse.class)
                     .timeout(Duration.ofMillis(timeout))
-                    .block();
+                    .block());
 
         } catch (WebClientResponseException e) {
             log.error("Failed to send invoice to KSeF. Status: {}, Response: {}",
@@ -128,16 +174,21 @@ public class KsefApiClient {
      * Endpoint: GET /api/online/Invoice/Upo/{referenceNumber} (KSeF 2.0)
      */
     public KsefUpoResponse getUpo(String sessionToken, String referenceNumber) {
+        return singleFlight.execute("getUpo", Arrays.asList(sessionToken, referenceNumber),
+                () -> doGetUpo(sessionToken, referenceNumber));
+    }
+
+    private KsefUpoResponse doGetUpo(String sessionToken, String referenceNumber) {
         log.info("Fetching UPO for reference number: {}", referenceNumber);
 
         try {
-            return ksefWebClient.get()
+            return pipelineMetrics.timeHttp("api.getUpo", () -> ksefWebClient.get()
                     .uri("/api/online/Invoice/Upo/{referenceNumber}", referenceNumber)
                     .header("SessionToken", sessionToken)
                     .retrieve()
                     .bodyToMono(KsefUpoResponse.class)
                     .timeout(Duration.ofMillis(timeout))
-                    .block();
+                    .block());
 
         } catch (WebClientResponseException e) {
             log.error("Failed to fetch UPO. Status: {}, Response: {}",
@@ -154,13 +205,13 @@ public class KsefApiClient {
         log.info("Terminating KSeF session");
 
         try {
-            ksefWebClient.get()
+            pipelineMetrics.timeHttp("api.terminateSession", () -> ksefWebClient.get()
                     .uri("/api/online/Session/Terminate")
                     .header("SessionToken", sessionToken)
                     .retrieve()
                     .bodyToMono(Void.class)
                     .timeout(Duration.ofMillis(timeout))
-                    .block();
+                    .block());
 
             log.info("KSeF session terminated successfully");
 
@@ -168,6 +219,8 @@ public class KsefApiClient {
             log.error("Failed to terminate session. Status: {}, Response: {}",
                     e.getStatusCode(), e.getResponseBodyAsString());
             throw new RuntimeException("Failed to terminate session: " + e.getMessage(), e);
+        } finally {
+            sessionKeys.remove(sessionToken);
         }
     }
 
@@ -176,16 +229,68 @@ public class KsefApiClient {
      * Endpoint: GET /api/online/Session/Status/{referenceNumber} (KSeF 2.0)
      */
     public KsefSessionResponse getSessionStatus(String sessionToken, String referenceNumber) {
+        return singleFlight.execute("getSessionStatus", Arrays.asList(sessionToken, referenceNumber),
+                () -> doGetSessionStatus(sessionToken, referenceNumber));
+    }
+
+    /**
+     * Klucz publiczny KSeF do szyfrowania klucza symetrycznego sesji
+     * Endpoint: GET /api/security/public-key-certificates (KSeF 2.0) - pobierany raz i zapamiętywany
+     */
+    public PublicKey getKsefPublicKey() {
+        PublicKey publicKey = ksefPublicKey;
+        if (publicKey == null) {
+            publicKey = singleFlight.execute("getPublicKey", List.of(), this::fetchKsefPublicKey);
+            ksefPublicKey = publicKey;
+        }
+        return publicKey;
+    }
+
+    private PublicKey fetchKsefPublicKey() {
+        log.info("Fetching KSeF public key certificates");
+
+        try {
+            List<KsefPublicKeyCertificate> certificates = pipelineMetrics.timeHttp("api.getPublicKey",
+                    () -> ksefWebClient.get()
+                            .uri("/api/security/public-key-certificates")
+                            .retrieve()
+                            .bodyToMono(new ParameterizedTypeReference<List<KsefPublicKeyCertificate>>() {})
+                            .timeout(Duration.ofMillis(timeout))
+                            .block());
+            if (certificates == null || certificates.isEmpty()) {
+                throw new RuntimeException("KSeF returned no public key certificates");
+            }
+            KsefPublicKeyCertificate certificate = certificates.stream()
+                    .filter(c -> c.getUsage() != null
+                            && c.getUsage().contains(KsefPublicKeyCertificate.SYMMETRIC_KEY_ENCRYPTION))
+                    .findFirst()
+                    .orElse(certificates.get(0));
+            return KsefPayloadEncryption.parsePublicKey(certificate.getCertificate());
+        } catch (WebClientResponseException e) {
+            log.error("Failed to fetch KSeF public key. Status: {}, Response: {}",
+                    e.getStatusCode(), e.getResponseBodyAsString());
+            throw new RuntimeException("Failed to fetch KSeF public key: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Statystyki deduplikacji wywołań (wykonane / dołączone) per operacja
+     */
+    public Map<String, SingleFlight.FlightStats> getSingleFlightStats() {
+        return singleFlight.getStats();
+    }
+
+    private KsefSessionResponse doGetSessionStatus(String sessionToken, String referenceNumber) {
         log.info("Checking session status for reference: {}", referenceNumber);
 
         try {
-            return ksefWebClient.get()
+            return pipelineMetrics.timeHttp("api.getSessionStatus", () -> ksefWebClient.get()
                     .uri("/api/online/Session/Status/{referenceNumber}", referenceNumber)
                     .header("SessionToken", sessionToken)
                     .retrieve()
                     .bodyToMono(KsefSessionResponse.class)
                     .timeout(Duration.ofMillis(timeout))
-                    .block();
+                    .block());
 
         } catch (WebClientResponseException e) {
             log.error("Failed to get session status. Status: {}, Response: {}",
@@ -194,6 +299,67 @@ public class KsefApiClient {
         }
     }
 
+    /**
+     * Wyszukuje metadane faktur zakupowych (kontekst sesji jako nabywca) przyjętych w KSeF w podanym przedziale
+     * Endpoint: POST /api/online/Query/Invoice/Sync?PageSize=&PageOffset=
+     */
+    public KsefInvoiceQueryResponse queryIncomingInvoices(String sessionToken, OffsetDateTime from, OffsetDateTime to,
+                                                          int pageSize, int pageOffset) {
+        log.debug("Querying incoming invoices {} - {}, page offset {}", from, to, pageOffset);
+
+        KsefInvoiceQueryRequest request = KsefInvoiceQueryRequest.builder()
+                .queryCriteria(KsefInvoiceQueryRequest.QueryCriteria.builder()
+                        .subjectType("subject2")
+                        .type("incremental")
+                        .acquisitionTimestampThresholdFrom(from)
+                        .acquisitionTimestampThresholdTo(to)
+                        .build())
+                .build();
+
+        try {
+            return pipelineMetrics.timeHttp("api.queryInvoices", () -> ksefWebClient.post()
+                    .uri(uriBuilder -> uriBuilder.path("/api/online/Query/Invoice/Sync")
+                            .queryParam("PageSize", pageSize)
+                            .queryParam("PageOffset", pageOffset)
+                            .build())
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .header("SessionToken", sessionToken)
+                    .bodyValue(request)
+                    .retrieve()
+                    .bodyToMono(KsefInvoiceQueryResponse.class)
+                    .timeout(Duration.ofMillis(timeout))
+                    .block());
+
+        } catch (WebClientResponseException e) {
+            log.error("Failed to query invoices. Status: {}, Response: {}",
+                    e.getStatusCode(), e.getResponseBodyAsString());
+            throw new RuntimeException("Failed to query invoices: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Pobiera XML faktury po numerze KSeF
+     * Endpoint: GET /api/online/Invoice/Get/{ksefReferenceNumber}
+     */
+    public String getInvoice(String sessionToken, String ksefNumber) {
+        log.debug("Downloading invoice {}", ksefNumber);
+
+        try {
+            return pipelineMetrics.timeHttp("api.getInvoice", () -> ksefWebClient.get()
+                    .uri("/api/online/Invoice/Get/{ksefReferenceNumber}", ksefNumber)
+                    .header("SessionToken", sessionToken)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .timeout(Duration.ofMillis(timeout))
+                    .block());
+
+        } catch (WebClientResponseException e) {
+            log.error("Failed to download invoice {}. Status: {}, Response: {}",
+                    ksefNumber, e.getStatusCode(), e.getResponseBodyAsString());
+            throw new RuntimeException("Failed to download invoice: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * Sprawdza dostępność API KSeF
      * Endpoint: GET /common/Status (publicznie dostępny, bez autoryzacji)
@@ -202,12 +368,12 @@ public class KsefApiClient {
         log.debug("Checking KSeF API status");
 
         try {
-            String response = ksefWebClient.get()
+            String response = pipelineMetrics.timeHttp("api.checkStatus", () -> ksefWebClient.get()
                     .uri("/common/Status")
                     .retrieve()
                     .bodyToMono(String.class)
                     .timeout(Duration.ofMillis(5000)) // Krótszy timeout dla health check
-                    .block();
+                    .block());
 
             log.debug("KSeF API is available. Response: {}", response);
             
@@ -253,12 +419,62 @@ public class KsefApiClient {
         }
     }
 
+    /**
+     * Buduje żądanie wysyłki faktury: hash SHA-256 (Base64), rozmiar i treść w Base64.
+     * XML kodowany do UTF-8 jest raz - te same bajty służą do hasha, rozmiaru i Base64.
+     */
+    public static KsefInvoiceRequest buildInvoiceRequest(String invoiceXml) throws NoSuchAlgorithmException {
+        return buildInvoiceRequest(invoiceXml, null, null);
+    }
+
+    /**
+     * Jak wyżej; gdy sesja ma klucz symetryczny, treść jest szyfrowana (AES-GCM), a obok hasha
+     * faktury przekazywany jest hash i rozmiar treści zaszyfrowanej
+     */
+    public static KsefInvoiceRequest buildInvoiceRequest(String invoiceXml, KsefPayloadEncryption encryption,
+                                                         SessionKey sessionKey) throws NoSuchAlgorithmException {
+        byte[] xmlBytes = invoiceXml.getBytes(StandardCharsets.UTF_8);
+
+        KsefInvoiceRequest.InvoicePayload payload;
+        if (sessionKey != null) {
+            byte[] encrypted = encryption.encrypt(sessionKey, xmlBytes);
+            payload = KsefInvoiceRequest.InvoicePayload.builder()
+                    .type(KsefPayloadEncryption.TYPE)
+                    .encryptedInvoiceHash(invoiceHash(encrypted))
+                    .encryptedInvoiceBody(Base64.getEncoder().encodeToString(encrypted))
+                    .build();
+        } else {
+            payload = KsefInvoiceRequest.InvoicePayload.builder()
+                    .type("plain")
+                    .invoiceBody(Base64.getEncoder().encodeToString(xmlBytes))
+                    .build();
+        }
+
+        return KsefInvoiceRequest.builder()
+                .invoiceHash(invoiceHash(xmlBytes))
+                .invoicePayload(payload)
+                .build();
+    }
+
+    private static KsefInvoiceRequest.InvoiceHash invoiceHash(byte[] content) throws NoSuchAlgorithmException {
+        return KsefInvoiceRequest.InvoiceHash.builder()
+                .hashSHA(KsefInvoiceRequest.InvoiceHash.HashSHA.builder()
+                        .algorithm("SHA-256")
+                        .encoding("Base64")
+                        .value(calculateSHA256(content))
+                        .build())
+                .fileSize((long) content.length)
+                .build();
+    }
+
     /**
      * Oblicza hash SHA-256 i koduje do Base64
      */
-    private String calculateSHA256(String input) throws NoSuchAlgorithmException {
+    private static String calculateSHA256(byte[] input) throws NoSuchAlgorithmException {
         MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-        return Base64.getEncoder().encodeToString(hash);
+        return Base64.getEncoder().encodeToString(digest.digest(input));
+    }
+
+    private record KeyedSession(SessionKey key, long expiresAtMs) {
     }
 }
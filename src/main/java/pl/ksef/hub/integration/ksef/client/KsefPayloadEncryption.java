@@ -0,0 +1,219 @@
+package pl.ksef.hub.integration.ksef.client;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Szyfrowanie treści faktur kluczem symetrycznym sesji KSeF (AES-256-GCM)
+ *
+ * Klucz AES generowany jest raz na sesję i przekazywany do KSeF zaszyfrowany kluczem publicznym KSeF
+ * (RSA-OAEP, SHA-256). Każda faktura szyfrowana jest z własnym 96-bitowym IV (losowy prefiks sesji
+ * + licznik), dołączanym na początku szyfrogramu: IV || dane || tag.
+ *
+ * Obiekty Cipher są utrzymywane per wątek i jedynie reinicjalizowane nowym IV. Szyfrowanie wykonuje
+ * dostawca SunJCE, którego AES i GHASH są intrinsicami HotSpot (AES-NI / PCLMULQDQ) - nie podmieniać
+ * dostawcy (np. na Bouncy Castle), bo szyfrowanie wróci do czystej Javy.
+ */
+@Slf4j
+@Component
+public class KsefPayloadEncryption {
+
+    public static final String TYPE = "encrypted";
+
+    private static final String KEY_ALGORITHM = "AES";
+    private static final String WRAP_ALGORITHM = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    private static final OAEPParameterSpec OAEP_SHA256 = new OAEPParameterSpec(
+            "SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT);
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final boolean enabled;
+    private final String algorithm;
+    private final int keySize;
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ThreadLocal<Cipher> ciphers;
+
+    private final AtomicLong sessionKeys = new AtomicLong();
+    private final AtomicLong payloads = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public KsefPayloadEncryption(@Value("${ksef.encryption.enabled:false}") boolean enabled,
+                                 @Value("${ksef.encryption.algorithm:AES/GCM/NoPadding}") String algorithm,
+                                 @Value("${ksef.encryption.key-size:256}") int keySize) {
+        this.enabled = enabled;
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+        this.ciphers = ThreadLocal.withInitial(() -> {
+            try {
+                return Cipher.getInstance(algorithm);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cipher not available: " + algorithm, e);
+            }
+        });
+    }
+
+    @PostConstruct
+    void logIntrinsics() {
+        if (enabled) {
+            log.info("KSeF payload encryption enabled ({}, {}-bit key, AES intrinsics: {})",
+                    algorithm, keySize, aesIntrinsics());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Nowy klucz symetryczny sesji, zaszyfrowany kluczem publicznym KSeF
+     */
+    public SessionKey newSessionKey(PublicKey ksefPublicKey) {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance(KEY_ALGORITHM);
+            generator.init(keySize, secureRandom);
+            SecretKey key = generator.generateKey();
+
+            Cipher wrap = Cipher.getInstance(WRAP_ALGORITHM);
+            wrap.init(Cipher.ENCRYPT_MODE, ksefPublicKey, OAEP_SHA256);
+            String encryptedKey = Base64.getEncoder().encodeToString(wrap.doFinal(key.getEncoded()));
+
+            byte[] ivPrefix = new byte[4];
+            secureRandom.nextBytes(ivPrefix);
+            sessionKeys.incrementAndGet();
+            return new SessionKey(key, encryptedKey, ivPrefix);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to generate KSeF session key", e);
+        }
+    }
+
+    /**
+     * Szyfruje treść faktury w pamięci - jedna alokacja bufora wynikowego (IV || szyfrogram || tag)
+     */
+    public byte[] encrypt(SessionKey sessionKey, byte[] plain) {
+        byte[] iv = sessionKey.nextIv();
+        Cipher cipher = init(sessionKey, iv);
+        try {
+            byte[] out = new byte[IV_LENGTH + cipher.getOutputSize(plain.length)];
+            System.arraycopy(iv, 0, out, 0, IV_LENGTH);
+            // Przy szyfrowaniu GCM getOutputSize jest dokładny: dane + tag
+            cipher.doFinal(plain, 0, plain.length, out, IV_LENGTH);
+            payloads.incrementAndGet();
+            bytes.addAndGet(plain.length);
+            return out;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to encrypt invoice payload", e);
+        }
+    }
+
+    /**
+     * Klucz publiczny KSeF z certyfikatu X.509 (DER, Base64) lub z samego klucza (SubjectPublicKeyInfo)
+     */
+    public static PublicKey parsePublicKey(String base64Der) {
+        byte[] der = Base64.getMimeDecoder().decode(base64Der);
+        try {
+            return CertificateFactory.getInstance("X.509")
+                    .generateCertificate(new ByteArrayInputStream(der))
+                    .getPublicKey();
+        } catch (CertificateException notCertificate) {
+            try {
+                return KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(der));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalArgumentException("Invalid KSeF public key", e);
+            }
+        }
+    }
+
+    public EncryptionStats getStats() {
+        return new EncryptionStats(enabled, algorithm, keySize, aesIntrinsics(), sessionKeys.get(),
+                payloads.get(), bytes.get());
+    }
+
+    private Cipher init(SessionKey sessionKey, byte[] iv) {
+        Cipher cipher = ciphers.get();
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, sessionKey.key(), new GCMParameterSpec(TAG_BITS, iv));
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to initialize payload cipher", e);
+        }
+    }
+
+    private static String aesIntrinsics() {
+        try {
+            return ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+                    .getVMOption("UseAESIntrinsics").getValue();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * Klucz symetryczny sesji KSeF. IV faktury = 4 losowe bajty sesji + 8-bajtowy licznik,
+     * więc nie powtarza się w obrębie klucza (konstrukcja deterministyczna, NIST SP 800-38D 8.2.1).
+     */
+    public static final class SessionKey {
+
+        private final SecretKey key;
+        private final String encryptedKey;
+        private final byte[] ivPrefix;
+        private final AtomicLong counter = new AtomicLong();
+
+        SessionKey(SecretKey key, String encryptedKey, byte[] ivPrefix) {
+            this.key = key;
+            this.encryptedKey = encryptedKey;
+            this.ivPrefix = ivPrefix;
+        }
+
+        SecretKey key() {
+            return key;
+        }
+
+        /**
+         * Klucz AES zaszyfrowany kluczem publicznym KSeF (Base64) - przekazywany przy otwarciu sesji
+         */
+        public String encryptedKey() {
+            return encryptedKey;
+        }
+
+        byte[] nextIv() {
+            long value = counter.incrementAndGet();
+            byte[] iv = new byte[IV_LENGTH];
+            System.arraycopy(ivPrefix, 0, iv, 0, ivPrefix.length);
+            for (int i = IV_LENGTH - 1; i >= ivPrefix.length; i--) {
+                iv[i] = (byte) value;
+                value >>>= 8;
+            }
+            return iv;
+        }
+    }
+
+    public record EncryptionStats(boolean enabled, String algorithm, int keySize, String aesIntrinsics,
+                                  long sessionKeys, long encryptedPayloads, long encryptedBytes) {
+    }
+}
@@ -0,0 +1,88 @@
+package pl.ksef.hub.integration.ksef.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Deduplikacja równoległych, identycznych wywołań ("single-flight").
+ *
+ * Pierwsze wywołanie dla danego klucza (operacja + argumenty) wykonuje żądanie,
+ * kolejne - które trafią w czasie jego trwania - czekają na ten sam wynik
+ * zamiast wysyłać własne. Po zakończeniu klucz jest zwalniany, więc wyniki
+ * nie są cache'owane dłużej niż trwa samo wywołanie.
+ *
+ * Stosować wyłącznie dla operacji idempotentnych.
+ */
+@Slf4j
+public class SingleFlight {
+
+    private final Map<FlightKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Wykonuje wywołanie lub dołącza do trwającego wywołania o tym samym kluczu
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String operation, List<?> args, Supplier<T> call) {
+        FlightKey key = new FlightKey(operation, Arrays.asList(args.toArray()));
+        Counters operationCounters = counters.computeIfAbsent(operation, op -> new Counters());
+
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            operationCounters.coalesced.incrementAndGet();
+            log.debug("Joined in-flight {} call", operation);
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+            }
+        }
+
+        operationCounters.executed.incrementAndGet();
+        try {
+            T result = call.get();
+            mine.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Także Error (np. OutOfMemoryError) - inaczej dołączeni czekaliby na wynik bez końca
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Liczniki per operacja: wykonane wywołania i wywołania obsłużone przez dołączenie
+     */
+    public Map<String, FlightStats> getStats() {
+        Map<String, FlightStats> stats = new TreeMap<>();
+        counters.forEach((operation, c) ->
+                stats.put(operation, new FlightStats(c.executed.get(), c.coalesced.get())));
+        return stats;
+    }
+
+    private record FlightKey(String operation, List<?> args) {
+    }
+
+    private static class Counters {
+        private final AtomicLong executed = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+    }
+
+    public record FlightStats(long executed, long coalesced) {
+    }
+}
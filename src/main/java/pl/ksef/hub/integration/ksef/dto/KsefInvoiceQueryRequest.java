@@ -0,0 +1,41 @@
+package pl.ksef.hub.integration.ksef.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+
+/**
+ * DTO for KSeF invoice metadata query (Query/Invoice/Sync)
+ * subjectType "subject2" - invoices where the session context is the buyer
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KsefInvoiceQueryRequest {
+    
+    @JsonProperty("queryCriteria")
+    private QueryCriteria queryCriteria;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class QueryCriteria {
+        @JsonProperty("subjectType")
+        private String subjectType; // "subject1" - seller, "subject2" - buyer
+        
+        @JsonProperty("type")
+        private String type; // "incremental" - by acquisition timestamp
+        
+        @JsonProperty("acquisitionTimestampThresholdFrom")
+        private OffsetDateTime acquisitionTimestampThresholdFrom;
+        
+        @JsonProperty("acquisitionTimestampThresholdTo")
+        private OffsetDateTime acquisitionTimestampThresholdTo;
+    }
+}
@@ -0,0 +1,82 @@
+package pl.ksef.hub.integration.ksef.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * DTO for KSeF invoice metadata query response (one page of invoice headers)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KsefInvoiceQueryResponse {
+    
+    @JsonProperty("invoiceHeaderList")
+    private List<InvoiceHeader> invoiceHeaderList;
+    
+    @JsonProperty("numberOfElements")
+    private Long numberOfElements; // Total number of invoices matching the criteria
+    
+    @JsonProperty("pageSize")
+    private Integer pageSize;
+    
+    @JsonProperty("pageOffset")
+    private Integer pageOffset;
+    
+    @JsonProperty("timestamp")
+    private OffsetDateTime timestamp;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class InvoiceHeader {
+        @JsonProperty("ksefReferenceNumber")
+        private String ksefReferenceNumber; // KSeF number
+        
+        @JsonProperty("invoiceReferenceNumber")
+        private String invoiceReferenceNumber; // Invoice number given by the seller
+        
+        @JsonProperty("acquisitionTimestamp")
+        private OffsetDateTime acquisitionTimestamp;
+        
+        @JsonProperty("invoicingDate")
+        private LocalDate invoicingDate;
+        
+        @JsonProperty("subjectBy")
+        private Subject subjectBy; // Seller
+        
+        @JsonProperty("net")
+        private BigDecimal net;
+        
+        @JsonProperty("vat")
+        private BigDecimal vat;
+        
+        @JsonProperty("gross")
+        private BigDecimal gross;
+        
+        @JsonProperty("currency")
+        private String currency;
+    }
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Subject {
+        @JsonProperty("identifier")
+        private String identifier; // NIP
+        
+        @JsonProperty("fullName")
+        private String fullName;
+    }
+}
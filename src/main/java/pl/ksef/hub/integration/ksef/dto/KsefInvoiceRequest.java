@@ -1,5 +1,6 @@
 package pl.ksef.hub.integration.ksef.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -53,11 +54,18 @@ public class KsefInvoiceRequest {
     @Builder
     @NoArgsConstructor
     @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class InvoicePayload {
         @JsonProperty("type")
         private String type; // "plain" or "encrypted"
         
         @JsonProperty("invoiceBody")
         private String invoiceBody; // Base64 encoded XML FA(3)
+
+        @JsonProperty("encryptedInvoiceHash")
+        private InvoiceHash encryptedInvoiceHash; // SHA-256 i rozmiar zaszyfrowanej treści
+
+        @JsonProperty("encryptedInvoiceBody")
+        private String encryptedInvoiceBody; // Base64: IV || szyfrogram AES-GCM || tag
     }
 }
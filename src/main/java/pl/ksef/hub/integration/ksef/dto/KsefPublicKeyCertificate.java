@@ -0,0 +1,34 @@
+package pl.ksef.hub.integration.ksef.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * DTO for KSeF 2.0 public key certificate (GET /api/security/public-key-certificates)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KsefPublicKeyCertificate {
+
+    public static final String SYMMETRIC_KEY_ENCRYPTION = "SymmetricKeyEncryption";
+
+    @JsonProperty("certificate")
+    private String certificate; // Certyfikat X.509 (DER, Base64)
+
+    @JsonProperty("validFrom")
+    private OffsetDateTime validFrom;
+
+    @JsonProperty("validTo")
+    private OffsetDateTime validTo;
+
+    @JsonProperty("usage")
+    private List<String> usage; // "SymmetricKeyEncryption", "KsefTokenEncryption"
+}
@@ -1,5 +1,6 @@
 package pl.ksef.hub.integration.ksef.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -18,6 +19,10 @@ public class KsefSessionRequest {
     
     @JsonProperty("contextIdentifier")
     private ContextIdentifier contextIdentifier;
+
+    @JsonProperty("encryption")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Encryption encryption; // Brak - sesja bez szyfrowania
     
     @Data
     @Builder
@@ -30,4 +35,16 @@ public class KsefSessionRequest {
         @JsonProperty("identifier")
         private String identifier; // NIP podatnika
     }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Encryption {
+        @JsonProperty("encryptedSymmetricKey")
+        private String encryptedSymmetricKey; // Klucz AES sesji zaszyfrowany kluczem publicznym KSeF (Base64)
+
+        @JsonProperty("algorithm")
+        private String algorithm; // "AES/GCM/NoPadding" - IV na początku treści każdej faktury
+    }
 }
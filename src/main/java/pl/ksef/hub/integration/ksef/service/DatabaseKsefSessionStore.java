@@ -0,0 +1,139 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.ksef.hub.config.DatabaseDialect;
+import pl.ksef.hub.domain.entity.KsefSession.SessionStatus;
+import pl.ksef.hub.domain.repository.KsefSessionRepository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Magazyn sesji KSeF w bazie danych (tabela ksef_sessions) - domyślny, działa bez dodatkowej infrastruktury.
+ *
+ * Wyłączność per klient między węzłami zapewnia blokada doradcza PostgreSQL
+ * (pg_advisory_xact_lock) w osobnej transakcji (REQUIRES_NEW) - zwalniana przy jej commicie,
+ * niezależnie od transakcji wywołującego. Pod blokadą wykonywane jest tylko sprawdzenie magazynu
+ * i zajęcie otwierania (ksef_session_claims); samo wywołanie KSeF odbywa się już bez blokady
+ * i bez połączenia z puli. Na innych bazach (np. H2) blokada jest lokalna dla JVM.
+ *
+ * Otwarcie sesji zapisuje KsefSessionService (poza transakcją wywołującego, więc jej wycofanie
+ * nie usuwa sesji otwartej w KSeF), dlatego register nie wymaga dodatkowego zapisu.
+ * Znacznikiem unieważnienia jest closed_at - ustawiany także wtedy, gdy zamknięcie w KSeF
+ * się nie powiodło, aby inne węzły nie używały już tej sesji.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hub.ksef.session-store.type", havingValue = "database", matchIfMissing = true)
+public class DatabaseKsefSessionStore implements KsefSessionStore {
+
+    // Przestrzeń kluczy blokad doradczych Huba dla sesji KSeF ("KSEF")
+    private static final int ADVISORY_LOCK_CLASS = 0x4B534546;
+
+    private static final String PURGE_CLAIM_SQL =
+            "DELETE FROM ksef_session_claims WHERE tenant_id = ? AND expires_at <= ?";
+    private static final String CLAIMED_SQL =
+            "SELECT COUNT(*) FROM ksef_session_claims WHERE tenant_id = ?";
+    private static final String CLAIM_SQL =
+            "INSERT INTO ksef_session_claims (tenant_id, claim_id, expires_at) VALUES (?, ?, ?)";
+    private static final String RELEASE_CLAIM_SQL =
+            "DELETE FROM ksef_session_claims WHERE tenant_id = ? AND claim_id = ?";
+
+    private final KsefSessionRepository ksefSessionRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate lockTransaction;
+    private final DatabaseDialect databaseDialect;
+
+    private final Map<Long, Object> localLocks = new ConcurrentHashMap<>();
+
+    private volatile boolean advisoryLocks;
+
+    public DatabaseKsefSessionStore(KsefSessionRepository ksefSessionRepository,
+                                    JdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    DatabaseDialect databaseDialect) {
+        this.ksefSessionRepository = ksefSessionRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.databaseDialect = databaseDialect;
+        // Blokada i zajęcie nie mogą dołączyć do transakcji wywołującego (np. wysyłki faktury)
+        this.lockTransaction = new TransactionTemplate(transactionManager);
+        this.lockTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    void init() {
+        advisoryLocks = databaseDialect.isPostgreSql();
+        log.info("KSeF session store: database ({} locking)", advisoryLocks ? "advisory" : "local");
+    }
+
+    @Override
+    public List<StoredSession> findValid(Long tenantId) {
+        return ksefSessionRepository.findValidSessions(tenantId, SessionStatus.OPENED, LocalDateTime.now())
+                .stream()
+                .filter(session -> session.getAccessToken() != null)
+                .map(session -> new StoredSession(session.getId(), session.getAccessToken(),
+                        session.getTokenExpiresAt()))
+                .toList();
+    }
+
+    @Override
+    public <T> T withTenantLock(Long tenantId, Supplier<T> action) {
+        if (advisoryLocks) {
+            return lockTransaction.execute(status -> {
+                jdbcTemplate.queryForList("SELECT pg_advisory_xact_lock(?, ?)",
+                        ADVISORY_LOCK_CLASS, (int) (tenantId ^ (tenantId >>> 32)));
+                return action.get();
+            });
+        }
+        synchronized (localLocks.computeIfAbsent(tenantId, id -> new Object())) {
+            return lockTransaction.execute(status -> action.get());
+        }
+    }
+
+    @Override
+    public boolean claimOpening(Long tenantId, String claimId, Duration ttl) {
+        // Wywoływane pod blokadą klienta - sprawdzenie i zapis nie konkurują z innym węzłem
+        LocalDateTime now = LocalDateTime.now();
+        jdbcTemplate.update(PURGE_CLAIM_SQL, tenantId, Timestamp.valueOf(now));
+        Integer claimed = jdbcTemplate.queryForObject(CLAIMED_SQL, Integer.class, tenantId);
+        if (claimed != null && claimed > 0) {
+            return false;
+        }
+        jdbcTemplate.update(CLAIM_SQL, tenantId, claimId, Timestamp.valueOf(now.plus(ttl)));
+        return true;
+    }
+
+    @Override
+    public void releaseOpening(Long tenantId, String claimId) {
+        lockTransaction.executeWithoutResult(status -> jdbcTemplate.update(RELEASE_CLAIM_SQL, tenantId, claimId));
+    }
+
+    @Override
+    public void register(Long tenantId, StoredSession session) {
+        // Zapisane przez KsefSessionService.openSession
+    }
+
+    @Override
+    @Transactional
+    public void invalidate(Long sessionId) {
+        ksefSessionRepository.markClosed(sessionId, LocalDateTime.now());
+    }
+
+    @Override
+    public List<Long> findInvalidatedSince(LocalDateTime since) {
+        return ksefSessionRepository.findIdsClosedSince(since);
+    }
+}
@@ -0,0 +1,462 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.ksef.hub.config.DatabaseDialect;
+import pl.ksef.hub.domain.entity.Invoice.InvoiceDirection;
+import pl.ksef.hub.domain.entity.Invoice.InvoiceStatus;
+import pl.ksef.hub.domain.entity.Invoice.InvoiceType;
+import pl.ksef.hub.domain.entity.InvoiceSyncState;
+import pl.ksef.hub.domain.repository.InvoiceRepository;
+import pl.ksef.hub.domain.repository.InvoiceSyncStateRepository;
+import pl.ksef.hub.domain.repository.TenantRepository;
+import pl.ksef.hub.integration.ksef.client.KsefApiClient;
+import pl.ksef.hub.integration.ksef.dto.KsefInvoiceQueryResponse;
+import pl.ksef.hub.integration.ksef.dto.KsefInvoiceQueryResponse.InvoiceHeader;
+import pl.ksef.hub.service.WorkPartitionService;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Przyrostowa synchronizacja faktur zakupowych (klient jako nabywca) z KSeF.
+ *
+ * Dla każdego klienta zapamiętywany jest high-water mark - znacznik czasu przyjęcia do KSeF,
+ * do którego faktury są już w bazie. Przebieg:
+ * - dzieli przedział [high-water mark - overlap, teraz] na okna (window-minutes), odpytywane równolegle;
+ *   okno z liczbą wyników powyżej max-results-per-range jest dzielone na połowy,
+ * - dla każdej strony metadanych pomija numery KSeF już zapisane i pobiera brakujące dokumenty
+ *   równolegle - zapytania i pobrania idą pasem BULK KsefWorkScheduler, więc backfill jednego klienta
+ *   nie wstrzymuje wysyłek interaktywnych ani synchronizacji pozostałych klientów,
+ * - pola nagłówka wyciąga strumieniowo InvoiceHeaderParser, zapis to wsadowy insert
+ *   idempotentny po (tenant_id, ksef_number),
+ * - high-water mark przesuwa się do końca ciągłego prefiksu okien zakończonych sukcesem.
+ *
+ * Pierwsza synchronizacja (backfill-days wstecz) wykonywana jest porcjami po max-windows-per-run okien,
+ * więc rok zakupów dociągany jest w kolejnych przebiegach bez blokowania harmonogramu.
+ * Przebiegi działają w osobnej puli wątków; klient synchronizowany jest przez węzeł,
+ * który dzierżawi jego partycję pracy (WorkPartitionService), najwyżej jeden przebieg naraz.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IncomingInvoiceSyncService {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO invoices (tenant_id, invoice_number, ksef_number, type, status, direction, " +
+            "invoice_date, sale_date, seller_nip, seller_name, buyer_nip, buyer_name, net_amount, vat_amount, " +
+            "gross_amount, currency, xml_content, accepted_by_ksef_at, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Na PostgreSQL równoległy zapis tej samej faktury (np. po przejęciu partycji) jest pomijany przez bazę
+    private static final String UPSERT_SQL = INSERT_SQL + " ON CONFLICT (tenant_id, ksef_number) DO NOTHING";
+
+    private final KsefApiClient ksefApiClient;
+    private final KsefSessionManager ksefSessionManager;
+    private final InvoiceHeaderParser invoiceHeaderParser;
+    private final InvoiceRepository invoiceRepository;
+    private final InvoiceSyncStateRepository syncStateRepository;
+    private final TenantRepository tenantRepository;
+    private final WorkPartitionService workPartitionService;
+    private final KsefWorkScheduler ksefWorkScheduler;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DatabaseDialect databaseDialect;
+
+    @Value("${hub.incoming-sync.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hub.incoming-sync.backfill-days:365}")
+    private int backfillDays;
+
+    @Value("${hub.incoming-sync.window-minutes:1440}")
+    private long windowMinutes;
+
+    @Value("${hub.incoming-sync.max-windows-per-run:31}")
+    private int maxWindowsPerRun;
+
+    @Value("${hub.incoming-sync.overlap-ms:300000}")
+    private long overlapMs;
+
+    @Value("${hub.incoming-sync.page-size:100}")
+    private int pageSize;
+
+    @Value("${hub.incoming-sync.max-results-per-range:10000}")
+    private long maxResultsPerRange;
+
+    @Value("${hub.incoming-sync.tenant-concurrency:2}")
+    private int tenantConcurrency;
+
+    @Value("${hub.incoming-sync.query-concurrency:4}")
+    private int queryConcurrency;
+
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong failedRuns = new AtomicLong();
+    private final AtomicLong queried = new AtomicLong();
+    private final AtomicLong downloaded = new AtomicLong();
+    private final AtomicLong inserted = new AtomicLong();
+    private final AtomicLong skippedExisting = new AtomicLong();
+
+    private ExecutorService tenantExecutor;
+    private ExecutorService queryExecutor;
+    private boolean postgreSql;
+
+    @PostConstruct
+    void init() {
+        tenantExecutor = Executors.newFixedThreadPool(tenantConcurrency, daemonThreads("incoming-sync-"));
+        queryExecutor = Executors.newFixedThreadPool(queryConcurrency, daemonThreads("incoming-query-"));
+        postgreSql = databaseDialect.isPostgreSql();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        tenantExecutor.shutdownNow();
+        queryExecutor.shutdownNow();
+    }
+
+    /**
+     * Uruchamia przebiegi dla klientów z partycji węzła, które nie są w trakcie synchronizacji
+     */
+    @Scheduled(fixedDelayString = "${hub.incoming-sync.interval-ms:180000}",
+               initialDelayString = "${hub.incoming-sync.initial-delay-ms:60000}")
+    public void scheduleSync() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            for (Long tenantId : tenantRepository.findActiveIds()) {
+                if (workPartitionService.ownsTenant(tenantId)) {
+                    requestSync(tenantId);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Incoming invoice sync scheduling failed", e);
+        }
+    }
+
+    /**
+     * Zleca przebieg synchronizacji klienta w tle
+     *
+     * @return false, jeśli przebieg dla klienta już trwa
+     */
+    public boolean requestSync(Long tenantId) {
+        if (!running.add(tenantId)) {
+            return false;
+        }
+        tenantExecutor.execute(() -> {
+            try {
+                syncTenant(tenantId);
+            } finally {
+                running.remove(tenantId);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Jeden przebieg synchronizacji klienta
+     *
+     * @return liczba zapisanych nowych faktur
+     */
+    public int syncTenant(Long tenantId) {
+        Optional<KsefSessionManager.SessionLease> lease = ksefSessionManager.leaseIfAvailable(tenantId);
+        if (lease.isEmpty()) {
+            log.debug("No KSeF session available for tenant {} - incoming sync skipped", tenantId);
+            return 0;
+        }
+
+        runs.incrementAndGet();
+        LocalDateTime now = LocalDateTime.now();
+        InvoiceSyncState state = syncStateRepository.findById(tenantId)
+                .orElseGet(() -> InvoiceSyncState.builder()
+                        .tenantId(tenantId)
+                        .highWaterMark(now.minusDays(backfillDays))
+                        .build());
+
+        List<TimeRange> windows = split(state.getHighWaterMark().minus(Duration.ofMillis(overlapMs)), now);
+        String sessionToken = lease.get().getToken();
+        int synced = 0;
+        String error = null;
+        LocalDateTime highWaterMark = state.getHighWaterMark();
+
+        try {
+            List<CompletableFuture<Integer>> futures = windows.stream()
+                    .map(window -> CompletableFuture.supplyAsync(
+                            () -> syncRange(tenantId, sessionToken, window), queryExecutor))
+                    .toList();
+
+            // High-water mark tylko do pierwszego nieudanego okna - reszta zostanie powtórzona
+            for (int i = 0; i < windows.size(); i++) {
+                try {
+                    synced += futures.get(i).join();
+                    if (error == null) {
+                        highWaterMark = windows.get(i).to();
+                    }
+                } catch (Exception e) {
+                    if (error == null) {
+                        error = rootMessage(e);
+                        log.warn("Incoming sync of tenant {} failed for {}: {}", tenantId, windows.get(i), error);
+                    }
+                }
+            }
+        } finally {
+            lease.get().close();
+        }
+
+        if (error != null) {
+            failedRuns.incrementAndGet();
+        }
+        state.setHighWaterMark(highWaterMark.isAfter(state.getHighWaterMark()) ? highWaterMark : state.getHighWaterMark());
+        state.setLastRunAt(now);
+        state.setLastRunSynced(synced);
+        state.setTotalSynced(state.getTotalSynced() + synced);
+        state.setLastError(error != null ? truncate(error) : null);
+        syncStateRepository.save(state);
+
+        if (synced > 0 || error != null) {
+            log.info("Incoming sync of tenant {}: {} new invoices, high-water mark {}{}",
+                    tenantId, synced, state.getHighWaterMark(), error != null ? " (incomplete: " + error + ")" : "");
+        }
+        return synced;
+    }
+
+    /**
+     * Statystyki synchronizacji
+     */
+    public SyncStats getStats() {
+        return new SyncStats(enabled, Set.copyOf(running), runs.get(), failedRuns.get(), queried.get(),
+                downloaded.get(), inserted.get(), skippedExisting.get());
+    }
+
+    // === Okna i stronicowanie ===
+
+    /**
+     * Dzieli przedział na okna po window-minutes, najwyżej max-windows-per-run (reszta w kolejnym przebiegu)
+     */
+    List<TimeRange> split(LocalDateTime from, LocalDateTime to) {
+        List<TimeRange> windows = new ArrayList<>();
+        Duration window = Duration.ofMinutes(windowMinutes);
+        LocalDateTime start = from;
+        while (start.isBefore(to) && windows.size() < maxWindowsPerRun) {
+            LocalDateTime end = start.plus(window).isBefore(to) ? start.plus(window) : to;
+            windows.add(new TimeRange(start, end));
+            start = end;
+        }
+        return windows;
+    }
+
+    private int syncRange(Long tenantId, String sessionToken, TimeRange range) {
+        KsefInvoiceQueryResponse first = query(tenantId, sessionToken, range, 0);
+        long total = first.getNumberOfElements() != null ? first.getNumberOfElements() : 0;
+
+        // Zbyt duże okno (limit wyników zapytania KSeF) - podział na połowy
+        if (total > maxResultsPerRange && range.duration().toSeconds() > 1) {
+            LocalDateTime middle = range.from().plus(range.duration().dividedBy(2));
+            return syncRange(tenantId, sessionToken, new TimeRange(range.from(), middle))
+                    + syncRange(tenantId, sessionToken, new TimeRange(middle, range.to()));
+        }
+
+        int synced = syncPage(tenantId, sessionToken, first.getInvoiceHeaderList());
+        for (int offset = pageSize; offset < total; offset += pageSize) {
+            synced += syncPage(tenantId, sessionToken, query(tenantId, sessionToken, range, offset).getInvoiceHeaderList());
+        }
+        return synced;
+    }
+
+    private KsefInvoiceQueryResponse query(Long tenantId, String sessionToken, TimeRange range, int offset) {
+        queried.incrementAndGet();
+        KsefInvoiceQueryResponse response = ksefWorkScheduler.call(tenantId, KsefWorkScheduler.Lane.BULK,
+                () -> ksefApiClient.queryIncomingInvoices(sessionToken,
+                        toOffset(range.from()), toOffset(range.to()), pageSize, offset));
+        if (response == null) {
+            throw new IllegalStateException("Empty invoice query response");
+        }
+        return response;
+    }
+
+    /**
+     * Pomija faktury już zapisane, pobiera brakujące równolegle i zapisuje je jednym wsadem
+     */
+    private int syncPage(Long tenantId, String sessionToken, List<InvoiceHeader> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return 0;
+        }
+        List<String> ksefNumbers = headers.stream().map(InvoiceHeader::getKsefReferenceNumber).toList();
+        Set<String> existing = Set.copyOf(invoiceRepository.findExistingKsefNumbers(tenantId, ksefNumbers));
+        skippedExisting.addAndGet(existing.size());
+
+        List<CompletableFuture<IncomingInvoice>> downloads = headers.stream()
+                .filter(header -> !existing.contains(header.getKsefReferenceNumber()))
+                .map(header -> ksefWorkScheduler.submit(tenantId, KsefWorkScheduler.Lane.BULK,
+                        () -> download(sessionToken, header)))
+                .toList();
+        if (downloads.isEmpty()) {
+            return 0;
+        }
+
+        // Błąd pobrania przerywa okno - high-water mark nie przesunie się poza brakującą fakturę
+        List<IncomingInvoice> invoices = downloads.stream().map(CompletableFuture::join).toList();
+        return insert(tenantId, invoices);
+    }
+
+    private IncomingInvoice download(String sessionToken, InvoiceHeader header) {
+        String xml = ksefApiClient.getInvoice(sessionToken, header.getKsefReferenceNumber());
+        downloaded.incrementAndGet();
+        return new IncomingInvoice(header, invoiceHeaderParser.parse(xml), xml);
+    }
+
+    private int insert(Long tenantId, List<IncomingInvoice> invoices) {
+        try {
+            return batchInsert(tenantId, invoices, postgreSql ? UPSERT_SQL : INSERT_SQL);
+        } catch (DataIntegrityViolationException e) {
+            // Bez ON CONFLICT: faktura zapisana równolegle - zapis pojedynczo z pominięciem duplikatów
+            int count = 0;
+            for (IncomingInvoice invoice : invoices) {
+                try {
+                    count += batchInsert(tenantId, List.of(invoice), INSERT_SQL);
+                } catch (DataIntegrityViolationException duplicate) {
+                    log.debug("Incoming invoice {} already stored", invoice.metadata().getKsefReferenceNumber());
+                }
+            }
+            return count;
+        }
+    }
+
+    private int batchInsert(Long tenantId, List<IncomingInvoice> invoices, String sql) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int[][] counts = transactionTemplate.execute(status ->
+                jdbcTemplate.batchUpdate(sql, invoices, invoices.size(), (ps, invoice) -> {
+                    InvoiceHeader metadata = invoice.metadata();
+                    InvoiceHeaderParser.InvoiceHeader parsed = invoice.parsed();
+                    ps.setLong(1, tenantId);
+                    ps.setString(2, truncate(firstNonNull(parsed.invoiceNumber(), metadata.getInvoiceReferenceNumber(),
+                            metadata.getKsefReferenceNumber()), 100));
+                    ps.setString(3, metadata.getKsefReferenceNumber());
+                    ps.setString(4, InvoiceType.FA_VAT.name());
+                    ps.setString(5, InvoiceStatus.ACCEPTED.name());
+                    ps.setString(6, InvoiceDirection.INCOMING.name());
+                    LocalDateTime acquiredAt = toLocal(metadata.getAcquisitionTimestamp());
+                    java.time.LocalDate issueDate = firstNonNull(parsed.issueDate(), metadata.getInvoicingDate(),
+                            acquiredAt.toLocalDate());
+                    ps.setDate(7, Date.valueOf(issueDate));
+                    ps.setDate(8, Date.valueOf(firstNonNull(parsed.saleDate(), issueDate)));
+                    ps.setString(9, truncate(firstNonNull(parsed.sellerNip(), metadata.getSubjectBy() != null
+                            ? metadata.getSubjectBy().getIdentifier() : null, ""), 10));
+                    ps.setString(10, truncate(firstNonNull(parsed.sellerName(), metadata.getSubjectBy() != null
+                            ? metadata.getSubjectBy().getFullName() : null, ""), 200));
+                    ps.setString(11, truncate(firstNonNull(parsed.buyerNip(), ""), 10));
+                    ps.setString(12, truncate(firstNonNull(parsed.buyerName(), ""), 200));
+                    ps.setBigDecimal(13, firstNonNull(nonZero(parsed.netAmount()), metadata.getNet(), BigDecimal.ZERO));
+                    ps.setBigDecimal(14, firstNonNull(nonZero(parsed.vatAmount()), metadata.getVat(), BigDecimal.ZERO));
+                    ps.setBigDecimal(15, firstNonNull(parsed.grossAmount(), metadata.getGross(), BigDecimal.ZERO));
+                    ps.setString(16, firstNonNull(parsed.currency(), metadata.getCurrency(), "PLN"));
+                    ps.setString(17, invoice.xml());
+                    ps.setTimestamp(18, Timestamp.valueOf(acquiredAt));
+                    ps.setTimestamp(19, now);
+                    ps.setTimestamp(20, now);
+                }));
+
+        int count = 0;
+        if (counts != null) {
+            for (int[] batch : counts) {
+                for (int updated : batch) {
+                    // SUCCESS_NO_INFO (-2) - sterownik nie podaje liczby wierszy
+                    if (updated > 0 || updated == java.sql.Statement.SUCCESS_NO_INFO) {
+                        count++;
+                    }
+                }
+            }
+        }
+        inserted.addAndGet(count);
+        return count;
+    }
+
+    // === Pomocnicze ===
+
+    @SafeVarargs
+    private static <T> T firstNonNull(T... values) {
+        for (T value : values) {
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static BigDecimal nonZero(BigDecimal value) {
+        return value != null && value.signum() != 0 ? value : null;
+    }
+
+    private static String truncate(String value, int length) {
+        return value.length() > length ? value.substring(0, length) : value;
+    }
+
+    private static String truncate(String error) {
+        return truncate(error, 1000);
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null) {
+            root = root.getCause();
+        }
+        return root.getMessage() != null ? root.getMessage() : root.getClass().getSimpleName();
+    }
+
+    private static OffsetDateTime toOffset(LocalDateTime value) {
+        return value.atZone(ZoneId.systemDefault()).toOffsetDateTime();
+    }
+
+    private static LocalDateTime toLocal(OffsetDateTime value) {
+        return value != null
+                ? value.atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime()
+                : LocalDateTime.now();
+    }
+
+    private static java.util.concurrent.ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    record TimeRange(LocalDateTime from, LocalDateTime to) {
+        Duration duration() {
+            return Duration.between(from, to);
+        }
+    }
+
+    private record IncomingInvoice(InvoiceHeader metadata, InvoiceHeaderParser.InvoiceHeader parsed, String xml) {
+    }
+
+    public record SyncStats(boolean enabled, Set<Long> running, long runs, long failedRuns, long queried,
+                            long downloaded, long inserted, long skippedExisting) {
+    }
+}
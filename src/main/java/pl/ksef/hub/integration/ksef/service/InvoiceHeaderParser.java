@@ -0,0 +1,154 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Pattern;
+
+/**
+ * Strumieniowa ekstrakcja pól nagłówka faktury FA(3).
+ *
+ * Parser StAX czyta dokument tylko do elementu P_15 (kwota należności ogółem) -
+ * Podmiot1/Podmiot2 i pola kwotowe Fa występują w schemacie przed pozycjami FaWiersz,
+ * więc nawet faktury z tysiącami wierszy nie są parsowane w całości ani ładowane do DOM.
+ */
+@Slf4j
+@Service
+public class InvoiceHeaderParser {
+
+    // Sumy netto i VAT w poszczególnych stawkach (P_13_1..P_13_11 z P_13_6_x, P_14_1..P_14_5 - bez przeliczeń na PLN "W")
+    private static final Pattern NET_ELEMENT = Pattern.compile("P_13_\\d+(_\\d+)?");
+    private static final Pattern VAT_ELEMENT = Pattern.compile("P_14_\\d+");
+
+    private final XMLInputFactory xmlInputFactory;
+
+    public InvoiceHeaderParser() {
+        xmlInputFactory = XMLInputFactory.newFactory();
+        // Ochrona przed XXE
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Wyciąga pola nagłówka z XML faktury
+     */
+    public InvoiceHeader parse(String xml) {
+        InvoiceHeader.Builder header = new InvoiceHeader.Builder();
+        String subject = null;
+
+        try {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new StringReader(xml));
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (reader.getLocalName().equals(subject)) {
+                            subject = null;
+                        }
+                        continue;
+                    }
+                    if (event != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+
+                    String name = reader.getLocalName();
+                    if (name.equals("Podmiot1") || name.equals("Podmiot2")) {
+                        subject = name;
+                    } else if (subject != null) {
+                        boolean seller = subject.equals("Podmiot1");
+                        if (name.equals("NIP")) {
+                            String nip = reader.getElementText().trim();
+                            if (seller) {
+                                header.sellerNip = nip;
+                            } else {
+                                header.buyerNip = nip;
+                            }
+                        } else if (name.equals("Nazwa")) {
+                            String fullName = reader.getElementText().trim();
+                            if (seller) {
+                                header.sellerName = fullName;
+                            } else {
+                                header.buyerName = fullName;
+                            }
+                        }
+                    } else if (name.equals("KodWaluty")) {
+                        header.currency = reader.getElementText().trim();
+                    } else if (name.equals("P_1")) {
+                        header.issueDate = parseDate(reader.getElementText());
+                    } else if (name.equals("P_2")) {
+                        header.invoiceNumber = reader.getElementText().trim();
+                    } else if (name.equals("P_6")) {
+                        header.saleDate = parseDate(reader.getElementText());
+                    } else if (NET_ELEMENT.matcher(name).matches()) {
+                        header.net = header.net.add(parseAmount(reader.getElementText()));
+                    } else if (VAT_ELEMENT.matcher(name).matches()) {
+                        header.vat = header.vat.add(parseAmount(reader.getElementText()));
+                    } else if (name.equals("P_15")) {
+                        header.gross = parseAmount(reader.getElementText());
+                        // Dalej są adnotacje i pozycje - nagłówek kompletny
+                        break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Invalid invoice XML: " + e.getMessage(), e);
+        }
+
+        return header.build();
+    }
+
+    private static LocalDate parseDate(String value) {
+        try {
+            return LocalDate.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            log.warn("Unrecognized invoice date: {}", value);
+            return null;
+        }
+    }
+
+    private static BigDecimal parseAmount(String value) {
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Unrecognized invoice amount: {}", value);
+            return BigDecimal.ZERO;
+        }
+    }
+
+    /**
+     * Pola nagłówka faktury; brakujące pola (np. P_6 przy dacie sprzedaży równej dacie wystawienia) są null
+     */
+    public record InvoiceHeader(String invoiceNumber, LocalDate issueDate, LocalDate saleDate,
+                                String sellerNip, String sellerName, String buyerNip, String buyerName,
+                                BigDecimal netAmount, BigDecimal vatAmount, BigDecimal grossAmount, String currency) {
+
+        private static class Builder {
+            private String invoiceNumber;
+            private LocalDate issueDate;
+            private LocalDate saleDate;
+            private String sellerNip;
+            private String sellerName;
+            private String buyerNip;
+            private String buyerName;
+            private BigDecimal net = BigDecimal.ZERO;
+            private BigDecimal vat = BigDecimal.ZERO;
+            private BigDecimal gross;
+            private String currency;
+
+            private InvoiceHeader build() {
+                return new InvoiceHeader(invoiceNumber, issueDate, saleDate, sellerNip, sellerName,
+                        buyerNip, buyerName, net, vat, gross, currency);
+            }
+        }
+    }
+}
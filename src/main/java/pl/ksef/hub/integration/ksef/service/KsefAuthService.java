@@ -3,15 +3,12 @@ package pl.ksef.hub.integration.ksef.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import pl.ksef.hub.integration.ksef.client.KsefApiClient;
-import pl.ksef.hub.integration.ksef.dto.KsefSessionResponse;
+import pl.ksef.hub.domain.entity.Tenant;
+import pl.ksef.hub.domain.repository.TenantRepository;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.time.LocalDateTime;
 import java.util.Base64;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Serwis do zarządzania tokenami autoryzacyjnymi KSeF
@@ -22,10 +19,8 @@ import java.util.concurrent.ConcurrentHashMap;
 @RequiredArgsConstructor
 public class KsefAuthService {
 
-    private final KsefApiClient ksefApiClient;
-    
-    // Cache tokenów sesji (w produkcji użyj Redis lub innego cache)
-    private final Map<String, SessionCache> sessionTokens = new ConcurrentHashMap<>();
+    private final KsefSessionManager ksefSessionManager;
+    private final TenantRepository tenantRepository;
 
     /**
      * Generuje token autoryzacyjny (SHA-256 hash) z tokena początkowego
@@ -52,33 +47,24 @@ public class KsefAuthService {
     }
 
     /**
-     * Inicjalizuje sesję i zwraca token sesyjny
-     * Cache'uje token na 10 minut (typowy czas życia sesji KSeF)
+     * Inicjalizuje sesję - wypożycza ją z puli KsefSessionManager (istniejącą lub nowo otwartą). Z puli
+     * wydawana jest tylko przy tokenie początkowym zgodnym z poświadczeniem klienta, inny token weryfikuje KSeF.
+     * Lease należy zamknąć po zakończeniu operacji - do tego czasu sesja nie zostanie wycofana.
      */
-    public String initializeSession(String nip, String initialToken) {
-        String cacheKey = nip + ":" + initialToken;
-        
-        // Sprawdź cache
-        SessionCache cached = sessionTokens.get(cacheKey);
-        if (cached != null && !cached.isExpired()) {
-            log.debug("Using cached session token for NIP: {}", nip);
-            return cached.getSessionToken();
-        }
+    public KsefSessionManager.SessionLease initializeSession(String nip, String initialToken) {
+        KsefSessionManager.SessionLease lease = ksefSessionManager.lease(findTenantId(nip), initialToken);
+        log.debug("KSeF session for NIP {} obtained from pool", nip);
+        return lease;
+    }
 
-        // Generuj token autoryzacyjny
-        String authToken = generateAuthorizationToken(initialToken);
-        
-        // Inicjalizuj sesję w KSeF
-        log.info("Initializing new KSeF session for NIP: {}", nip);
-        KsefSessionResponse sessionResponse = ksefApiClient.initSession(nip, authToken);
-        
-        String sessionToken = sessionResponse.getSessionToken().getToken();
-        
-        // Zapisz w cache (10 minut)
-        sessionTokens.put(cacheKey, new SessionCache(sessionToken, LocalDateTime.now().plusMinutes(10)));
-        
-        log.info("KSeF session initialized successfully. Session token obtained.");
-        return sessionToken;
+    /**
+     * Sesja dla klienta API, który używa tokena sesji w kolejnych żądaniach - lease trzymany do
+     * terminateSession lub wygaśnięcia sesji
+     *
+     * @return token sesyjny
+     */
+    public String openClientSession(String nip, String initialToken) {
+        return ksefSessionManager.holdForClient(initializeSession(nip, initialToken));
     }
 
     /**
@@ -86,13 +72,7 @@ public class KsefAuthService {
      */
     public void terminateSession(String sessionToken) {
         try {
-            ksefApiClient.terminateSession(sessionToken);
-            
-            // Usuń z cache
-            sessionTokens.entrySet().removeIf(entry -> 
-                entry.getValue().getSessionToken().equals(sessionToken)
-            );
-            
+            ksefSessionManager.terminate(sessionToken);
             log.info("KSeF session terminated successfully");
         } catch (Exception e) {
             log.error("Failed to terminate KSeF session", e);
@@ -101,51 +81,24 @@ public class KsefAuthService {
     }
 
     /**
-     * Sprawdza czy token sesji jest ważny (w cache)
+     * Sprawdza czy klient ma w puli ważną sesję dostępną dla podanego tokena początkowego
      */
     public boolean isSessionValid(String nip, String initialToken) {
-        String cacheKey = nip + ":" + initialToken;
-        SessionCache cached = sessionTokens.get(cacheKey);
-        return cached != null && !cached.isExpired();
+        return tenantRepository.findByNip(nip)
+                .map(tenant -> ksefSessionManager.hasUsableSession(tenant.getId(), initialToken))
+                .orElse(false);
     }
 
     /**
-     * Pobiera token sesji z cache lub tworzy nowy
+     * Pobiera token sesji z puli lub tworzy nową sesję
      */
     public String getOrCreateSessionToken(String nip, String initialToken) {
-        String cacheKey = nip + ":" + initialToken;
-        SessionCache cached = sessionTokens.get(cacheKey);
-        
-        if (cached != null && !cached.isExpired()) {
-            return cached.getSessionToken();
-        }
-        
-        return initializeSession(nip, initialToken);
+        return openClientSession(nip, initialToken);
     }
 
-    /**
-     * Czyści wygasłe sesje z cache (wywoływane okresowo)
-     */
-    public void cleanupExpiredSessions() {
-        int before = sessionTokens.size();
-        sessionTokens.entrySet().removeIf(entry -> entry.getValue().isExpired());
-        int after = sessionTokens.size();
-        
-        if (before > after) {
-            log.info("Cleaned up {} expired sessions from cache", before - after);
-        }
-    }
-
-    // === Inner class dla cache ===
-    
-    @lombok.Data
-    @lombok.AllArgsConstructor
-    private static class SessionCache {
-        private String sessionToken;
-        private LocalDateTime expiresAt;
-        
-        public boolean isExpired() {
-            return LocalDateTime.now().isAfter(expiresAt);
-        }
+    private Long findTenantId(String nip) {
+        return tenantRepository.findByNip(nip)
+                .map(Tenant::getId)
+                .orElseThrow(() -> new RuntimeException("Tenant not found for NIP: " + nip));
     }
 }
@@ -4,12 +4,15 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import pl.ksef.hub.domain.entity.AuditLog.ActionType;
 import pl.ksef.hub.domain.entity.Invoice;
 import pl.ksef.hub.domain.entity.Invoice.InvoiceStatus;
 import pl.ksef.hub.domain.entity.KsefSession;
 import pl.ksef.hub.domain.repository.InvoiceRepository;
 import pl.ksef.hub.integration.ksef.client.KsefApiClient;
 import pl.ksef.hub.integration.ksef.dto.KsefInvoiceResponse;
+import pl.ksef.hub.service.AuditRecorder;
+import pl.ksef.hub.service.PipelineMetrics;
 
 import java.time.LocalDateTime;
 
@@ -22,11 +25,15 @@ import java.time.LocalDateTime;
 public class KsefInvoiceService {
 
     private final KsefApiClient ksefApiClient;
-    private final KsefSessionService ksefSessionService;
+    private final KsefSessionManager ksefSessionManager;
     private final InvoiceRepository invoiceRepository;
     private final KsefXmlGeneratorService xmlGeneratorService;
     private final XmlValidationService xmlValidationService;
     private final XmlSignatureService xmlSignatureService;
+    private final UpoStorageService upoStorageService;
+    private final PipelineMetrics pipelineMetrics;
+    private final KsefWorkScheduler ksefWorkScheduler;
+    private final AuditRecorder auditRecorder;
 
     /**
      * Wysyła fakturę do systemu KSeF z walidacją XML
@@ -42,13 +49,17 @@ public class KsefInvoiceService {
             throw new RuntimeException("Invoice already sent to KSeF: " + invoiceId);
         }
 
-        try {
-            // Pobierz lub utwórz sesję KSeF
-            String sessionToken = ksefSessionService.getOrCreateSessionToken(
-                    invoice.getTenant().getId(), initialToken);
+        InvoiceStatus previousStatus = invoice.getStatus();
+
+        // Sesja KSeF wypożyczona z puli na czas wysyłki, metryki etapów oznaczone klientem
+        try (PipelineMetrics.TenantScope metricsScope = pipelineMetrics.tenantScope(invoice.getTenant().getId());
+             KsefSessionManager.SessionLease lease = ksefSessionManager.lease(
+                     invoice.getTenant().getId(), initialToken)) {
+            String sessionToken = lease.getToken();
 
             // Wygeneruj XML faktury w formacie FA(3)
-            String invoiceXml = xmlGeneratorService.generateInvoiceXml(invoice);
+            String invoiceXml = pipelineMetrics.time("xml.generate",
+                    () -> xmlGeneratorService.generateInvoiceXml(invoice));
             
             // WALIDACJA XML - sprawdź czy jest well-formed
             if (!xmlValidationService.isWellFormed(invoiceXml)) {
@@ -56,8 +67,8 @@ public class KsefInvoiceService {
             }
             
             // WALIDACJA XSD - sprawdź zgodność ze schematem (z obsługą błędów)
-            XmlValidationService.ValidationResult validationResult = 
-                    xmlValidationService.validateWithDetails(invoiceXml);
+            XmlValidationService.ValidationResult validationResult = pipelineMetrics.time("xml.validate",
+                    () -> xmlValidationService.validateWithDetails(invoiceXml));
             
             if (!validationResult.isValid()) {
                 log.warn("XML validation against XSD failed: {}", validationResult.getErrorMessage());
@@ -71,11 +82,11 @@ public class KsefInvoiceService {
             // PODPISANIE XML certyfikatem kwalifikowanym
             String signedXml;
             try {
-                signedXml = xmlSignatureService.signXml(invoiceXml);
+                signedXml = pipelineMetrics.timeChecked("xml.sign", () -> xmlSignatureService.signXml(invoiceXml));
                 log.info("XML signed successfully with qualified certificate");
                 
                 // Opcjonalnie: weryfikuj podpis od razu po podpisaniu
-                if (xmlSignatureService.verifySignature(signedXml)) {
+                if (pipelineMetrics.time("xml.verifySignature", () -> xmlSignatureService.verifySignature(signedXml))) {
                     log.debug("Signature verification: OK");
                 } else {
                     log.warn("Signature verification failed after signing!");
@@ -88,8 +99,11 @@ public class KsefInvoiceService {
             // Zapisz podpisany XML w bazie
             invoice.setXmlContent(signedXml);
 
-            // Wyślij podpisaną fakturę do KSeF
-            KsefInvoiceResponse response = ksefApiClient.sendInvoice(sessionToken, signedXml);
+            // Wyślij podpisaną fakturę do KSeF - pas interaktywny, przed pracą w tle innych klientów;
+            // koszt w harmonogramie proporcjonalny do rozmiaru dokumentu
+            KsefInvoiceResponse response = ksefWorkScheduler.call(invoice.getTenant().getId(),
+                    KsefWorkScheduler.Lane.INTERACTIVE, KsefWorkScheduler.payloadCost(signedXml),
+                    () -> ksefApiClient.sendInvoice(sessionToken, signedXml));
 
             // Zaktualizuj status faktury
             invoice.setStatus(InvoiceStatus.SENT);
@@ -97,6 +111,9 @@ public class KsefInvoiceService {
             invoice.setSentToKsefAt(LocalDateTime.now());
 
             Invoice savedInvoice = invoiceRepository.save(invoice);
+            pipelineMetrics.recordTransition(previousStatus, InvoiceStatus.SENT);
+            auditRecorder.record(ActionType.SEND_INVOICE, invoice.getTenant().getId(), "Invoice", invoiceId,
+                    "Invoice " + invoice.getInvoiceNumber() + " sent to KSeF: " + response.getElementReferenceNumber());
             log.info("Invoice sent successfully to KSeF. KSeF number: {}", 
                     response.getElementReferenceNumber());
 
@@ -108,6 +125,9 @@ public class KsefInvoiceService {
             invoice.setStatus(InvoiceStatus.ERROR);
             invoice.setErrorMessage(e.getMessage());
             invoiceRepository.save(invoice);
+            pipelineMetrics.recordTransition(previousStatus, InvoiceStatus.ERROR);
+            auditRecorder.record(ActionType.ERROR, invoice.getTenant().getId(), "Invoice", invoiceId,
+                    "Invoice " + invoice.getInvoiceNumber() + " send to KSeF failed", e.getMessage());
             
             throw new RuntimeException("Failed to send invoice to KSeF: " + e.getMessage(), e);
         }
@@ -127,19 +147,27 @@ public class KsefInvoiceService {
             throw new RuntimeException("Invoice not sent to KSeF yet: " + invoiceId);
         }
 
-        try {
-            // Pobierz token sesji
-            String sessionToken = ksefSessionService.getOrCreateSessionToken(
-                    invoice.getTenant().getId(), initialToken);
+        // UPO już pobrane (np. przez UpoHarvester) - bez odpytywania KSeF
+        if (invoice.getUpoCompressed() != null) {
+            return upoStorageService.readBase64(invoice.getUpoCompressed());
+        }
+
+        try (PipelineMetrics.TenantScope metricsScope = pipelineMetrics.tenantScope(invoice.getTenant().getId());
+             KsefSessionManager.SessionLease lease = ksefSessionManager.lease(
+                     invoice.getTenant().getId(), initialToken)) {
+            String sessionToken = lease.getToken();
 
             // Pobierz UPO z KSeF
-            var upoResponse = ksefApiClient.getUpo(sessionToken, invoice.getKsefNumber());
+            var upoResponse = ksefWorkScheduler.call(invoice.getTenant().getId(), KsefWorkScheduler.Lane.INTERACTIVE,
+                    () -> ksefApiClient.getUpo(sessionToken, invoice.getKsefNumber()));
             
-            // Zapisz UPO w bazie
-            invoice.setUpoContent(upoResponse.getUpo());
+            // Zapisz UPO w bazie (skompresowane, z polami do wyszukiwania)
+            upoStorageService.storeInto(invoice, upoResponse.getUpo());
             invoiceRepository.save(invoice);
 
             log.info("UPO fetched successfully for invoice: {}", invoiceId);
+            auditRecorder.record(ActionType.RECEIVE_UPO, invoice.getTenant().getId(), "Invoice", invoiceId,
+                    "UPO received for " + invoice.getKsefNumber());
             return upoResponse.getUpo();
 
         } catch (Exception e) {
@@ -0,0 +1,790 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pl.ksef.hub.domain.entity.KsefSession;
+import pl.ksef.hub.domain.entity.KsefSession.SessionType;
+import pl.ksef.hub.integration.ksef.client.KsefApiClient;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Jedno miejsce zarządzania sesjami KSeF - pula otwartych sesji per klient.
+ *
+ * - wysyłający "wypożyczają" sesję (lease) i oddają ją po zakończeniu pracy,
+ *   jedna sesja obsługuje wiele równoległych wysyłek,
+ * - sesje są odnawiane z wyprzedzeniem przed tokenExpiresAt (w tle),
+ * - dla aktywnych klientów utrzymywana jest minimalna liczba "ciepłych" sesji,
+ * - sesje bezczynne są zamykane.
+ *
+ * Otwarcie i zamknięcie sesji nadal przechodzi przez KsefSessionService (zapis w ksef_sessions).
+ *
+ * Pula jest near-cache współdzielonego KsefSessionStore: sesje otwarte przez inne węzły
+ * są przejmowane zamiast otwierania własnych (otwieranie pod blokadą klienta w magazynie),
+ * a sesje zamknięte na innym węźle usuwane z puli przez pollInvalidations(). Przy szyfrowaniu
+ * treści faktur (ksef.encryption.enabled) klucz sesji nie opuszcza procesu - każdy węzeł otwiera wtedy
+ * własne sesje bez blokady i zajmowania otwierania w magazynie (przejęcie i tak nie byłoby możliwe).
+ *
+ * Sesja z puli wydawana jest tylko wywołującemu, który przedstawi token początkowy zgodny z poświadczeniem
+ * puli (porównanie skrótów SHA-256 w czasie stałym). Poświadczenie ustala pierwsze udane otwarcie sesji
+ * w KSeF - token, którego pula jeszcze nie zna, jest weryfikowany przez KSeF otwarciem nowej sesji
+ * i nie zastępuje poświadczenia już zapamiętanego.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KsefSessionManager {
+
+    // Odstęp sprawdzania magazynu, gdy sesję klienta otwiera inny węzeł
+    private static final long CLAIM_POLL_MS = 200;
+
+    private final KsefSessionService ksefSessionService;
+    private final KsefApiClient ksefApiClient;
+    private final KsefSessionStore sessionStore;
+
+    @Value("${hub.ksef.session-pool.min-warm:1}")
+    private int minWarm;
+
+    @Value("${hub.ksef.session-pool.max-sessions-per-tenant:4}")
+    private int maxSessionsPerTenant;
+
+    @Value("${hub.ksef.session-pool.max-leases-per-session:8}")
+    private int maxLeasesPerSession;
+
+    @Value("${hub.ksef.session-pool.refresh-before-ms:300000}")
+    private long refreshBeforeMs;
+
+    @Value("${hub.ksef.session-pool.idle-timeout-ms:900000}")
+    private long idleTimeoutMs;
+
+    @Value("${hub.ksef.session-store.open-claim-ttl-ms:60000}")
+    private long openClaimTtlMs;
+
+    @Value("${hub.ksef.session-store.near-cache-ttl-ms:30000}")
+    private long nearCacheTtlMs;
+
+    private final Map<Long, TenantPool> pools = new ConcurrentHashMap<>();
+
+    // Sesje wydane klientom API (token sesji w odpowiedzi HTTP) - lease trzymany do terminate() lub wygaśnięcia sesji
+    private final Map<String, SessionLease> clientLeases = new ConcurrentHashMap<>();
+
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong refreshed = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong adopted = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private volatile LocalDateTime lastInvalidationPoll = LocalDateTime.now();
+
+    // Otwieranie dodatkowych sesji w tle (gdy istniejące są mocno obciążone)
+    private ExecutorService opener;
+
+    @PostConstruct
+    void init() {
+        if (openClaimTtlMs <= 0) {
+            throw new IllegalStateException("hub.ksef.session-store.open-claim-ttl-ms must be positive: " + openClaimTtlMs);
+        }
+        opener = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ksef-session-opener");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        opener.shutdownNow();
+    }
+
+    /**
+     * Wypożycza sesję klienta - istniejącą z puli lub nowo otwartą.
+     * Lease należy zamknąć (try-with-resources) po zakończeniu pracy z KSeF.
+     *
+     * @param initialToken token początkowy klienta - musi być zgodny z poświadczeniem puli; pierwszy
+     *                     token przyjęty przez KSeF zostaje zapamiętany do odnawiania sesji w tle
+     */
+    public SessionLease lease(Long tenantId, String initialToken) {
+        if (initialToken == null || initialToken.isBlank()) {
+            throw new IllegalArgumentException("Initial token is required for tenant: " + tenantId);
+        }
+        byte[] presented = credentialDigest(initialToken);
+        TenantPool pool = pools.computeIfAbsent(tenantId, TenantPool::new);
+
+        boolean known;
+        synchronized (pool) {
+            known = pool.credential != null;
+            if (known) {
+                verify(pool, presented);
+            }
+        }
+        if (known) {
+            return acquire(pool, true)
+                    .orElseThrow(() -> new RuntimeException("No KSeF session available for tenant: " + tenantId));
+        }
+
+        // Poświadczenie nieznane temu węzłowi - weryfikuje je KSeF przy otwarciu nowej sesji
+        // (bez przejmowania sesji otwartych przez innych)
+        PooledSession session = open(pool, initialToken, false);
+        synchronized (pool) {
+            if (pool.credential == null) {
+                pool.credential = presented;
+                pool.initialToken = initialToken;
+            }
+            if (MessageDigest.isEqual(pool.credential, presented)) {
+                // Sesja właśnie zarejestrowana w magazynie - near-cache aktualny
+                pool.sessions.add(session);
+                pool.syncedAt = System.currentTimeMillis();
+                return leaseOf(pool, session);
+            }
+        }
+        // W międzyczasie pulę zainicjował inny token - sesja zweryfikowana, ale nie trafia do puli
+        closeQuietly(session);
+        rejected.incrementAndGet();
+        throw new RuntimeException("Initial token does not match the KSeF credential of tenant: " + tenantId);
+    }
+
+    /**
+     * Przekazuje lease klientowi zewnętrznemu, który używa tokena sesji w kolejnych żądaniach - sesja nie jest
+     * zamykana przez utrzymanie puli, dopóki klient jej nie zakończy (terminate) lub nie wygaśnie
+     *
+     * @return token sesji
+     */
+    public String holdForClient(SessionLease lease) {
+        SessionLease held = clientLeases.putIfAbsent(lease.getToken(), lease);
+        if (held != null) {
+            // Sesja już trzymana dla klienta - wystarczy jeden lease
+            lease.close();
+        }
+        return lease.getToken();
+    }
+
+    /**
+     * Wypożycza sesję tylko jeśli da się to zrobić bez tokena początkowego
+     * (sesja w puli, w bazie lub zapamiętany token) - dla zadań w tle
+     */
+    public Optional<SessionLease> leaseIfAvailable(Long tenantId) {
+        TenantPool pool = pools.computeIfAbsent(tenantId, TenantPool::new);
+        return acquire(pool, pool.initialToken != null);
+    }
+
+    /**
+     * Czy klient ma w puli ważną sesję dostępną dla podanego tokena początkowego
+     */
+    public boolean hasUsableSession(Long tenantId, String initialToken) {
+        TenantPool pool = pools.get(tenantId);
+        if (pool == null || initialToken == null) {
+            return false;
+        }
+        byte[] presented = credentialDigest(initialToken);
+        synchronized (pool) {
+            return pool.credential != null && MessageDigest.isEqual(pool.credential, presented)
+                    && pool.findUsable(System.currentTimeMillis(), refreshBeforeMs) != null;
+        }
+    }
+
+    /**
+     * Zamyka sesję (KSeF + baza) i usuwa ją z puli
+     */
+    public void closeSession(Long sessionId) {
+        for (TenantPool pool : pools.values()) {
+            synchronized (pool) {
+                pool.sessions.removeIf(session -> session.sessionId.equals(sessionId));
+            }
+        }
+        try {
+            ksefSessionService.closeSession(sessionId);
+            closed.incrementAndGet();
+        } finally {
+            sessionStore.invalidate(sessionId);
+        }
+    }
+
+    /**
+     * Kończy sesję o podanym tokenie - z puli (KSeF + baza) lub bezpośrednio w KSeF
+     */
+    public void terminate(String sessionToken) {
+        SessionLease held = clientLeases.remove(sessionToken);
+        if (held != null) {
+            held.close();
+        }
+        for (TenantPool pool : pools.values()) {
+            PooledSession match = null;
+            synchronized (pool) {
+                for (PooledSession session : pool.sessions) {
+                    if (session.token.equals(sessionToken)) {
+                        match = session;
+                        break;
+                    }
+                }
+                if (match != null) {
+                    pool.sessions.remove(match);
+                }
+            }
+            if (match != null) {
+                closeQuietly(match);
+                return;
+            }
+        }
+        if (held == null) {
+            // sesja spoza puli; sesję wycofywaną zamyka już zwrot ostatniego lease
+            ksefApiClient.terminateSession(sessionToken);
+        }
+    }
+
+    /**
+     * Utrzymanie puli: odnawianie sesji przed wygaśnięciem, zamykanie bezczynnych,
+     * uzupełnianie do min-warm dla aktywnych klientów
+     */
+    @Scheduled(fixedDelayString = "${hub.ksef.session-pool.maintenance-interval-ms:30000}")
+    public void maintain() {
+        long now = System.currentTimeMillis();
+        clientLeases.values().removeIf(lease -> {
+            if (lease.session.expiresAt > now) {
+                return false;
+            }
+            lease.close();
+            return true;
+        });
+        for (TenantPool pool : pools.values()) {
+            try {
+                maintain(pool, now);
+            } catch (Exception e) {
+                log.error("KSeF session pool maintenance failed for tenant {}: {}", pool.tenantId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Usuwa z puli sesje zamknięte na innych węzłach (bez wywołania KSeF).
+     * Okno zapytania nachodzi na poprzednie, aby nie zgubić zamknięć zapisanych tuż przed odczytem.
+     */
+    @Scheduled(fixedDelayString = "${hub.ksef.session-store.invalidation-poll-ms:2000}")
+    public void pollInvalidations() {
+        LocalDateTime pollStartedAt = LocalDateTime.now();
+        Set<Long> closedIds;
+        try {
+            closedIds = Set.copyOf(sessionStore.findInvalidatedSince(lastInvalidationPoll.minusSeconds(5)));
+        } catch (Exception e) {
+            log.warn("Failed to poll KSeF session invalidations: {}", e.getMessage());
+            return;
+        }
+        lastInvalidationPoll = pollStartedAt;
+        if (closedIds.isEmpty()) {
+            return;
+        }
+
+        for (TenantPool pool : pools.values()) {
+            synchronized (pool) {
+                int before = pool.sessions.size();
+                pool.sessions.removeIf(session -> closedIds.contains(session.sessionId));
+                int evicted = before - pool.sessions.size();
+                if (evicted > 0) {
+                    invalidated.addAndGet(evicted);
+                    log.debug("Evicted {} KSeF sessions closed elsewhere for tenant {}", evicted, pool.tenantId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Statystyki puli sesji
+     */
+    public PoolStats getStats() {
+        int sessions = 0;
+        int leased = 0;
+        for (TenantPool pool : pools.values()) {
+            synchronized (pool) {
+                sessions += pool.sessions.size();
+                for (PooledSession session : pool.sessions) {
+                    leased += session.leases;
+                }
+            }
+        }
+        return new PoolStats(pools.size(), sessions, leased, leases.get(), opened.get(), refreshed.get(), closed.get(),
+                adopted.get(), invalidated.get(), rejected.get());
+    }
+
+    private void verify(TenantPool pool, byte[] presented) {
+        if (!MessageDigest.isEqual(pool.credential, presented)) {
+            rejected.incrementAndGet();
+            log.warn("Rejected KSeF session lease with non-matching initial token for tenant {}", pool.tenantId);
+            throw new RuntimeException("Initial token does not match the KSeF credential of tenant: " + pool.tenantId);
+        }
+    }
+
+    /**
+     * Skrót tokena początkowego (SHA-256) - w pamięci porównywany jest tylko skrót
+     */
+    private static byte[] credentialDigest(String initialToken) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(initialToken.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // === Wypożyczanie ===
+
+    private Optional<SessionLease> acquire(TenantPool pool, boolean mayOpen) {
+        while (true) {
+            CompletableFuture<PooledSession> inFlight;
+            boolean openHere = false;
+
+            // Brak sesji lokalnie lub near-cache nieświeży - odczyt magazynu współdzielonego poza blokadą puli,
+            // aby zapytanie do bazy nie wstrzymywało pozostałych wypożyczających
+            long readAt = System.currentTimeMillis();
+            List<KsefSessionStore.StoredSession> stored = null;
+            synchronized (pool) {
+                if (pool.findUsable(readAt, refreshBeforeMs) == null || readAt - pool.syncedAt > nearCacheTtlMs) {
+                    stored = List.of();
+                }
+            }
+            if (stored != null) {
+                stored = sessionStore.findValid(pool.tenantId);
+            }
+
+            synchronized (pool) {
+                long now = System.currentTimeMillis();
+                if (stored != null) {
+                    mergeFromStore(pool, stored, readAt);
+                }
+                PooledSession best = pool.findUsable(now, refreshBeforeMs);
+                if (best != null) {
+                    if (best.leases >= maxLeasesPerSession && mayOpen && pool.canGrow(maxSessionsPerTenant)) {
+                        // Sesja przeciążona - dołóż kolejną w tle, bieżący wysyłający nie czeka
+                        openInBackground(pool);
+                    }
+                    return Optional.of(leaseOf(pool, best));
+                }
+
+                if (pool.opening == null) {
+                    if (!mayOpen) {
+                        return Optional.empty();
+                    }
+                    pool.opening = new CompletableFuture<>();
+                    openHere = true;
+                }
+                inFlight = pool.opening;
+            }
+
+            if (openHere) {
+                openInto(pool, inFlight);
+            }
+            PooledSession openedSession;
+            try {
+                openedSession = inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+            }
+            synchronized (pool) {
+                if (!openedSession.retiring && pool.sessions.contains(openedSession)) {
+                    return Optional.of(leaseOf(pool, openedSession));
+                }
+            }
+            // Sesja zdążyła zostać wycofana - ponów
+        }
+    }
+
+    private SessionLease leaseOf(TenantPool pool, PooledSession session) {
+        long now = System.currentTimeMillis();
+        session.leases++;
+        session.lastUsedAt = now;
+        pool.lastLeaseAt = now;
+        leases.incrementAndGet();
+        return new SessionLease(this, pool, session);
+    }
+
+    private void release(TenantPool pool, PooledSession session) {
+        boolean closeNow;
+        synchronized (pool) {
+            session.leases--;
+            session.lastUsedAt = System.currentTimeMillis();
+            closeNow = session.retiring && session.leases == 0 && pool.sessions.remove(session);
+        }
+        if (closeNow) {
+            closeQuietly(session);
+        }
+    }
+
+    private void openInBackground(TenantPool pool) {
+        CompletableFuture<PooledSession> future = new CompletableFuture<>();
+        pool.opening = future;
+        opener.execute(() -> openInto(pool, future));
+    }
+
+    /**
+     * Otwiera sesję poza blokadą puli i dokłada ją do puli
+     */
+    private void openInto(TenantPool pool, CompletableFuture<PooledSession> future) {
+        try {
+            PooledSession session = open(pool, pool.initialToken, true);
+            synchronized (pool) {
+                pool.sessions.add(session);
+                pool.opening = null;
+            }
+            future.complete(session);
+        } catch (RuntimeException e) {
+            synchronized (pool) {
+                pool.opening = null;
+            }
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Otwiera sesję dla puli. Pod blokadą klienta w magazynie (krótka, własna transakcja) sprawdzane jest,
+     * czy inny węzeł nie otworzył w międzyczasie sesji, której pula jeszcze nie zna - wtedy zostaje
+     * ona przejęta - a jeśli nie, zajmowane jest otwieranie. Wywołanie KSeF odbywa się już po zwolnieniu
+     * blokady; węzeł, który zastał zajęcie innego, czeka na jego sesję w magazynie.
+     *
+     * @param mayAdopt false - weryfikacja nowego tokena początkowego: zawsze nowa sesja w KSeF
+     */
+    private PooledSession open(TenantPool pool, String initialToken, boolean mayAdopt) {
+        if (initialToken == null) {
+            throw new RuntimeException("No initial token known for tenant: " + pool.tenantId);
+        }
+        if (!mayAdopt || !ksefApiClient.isSessionSharable()) {
+            return openInKsef(pool, initialToken);
+        }
+
+        String claimId = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + openClaimTtlMs;
+        while (true) {
+            OpenDecision decision = sessionStore.withTenantLock(pool.tenantId, () -> {
+                PooledSession adoptable = findAdoptable(pool);
+                if (adoptable != null) {
+                    return new OpenDecision(adoptable, false);
+                }
+                return new OpenDecision(null,
+                        sessionStore.claimOpening(pool.tenantId, claimId, Duration.ofMillis(openClaimTtlMs)));
+            });
+            if (decision.adopted() != null) {
+                adopted.incrementAndGet();
+                log.debug("Adopted KSeF session {} opened by another node for tenant {}",
+                        decision.adopted().sessionId, pool.tenantId);
+                return decision.adopted();
+            }
+            if (decision.claimed()) {
+                break;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new RuntimeException("Timed out waiting for KSeF session opened by another node for tenant: "
+                        + pool.tenantId);
+            }
+            // Sesję otwiera inny węzeł - po zapisaniu zostanie przejęta
+            try {
+                Thread.sleep(CLAIM_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for KSeF session of tenant: " + pool.tenantId, e);
+            }
+        }
+
+        try {
+            return openInKsef(pool, initialToken);
+        } finally {
+            sessionStore.releaseOpening(pool.tenantId, claimId);
+        }
+    }
+
+    /**
+     * Sesja z magazynu nieznana puli i niebliska wygaśnięcia (wywoływane pod blokadą klienta).
+     * Przy szyfrowaniu treści przejmowane są tylko sesje, których klucz trzyma ten proces.
+     */
+    private PooledSession findAdoptable(TenantPool pool) {
+        Set<Long> known;
+        synchronized (pool) {
+            known = pool.sessions.stream().map(s -> s.sessionId).collect(Collectors.toSet());
+        }
+        long adoptAfter = System.currentTimeMillis() + refreshBeforeMs;
+        for (KsefSessionStore.StoredSession stored : sessionStore.findValid(pool.tenantId)) {
+            PooledSession candidate = PooledSession.of(stored);
+            if (!known.contains(candidate.sessionId) && candidate.expiresAt > adoptAfter
+                    && ksefApiClient.canSendInSession(candidate.token)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private PooledSession openInKsef(TenantPool pool, String initialToken) {
+        KsefSession session = ksefSessionService.openSession(pool.tenantId, SessionType.ONLINE, initialToken);
+        sessionStore.register(pool.tenantId, new KsefSessionStore.StoredSession(
+                session.getId(), session.getAccessToken(), session.getTokenExpiresAt()));
+        opened.incrementAndGet();
+        return PooledSession.of(session);
+    }
+
+    /**
+     * Synchronizuje pulę z odczytem magazynu (wykonanym poza blokadą o czasie readAt): dokłada sesje otwarte
+     * przez inne węzły (lub przed restartem) i usuwa te, których magazyn już nie zna. Sesje dołożone do puli
+     * po odczycie nie są usuwane, a odczyt starszy od już scalonego jest pomijany. Sesje bliskie wygaśnięcia
+     * nie są przejmowane. Wywoływane pod blokadą puli.
+     */
+    private void mergeFromStore(TenantPool pool, List<KsefSessionStore.StoredSession> stored, long readAt) {
+        if (readAt < pool.syncedAt) {
+            return;
+        }
+        pool.syncedAt = readAt;
+        long now = System.currentTimeMillis();
+        Set<Long> storedIds = stored.stream().map(KsefSessionStore.StoredSession::sessionId).collect(Collectors.toSet());
+        Set<Long> known = pool.sessions.stream().map(s -> s.sessionId).collect(Collectors.toSet());
+
+        // Wygasłe zostawiamy dla maintain() (oznaczenie w bazie), pozostałe nieznane magazynowi zostały zamknięte
+        pool.sessions.removeIf(session -> !storedIds.contains(session.sessionId) && session.expiresAt > now
+                && session.createdAt < readAt);
+        int added = 0;
+        for (KsefSessionStore.StoredSession session : stored) {
+            PooledSession candidate = PooledSession.of(session);
+            if (!known.contains(candidate.sessionId) && candidate.expiresAt > now + refreshBeforeMs
+                    && ksefApiClient.canSendInSession(candidate.token)) {
+                pool.sessions.add(candidate);
+                added++;
+            }
+        }
+        if (added > 0) {
+            adopted.addAndGet(added);
+            log.info("Adopted {} open KSeF sessions for tenant {}", added, pool.tenantId);
+        }
+    }
+
+    // === Utrzymanie ===
+
+    private void maintain(TenantPool pool, long now) {
+        List<PooledSession> toClose = new ArrayList<>();
+        List<PooledSession> expired = new ArrayList<>();
+        int missing;
+        boolean idleTenant;
+
+        synchronized (pool) {
+            idleTenant = now - pool.lastLeaseAt > idleTimeoutMs;
+            long refreshAt = now + refreshBeforeMs;
+
+            Iterator<PooledSession> it = pool.sessions.iterator();
+            while (it.hasNext()) {
+                PooledSession session = it.next();
+                if (session.expiresAt <= now) {
+                    // Wygasła - KSeF już jej nie przyjmie, zostaje tylko oznaczyć w bazie
+                    it.remove();
+                    expired.add(session);
+                } else if (session.expiresAt <= refreshAt || idleTenant) {
+                    session.retiring = true;
+                    if (session.leases == 0) {
+                        it.remove();
+                        toClose.add(session);
+                    }
+                }
+            }
+
+            // Nadmiarowe bezczynne sesje ponad min-warm
+            long fresh = pool.sessions.stream().filter(s -> !s.retiring).count();
+            Iterator<PooledSession> idle = pool.sessions.stream()
+                    .filter(s -> !s.retiring && s.leases == 0 && now - s.lastUsedAt > idleTimeoutMs)
+                    .sorted(Comparator.comparingLong(s -> s.expiresAt))
+                    .toList()
+                    .iterator();
+            while (fresh > minWarm && idle.hasNext()) {
+                PooledSession session = idle.next();
+                pool.sessions.remove(session);
+                toClose.add(session);
+                fresh--;
+            }
+
+            missing = idleTenant || pool.initialToken == null || pool.opening != null
+                    ? 0 : (int) Math.max(0, Math.min(minWarm, maxSessionsPerTenant) - fresh);
+            if (idleTenant) {
+                // Klient nieaktywny - nie trzymamy jego tokena ani sesji; kolejny token zweryfikuje KSeF
+                pool.initialToken = null;
+                pool.credential = null;
+            }
+        }
+
+        for (PooledSession session : toClose) {
+            closeQuietly(session);
+        }
+        for (PooledSession session : expired) {
+            ksefSessionService.markExpired(session.sessionId);
+        }
+
+        // Odnowienie / dogrzanie puli w tle - otwarcie sesji w KSeF nie blokuje wątku harmonogramu
+        if (missing > 0) {
+            int toOpen = missing;
+            opener.execute(() -> warmUp(pool, toOpen));
+        }
+
+        if (idleTenant) {
+            pools.computeIfPresent(pool.tenantId, (id, p) -> {
+                synchronized (p) {
+                    return p.sessions.isEmpty() && p.opening == null ? null : p;
+                }
+            });
+        }
+    }
+
+    private void warmUp(TenantPool pool, int missing) {
+        for (int i = 0; i < missing; i++) {
+            CompletableFuture<PooledSession> future;
+            synchronized (pool) {
+                if (pool.opening != null || pool.initialToken == null) {
+                    break;
+                }
+                future = new CompletableFuture<>();
+                pool.opening = future;
+            }
+            openInto(pool, future);
+            if (future.isCompletedExceptionally()) {
+                log.warn("Failed to pre-open KSeF session for tenant {}", pool.tenantId);
+                break;
+            }
+            refreshed.incrementAndGet();
+        }
+    }
+
+    private void closeQuietly(PooledSession session) {
+        try {
+            ksefSessionService.closeSession(session.sessionId);
+            closed.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("Failed to close KSeF session {}: {}", session.sessionId, e.getMessage());
+        } finally {
+            sessionStore.invalidate(session.sessionId);
+        }
+    }
+
+    // === Klasy pomocnicze ===
+
+    private static class TenantPool {
+        private final Long tenantId;
+        private final List<PooledSession> sessions = new ArrayList<>();
+        private CompletableFuture<PooledSession> opening;
+        private volatile String initialToken;
+        /** SHA-256 tokena początkowego przyjętego przez KSeF; zmieniany pod blokadą puli */
+        private byte[] credential;
+        private volatile long lastLeaseAt = System.currentTimeMillis();
+        private long syncedAt;
+
+        private TenantPool(Long tenantId) {
+            this.tenantId = tenantId;
+        }
+
+        /**
+         * Najmniej obciążona sesja, która nie jest wycofywana i nie wygaśnie w najbliższym czasie
+         */
+        private PooledSession findUsable(long now, long refreshBeforeMs) {
+            PooledSession best = null;
+            for (PooledSession session : sessions) {
+                if (session.retiring || session.expiresAt <= now + Math.min(refreshBeforeMs, 60_000L)) {
+                    continue;
+                }
+                if (best == null || session.leases < best.leases) {
+                    best = session;
+                }
+            }
+            return best;
+        }
+
+        private boolean canGrow(int maxSessions) {
+            return opening == null && sessions.size() < maxSessions;
+        }
+    }
+
+    private static class PooledSession {
+        private final Long sessionId;
+        private final String token;
+        private final long expiresAt;
+        private final long createdAt = System.currentTimeMillis();
+        private int leases;
+        private long lastUsedAt = createdAt;
+        private boolean retiring;
+
+        private PooledSession(Long sessionId, String token, long expiresAt) {
+            this.sessionId = sessionId;
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+
+        private static PooledSession of(KsefSession session) {
+            return of(session.getId(), session.getAccessToken(), session.getTokenExpiresAt());
+        }
+
+        private static PooledSession of(KsefSessionStore.StoredSession session) {
+            return of(session.sessionId(), session.token(), session.expiresAt());
+        }
+
+        private static PooledSession of(Long sessionId, String token, LocalDateTime expiresAt) {
+            LocalDateTime expires = expiresAt != null ? expiresAt : LocalDateTime.now().plusHours(1);
+            return new PooledSession(sessionId, token,
+                    expires.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+    }
+
+    /**
+     * Wypożyczona sesja KSeF - zwracana do puli przy close()
+     */
+    public static final class SessionLease implements AutoCloseable {
+        private final KsefSessionManager manager;
+        private final TenantPool pool;
+        private final PooledSession session;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private SessionLease(KsefSessionManager manager, TenantPool pool, PooledSession session) {
+            this.manager = manager;
+            this.pool = pool;
+            this.session = session;
+        }
+
+        public String getToken() {
+            return session.token;
+        }
+
+        public Long getSessionId() {
+            return session.sessionId;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                manager.release(pool, session);
+            }
+        }
+    }
+
+    /**
+     * Wynik sprawdzenia pod blokadą: sesja do przejęcia albo zajęcie otwierania
+     */
+    private record OpenDecision(PooledSession adopted, boolean claimed) {
+    }
+
+    public record PoolStats(int tenants, int sessions, int leased, long leases,
+                            long opened, long refreshed, long closed, long adopted, long invalidated,
+                            long rejected) {
+    }
+}
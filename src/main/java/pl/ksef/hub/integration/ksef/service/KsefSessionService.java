@@ -3,7 +3,9 @@ package pl.ksef.hub.integration.ksef.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import pl.ksef.hub.domain.entity.AuditLog.ActionType;
 import pl.ksef.hub.domain.entity.KsefSession;
 import pl.ksef.hub.domain.entity.KsefSession.SessionStatus;
 import pl.ksef.hub.domain.entity.KsefSession.SessionType;
@@ -12,6 +14,8 @@ import pl.ksef.hub.domain.repository.KsefSessionRepository;
 import pl.ksef.hub.domain.repository.TenantRepository;
 import pl.ksef.hub.integration.ksef.client.KsefApiClient;
 import pl.ksef.hub.integration.ksef.dto.KsefSessionResponse;
+import pl.ksef.hub.service.AuditRecorder;
+import pl.ksef.hub.service.PipelineMetrics;
 
 import java.time.LocalDateTime;
 
@@ -26,11 +30,15 @@ public class KsefSessionService {
     private final KsefApiClient ksefApiClient;
     private final KsefSessionRepository ksefSessionRepository;
     private final TenantRepository tenantRepository;
+    private final PipelineMetrics pipelineMetrics;
+    private final AuditRecorder auditRecorder;
 
     /**
-     * Otwiera nową sesję KSeF dla klienta
+     * Otwiera nową sesję KSeF dla klienta.
+     * Poza transakcją wywołującego - wywołanie KSeF nie trzyma połączenia, a zapis sesji zatwierdzany jest
+     * od razu, więc wycofanie transakcji wywołującego nie gubi sesji otwartej w KSeF.
      */
-    @Transactional
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public KsefSession openSession(Long tenantId, SessionType sessionType, String initialToken) {
         log.info("Opening KSeF session for tenant: {}, type: {}", tenantId, sessionType);
 
@@ -38,7 +46,10 @@ public class KsefSessionService {
                 .orElseThrow(() -> new RuntimeException("Tenant not found: " + tenantId));
 
         // Wywołaj API KSeF
-        KsefSessionResponse response = ksefApiClient.initSession(tenant.getNip(), initialToken);
+        KsefSessionResponse response;
+        try (PipelineMetrics.TenantScope metricsScope = pipelineMetrics.tenantScope(tenantId)) {
+            response = ksefApiClient.initSession(tenant.getNip(), initialToken);
+        }
 
         // Zapisz sesję w bazie
         KsefSession session = KsefSession.builder()
@@ -56,6 +67,8 @@ public class KsefSessionService {
 
         KsefSession savedSession = ksefSessionRepository.save(session);
         log.info("KSeF session opened successfully. Reference: {}", savedSession.getReferenceNumber());
+        auditRecorder.record(ActionType.SESSION_OPEN, tenantId, "KsefSession", savedSession.getId(),
+                "KSeF session opened: " + savedSession.getReferenceNumber());
 
         return savedSession;
     }
@@ -70,6 +83,20 @@ public class KsefSessionService {
                 .orElseThrow(() -> new RuntimeException("No active KSeF session found for tenant: " + tenantId));
     }
 
+    /**
+     * Oznacza sesję jako wygasłą (bez wywołania KSeF)
+     */
+    @Transactional
+    public void markExpired(Long sessionId) {
+        ksefSessionRepository.findById(sessionId).ifPresent(session -> {
+            if (session.getStatus() == SessionStatus.OPENED) {
+                session.setStatus(SessionStatus.EXPIRED);
+                session.setClosedAt(LocalDateTime.now());
+                ksefSessionRepository.save(session);
+            }
+        });
+    }
+
     /**
      * Zamyka sesję KSeF
      */
@@ -90,12 +117,16 @@ public class KsefSessionService {
             ksefSessionRepository.save(session);
 
             log.info("KSeF session closed successfully: {}", sessionId);
+            auditRecorder.record(ActionType.SESSION_CLOSE, session.getTenant().getId(), "KsefSession", sessionId,
+                    "KSeF session closed: " + session.getReferenceNumber());
 
         } catch (Exception e) {
             log.error("Failed to close KSeF session: {}", sessionId, e);
             session.setStatus(SessionStatus.ERROR);
             session.setErrorMessage(e.getMessage());
             ksefSessionRepository.save(session);
+            auditRecorder.record(ActionType.ERROR, session.getTenant().getId(), "KsefSession", sessionId,
+                    "KSeF session close failed", e.getMessage());
             throw e;
         }
     }
@@ -118,25 +149,4 @@ public class KsefSessionService {
 
         return true;
     }
-
-    /**
-     * Pobiera token sesji (lub tworzy nową sesję jeśli nie istnieje/wygasła)
-     */
-    @Transactional
-    public String getOrCreateSessionToken(Long tenantId, String initialToken) {
-        try {
-            KsefSession activeSession = getActiveSession(tenantId);
-            
-            if (isSessionActive(activeSession)) {
-                log.debug("Using existing active session: {}", activeSession.getReferenceNumber());
-                return activeSession.getAccessToken();
-            }
-        } catch (RuntimeException e) {
-            log.debug("No active session found, creating new one");
-        }
-
-        // Utwórz nową sesję
-        KsefSession newSession = openSession(tenantId, SessionType.ONLINE, initialToken);
-        return newSession.getAccessToken();
-    }
 }
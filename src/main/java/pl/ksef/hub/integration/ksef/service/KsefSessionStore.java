@@ -0,0 +1,61 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Współdzielony (między węzłami Huba) magazyn sesji KSeF.
+ *
+ * KsefSessionManager trzyma lokalną pulę jako near-cache, a magazyn jest źródłem
+ * prawdy: stąd przejmowane są sesje otwarte przez inne węzły, tu serializowane jest
+ * otwieranie nowych sesji i stąd pochodzą unieważnienia (zamknięcie na innym węźle).
+ *
+ * Domyślna implementacja: DatabaseKsefSessionStore (tabela ksef_sessions).
+ */
+public interface KsefSessionStore {
+
+    /**
+     * Otwarte, niewygasłe sesje klienta
+     */
+    List<StoredSession> findValid(Long tenantId);
+
+    /**
+     * Wykonuje akcję z wyłącznością dla klienta względem wszystkich węzłów, we własnej transakcji
+     * niezależnej od transakcji wywołującego (np. sprawdzenie magazynu i zajęcie otwierania sesji).
+     * Akcja nie powinna wywoływać KSeF - blokada trzymana jest do jej zakończenia.
+     */
+    <T> T withTenantLock(Long tenantId, Supplier<T> action);
+
+    /**
+     * Zajmuje otwieranie sesji klienta (wywoływane pod withTenantLock). Zajęcie wygasa po ttl,
+     * więc awaria węzła w trakcie otwierania nie blokuje klienta.
+     *
+     * @return false, jeśli sesję otwiera właśnie inny węzeł
+     */
+    boolean claimOpening(Long tenantId, String claimId, Duration ttl);
+
+    /**
+     * Zwalnia zajęcie otwierania po zapisaniu sesji (lub nieudanym otwarciu)
+     */
+    void releaseOpening(Long tenantId, String claimId);
+
+    /**
+     * Zapisuje sesję otwartą przez bieżący węzeł
+     */
+    void register(Long tenantId, StoredSession session);
+
+    /**
+     * Oznacza sesję jako nieważną dla wszystkich węzłów
+     */
+    void invalidate(Long sessionId);
+
+    /**
+     * Identyfikatory sesji unieważnionych od podanej chwili
+     */
+    List<Long> findInvalidatedSince(LocalDateTime since);
+
+    record StoredSession(Long sessionId, String token, LocalDateTime expiresAt) {
+    }
+}
@@ -0,0 +1,381 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import pl.ksef.hub.service.PipelineMetrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Sprawiedliwy harmonogram pracy kierowanej do KSeF, wspólny dla wszystkich klientów.
+ *
+ * Wywołania KSeF wykonuje stała pula wątków (workers); zadania czekają w kolejkach per klient
+ * w dwóch pasach:
+ * - INTERACTIVE - wysyłki i pobrania UPO zlecone przez użytkownika, zawsze obsługiwane przed BULK,
+ * - BULK - praca w tle (UpoHarvester, synchronizacja faktur zakupowych), która może zająć
+ *   najwyżej workers - reserved-interactive wątków, więc wysyłka interaktywna nie czeka na
+ *   zwolnienie wątku przez długi backfill.
+ * W obrębie pasa klienci obsługiwani są algorytmem deficit round-robin: przy każdej wizycie klient
+ * dostaje quantum jednostek kosztu i wykonuje zadania, dopóki starcza deficytu - klient z 50 tys.
+ * faktur w kolejce dostaje tyle samo przepustowości co klient z jedną.
+ *
+ * Głębokość kolejek i czas oczekiwania per klient dostępne są w getStats() i w metrykach
+ * ksef.scheduler.* (PipelineMetrics).
+ */
+@Slf4j
+@Service
+public class KsefWorkScheduler {
+
+    public enum Lane {
+        INTERACTIVE,
+        BULK
+    }
+
+    // Wątek roboczy harmonogramu - zagnieżdżone call() wykonywane są od razu (bez zakleszczenia)
+    private static final ThreadLocal<Boolean> WORKER = new ThreadLocal<>();
+
+    private final PipelineMetrics pipelineMetrics;
+    private final int workers;
+    private final int reservedInteractive;
+    private final int quantum;
+    private final int maxQueuedPerTenant;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Map<Lane, LaneQueue> lanes = new EnumMap<>(Lane.class);
+    private final List<Thread> threads = new ArrayList<>();
+
+    private int busy;
+    private volatile boolean stopped;
+
+    public KsefWorkScheduler(PipelineMetrics pipelineMetrics,
+                             @Value("${hub.ksef.scheduler.workers:16}") int workers,
+                             @Value("${hub.ksef.scheduler.reserved-interactive:4}") int reservedInteractive,
+                             @Value("${hub.ksef.scheduler.quantum:32}") int quantum,
+                             @Value("${hub.ksef.scheduler.max-queued-per-tenant:10000}") int maxQueuedPerTenant) {
+        this.pipelineMetrics = pipelineMetrics;
+        this.workers = Math.max(1, workers);
+        this.reservedInteractive = Math.min(Math.max(0, reservedInteractive), this.workers - 1);
+        this.quantum = Math.max(1, quantum);
+        this.maxQueuedPerTenant = maxQueuedPerTenant;
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new LaneQueue(lane));
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Lane lane : Lane.values()) {
+            pipelineMetrics.registerQueueGauge(lane.name(), () -> queued(lane));
+        }
+        for (int i = 1; i <= workers; i++) {
+            Thread thread = new Thread(this::workLoop, "ksef-worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        log.info("KSeF work scheduler started: {} workers, {} reserved for interactive work", workers, reservedInteractive);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopped = true;
+        threads.forEach(Thread::interrupt);
+        lock.lock();
+        try {
+            for (LaneQueue laneQueue : lanes.values()) {
+                for (TenantQueue tenantQueue : laneQueue.tenants.values()) {
+                    tenantQueue.tasks.forEach(task -> task.future.completeExceptionally(
+                            new CancellationException("KSeF work scheduler stopped")));
+                    tenantQueue.tasks.clear();
+                }
+                laneQueue.active.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Kolejkuje zadanie o koszcie 1
+     */
+    public <T> CompletableFuture<T> submit(Long tenantId, Lane lane, Supplier<T> work) {
+        return submit(tenantId, lane, 1, work);
+    }
+
+    /**
+     * Kolejkuje zadanie klienta w pasie; koszt (np. rozmiar payloadu w KB) rozliczany jest w deficit round-robin
+     */
+    public <T> CompletableFuture<T> submit(Long tenantId, Lane lane, int cost, Supplier<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Task<T> task = new Task<>(tenantId, Math.max(1, cost), work, future, System.nanoTime());
+
+        lock.lock();
+        try {
+            if (stopped) {
+                throw new IllegalStateException("KSeF work scheduler stopped");
+            }
+            LaneQueue laneQueue = lanes.get(lane);
+            TenantQueue tenantQueue = laneQueue.tenants.computeIfAbsent(tenantId, TenantQueue::new);
+            if (tenantQueue.tasks.size() >= maxQueuedPerTenant) {
+                tenantQueue.rejected++;
+                throw new RuntimeException("KSeF work queue full for tenant " + tenantId + " (" + lane + ")");
+            }
+            tenantQueue.tasks.addLast(task);
+            if (!tenantQueue.active) {
+                tenantQueue.active = true;
+                laneQueue.active.addLast(tenantQueue);
+            }
+            laneQueue.queued++;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    /**
+     * Wykonuje zadanie o koszcie 1 w harmonogramie i czeka na wynik
+     */
+    public <T> T call(Long tenantId, Lane lane, Supplier<T> work) {
+        return call(tenantId, lane, 1, work);
+    }
+
+    /**
+     * Wykonuje zadanie w harmonogramie i czeka na wynik (wyjątki zadania przekazywane są bez opakowania)
+     */
+    public <T> T call(Long tenantId, Lane lane, int cost, Supplier<T> work) {
+        if (Boolean.TRUE.equals(WORKER.get())) {
+            return work.get();
+        }
+        try {
+            return submit(tenantId, lane, cost, work).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Koszt wysłania payloadu: 1 jednostka na rozpoczęty KB (znaków)
+     */
+    public static int payloadCost(String payload) {
+        return payload != null ? Math.max(1, (payload.length() + 1023) / 1024) : 1;
+    }
+
+    /**
+     * Stan kolejek: pasy oraz klienci z pracą w kolejce lub w toku (najdłużej czekający pierwsi)
+     */
+    public SchedulerStats getStats() {
+        lock.lock();
+        try {
+            Map<Lane, LaneStats> laneStats = new EnumMap<>(Lane.class);
+            List<TenantStats> tenantStats = new ArrayList<>();
+            long now = System.nanoTime();
+            for (LaneQueue laneQueue : lanes.values()) {
+                laneStats.put(laneQueue.lane, new LaneStats(laneQueue.queued, laneQueue.running,
+                        laneQueue.dispatched, laneQueue.active.size()));
+                for (TenantQueue tenantQueue : laneQueue.tenants.values()) {
+                    if (tenantQueue.tasks.isEmpty() && tenantQueue.running == 0) {
+                        continue;
+                    }
+                    Task<?> oldest = tenantQueue.tasks.peekFirst();
+                    tenantStats.add(new TenantStats(tenantQueue.tenantId, laneQueue.lane,
+                            tenantQueue.tasks.size(), tenantQueue.running, tenantQueue.dispatched,
+                            tenantQueue.rejected,
+                            oldest != null ? (now - oldest.enqueuedAt) / 1_000_000 : 0,
+                            tenantQueue.dispatched > 0 ? tenantQueue.waitNanosTotal / tenantQueue.dispatched / 1_000_000 : 0,
+                            tenantQueue.waitNanosMax / 1_000_000));
+                }
+            }
+            tenantStats.sort(Comparator.comparingLong(TenantStats::oldestWaitMs).reversed());
+            return new SchedulerStats(workers, reservedInteractive, busy, laneStats, tenantStats);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // === Przydział pracy ===
+
+    private void workLoop() {
+        WORKER.set(true);
+        while (!stopped) {
+            Task<?> task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            // Metryka poza blokadą harmonogramu (wyszukanie/utworzenie timera Micrometer)
+            pipelineMetrics.recordQueueWait(task.lane.lane.name(), task.tenantId, task.waitNanos);
+            run(task);
+        }
+    }
+
+    private Task<?> take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                Task<?> task = next(lanes.get(Lane.INTERACTIVE));
+                // BULK nie zajmuje wątków zarezerwowanych dla pracy interaktywnej
+                if (task == null && lanes.get(Lane.BULK).running < workers - reservedInteractive) {
+                    task = next(lanes.get(Lane.BULK));
+                }
+                if (task != null) {
+                    busy++;
+                    return task;
+                }
+                workAvailable.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deficit round-robin: klient na początku kolejki aktywnych dostaje quantum przy każdej wizycie,
+     * a po wyczerpaniu deficytu trafia na koniec
+     */
+    private Task<?> next(LaneQueue laneQueue) {
+        while (!laneQueue.active.isEmpty()) {
+            TenantQueue tenantQueue = laneQueue.active.peekFirst();
+            if (!tenantQueue.visited) {
+                tenantQueue.deficit += quantum;
+                tenantQueue.visited = true;
+            }
+            Task<?> head = tenantQueue.tasks.peekFirst();
+            if (head.cost <= tenantQueue.deficit) {
+                tenantQueue.deficit -= head.cost;
+                tenantQueue.tasks.pollFirst();
+                if (tenantQueue.tasks.isEmpty()) {
+                    // Klient bez pracy nie gromadzi deficytu
+                    laneQueue.active.pollFirst();
+                    tenantQueue.active = false;
+                    tenantQueue.visited = false;
+                    tenantQueue.deficit = 0;
+                }
+                long waitNanos = System.nanoTime() - head.enqueuedAt;
+                tenantQueue.running++;
+                tenantQueue.dispatched++;
+                tenantQueue.waitNanosTotal += waitNanos;
+                tenantQueue.waitNanosMax = Math.max(tenantQueue.waitNanosMax, waitNanos);
+                laneQueue.queued--;
+                laneQueue.running++;
+                laneQueue.dispatched++;
+                head.waitNanos = waitNanos;
+                head.lane = laneQueue;
+                head.tenantQueue = tenantQueue;
+                return head;
+            }
+            laneQueue.active.pollFirst();
+            tenantQueue.visited = false;
+            laneQueue.active.addLast(tenantQueue);
+        }
+        return null;
+    }
+
+    private <T> void run(Task<T> task) {
+        try (PipelineMetrics.TenantScope metricsScope = pipelineMetrics.tenantScope(task.tenantId)) {
+            task.future.complete(task.work.get());
+        } catch (Throwable e) {
+            task.future.completeExceptionally(e);
+        } finally {
+            lock.lock();
+            try {
+                busy--;
+                task.lane.running--;
+                task.tenantQueue.running--;
+                // Zwolniony wątek BULK może odblokować zadanie czekające na limit pasa
+                workAvailable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private int queued(Lane lane) {
+        lock.lock();
+        try {
+            return lanes.get(lane).queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class LaneQueue {
+        private final Lane lane;
+        private final Map<Long, TenantQueue> tenants = new HashMap<>();
+        private final ArrayDeque<TenantQueue> active = new ArrayDeque<>();
+        private int queued;
+        private int running;
+        private long dispatched;
+
+        private LaneQueue(Lane lane) {
+            this.lane = lane;
+        }
+    }
+
+    private static final class TenantQueue {
+        private final Long tenantId;
+        private final ArrayDeque<Task<?>> tasks = new ArrayDeque<>();
+        private boolean active;
+        private boolean visited;
+        private long deficit;
+        private int running;
+        private long dispatched;
+        private long rejected;
+        private long waitNanosTotal;
+        private long waitNanosMax;
+
+        private TenantQueue(Long tenantId) {
+            this.tenantId = tenantId;
+        }
+    }
+
+    private static final class Task<T> {
+        private final Long tenantId;
+        private final int cost;
+        private final Supplier<T> work;
+        private final CompletableFuture<T> future;
+        private final long enqueuedAt;
+        private long waitNanos;
+        private LaneQueue lane;
+        private TenantQueue tenantQueue;
+
+        private Task(Long tenantId, int cost, Supplier<T> work, CompletableFuture<T> future, long enqueuedAt) {
+            this.tenantId = tenantId;
+            this.cost = cost;
+            this.work = work;
+            this.future = future;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    public record LaneStats(int queued, int running, long dispatched, int activeTenants) {
+    }
+
+    public record TenantStats(Long tenantId, Lane lane, int queued, int running, long dispatched, long rejected,
+                              long oldestWaitMs, long avgWaitMs, long maxWaitMs) {
+    }
+
+    public record SchedulerStats(int workers, int reservedInteractive, int busy,
+                                 Map<Lane, LaneStats> lanes, List<TenantStats> tenants) {
+    }
+}
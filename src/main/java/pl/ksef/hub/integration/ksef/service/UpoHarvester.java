@@ -0,0 +1,352 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.ksef.hub.domain.entity.Invoice.InvoiceStatus;
+import pl.ksef.hub.domain.repository.InvoiceRepository;
+import pl.ksef.hub.domain.repository.InvoiceRepository.PendingUpoView;
+import pl.ksef.hub.integration.ksef.client.KsefApiClient;
+import pl.ksef.hub.integration.ksef.dto.KsefUpoResponse;
+import pl.ksef.hub.integration.ksef.service.UpoStorageService.StoredUpo;
+import pl.ksef.hub.service.PipelineMetrics;
+import pl.ksef.hub.service.WorkPartitionService;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Zadanie w tle pobierające UPO dla faktur wysłanych do KSeF (status SENT).
+ *
+ * - każda faktura ma własny, rosnący odstęp odpytywania (szybko na początku, potem rzadziej),
+ * - zapytania do KSeF idą pasem BULK KsefWorkScheduler (sprawiedliwie między klientami,
+ *   bez zajmowania wątków zarezerwowanych dla wysyłek interaktywnych),
+ * - wyniki z jednego przebiegu zapisywane są jednym wsadowym UPDATE (SENT -> ACCEPTED) po zakończeniu
+ *   ostatniego pobrania - wątek harmonogramu nie czeka na pracę w kolejce BULK,
+ * - dla każdej faktury mierzony jest czas od wysłania do przyjęcia przez KSeF (tylko dla wierszy
+ *   faktycznie zaktualizowanych),
+ * - stan odpytywania faktur, które opuściły kolejkę, jest usuwany przy przeglądaniu strony.
+ *
+ * Sesje pochodzą z puli KsefSessionManager - klienci bez dostępnej sesji są pomijani.
+ *
+ * Przy wielu węzłach każdy obsługuje tylko klientów ze swoich partycji pracy (WorkPartitionService),
+ * a zapis wyników warunkowany jest fencing tokenem partycji z początku przebiegu.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UpoHarvester {
+
+    private static final String ACCEPT_SQL =
+            "UPDATE invoices SET upo_compressed = ?, upo_ksef_number = ?, upo_accepted_at = ?, " +
+            "upo_document_hash = ?, status = ?, accepted_by_ksef_at = ?, updated_at = ? " +
+            "WHERE id = ? AND status = ?";
+
+    // Zapis tylko jeśli węzeł nadal dzierżawi partycję klienta z tym samym tokenem
+    private static final String FENCED_ACCEPT_SQL = ACCEPT_SQL +
+            " AND EXISTS (SELECT 1 FROM work_partitions w WHERE w.partition_id = ? " +
+            "AND w.owner_node = ? AND w.fencing_token = ?)";
+
+    private final InvoiceRepository invoiceRepository;
+    private final KsefApiClient ksefApiClient;
+    private final KsefSessionManager ksefSessionManager;
+    private final UpoStorageService upoStorageService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final WorkPartitionService workPartitionService;
+    private final PipelineMetrics pipelineMetrics;
+    private final KsefWorkScheduler ksefWorkScheduler;
+
+    @Value("${hub.upo-harvester.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hub.upo-harvester.batch-size:200}")
+    private int batchSize;
+
+    @Value("${hub.upo-harvester.initial-delay-ms:5000}")
+    private long initialDelayMs;
+
+    @Value("${hub.upo-harvester.max-delay-ms:600000}")
+    private long maxDelayMs;
+
+    // Stan odpytywania per faktura (liczba prób, termin kolejnej próby)
+    private final Map<Long, PollState> pollStates = new ConcurrentHashMap<>();
+
+    private final AtomicLong polled = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong notReady = new AtomicLong();
+    private final AtomicLong acceptanceMillisTotal = new AtomicLong();
+    private final AtomicLong acceptanceMillisMax = new AtomicLong();
+
+    private volatile long cursor = 0L;
+
+    // Przebieg w toku - wyniki zapisywane asynchronicznie po zakończeniu pobrań
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Jeden przebieg: wybiera faktury, których termin odpytania minął, pobiera UPO i zapisuje wyniki.
+     * Wątek harmonogramu tylko zleca pracę - zapis wyników następuje po zakończeniu ostatniego pobrania,
+     * a kolejny przebieg startuje dopiero po zakończeniu poprzedniego.
+     */
+    @Scheduled(fixedDelayString = "${hub.upo-harvester.interval-ms:5000}")
+    public void harvest() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            harvestOnce().whenComplete((count, e) -> {
+                if (e != null) {
+                    log.error("UPO harvest run failed", e);
+                }
+                running.set(false);
+            });
+        } catch (Exception e) {
+            running.set(false);
+            log.error("UPO harvest run failed", e);
+        }
+    }
+
+    /**
+     * @return liczba faktur przeniesionych do ACCEPTED - po zapisie wyników całego przebiegu
+     */
+    public CompletableFuture<Integer> harvestOnce() {
+        Map<Integer, Long> ownedPartitions = workPartitionService.ownedPartitions();
+        if (ownedPartitions.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+
+        long now = System.currentTimeMillis();
+        long from = cursor;
+        List<PendingUpoView> page = invoiceRepository.findPendingUpo(
+                InvoiceStatus.SENT, from, workPartitionService.getPartitionCount(),
+                ownedPartitions.keySet(), PageRequest.of(0, batchSize));
+
+        // Kursor przesuwa się po kolejnych stronach, aby faktury z odroczonym
+        // odpytywaniem nie blokowały pozostałych; po ostatniej stronie wraca na początek
+        boolean lastPage = page.size() < batchSize;
+        cursor = lastPage ? 0L : page.get(page.size() - 1).getId();
+        prunePollStates(from, lastPage ? Long.MAX_VALUE : cursor, page, now);
+
+        List<PendingUpoView> due = page.stream()
+                .filter(invoice -> isDue(invoice.getId(), now))
+                .toList();
+
+        if (due.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+
+        // Sesja wypożyczana z puli raz na klienta na czas przebiegu
+        Map<Long, Optional<KsefSessionManager.SessionLease>> sessionLeases = new HashMap<>();
+        Map<Long, CompletableFuture<UpoResult>> futures = new LinkedHashMap<>();
+        try {
+            for (PendingUpoView invoice : due) {
+                Optional<KsefSessionManager.SessionLease> lease = sessionLeases.computeIfAbsent(
+                        invoice.getTenantId(), ksefSessionManager::leaseIfAvailable);
+                if (lease.isEmpty()) {
+                    continue;
+                }
+                String sessionToken = lease.get().getToken();
+                try {
+                    futures.put(invoice.getId(), ksefWorkScheduler.submit(invoice.getTenantId(),
+                            KsefWorkScheduler.Lane.BULK, () -> fetchUpo(invoice, sessionToken)));
+                } catch (RuntimeException e) {
+                    // Kolejka klienta pełna lub harmonogram zatrzymany - spróbuj w kolejnym przebiegu
+                    log.debug("UPO poll for invoice {} not scheduled: {}", invoice.getId(), e.getMessage());
+                    reschedule(invoice.getId());
+                }
+            }
+        } catch (RuntimeException e) {
+            closeLeases(sessionLeases);
+            throw e;
+        }
+
+        // Wyniki zbierane po zakończeniu wszystkich pobrań (w wątku, który zakończył ostatnie)
+        return CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new))
+                .handle((done, e) -> {
+                    try {
+                        return collect(futures);
+                    } finally {
+                        closeLeases(sessionLeases);
+                    }
+                })
+                .thenApply(results -> results.isEmpty() ? 0 : saveAccepted(results, ownedPartitions));
+    }
+
+    /**
+     * Statystyki harvestera
+     */
+    public HarvesterStats getStats() {
+        long acceptedCount = accepted.get();
+        return new HarvesterStats(
+                pollStates.size(),
+                polled.get(),
+                acceptedCount,
+                notReady.get(),
+                acceptedCount > 0 ? acceptanceMillisTotal.get() / acceptedCount : 0,
+                acceptanceMillisMax.get()
+        );
+    }
+
+    /**
+     * Każda faktura osobno - błąd jednej nie przerywa zapisu pozostałych
+     */
+    private List<UpoResult> collect(Map<Long, CompletableFuture<UpoResult>> futures) {
+        List<UpoResult> results = new ArrayList<>();
+        futures.forEach((invoiceId, future) -> {
+            try {
+                UpoResult result = future.join();
+                if (result != null) {
+                    results.add(result);
+                }
+            } catch (CompletionException | CancellationException e) {
+                log.warn("UPO poll for invoice {} failed: {}", invoiceId, e.getMessage());
+                reschedule(invoiceId);
+            }
+        });
+        return results;
+    }
+
+    private static void closeLeases(Map<Long, Optional<KsefSessionManager.SessionLease>> sessionLeases) {
+        sessionLeases.values().forEach(lease -> lease.ifPresent(KsefSessionManager.SessionLease::close));
+    }
+
+    private UpoResult fetchUpo(PendingUpoView invoice, String sessionToken) {
+        polled.incrementAndGet();
+        try {
+            KsefUpoResponse response = ksefApiClient.getUpo(sessionToken, invoice.getKsefNumber());
+            if (response == null || response.getUpo() == null) {
+                reschedule(invoice.getId());
+                return null;
+            }
+
+            // Dekodowanie, kompresja i ekstrakcja pól odbywa się w wątku roboczym
+            StoredUpo upo = upoStorageService.store(response.getUpo());
+
+            LocalDateTime acceptedAt = upo.acceptedAt() != null ? upo.acceptedAt()
+                    : response.getTimestamp() != null
+                    ? response.getTimestamp().atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime()
+                    : LocalDateTime.now();
+            return new UpoResult(invoice.getId(), invoice.getTenantId(), upo, acceptedAt, invoice.getSentToKsefAt());
+
+        } catch (Exception e) {
+            // UPO jeszcze niedostępne lub błąd chwilowy - spróbuj później
+            log.debug("UPO not available yet for invoice {}: {}", invoice.getId(), e.getMessage());
+            reschedule(invoice.getId());
+            return null;
+        }
+    }
+
+    /**
+     * @return liczba faktur faktycznie przeniesionych do ACCEPTED (bez odrzuconych przez fencing
+     *         lub już zmienionych przez inny proces)
+     */
+    private int saveAccepted(List<UpoResult> results, Map<Integer, Long> fencingTokens) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        boolean fenced = workPartitionService.isEnabled();
+        int[][] updateCounts = transactionTemplate.execute(status ->
+                jdbcTemplate.batchUpdate(fenced ? FENCED_ACCEPT_SQL : ACCEPT_SQL, results, results.size(), (ps, result) -> {
+                    StoredUpo upo = result.upo();
+                    ps.setBytes(1, upo.compressed());
+                    ps.setString(2, upo.ksefNumber());
+                    ps.setTimestamp(3, upo.acceptedAt() != null ? Timestamp.valueOf(upo.acceptedAt()) : null);
+                    ps.setString(4, upo.documentHash());
+                    ps.setString(5, InvoiceStatus.ACCEPTED.name());
+                    ps.setTimestamp(6, Timestamp.valueOf(result.acceptedAt()));
+                    ps.setTimestamp(7, now);
+                    ps.setLong(8, result.invoiceId());
+                    ps.setString(9, InvoiceStatus.SENT.name());
+                    if (fenced) {
+                        int partition = workPartitionService.partitionOf(result.tenantId());
+                        ps.setInt(10, partition);
+                        ps.setString(11, workPartitionService.getNodeId());
+                        ps.setLong(12, fencingTokens.getOrDefault(partition, -1L));
+                    }
+                }));
+
+        // Liczniki wierszy w kolejności wyników (batchUpdate dzieli je na partie po kolei)
+        int index = 0;
+        int updated = 0;
+        for (int[] batch : updateCounts != null ? updateCounts : new int[0][]) {
+            for (int count : batch) {
+                UpoResult result = results.get(index++);
+                // SUCCESS_NO_INFO (-2) - sterownik nie podaje liczby wierszy
+                if (count <= 0 && count != Statement.SUCCESS_NO_INFO) {
+                    // Partycja przejęta przez inny węzeł lub faktura już nie SENT - stan usunie prunePollStates
+                    continue;
+                }
+                updated++;
+                pollStates.remove(result.invoiceId());
+                accepted.incrementAndGet();
+                if (result.sentAt() != null) {
+                    long millis = Math.max(0, Duration.between(result.sentAt(), result.acceptedAt()).toMillis());
+                    acceptanceMillisTotal.addAndGet(millis);
+                    acceptanceMillisMax.accumulateAndGet(millis, Math::max);
+                }
+            }
+        }
+        pipelineMetrics.recordTransitions(InvoiceStatus.SENT, InvoiceStatus.ACCEPTED, updated);
+        log.info("Harvested UPO for {} of {} invoices", updated, results.size());
+        return updated;
+    }
+
+    /**
+     * Usuwa stan odpytywania faktur, które z zakresu bieżącej strony (from, to] zniknęły (już nie SENT
+     * lub klient w partycji innego węzła), oraz stan, którego termin minął dawniej niż max-delay-ms
+     * (faktura nie jest już odwiedzana przez kursor)
+     */
+    private void prunePollStates(long from, long to, List<PendingUpoView> page, long now) {
+        Set<Long> pending = page.stream().map(PendingUpoView::getId).collect(Collectors.toSet());
+        long staleBefore = now - maxDelayMs;
+        pollStates.entrySet().removeIf(entry -> {
+            long invoiceId = entry.getKey();
+            return (invoiceId > from && invoiceId <= to && !pending.contains(invoiceId))
+                    || entry.getValue().nextPollAt() < staleBefore;
+        });
+    }
+
+    private boolean isDue(Long invoiceId, long now) {
+        PollState state = pollStates.get(invoiceId);
+        return state == null || state.nextPollAt() <= now;
+    }
+
+    private void reschedule(Long invoiceId) {
+        notReady.incrementAndGet();
+        pollStates.compute(invoiceId, (id, state) -> {
+            int attempts = state == null ? 1 : state.attempts() + 1;
+            long delay = Math.min(maxDelayMs, initialDelayMs << Math.min(attempts - 1, 20));
+            return new PollState(attempts, System.currentTimeMillis() + delay);
+        });
+    }
+
+    private record PollState(int attempts, long nextPollAt) {
+    }
+
+    private record UpoResult(Long invoiceId, Long tenantId, StoredUpo upo, LocalDateTime acceptedAt, LocalDateTime sentAt) {
+    }
+
+    public record HarvesterStats(int tracked, long polled, long accepted, long notReady,
+                                 long avgAcceptanceMillis, long maxAcceptanceMillis) {
+    }
+}
@@ -0,0 +1,239 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import pl.ksef.hub.domain.entity.Invoice;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Przechowywanie UPO w postaci skompresowanej ze strukturyzowanymi polami.
+ *
+ * UPO z KSeF przychodzi jako XML zakodowany w Base64. Treść jest dekodowana
+ * strumieniowo (bez pośredniej tablicy z całym XML), jednocześnie kompresowana
+ * GZIP-em i parsowana StAX-em - w jednym przebiegu wyciągane są numer KSeF,
+ * data przyjęcia i skrót dokumentu, zapisywane potem w indeksowanych kolumnach.
+ */
+@Slf4j
+@Service
+public class UpoStorageService {
+
+    // Nazwy elementów w kolejnych wersjach schematu UPO
+    private static final Set<String> KSEF_NUMBER_ELEMENTS = Set.of("NumerKSeFDokumentu", "NumerKSeF");
+    private static final Set<String> ACCEPTED_AT_ELEMENTS = Set.of("DataNadaniaNumeruKSeF", "DataPrzyjecia");
+    private static final Set<String> DOCUMENT_HASH_ELEMENTS = Set.of("SkrotDokumentu", "SkrotZlozonejStruktury");
+
+    private final XMLInputFactory xmlInputFactory;
+
+    public UpoStorageService() {
+        xmlInputFactory = XMLInputFactory.newFactory();
+        // Ochrona przed XXE
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Dekoduje UPO (Base64), kompresuje je i wyciąga kluczowe pola
+     */
+    public StoredUpo store(String base64Upo) {
+        if (base64Upo == null || base64Upo.isBlank()) {
+            throw new IllegalArgumentException("UPO content is empty");
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(base64Upo.length() / 3);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+             InputStream decoded = Base64.getMimeDecoder().wrap(new Base64CharsInputStream(base64Upo));
+             InputStream tee = new TeeInputStream(decoded, gzip)) {
+
+            UpoFields fields = parse(tee);
+            // Parser mógł nie doczytać końcówki dokumentu - dopisz ją do archiwum
+            tee.transferTo(OutputStream.nullOutputStream());
+            gzip.finish();
+
+            return new StoredUpo(compressed.toByteArray(), fields.ksefNumber(),
+                    fields.acceptedAt(), fields.documentHash());
+
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Invalid UPO XML: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store UPO", e);
+        }
+    }
+
+    /**
+     * Zapisuje UPO w encji faktury (bez utrwalania - zapis po stronie wywołującego)
+     */
+    public StoredUpo storeInto(Invoice invoice, String base64Upo) {
+        StoredUpo upo = store(base64Upo);
+        invoice.setUpoCompressed(upo.compressed());
+        invoice.setUpoKsefNumber(upo.ksefNumber());
+        invoice.setUpoAcceptedAt(upo.acceptedAt());
+        invoice.setUpoDocumentHash(upo.documentHash());
+        invoice.setUpoContent(null);
+        return upo;
+    }
+
+    /**
+     * Zwraca XML UPO z postaci skompresowanej
+     */
+    public String readXml(byte[] compressedUpo) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressedUpo))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read stored UPO", e);
+        }
+    }
+
+    /**
+     * Zwraca UPO w postaci zwracanej przez KSeF (Base64)
+     */
+    public String readBase64(byte[] compressedUpo) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressedUpo))) {
+            return Base64.getEncoder().encodeToString(in.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read stored UPO", e);
+        }
+    }
+
+    private UpoFields parse(InputStream xml) throws XMLStreamException {
+        String ksefNumber = null;
+        String acceptedAt = null;
+        String documentHash = null;
+
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(xml);
+        try {
+            while (reader.hasNext() && (ksefNumber == null || acceptedAt == null || documentHash == null)) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if (ksefNumber == null && KSEF_NUMBER_ELEMENTS.contains(name)) {
+                    ksefNumber = reader.getElementText().trim();
+                } else if (acceptedAt == null && ACCEPTED_AT_ELEMENTS.contains(name)) {
+                    acceptedAt = reader.getElementText().trim();
+                } else if (documentHash == null && DOCUMENT_HASH_ELEMENTS.contains(name)) {
+                    documentHash = reader.getElementText().trim();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return new UpoFields(ksefNumber, parseTimestamp(acceptedAt), documentHash);
+    }
+
+    private LocalDateTime parseTimestamp(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(value).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.parse(value);
+            } catch (DateTimeParseException ex) {
+                log.warn("Unrecognized UPO acceptance timestamp: {}", value);
+                return null;
+            }
+        }
+    }
+
+    // === Klasy pomocnicze ===
+
+    private record UpoFields(String ksefNumber, LocalDateTime acceptedAt, String documentHash) {
+    }
+
+    /**
+     * UPO gotowe do zapisu: treść skompresowana GZIP-em oraz pola do indeksowania
+     */
+    public record StoredUpo(byte[] compressed, String ksefNumber, LocalDateTime acceptedAt, String documentHash) {
+    }
+
+    /**
+     * Znaki Base64 z napisu jako strumień bajtów (bez kopiowania napisu do tablicy)
+     */
+    private static class Base64CharsInputStream extends InputStream {
+        private final Reader source;
+        private char[] buffer = new char[0];
+
+        private Base64CharsInputStream(String value) {
+            this.source = new StringReader(value);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return source.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (buffer.length < len) {
+                buffer = new char[len];
+            }
+            int count = source.read(buffer, 0, len);
+            for (int i = 0; i < count; i++) {
+                b[off + i] = (byte) buffer[i];
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Przekazuje odczytane bajty jednocześnie do drugiego strumienia (kompresji)
+     */
+    private static class TeeInputStream extends FilterInputStream {
+        private final OutputStream branch;
+
+        private TeeInputStream(InputStream in, OutputStream branch) {
+            super(in);
+            this.branch = branch;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                branch.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                branch.write(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Pominięte bajty muszą również trafić do archiwum
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int count = read(buffer, 0, buffer.length);
+            return Math.max(count, 0);
+        }
+    }
+}
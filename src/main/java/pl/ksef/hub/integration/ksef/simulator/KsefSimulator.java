@@ -0,0 +1,678 @@
+package pl.ksef.hub.integration.ksef.simulator;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import pl.ksef.hub.integration.ksef.dto.KsefErrorResponse;
+import pl.ksef.hub.integration.ksef.dto.KsefInvoiceQueryRequest;
+import pl.ksef.hub.integration.ksef.dto.KsefInvoiceQueryResponse;
+import pl.ksef.hub.integration.ksef.dto.KsefInvoiceRequest;
+import pl.ksef.hub.integration.ksef.dto.KsefInvoiceResponse;
+import pl.ksef.hub.integration.ksef.dto.KsefPublicKeyCertificate;
+import pl.ksef.hub.integration.ksef.dto.KsefSessionRequest;
+import pl.ksef.hub.integration.ksef.dto.KsefSessionResponse;
+import pl.ksef.hub.integration.ksef.dto.KsefUpoResponse;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.MGF1ParameterSpec;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Lokalny symulator API KSeF do testów obciążeniowych (profil ksef-sim).
+ *
+ * Serwer Reactor Netty obsługuje endpointy wywoływane przez KsefApiClient:
+ * Session/InitToken, Invoice/Send, Invoice/Upo, Session/Status, Session/Terminate, common/Status
+ * oraz Query/Invoice/Sync i Invoice/Get (faktury zakupowe).
+ * Zachowanie jest konfigurowalne w ksef.simulator.*:
+ * - opóźnienia - rozkład log-normalny (mediana i p99),
+ * - error-rate - odsetek odpowiedzi 500,
+ * - rate-limit - limit żądań na sekundę, powyżej którego zwracane jest 429 z Retry-After,
+ * - outage - cykliczne okna niedostępności (503), dodatkowo wyzwalane przez POST /sim/outage?durationMs=,
+ * - incoming-per-hour - strumień faktur zakupowych dla każdego NIP: deterministyczny (numer KSeF koduje
+ *   pozycję w strumieniu), więc kolejne zapytania i pobrania zwracają te same dokumenty bez przechowywania.
+ *
+ * Sesje szyfrowane: klucz publiczny symulatora (RSA, generowany przy starcie) udostępnia
+ * security/public-key-certificates; przesłane faktury są odszyfrowywane i weryfikowane jak jawne.
+ *
+ * Sesje i przyjęte faktury trzymane są w pamięci; GET /sim/stats zwraca liczniki per endpoint.
+ */
+@Slf4j
+@Component
+@Profile("ksef-sim")
+public class KsefSimulator {
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String NAMESPACE = "http://crd.gov.pl/wzor/2023/06/29/12648/";
+    private static final String INCOMING_SELLER_NIP = "5260250274";
+
+    private final ObjectMapper objectMapper;
+    private final String host;
+    private final int port;
+    private final long latencyMedianMs;
+    private final long latencyP99Ms;
+    private final SimulatedLatency latency;
+    private final double errorRate;
+    private final int rateLimitPerSecond;
+    private final int retryAfterSeconds;
+    private final long outageEveryMs;
+    private final long outageDurationMs;
+    private final long sessionTtlSeconds;
+    private final long upoDelayMs;
+    private final int incomingPerHour;
+    private final KeyPair encryptionKeyPair;
+
+    private final Map<String, SimSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, SimInvoice> invoices = new ConcurrentHashMap<>();
+    private final Map<String, EndpointCounters> counters = new ConcurrentHashMap<>();
+
+    private final long startedAtMs = System.currentTimeMillis();
+    private final AtomicLong manualOutageUntilMs = new AtomicLong();
+    private long rateWindowStartMs;
+    private int rateWindowCount;
+
+    private DisposableServer server;
+
+    public KsefSimulator(ObjectMapper objectMapper,
+                         @Value("${ksef.simulator.host:localhost}") String host,
+                         @Value("${ksef.simulator.port:18089}") int port,
+                         @Value("${ksef.simulator.latency.median-ms:20}") long latencyMedianMs,
+                         @Value("${ksef.simulator.latency.p99-ms:150}") long latencyP99Ms,
+                         @Value("${ksef.simulator.error-rate:0.0}") double errorRate,
+                         @Value("${ksef.simulator.rate-limit.requests-per-second:0}") int rateLimitPerSecond,
+                         @Value("${ksef.simulator.rate-limit.retry-after-seconds:1}") int retryAfterSeconds,
+                         @Value("${ksef.simulator.outage.every-ms:0}") long outageEveryMs,
+                         @Value("${ksef.simulator.outage.duration-ms:0}") long outageDurationMs,
+                         @Value("${ksef.simulator.session-ttl-seconds:3600}") long sessionTtlSeconds,
+                         @Value("${ksef.simulator.upo-delay-ms:0}") long upoDelayMs,
+                         @Value("${ksef.simulator.incoming-per-hour:0}") int incomingPerHour) {
+        this.objectMapper = objectMapper;
+        this.host = host;
+        this.port = port;
+        this.latencyMedianMs = latencyMedianMs;
+        this.latencyP99Ms = latencyP99Ms;
+        this.latency = new SimulatedLatency(latencyMedianMs, latencyP99Ms);
+        this.errorRate = errorRate;
+        this.rateLimitPerSecond = rateLimitPerSecond;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.outageEveryMs = outageEveryMs;
+        this.outageDurationMs = outageDurationMs;
+        this.sessionTtlSeconds = sessionTtlSeconds;
+        this.upoDelayMs = upoDelayMs;
+        this.incomingPerHour = incomingPerHour;
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            this.encryptionKeyPair = generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("RSA not available", e);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        server = HttpServer.create()
+                .host(host)
+                .port(port)
+                .route(routes -> routes
+                        .post("/api/online/Session/InitToken",
+                                (request, response) -> handle(request, response, "Session/InitToken", false, this::initToken))
+                        .put("/api/online/Invoice/Send",
+                                (request, response) -> handle(request, response, "Invoice/Send", true, this::sendInvoice))
+                        .get("/api/online/Invoice/Upo/{referenceNumber}",
+                                (request, response) -> handle(request, response, "Invoice/Upo", true, this::getUpo))
+                        .get("/api/online/Session/Status/{referenceNumber}",
+                                (request, response) -> handle(request, response, "Session/Status", true, this::sessionStatus))
+                        .get("/api/online/Session/Terminate",
+                                (request, response) -> handle(request, response, "Session/Terminate", true, this::terminate))
+                        .post("/api/online/Query/Invoice/Sync",
+                                (request, response) -> handle(request, response, "Query/Invoice/Sync", true, this::queryInvoices))
+                        .get("/api/online/Invoice/Get/{ksefReferenceNumber}",
+                                (request, response) -> handle(request, response, "Invoice/Get", true, this::getInvoice))
+                        .get("/api/security/public-key-certificates",
+                                (request, response) -> handle(request, response, "security/public-key-certificates", false,
+                                        call -> Reply.ok(List.of(publicKeyCertificate()))))
+                        .get("/common/Status",
+                                (request, response) -> handle(request, response, "common/Status", false,
+                                        call -> Reply.ok(Map.of("status", "OK", "environment", "SIMULATOR"))))
+                        .post("/sim/outage", this::triggerOutage)
+                        .get("/sim/stats", (request, response) -> send(response, Reply.ok(getStats()))))
+                .bindNow();
+
+        log.info("KSeF simulator listening on http://{}:{} (latency median {} ms / p99 {} ms, error rate {}, rate limit {}/s)",
+                host, server.port(), latencyMedianMs, latencyP99Ms, errorRate, rateLimitPerSecond);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.disposeNow();
+            log.info("KSeF simulator stopped");
+        }
+    }
+
+    /**
+     * Port, na którym nasłuchuje symulator (przy ksef.simulator.port=0 przydzielony przez system)
+     */
+    public int getPort() {
+        return server.port();
+    }
+
+    /**
+     * Liczniki symulatora per endpoint
+     */
+    public SimulatorStats getStats() {
+        Map<String, EndpointStats> endpoints = new TreeMap<>();
+        counters.forEach((endpoint, c) -> endpoints.put(endpoint, new EndpointStats(
+                c.requests.sum(), c.ok.sum(), c.throttled.sum(), c.failed.sum(), c.unavailable.sum())));
+        return new SimulatorStats(sessions.size(), invoices.size(), isOutage(System.currentTimeMillis()), endpoints);
+    }
+
+    // === Obsługa żądań ===
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response, String endpoint,
+                              boolean requiresSession, Function<SimulatedCall, Reply> handler) {
+        EndpointCounters endpointCounters = counters.computeIfAbsent(endpoint, e -> new EndpointCounters());
+        endpointCounters.requests.increment();
+
+        return request.receive().aggregate().asString(StandardCharsets.UTF_8)
+                .defaultIfEmpty("")
+                .map(body -> {
+                    long now = System.currentTimeMillis();
+                    if (isOutage(now)) {
+                        endpointCounters.unavailable.increment();
+                        return Reply.error(503, "Service unavailable (simulated outage)");
+                    }
+                    if (!tryAcquireRate(now)) {
+                        endpointCounters.throttled.increment();
+                        return Reply.error(429, "Too many requests")
+                                .withHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+                    }
+                    SimSession session = null;
+                    if (requiresSession) {
+                        session = findSession(request.requestHeaders().get("SessionToken"));
+                        if (session == null) {
+                            endpointCounters.failed.increment();
+                            return Reply.error(401, "Session token invalid or expired");
+                        }
+                    }
+                    if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                        endpointCounters.failed.increment();
+                        return Reply.error(500, "Internal error (simulated)");
+                    }
+                    Reply reply = handler.apply(new SimulatedCall(request, session, body));
+                    if (reply.status() < 400) {
+                        endpointCounters.ok.increment();
+                    } else {
+                        endpointCounters.failed.increment();
+                    }
+                    return reply;
+                })
+                .flatMap(reply -> reply.status() == 503
+                        ? Mono.just(reply)
+                        : Mono.delay(Duration.ofMillis(latency.sampleMs())).thenReturn(reply))
+                .flatMap(reply -> send(response, reply));
+    }
+
+    private Reply initToken(SimulatedCall call) {
+        KsefSessionRequest sessionRequest = read(call.body(), KsefSessionRequest.class);
+        if (sessionRequest == null || sessionRequest.getContextIdentifier() == null
+                || sessionRequest.getContextIdentifier().getIdentifier() == null) {
+            return Reply.error(400, "Missing context identifier");
+        }
+        String nip = sessionRequest.getContextIdentifier().getIdentifier();
+        String token = "sim-" + UUID.randomUUID();
+        String referenceNumber = LocalDate.now().format(DATE) + "-SE-" + randomHex(10) + "-" + randomHex(10) + "-" + randomHex(2);
+        SecretKey sessionKey = null;
+        if (sessionRequest.getEncryption() != null) {
+            try {
+                sessionKey = unwrapSessionKey(sessionRequest.getEncryption().getEncryptedSymmetricKey());
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                return Reply.error(400, "Cannot decrypt session symmetric key");
+            }
+        }
+        sessions.put(token, new SimSession(token, referenceNumber, nip,
+                System.currentTimeMillis() + sessionTtlSeconds * 1000, sessionKey));
+
+        return Reply.ok(KsefSessionResponse.builder()
+                .sessionToken(KsefSessionResponse.SessionToken.builder()
+                        .token(token)
+                        .expiresIn(sessionTtlSeconds)
+                        .build())
+                .referenceNumber(referenceNumber)
+                .timestamp(OffsetDateTime.now())
+                .processingCode(200)
+                .processingDescription("Sesja interaktywna przyjęta")
+                .build());
+    }
+
+    private Reply sendInvoice(SimulatedCall call) {
+        KsefInvoiceRequest invoiceRequest = read(call.body(), KsefInvoiceRequest.class);
+        if (invoiceRequest == null || invoiceRequest.getInvoicePayload() == null
+                || invoiceRequest.getInvoiceHash() == null || invoiceRequest.getInvoiceHash().getHashSHA() == null) {
+            return Reply.error(400, "Missing invoice payload or hash");
+        }
+
+        // Weryfikacja skrótu jak w KSeF - wykrywa błędy kodowania payloadu po stronie Huba
+        KsefInvoiceRequest.InvoicePayload payload = invoiceRequest.getInvoicePayload();
+        boolean encrypted = "encrypted".equals(payload.getType());
+        if (encrypted != (call.session().key() != null)) {
+            return Reply.error(400, "Payload type " + payload.getType() + " does not match session encryption");
+        }
+        String body = encrypted ? payload.getEncryptedInvoiceBody() : payload.getInvoiceBody();
+        if (body == null) {
+            return Reply.error(400, "Missing invoice body");
+        }
+        byte[] xml;
+        try {
+            xml = Base64.getDecoder().decode(body);
+        } catch (IllegalArgumentException e) {
+            return Reply.error(400, "Invoice body is not valid Base64");
+        }
+        if (encrypted) {
+            if (payload.getEncryptedInvoiceHash() == null
+                    || !sha256Base64(xml).equals(payload.getEncryptedInvoiceHash().getHashSHA().getValue())) {
+                return Reply.error(400, "Encrypted invoice hash does not match payload");
+            }
+            try {
+                xml = decrypt(call.session().key(), xml);
+            } catch (GeneralSecurityException e) {
+                return Reply.error(400, "Cannot decrypt invoice payload");
+            }
+        }
+        String expectedHash = invoiceRequest.getInvoiceHash().getHashSHA().getValue();
+        if (!sha256Base64(xml).equals(expectedHash)) {
+            return Reply.error(400, "Invoice hash does not match payload");
+        }
+
+        String ksefNumber = call.session().nip() + "-" + LocalDate.now().format(DATE) + "-"
+                + randomHex(12) + "-" + randomHex(2);
+        invoices.put(ksefNumber, new SimInvoice(ksefNumber, call.session().nip(), LocalDateTime.now(),
+                System.currentTimeMillis() + upoDelayMs, sha256Base64(xml)));
+
+        return Reply.ok(KsefInvoiceResponse.builder()
+                .elementReferenceNumber(ksefNumber)
+                .referenceNumber(call.session().referenceNumber())
+                .processingCode(200)
+                .processingDescription("Faktura przyjęta do przetwarzania")
+                .timestamp(OffsetDateTime.now())
+                .build());
+    }
+
+    private Reply getUpo(SimulatedCall call) {
+        String referenceNumber = call.request().param("referenceNumber");
+        SimInvoice invoice = invoices.get(referenceNumber);
+        if (invoice == null) {
+            return Reply.error(404, "Invoice not found: " + referenceNumber);
+        }
+
+        KsefUpoResponse.KsefUpoResponseBuilder upoResponse = KsefUpoResponse.builder()
+                .referenceNumber(referenceNumber)
+                .elementReferenceNumber(invoice.ksefNumber())
+                .timestamp(OffsetDateTime.now());
+        // UPO w trakcie generowania - KSeF odpowiada bez treści, Hub ponawia odpytywanie
+        if (System.currentTimeMillis() >= invoice.upoReadyAtMs()) {
+            upoResponse.upo(Base64.getEncoder().encodeToString(upoXml(invoice).getBytes(StandardCharsets.UTF_8)));
+        }
+        return Reply.ok(upoResponse.build());
+    }
+
+    private Reply sessionStatus(SimulatedCall call) {
+        String referenceNumber = call.request().param("referenceNumber");
+        if (!call.session().referenceNumber().equals(referenceNumber)) {
+            return Reply.error(404, "Session not found: " + referenceNumber);
+        }
+        long remainingSeconds = Math.max(0, (call.session().expiresAtMs() - System.currentTimeMillis()) / 1000);
+        return Reply.ok(KsefSessionResponse.builder()
+                .sessionToken(KsefSessionResponse.SessionToken.builder()
+                        .token(call.session().token())
+                        .expiresIn(remainingSeconds)
+                        .build())
+                .referenceNumber(referenceNumber)
+                .timestamp(OffsetDateTime.now())
+                .processingCode(200)
+                .processingDescription("Sesja aktywna")
+                .build());
+    }
+
+    private Reply terminate(SimulatedCall call) {
+        sessions.remove(call.session().token());
+        return Reply.ok(Map.of(
+                "referenceNumber", call.session().referenceNumber(),
+                "processingCode", 200,
+                "processingDescription", "Sesja zamknięta"));
+    }
+
+    /**
+     * Metadane faktur zakupowych ze strumienia incoming-per-hour przyjętych w zadanym zakresie (bez przyszłych)
+     */
+    private Reply queryInvoices(SimulatedCall call) {
+        KsefInvoiceQueryRequest queryRequest = read(call.body(), KsefInvoiceQueryRequest.class);
+        if (queryRequest == null || queryRequest.getQueryCriteria() == null
+                || queryRequest.getQueryCriteria().getAcquisitionTimestampThresholdFrom() == null
+                || queryRequest.getQueryCriteria().getAcquisitionTimestampThresholdTo() == null) {
+            return Reply.error(400, "Missing acquisition timestamp range");
+        }
+        Map<String, List<String>> query = new QueryStringDecoder(call.request().uri()).parameters();
+        int pageSize = query.containsKey("PageSize") ? Integer.parseInt(query.get("PageSize").get(0)) : 10;
+        int pageOffset = query.containsKey("PageOffset") ? Integer.parseInt(query.get("PageOffset").get(0)) : 0;
+
+        long first = 0;
+        long end = 0;
+        if (incomingPerHour > 0) {
+            long fromMs = queryRequest.getQueryCriteria().getAcquisitionTimestampThresholdFrom().toInstant().toEpochMilli();
+            long toMs = Math.min(System.currentTimeMillis(),
+                    queryRequest.getQueryCriteria().getAcquisitionTimestampThresholdTo().toInstant().toEpochMilli());
+            first = Math.floorDiv(fromMs + incomingIntervalMs() - 1, incomingIntervalMs());
+            end = Math.max(first, Math.floorDiv(toMs + incomingIntervalMs() - 1, incomingIntervalMs()));
+        }
+
+        List<KsefInvoiceQueryResponse.InvoiceHeader> headers = new ArrayList<>();
+        for (long slot = first + pageOffset; slot < Math.min(end, first + pageOffset + pageSize); slot++) {
+            IncomingAmounts amounts = incomingAmounts(slot);
+            headers.add(KsefInvoiceQueryResponse.InvoiceHeader.builder()
+                    .ksefReferenceNumber(incomingKsefNumber(slot))
+                    .invoiceReferenceNumber(incomingInvoiceNumber(slot))
+                    .acquisitionTimestamp(incomingAcquiredAt(slot))
+                    .invoicingDate(incomingAcquiredAt(slot).toLocalDate())
+                    .subjectBy(KsefInvoiceQueryResponse.Subject.builder()
+                            .identifier(INCOMING_SELLER_NIP)
+                            .fullName("Dostawca Symulatora Sp. z o.o.")
+                            .build())
+                    .net(amounts.net())
+                    .vat(amounts.vat())
+                    .gross(amounts.gross())
+                    .currency("PLN")
+                    .build());
+        }
+
+        return Reply.ok(KsefInvoiceQueryResponse.builder()
+                .invoiceHeaderList(headers)
+                .numberOfElements(end - first)
+                .pageSize(pageSize)
+                .pageOffset(pageOffset)
+                .timestamp(OffsetDateTime.now())
+                .build());
+    }
+
+    private Reply getInvoice(SimulatedCall call) {
+        String ksefNumber = call.request().param("ksefReferenceNumber");
+        long slot = incomingSlot(ksefNumber);
+        if (slot < 0) {
+            return Reply.error(404, "Invoice not found: " + ksefNumber);
+        }
+        IncomingAmounts amounts = incomingAmounts(slot);
+        LocalDate issueDate = incomingAcquiredAt(slot).toLocalDate();
+        return Reply.ok("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<Faktura xmlns=\"" + NAMESPACE + "\">\n"
+                + "    <Podmiot1><DaneIdentyfikacyjne><NIP>" + INCOMING_SELLER_NIP + "</NIP>"
+                + "<Nazwa>Dostawca Symulatora Sp. z o.o.</Nazwa></DaneIdentyfikacyjne></Podmiot1>\n"
+                + "    <Podmiot2><DaneIdentyfikacyjne><NIP>" + call.session().nip() + "</NIP>"
+                + "<Nazwa>Nabywca " + call.session().nip() + "</Nazwa></DaneIdentyfikacyjne></Podmiot2>\n"
+                + "    <Fa>\n"
+                + "        <KodWaluty>PLN</KodWaluty>\n"
+                + "        <P_1>" + issueDate + "</P_1>\n"
+                + "        <P_2>" + incomingInvoiceNumber(slot) + "</P_2>\n"
+                + "        <P_13_1>" + amounts.net() + "</P_13_1>\n"
+                + "        <P_14_1>" + amounts.vat() + "</P_14_1>\n"
+                + "        <P_15>" + amounts.gross() + "</P_15>\n"
+                + "    </Fa>\n"
+                + "</Faktura>\n");
+    }
+
+    private Mono<Void> triggerOutage(HttpServerRequest request, HttpServerResponse response) {
+        List<String> duration = new QueryStringDecoder(request.uri()).parameters().get("durationMs");
+        long durationMs = duration != null ? Long.parseLong(duration.get(0)) : outageDurationMs;
+        manualOutageUntilMs.set(System.currentTimeMillis() + durationMs);
+        log.warn("KSeF simulator outage triggered for {} ms", durationMs);
+        return send(response, Reply.ok(Map.of("outageMs", durationMs)));
+    }
+
+    // === Zachowanie symulatora ===
+
+    private long incomingIntervalMs() {
+        return Math.max(1, 3_600_000L / incomingPerHour);
+    }
+
+    private OffsetDateTime incomingAcquiredAt(long slot) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(slot * incomingIntervalMs()), ZoneId.systemDefault());
+    }
+
+    private String incomingKsefNumber(long slot) {
+        return INCOMING_SELLER_NIP + "-" + incomingAcquiredAt(slot).format(DATE) + "-"
+                + String.format("%012X-%02X", slot, slot & 0xFF);
+    }
+
+    /**
+     * Pozycja w strumieniu faktur zakupowych zakodowana w numerze KSeF, -1 dla obcych numerów
+     */
+    private long incomingSlot(String ksefNumber) {
+        String[] parts = ksefNumber != null ? ksefNumber.split("-") : new String[0];
+        if (incomingPerHour <= 0 || parts.length != 4 || !parts[0].equals(INCOMING_SELLER_NIP)) {
+            return -1;
+        }
+        try {
+            long slot = Long.parseLong(parts[2], 16);
+            return incomingKsefNumber(slot).equals(ksefNumber)
+                    && slot * incomingIntervalMs() <= System.currentTimeMillis() ? slot : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String incomingInvoiceNumber(long slot) {
+        return "FZ/SIM/" + slot;
+    }
+
+    private static IncomingAmounts incomingAmounts(long slot) {
+        BigDecimal net = BigDecimal.valueOf(10_000 + slot % 90_000, 2);
+        BigDecimal vat = net.multiply(new BigDecimal("0.23")).setScale(2, RoundingMode.HALF_UP);
+        return new IncomingAmounts(net, vat, net.add(vat));
+    }
+
+    private boolean isOutage(long nowMs) {
+        if (nowMs < manualOutageUntilMs.get()) {
+            return true;
+        }
+        return outageEveryMs > 0 && outageDurationMs > 0
+                && (nowMs - startedAtMs) % outageEveryMs >= outageEveryMs - outageDurationMs;
+    }
+
+    /**
+     * Limit żądań w oknach sekundowych (jak limity KSeF liczone per sekunda)
+     */
+    private synchronized boolean tryAcquireRate(long nowMs) {
+        if (rateLimitPerSecond <= 0) {
+            return true;
+        }
+        if (nowMs - rateWindowStartMs >= 1000) {
+            rateWindowStartMs = nowMs;
+            rateWindowCount = 0;
+        }
+        return ++rateWindowCount <= rateLimitPerSecond;
+    }
+
+    private SimSession findSession(String token) {
+        if (token == null) {
+            return null;
+        }
+        SimSession session = sessions.get(token);
+        if (session != null && session.expiresAtMs() < System.currentTimeMillis()) {
+            sessions.remove(token);
+            return null;
+        }
+        return session;
+    }
+
+    private Mono<Void> send(HttpServerResponse response, Reply reply) {
+        // Dokument faktury (Invoice/Get) zwracany jako XML, pozostałe odpowiedzi jako JSON
+        if (reply.body() instanceof String xml) {
+            response.status(reply.status())
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_XML_VALUE);
+            return response.sendString(Mono.just(xml)).then();
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(reply.body());
+        } catch (JsonProcessingException e) {
+            return response.status(500).send();
+        }
+        response.status(reply.status())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        reply.headers().forEach(response::header);
+        return response.sendString(Mono.just(json)).then();
+    }
+
+    private <T> T read(String body, Class<T> type) {
+        try {
+            return body.isEmpty() ? null : objectMapper.readValue(body, type);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private static String upoXml(SimInvoice invoice) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<Potwierdzenie xmlns=\"http://upo.schematy.mf.gov.pl/KSeF/v4-2\">\n"
+                + "    <NazwaPodmiotuPrzyjmujacego>Symulator KSeF</NazwaPodmiotuPrzyjmujacego>\n"
+                + "    <Dokument>\n"
+                + "        <NipSprzedawcy>" + invoice.nip() + "</NipSprzedawcy>\n"
+                + "        <NumerKSeFDokumentu>" + invoice.ksefNumber() + "</NumerKSeFDokumentu>\n"
+                + "        <DataNadaniaNumeruKSeF>" + invoice.acceptedAt().withNano(0) + "</DataNadaniaNumeruKSeF>\n"
+                + "        <SkrotDokumentu>" + invoice.hash() + "</SkrotDokumentu>\n"
+                + "    </Dokument>\n"
+                + "</Potwierdzenie>\n";
+    }
+
+    private static String sha256Base64(byte[] data) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private KsefPublicKeyCertificate publicKeyCertificate() {
+        // Sam klucz (SubjectPublicKeyInfo) zamiast certyfikatu - KsefPayloadEncryption obsługuje obie postaci
+        return KsefPublicKeyCertificate.builder()
+                .certificate(Base64.getEncoder().encodeToString(encryptionKeyPair.getPublic().getEncoded()))
+                .usage(List.of(KsefPublicKeyCertificate.SYMMETRIC_KEY_ENCRYPTION))
+                .build();
+    }
+
+    private SecretKey unwrapSessionKey(String encryptedKey) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        cipher.init(Cipher.DECRYPT_MODE, encryptionKeyPair.getPrivate(),
+                new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT));
+        return new SecretKeySpec(cipher.doFinal(Base64.getDecoder().decode(encryptedKey)), "AES");
+    }
+
+    private static byte[] decrypt(SecretKey key, byte[] ivAndCiphertext) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, ivAndCiphertext, 0, 12));
+        return cipher.doFinal(ivAndCiphertext, 12, ivAndCiphertext.length - 12);
+    }
+
+    private static String randomHex(int length) {
+        StringBuilder hex = new StringBuilder(length);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < length; i++) {
+            hex.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return hex.toString().toUpperCase(Locale.ROOT);
+    }
+
+    private record SimulatedCall(HttpServerRequest request, SimSession session, String body) {
+    }
+
+    private record SimSession(String token, String referenceNumber, String nip, long expiresAtMs, SecretKey key) {
+    }
+
+    private record SimInvoice(String ksefNumber, String nip, LocalDateTime acceptedAt, long upoReadyAtMs, String hash) {
+    }
+
+    private record IncomingAmounts(BigDecimal net, BigDecimal vat, BigDecimal gross) {
+    }
+
+    private record Reply(int status, Object body, Map<String, String> headers) {
+
+        static Reply ok(Object body) {
+            return new Reply(200, body, Map.of());
+        }
+
+        static Reply error(int status, String description) {
+            return new Reply(status, KsefErrorResponse.builder()
+                    .exception(KsefErrorResponse.ExceptionDetails.builder()
+                            .serviceCode(String.valueOf(status))
+                            .serviceName("KSeF Simulator")
+                            .timestamp(OffsetDateTime.now())
+                            .exceptionDetailList(List.of(KsefErrorResponse.ExceptionDetails.ExceptionDetail.builder()
+                                    .exceptionCode(status)
+                                    .exceptionDescription(description)
+                                    .build()))
+                            .build())
+                    .build(), Map.of());
+        }
+
+        Reply withHeader(String name, String value) {
+            return new Reply(status, body, Map.of(name, value));
+        }
+    }
+
+    private static class EndpointCounters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder unavailable = new LongAdder();
+    }
+
+    public record EndpointStats(long requests, long ok, long throttled, long failed, long unavailable) {
+    }
+
+    public record SimulatorStats(int sessions, int invoices, boolean outage, Map<String, EndpointStats> endpoints) {
+    }
+}
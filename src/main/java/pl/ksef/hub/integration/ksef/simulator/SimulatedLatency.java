@@ -0,0 +1,37 @@
+package pl.ksef.hub.integration.ksef.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Rozkład opóźnień symulatora KSeF - log-normalny opisany medianą i 99. percentylem.
+ *
+ * Czasy odpowiedzi usług HTTP mają zwykle długi prawy ogon, dlatego zamiast stałego
+ * opóźnienia losowane jest median * exp(sigma * Z), gdzie sigma dobrana jest tak,
+ * aby 99% próbek nie przekraczało p99. Przy p99 <= median opóźnienie jest stałe.
+ */
+class SimulatedLatency {
+
+    // Kwantyl 0.99 standardowego rozkładu normalnego
+    private static final double Z_99 = 2.326;
+
+    private final long medianMs;
+    private final double sigma;
+
+    SimulatedLatency(long medianMs, long p99Ms) {
+        this.medianMs = Math.max(0, medianMs);
+        this.sigma = medianMs > 0 && p99Ms > medianMs
+                ? Math.log((double) p99Ms / medianMs) / Z_99
+                : 0.0;
+    }
+
+    /**
+     * Losuje opóźnienie w milisekundach
+     */
+    long sampleMs() {
+        if (medianMs == 0 || sigma == 0.0) {
+            return medianMs;
+        }
+        double z = ThreadLocalRandom.current().nextGaussian();
+        return Math.round(medianMs * Math.exp(sigma * z));
+    }
+}
@@ -1,9 +1,13 @@
 package pl.ksef.hub.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.io.DecodingException;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.WeakKeyException;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
@@ -17,6 +21,10 @@ import java.util.function.Function;
 @Service
 public class JwtService {
 
+    public static final String CLAIM_ROLE = "role";
+    public static final String CLAIM_TENANT_ID = "tenantId";
+    public static final String CLAIM_USER_ID = "uid";
+
     @Value("${security.jwt.secret}")
     private String secretKey;
 
@@ -26,12 +34,41 @@ public class JwtService {
     @Value("${security.jwt.refresh-expiration}")
     private long refreshExpiration;
 
+    // Klucz HMAC i parser są niemutowalne i bezpieczne wątkowo - budowane raz
+    private SecretKey signInKey;
+    private JwtParser jwtParser;
+
+    /**
+     * Sekret musi być kluczem HMAC w Base64 (co najmniej 256 bitów) - niepoprawny zatrzymuje start,
+     * zamiast ujawnić się dopiero przy pierwszym logowaniu
+     */
+    @PostConstruct
+    void init() {
+        try {
+            signInKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        } catch (DecodingException | WeakKeyException e) {
+            throw new IllegalStateException("security.jwt.secret must be a Base64-encoded key of at least 256 bits: "
+                    + e.getMessage(), e);
+        }
+        jwtParser = Jwts.parser()
+                .verifyWith(signInKey)
+                .build();
+    }
+
+    /**
+     * Parsuje token, weryfikuje podpis i datę ważności - jednokrotnie.
+     * Rzuca JwtException dla tokenu niepoprawnego lub wygasłego.
+     */
+    public Claims parseToken(String token) {
+        return jwtParser.parseSignedClaims(token).getPayload();
+    }
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
+        final Claims claims = parseToken(token);
         return claimsResolver.apply(claims);
     }
 
@@ -58,34 +95,13 @@ public class JwtService {
                 .subject(userDetails.getUsername())
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSignInKey())
+                .signWith(signInKey)
                 .compact();
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
-    }
-
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
-    }
-
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
-    }
-
-    private Claims extractAllClaims(String token) {
-        return Jwts
-                .parser()
-                .verifyWith((SecretKey) getSignInKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-    }
-
-    private SecretKey getSignInKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+        // parseToken odrzuca również tokeny wygasłe
+        final Claims claims = parseToken(token);
+        return claims.getSubject().equals(userDetails.getUsername());
     }
 }
@@ -0,0 +1,62 @@
+package pl.ksef.hub.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import pl.ksef.hub.config.CacheConfig;
+import pl.ksef.hub.domain.repository.UserRepository;
+
+/**
+ * Krótkotrwały cache stanu użytkowników dla uwierzytelniania JWT.
+ *
+ * Filtr JWT nie odpytuje bazy przy każdym żądaniu - sprawdza jedynie, czy użytkownik
+ * nadal istnieje i jest aktywny. Dezaktywacja lub usunięcie konta działa najpóźniej
+ * po upływie TTL cache "principals" (albo od razu po wywołaniu evict).
+ */
+@Slf4j
+@Component
+public class UserPrincipalCache {
+
+    private final UserRepository userRepository;
+    private final Cache cache;
+
+    public UserPrincipalCache(UserRepository userRepository, CacheManager cacheManager) {
+        this.userRepository = userRepository;
+        this.cache = cacheManager.getCache(CacheConfig.PRINCIPALS);
+    }
+
+    /**
+     * Zwraca stan użytkownika z cache lub ładuje go z bazy (nieistniejący = nieaktywny).
+     * Równoległe odczyty tego samego, brakującego wpisu wykonują jedno zapytanie.
+     */
+    public CachedPrincipal get(String email) {
+        return cache.get(email, () -> load(email));
+    }
+
+    /**
+     * Usuwa użytkownika z cache (np. po zmianie roli lub dezaktywacji)
+     */
+    public void evict(String email) {
+        cache.evict(email);
+    }
+
+    public void evictAll() {
+        cache.clear();
+    }
+
+    private CachedPrincipal load(String email) {
+        log.debug("Loading principal state for: {}", email);
+        return userRepository.findByEmail(email)
+                .map(user -> new CachedPrincipal(
+                        user.getId(),
+                        user.getEmail(),
+                        user.getRole().name(),
+                        user.getTenant() != null ? user.getTenant().getId() : null,
+                        Boolean.TRUE.equals(user.getActive())))
+                .orElseGet(() -> new CachedPrincipal(null, email, null, null, false));
+    }
+
+    public record CachedPrincipal(Long userId, String email, String role, Long tenantId, boolean active) {
+    }
+}
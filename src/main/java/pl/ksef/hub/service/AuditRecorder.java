@@ -0,0 +1,432 @@
+package pl.ksef.hub.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import pl.ksef.hub.domain.entity.AuditLog.ActionType;
+import pl.ksef.hub.security.UserPrincipalCache;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchroniczny zapis śladu audytowego (audit_logs).
+ *
+ * Zdarzenia z kontrolerów i serwisów KSeF trafiają do ograniczonego bufora pierścieniowego
+ * bez blokad (CAS na sekwencjach slotów) - wywołujący nie wykonuje I/O ani nie czeka na monitor.
+ * Wątek audit-writer opróżnia bufor wsadowymi INSERT-ami co flush-interval-ms lub od razu
+ * po zebraniu batch-size zdarzeń.
+ *
+ * Zachowanie przy zapełnionym buforze (hub.audit.overflow-policy):
+ * - DROP_NEWEST - nowe zdarzenie jest odrzucane,
+ * - DROP_OLDEST - najstarsze oczekujące zdarzenie ustępuje miejsca nowemu,
+ * - CALLER_RUNS - wywołujący zapisuje swoje zdarzenie synchronicznie (pełny audyt kosztem opóźnienia).
+ *
+ * Metryki: hub.audit.pending, hub.audit.dropped, hub.audit.written, hub.audit.failed
+ * oraz hub.audit.lag - czas od zdarzenia do zapisu w bazie.
+ */
+@Slf4j
+@Component
+public class AuditRecorder {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO audit_logs (tenant_id, user_id, action_type, entity_type, entity_id, description, " +
+            "details, ip_address, user_agent, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    public enum OverflowPolicy {
+        DROP_NEWEST,
+        DROP_OLDEST,
+        CALLER_RUNS
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserPrincipalCache principalCache;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final RingBuffer<AuditEvent> buffer;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+
+    private Counter droppedCounter;
+    private Counter writtenCounter;
+    private Counter failedCounter;
+    private Timer lagTimer;
+
+    private volatile boolean running;
+    private volatile Thread writer;
+
+    public AuditRecorder(JdbcTemplate jdbcTemplate,
+                         UserPrincipalCache principalCache,
+                         MeterRegistry meterRegistry,
+                         @Value("${hub.audit.enabled:true}") boolean enabled,
+                         @Value("${hub.audit.capacity:65536}") int capacity,
+                         @Value("${hub.audit.batch-size:500}") int batchSize,
+                         @Value("${hub.audit.flush-interval-ms:200}") long flushIntervalMs,
+                         @Value("${hub.audit.overflow-policy:DROP_NEWEST}") OverflowPolicy overflowPolicy) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.principalCache = principalCache;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMs));
+        this.overflowPolicy = overflowPolicy;
+        this.buffer = new RingBuffer<>(capacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("hub.audit.pending", buffer, RingBuffer::size)
+                .description("Audit events waiting to be written")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("hub.audit.dropped")
+                .description("Audit events dropped because the buffer was full")
+                .tag("policy", overflowPolicy.name())
+                .register(meterRegistry);
+        writtenCounter = Counter.builder("hub.audit.written").register(meterRegistry);
+        failedCounter = Counter.builder("hub.audit.failed").register(meterRegistry);
+        lagTimer = Timer.builder("hub.audit.lag")
+                .description("Time from audit event capture to database write")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::writeLoop, "audit-writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+        log.info("Audit recorder started (capacity: {}, batch size: {}, overflow policy: {})",
+                buffer.capacity(), batchSize, overflowPolicy);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Thread thread = writer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Zdarzenia z końca pracy (np. zamknięcie sesji KSeF przy zatrzymaniu Huba)
+        while (flush() > 0) {
+            // opróżnianie do końca
+        }
+    }
+
+    /**
+     * Rejestruje zdarzenie użytkownika bieżącego żądania (z SecurityContext)
+     */
+    public boolean record(ActionType actionType, Long tenantId, String entityType, Object entityId, String description) {
+        return record(actionType, tenantId, null, entityType, entityId, description, null);
+    }
+
+    public boolean record(ActionType actionType, Long tenantId, String entityType, Object entityId,
+                          String description, String details) {
+        return record(actionType, tenantId, null, entityType, entityId, description, details);
+    }
+
+    /**
+     * Rejestruje zdarzenie. Nie wykonuje I/O (poza polityką CALLER_RUNS przy pełnym buforze).
+     *
+     * @param userEmail użytkownik, gdy nie ma go jeszcze w SecurityContext (np. logowanie); null - z kontekstu
+     * @return false, jeśli zdarzenie zostało odrzucone
+     */
+    public boolean record(ActionType actionType, Long tenantId, String userEmail, String entityType, Object entityId,
+                          String description, String details) {
+        if (!enabled) {
+            return false;
+        }
+        AuditEvent event = capture(actionType, tenantId, userEmail, entityType, entityId, description, details);
+        recorded.incrementAndGet();
+
+        if (!buffer.offer(event)) {
+            switch (overflowPolicy) {
+                case DROP_OLDEST -> {
+                    if (buffer.poll() != null) {
+                        drop();
+                    }
+                    if (!buffer.offer(event)) {
+                        drop();
+                        return false;
+                    }
+                }
+                case CALLER_RUNS -> {
+                    callerRuns.incrementAndGet();
+                    write(List.of(event));
+                    return true;
+                }
+                default -> {
+                    drop();
+                    return false;
+                }
+            }
+        }
+
+        if (buffer.size() >= batchSize) {
+            Thread thread = writer;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Zapisuje oczekujące zdarzenia (do batch-size)
+     *
+     * @return liczba zdarzeń pobranych z bufora
+     */
+    public int flush() {
+        List<AuditEvent> batch = new ArrayList<>(Math.min(batchSize, Math.max(1, buffer.size())));
+        AuditEvent event;
+        while (batch.size() < batchSize && (event = buffer.poll()) != null) {
+            batch.add(event);
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+        return batch.size();
+    }
+
+    /**
+     * Statystyki bufora audytu
+     */
+    public AuditStats getStats() {
+        return new AuditStats(enabled, overflowPolicy, buffer.capacity(), buffer.size(), recorded.get(),
+                dropped.get(), callerRuns.get(), written.get(), failed.get(), maxLagMillis.get());
+    }
+
+    // === Wątek zapisu ===
+
+    private void writeLoop() {
+        while (running) {
+            try {
+                if (flush() < batchSize) {
+                    LockSupport.parkNanos(this, flushIntervalNanos);
+                }
+            } catch (Exception e) {
+                log.error("Audit writer flush failed", e);
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+        }
+    }
+
+    private void write(List<AuditEvent> events) {
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, events, events.size(), this::bind);
+            written(events);
+        } catch (Exception e) {
+            // Jeden błędny wiersz (np. nieistniejący klient) nie odrzuca całego wsadu
+            log.warn("Audit batch of {} events failed, retrying row by row: {}", events.size(), e.getMessage());
+            for (AuditEvent event : events) {
+                try {
+                    jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, event));
+                    written(List.of(event));
+                } catch (Exception rowError) {
+                    failed.incrementAndGet();
+                    failedCounter.increment();
+                    log.error("Failed to write audit event {} {}:{} - {}", event.actionType(), event.entityType(),
+                            event.entityId(), rowError.getMessage());
+                }
+            }
+        }
+    }
+
+    private void bind(PreparedStatement ps, AuditEvent event) throws SQLException {
+        Long userId = resolveUserId(event.userEmail());
+        ps.setObject(1, event.tenantId());
+        ps.setObject(2, userId);
+        ps.setString(3, event.actionType().name());
+        ps.setString(4, event.entityType());
+        ps.setString(5, event.entityId());
+        ps.setString(6, truncate(event.description(), 200));
+        ps.setString(7, event.details());
+        ps.setString(8, truncate(event.ipAddress(), 50));
+        ps.setString(9, truncate(event.userAgent(), 500));
+        ps.setTimestamp(10, Timestamp.valueOf(event.createdAt()));
+    }
+
+    private void written(List<AuditEvent> events) {
+        long now = System.nanoTime();
+        written.addAndGet(events.size());
+        writtenCounter.increment(events.size());
+        for (AuditEvent event : events) {
+            long lagNanos = now - event.capturedAtNanos();
+            lagTimer.record(lagNanos, TimeUnit.NANOSECONDS);
+            maxLagMillis.accumulateAndGet(TimeUnit.NANOSECONDS.toMillis(lagNanos), Math::max);
+        }
+    }
+
+    private void drop() {
+        dropped.incrementAndGet();
+        droppedCounter.increment();
+    }
+
+    // === Kontekst zdarzenia ===
+
+    /**
+     * Kontekst żądania (użytkownik, IP, User-Agent) odczytywany z ThreadLocal wątku wywołującego;
+     * identyfikator użytkownika ustalany jest dopiero przy zapisie (cache principals)
+     */
+    private static AuditEvent capture(ActionType actionType, Long tenantId, String userEmail, String entityType,
+                                      Object entityId, String description, String details) {
+        String email = userEmail;
+        if (email == null) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication != null && authentication.isAuthenticated()
+                    && !"anonymousUser".equals(authentication.getName())) {
+                email = authentication.getName();
+            }
+        }
+        String ipAddress = null;
+        String userAgent = null;
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            HttpServletRequest request = servletAttributes.getRequest();
+            // Adres klienta za proxy ustala RemoteIpValve (server.forward-headers-strategy) - tylko
+            // od zaufanych proxy; nagłówek X-Forwarded-For od klienta mógłby być dowolny
+            ipAddress = request.getRemoteAddr();
+            userAgent = request.getHeader("User-Agent");
+        }
+        return new AuditEvent(actionType, tenantId, email, entityType,
+                entityId != null ? entityId.toString() : null, description, details, ipAddress, userAgent,
+                LocalDateTime.now(), System.nanoTime());
+    }
+
+    private Long resolveUserId(String email) {
+        if (email == null) {
+            return null;
+        }
+        try {
+            return principalCache.get(email).userId();
+        } catch (Exception e) {
+            log.debug("Cannot resolve audit user {}: {}", email, e.getMessage());
+            return null;
+        }
+    }
+
+    private static String truncate(String value, int length) {
+        return value != null && value.length() > length ? value.substring(0, length) : value;
+    }
+
+    private record AuditEvent(ActionType actionType, Long tenantId, String userEmail, String entityType,
+                              String entityId, String description, String details, String ipAddress,
+                              String userAgent, LocalDateTime createdAt, long capturedAtNanos) {
+    }
+
+    /**
+     * Ograniczona kolejka MPMC na tablicy pierścieniowej (algorytm D. Vyukova).
+     *
+     * Każdy slot ma numer sekwencji: producent rezerwuje pozycję CAS-em na tail, gdy sekwencja slotu
+     * równa się pozycji, i publikuje element ustawiając sekwencję na pozycję + 1; konsument
+     * analogicznie na head. Brak blokad - przy pełnym buforze offer() zwraca false.
+     */
+    static final class RingBuffer<E> {
+        private final int mask;
+        private final AtomicReferenceArray<E> items;
+        private final AtomicLongArray sequences;
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+
+        RingBuffer(int requestedCapacity) {
+            int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+            this.mask = capacity - 1;
+            this.items = new AtomicReferenceArray<>(capacity);
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(E item) {
+            long position = tail.get();
+            while (true) {
+                int index = (int) (position & mask);
+                long difference = sequences.get(index) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        items.set(index, item);
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                    position = tail.get();
+                } else if (difference < 0) {
+                    return false;
+                } else {
+                    position = tail.get();
+                }
+            }
+        }
+
+        E poll() {
+            long position = head.get();
+            while (true) {
+                int index = (int) (position & mask);
+                long difference = sequences.get(index) - (position + 1);
+                if (difference == 0) {
+                    if (head.compareAndSet(position, position + 1)) {
+                        E item = items.get(index);
+                        items.set(index, null);
+                        sequences.set(index, position + mask + 1);
+                        return item;
+                    }
+                    position = head.get();
+                } else if (difference < 0) {
+                    return null;
+                } else {
+                    position = head.get();
+                }
+            }
+        }
+
+        int size() {
+            return (int) Math.max(0, Math.min(tail.get() - head.get(), capacity()));
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+    }
+
+    public record AuditStats(boolean enabled, OverflowPolicy overflowPolicy, int capacity, int pending,
+                             long recorded, long dropped, long callerRuns, long written, long failed,
+                             long maxLagMillis) {
+    }
+}
@@ -14,8 +14,11 @@ import pl.ksef.hub.api.dto.UserDTO;
 import pl.ksef.hub.domain.entity.User;
 import pl.ksef.hub.domain.repository.UserRepository;
 import pl.ksef.hub.security.JwtService;
+import pl.ksef.hub.security.UserPrincipalCache;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
 
 @Slf4j
 @Service
@@ -26,6 +29,7 @@ public class AuthService {
     private final PasswordEncoder passwordEncoder;
     private final JwtService jwtService;
     private final AuthenticationManager authenticationManager;
+    private final UserPrincipalCache principalCache;
 
     @Transactional
     public AuthResponse authenticate(AuthRequest request) {
@@ -42,8 +46,16 @@ public class AuthService {
         // Update last login
         user.setLastLoginAt(LocalDateTime.now());
         userRepository.save(user);
+        principalCache.evict(user.getEmail());
+
+        // Rola i tenant w claimach - informacyjnie dla klienta; uprawnienia filtr JWT bierze z UserPrincipalCache
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(JwtService.CLAIM_ROLE, user.getRole().name());
+        claims.put(JwtService.CLAIM_TENANT_ID, user.getTenant().getId());
+        claims.put(JwtService.CLAIM_USER_ID, user.getId());
 
         var jwtToken = jwtService.generateToken(
+                claims,
                 org.springframework.security.core.userdetails.User.builder()
                         .username(user.getEmail())
                         .password(user.getPasswordHash())
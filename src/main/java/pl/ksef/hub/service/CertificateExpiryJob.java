@@ -0,0 +1,99 @@
+package pl.ksef.hub.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pl.ksef.hub.domain.entity.Certificate;
+import pl.ksef.hub.service.CertificateService.ExpiredCertificate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Zadanie okresowe wygaszające certyfikaty po terminie ważności
+ *
+ * Przebieg to stała liczba poleceń SQL niezależnie od liczby certyfikatów: jeden UPDATE ... RETURNING
+ * i jedno zbiorcze powiadomienie. Osobny przebieg ostrzega o certyfikatach wygasających w ciągu
+ * warning-days dni.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CertificateExpiryJob {
+
+    // Szczegóły powiadomienia wymieniają tylko początek listy
+    static final int MAX_LISTED = 50;
+
+    private final CertificateService certificateService;
+    private final SystemNotificationService notificationService;
+    private final WorkPartitionService workPartitionService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${hub.certificates.expiry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hub.certificates.expiry.warning-days:30}")
+    private int warningDays;
+
+    @Scheduled(fixedDelayString = "${hub.certificates.expiry.interval-ms:3600000}",
+            initialDelayString = "${hub.certificates.expiry.initial-delay-ms:60000}")
+    public void expireCertificates() {
+        // Jedna instancja w klastrze - właściciel partycji wiodącej
+        if (!enabled || !workPartitionService.isLeader()) {
+            return;
+        }
+        try {
+            List<ExpiredCertificate> expired = certificateService.updateExpiredCertificates();
+            if (!expired.isEmpty()) {
+                notificationService.notifyCertificatesExpired(expired.size(), details(expired,
+                        (cert, node) -> entry(node, cert.id(), cert.tenantId(), cert.certificateId(),
+                                cert.expiresAt())));
+            }
+        } catch (Exception e) {
+            log.error("Certificate expiry sweep failed", e);
+        }
+    }
+
+    @Scheduled(cron = "${hub.certificates.expiry.warning-cron:0 0 7 * * *}")
+    public void warnAboutExpiringCertificates() {
+        if (!enabled || !workPartitionService.isLeader()) {
+            return;
+        }
+        try {
+            List<Certificate> expiring = certificateService.findExpiringCertificates(warningDays);
+            if (!expiring.isEmpty()) {
+                log.info("{} certificates expire within {} days", expiring.size(), warningDays);
+                notificationService.notifyCertificatesExpiring(expiring.size(), warningDays, details(expiring,
+                        (cert, node) -> entry(node, cert.getId(), cert.getTenant().getId(),
+                                cert.getCertificateId(), cert.getExpiresAt())));
+            }
+        } catch (Exception e) {
+            log.error("Certificate expiry warning failed", e);
+        }
+    }
+
+    <T> String details(List<T> certificates, BiConsumer<T, ObjectNode> entry) throws JsonProcessingException {
+        ObjectNode details = objectMapper.createObjectNode();
+        details.put("count", certificates.size());
+        details.put("truncated", certificates.size() > MAX_LISTED);
+        ArrayNode listed = details.putArray("certificates");
+        certificates.stream()
+                .limit(MAX_LISTED)
+                .forEach(cert -> entry.accept(cert, listed.addObject()));
+        return objectMapper.writeValueAsString(details);
+    }
+
+    private static void entry(ObjectNode node, Long id, Long tenantId, String certificateId, LocalDateTime expiresAt) {
+        node.put("id", id);
+        node.put("tenant_id", tenantId);
+        node.put("certificate_id", certificateId);
+        node.put("expires_at", expiresAt != null ? expiresAt.toString() : null);
+    }
+}
@@ -1,14 +1,22 @@
 package pl.ksef.hub.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import pl.ksef.hub.config.CacheConfig;
+import pl.ksef.hub.config.DatabaseDialect;
 import pl.ksef.hub.domain.entity.Certificate;
 import pl.ksef.hub.domain.entity.Tenant;
 import pl.ksef.hub.domain.repository.CertificateRepository;
 import pl.ksef.hub.exception.ResourceNotFoundException;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -17,8 +25,29 @@ import java.util.List;
 @RequiredArgsConstructor
 public class CertificateService {
 
+    private static final String EXPIRE_SQL =
+            "UPDATE certificates SET status = 'EXPIRED', updated_at = ? " +
+            "WHERE status = 'ACTIVE' AND expires_at < ? " +
+            "RETURNING id, tenant_id, certificate_id, expires_at";
+
+    // H2 nie obsługuje RETURNING - odpowiednikiem jest tabela delta zmiany danych
+    private static final String EXPIRE_SQL_H2 =
+            "SELECT id, tenant_id, certificate_id, expires_at FROM FINAL TABLE (" +
+            "UPDATE certificates SET status = 'EXPIRED', updated_at = ? " +
+            "WHERE status = 'ACTIVE' AND expires_at < ?)";
+
     private final CertificateRepository certificateRepository;
     private final TenantService tenantService;
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheManager cacheManager;
+    private final DatabaseDialect databaseDialect;
+
+    private boolean postgreSql;
+
+    @PostConstruct
+    void init() {
+        postgreSql = databaseDialect.isPostgreSql();
+    }
 
     @Transactional(readOnly = true)
     public List<Certificate> findByTenant(Long tenantId) {
@@ -37,9 +66,30 @@ public class CertificateService {
                 .orElseThrow(() -> new ResourceNotFoundException("Certificate not found with ID: " + certificateId));
     }
 
+    /**
+     * Aktywne certyfikaty klienta
+     *
+     * Cache jest lokalny dla węzła - wygaszenie na innym węźle go nie czyści, dlatego termin ważności
+     * sprawdzany jest także na wyniku z cache (certyfikat po terminie nie jest zwracany, nawet zanim
+     * CertificateExpiryJob zmieni jego status). W cache trzymane są niemutowalne kopie bez danych
+     * certyfikatu i klucza - nie encje z leniwą relacją do klienta.
+     */
     @Transactional(readOnly = true)
-    public List<Certificate> findActiveCertificates(Long tenantId) {
-        return certificateRepository.findActiveCertificatesByTenant(tenantId, LocalDateTime.now());
+    public List<CachedCertificate> findActiveCertificates(Long tenantId) {
+        LocalDateTime now = LocalDateTime.now();
+        Cache cache = cacheManager.getCache(CacheConfig.ACTIVE_CERTIFICATES);
+        List<CachedCertificate> certificates = cache != null
+                ? cache.get(tenantId, () -> loadActiveCertificates(tenantId, now))
+                : loadActiveCertificates(tenantId, now);
+        return certificates.stream()
+                .filter(certificate -> certificate.expiresAt().isAfter(now))
+                .toList();
+    }
+
+    private List<CachedCertificate> loadActiveCertificates(Long tenantId, LocalDateTime now) {
+        return certificateRepository.findActiveCertificatesByTenant(tenantId, now).stream()
+                .map(certificate -> CachedCertificate.of(tenantId, certificate))
+                .toList();
     }
 
     @Transactional(readOnly = true)
@@ -48,6 +98,7 @@ public class CertificateService {
         return certificateRepository.findExpiringCertificates(expiryDate);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.ACTIVE_CERTIFICATES, allEntries = true)
     @Transactional
     public Certificate create(Long tenantId, Certificate certificate) {
         Tenant tenant = tenantService.findById(tenantId);
@@ -58,6 +109,7 @@ public class CertificateService {
         return certificateRepository.save(certificate);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.ACTIVE_CERTIFICATES, allEntries = true)
     @Transactional
     public Certificate update(Long id, Certificate certificateData) {
         Certificate certificate = findById(id);
@@ -69,6 +121,7 @@ public class CertificateService {
         return certificateRepository.save(certificate);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.ACTIVE_CERTIFICATES, allEntries = true)
     @Transactional
     public void activate(Long id) {
         Certificate certificate = findById(id);
@@ -77,6 +130,7 @@ public class CertificateService {
         log.info("Activated certificate: {}", id);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.ACTIVE_CERTIFICATES, allEntries = true)
     @Transactional
     public void revoke(Long id) {
         Certificate certificate = findById(id);
@@ -85,6 +139,7 @@ public class CertificateService {
         log.info("Revoked certificate: {}", id);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.ACTIVE_CERTIFICATES, allEntries = true)
     @Transactional
     public void delete(Long id) {
         Certificate certificate = findById(id);
@@ -93,27 +148,53 @@ public class CertificateService {
     }
 
     /**
-     * Check and update expired certificates
+     * Oznacza jako EXPIRED wszystkie aktywne certyfikaty po terminie ważności.
+     *
+     * Jedno polecenie UPDATE ... RETURNING niezależnie od liczby certyfikatów; cache aktywnych
+     * certyfikatów czyszczony jest tylko dla klientów, których certyfikaty wygasły.
+     *
+     * @return wygaszone certyfikaty
      */
-    @Transactional
-    public void updateExpiredCertificates() {
-        List<Certificate> activeCerts = certificateRepository.findByTenantIdAndStatus(
-                null, Certificate.CertificateStatus.ACTIVE);
-        
+    public List<ExpiredCertificate> updateExpiredCertificates() {
         LocalDateTime now = LocalDateTime.now();
-        int updatedCount = 0;
-        
-        for (Certificate cert : activeCerts) {
-            if (cert.getExpiresAt().isBefore(now)) {
-                cert.setStatus(Certificate.CertificateStatus.EXPIRED);
-                certificateRepository.save(cert);
-                updatedCount++;
-                log.info("Marked certificate {} as expired", cert.getId());
-            }
+        List<ExpiredCertificate> expired = jdbcTemplate.query(postgreSql ? EXPIRE_SQL : EXPIRE_SQL_H2,
+                (rs, rowNum) -> new ExpiredCertificate(
+                        rs.getLong("id"),
+                        rs.getLong("tenant_id"),
+                        rs.getString("certificate_id"),
+                        rs.getTimestamp("expires_at").toLocalDateTime()),
+                Timestamp.valueOf(now), Timestamp.valueOf(now));
+
+        Cache activeCertificates = cacheManager.getCache(CacheConfig.ACTIVE_CERTIFICATES);
+        if (activeCertificates != null) {
+            expired.stream()
+                    .map(ExpiredCertificate::tenantId)
+                    .distinct()
+                    .forEach(activeCertificates::evict);
         }
-        
-        if (updatedCount > 0) {
-            log.info("Updated {} expired certificates", updatedCount);
+
+        if (!expired.isEmpty()) {
+            log.info("Marked {} certificates as expired", expired.size());
+        }
+        return expired;
+    }
+
+    public record ExpiredCertificate(Long id, Long tenantId, String certificateId, LocalDateTime expiresAt) {
+    }
+
+    public record CachedCertificate(Long id, Long tenantId, String certificateId, Certificate.CertificateType type,
+                                    Certificate.CertificateStatus status, String subjectDn, String issuerDn,
+                                    LocalDateTime issuedAt, LocalDateTime expiresAt, LocalDateTime createdAt) {
+
+        static CachedCertificate of(Long tenantId, Certificate certificate) {
+            return new CachedCertificate(certificate.getId(), tenantId, certificate.getCertificateId(),
+                    certificate.getType(), certificate.getStatus(), certificate.getSubjectDn(),
+                    certificate.getIssuerDn(), certificate.getIssuedAt(), certificate.getExpiresAt(),
+                    certificate.getCreatedAt());
+        }
+
+        public boolean isValid() {
+            return status == Certificate.CertificateStatus.ACTIVE && expiresAt.isAfter(LocalDateTime.now());
         }
     }
 }
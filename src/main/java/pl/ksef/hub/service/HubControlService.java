@@ -2,11 +2,21 @@ package pl.ksef.hub.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import pl.ksef.hub.domain.entity.HubSettings;
 import pl.ksef.hub.domain.repository.HubSettingsRepository;
 
+/**
+ * Sterowanie pracą Huba.
+ * Ustawienia są trzymane w pamięci jako niemutowalna migawka (HubSettingsSnapshot) -
+ * odczyt flag to odczyt pola volatile. Migawka jest podmieniana po zatwierdzeniu
+ * zmian przez start/stop/enable/disable oraz przy okresowym sprawdzeniu wersji w bazie
+ * (zmiany wykonane przez inny węzeł lub bezpośrednio w bazie).
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -14,6 +24,8 @@ public class HubControlService {
     
     private final HubSettingsRepository hubSettingsRepository;
     private final SystemNotificationService notificationService;
+
+    private volatile HubSettingsSnapshot snapshot;
     
     @Transactional
     public void startProcessing() {
@@ -21,7 +33,7 @@ public class HubControlService {
         HubSettings settings = getOrCreateSettings();
         settings.setProcessingEnabled(true);
         settings.setUpdatedBy("SYSTEM");
-        hubSettingsRepository.save(settings);
+        publishAfterCommit(hubSettingsRepository.saveAndFlush(settings));
         
         notificationService.notifyHubInfo(
             "Przetwarzanie uruchomione",
@@ -35,7 +47,7 @@ public class HubControlService {
         HubSettings settings = getOrCreateSettings();
         settings.setProcessingEnabled(false);
         settings.setUpdatedBy("SYSTEM");
-        hubSettingsRepository.save(settings);
+        publishAfterCommit(hubSettingsRepository.saveAndFlush(settings));
         
         notificationService.notifyHubInfo(
             "Przetwarzanie zatrzymane",
@@ -49,7 +61,7 @@ public class HubControlService {
         HubSettings settings = getOrCreateSettings();
         settings.setKsefAutoConnect(true);
         settings.setUpdatedBy("SYSTEM");
-        hubSettingsRepository.save(settings);
+        publishAfterCommit(hubSettingsRepository.saveAndFlush(settings));
         
         notificationService.notifyHubInfo(
             "Automatyczne łączenie z KSeF włączone",
@@ -63,7 +75,7 @@ public class HubControlService {
         HubSettings settings = getOrCreateSettings();
         settings.setKsefAutoConnect(false);
         settings.setUpdatedBy("SYSTEM");
-        hubSettingsRepository.save(settings);
+        publishAfterCommit(hubSettingsRepository.saveAndFlush(settings));
         
         notificationService.notifyHubInfo(
             "Automatyczne łączenie z KSeF wyłączone",
@@ -71,8 +83,18 @@ public class HubControlService {
         );
     }
     
-    public HubSettings getSettings() {
-        return getOrCreateSettings();
+    public HubSettingsSnapshot getSettings() {
+        HubSettingsSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = HubSettingsSnapshot.of(getOrCreateSettings());
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
     }
     
     public boolean isProcessingEnabled() {
@@ -82,6 +104,46 @@ public class HubControlService {
     public boolean isKsefAutoConnectEnabled() {
         return getSettings().getKsefAutoConnect();
     }
+
+    /**
+     * Okresowe sprawdzenie wersji ustawień w bazie - przeładowanie migawki tylko przy zmianie
+     */
+    @Scheduled(fixedDelayString = "${hub.settings.refresh-interval-ms:5000}")
+    public void refreshIfChanged() {
+        HubSettingsSnapshot current = snapshot;
+        if (current == null) {
+            return;
+        }
+        try {
+            hubSettingsRepository.findLatestVersion()
+                    .filter(version -> !current.isSameVersion(version.getId(), version.getUpdatedAt()))
+                    .flatMap(version -> hubSettingsRepository.findFirstByOrderByIdDesc())
+                    .ifPresent(settings -> {
+                        snapshot = HubSettingsSnapshot.of(settings);
+                        log.info("Hub settings reloaded (processingEnabled: {}, ksefAutoConnect: {})",
+                                settings.getProcessingEnabled(), settings.getKsefAutoConnect());
+                    });
+        } catch (Exception e) {
+            log.warn("Failed to check hub settings version: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Podmienia migawkę dopiero po zatwierdzeniu transakcji - wycofana zmiana nie jest widoczna
+     */
+    private void publishAfterCommit(HubSettings settings) {
+        HubSettingsSnapshot updated = HubSettingsSnapshot.of(settings);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    snapshot = updated;
+                }
+            });
+        } else {
+            snapshot = updated;
+        }
+    }
     
     private HubSettings getOrCreateSettings() {
         return hubSettingsRepository.findFirstByOrderByIdDesc()
@@ -0,0 +1,40 @@
+package pl.ksef.hub.service;
+
+import lombok.Value;
+import pl.ksef.hub.domain.entity.HubSettings;
+
+import java.time.OffsetDateTime;
+import java.util.Objects;
+
+/**
+ * Niemutowalna migawka ustawień Huba trzymana w pamięci.
+ * Odczyt flag nie wymaga zapytania do bazy danych.
+ */
+@Value
+public class HubSettingsSnapshot {
+
+    Long id;
+    Boolean processingEnabled;
+    Boolean ksefAutoConnect;
+    OffsetDateTime updatedAt;
+    String updatedBy;
+
+    public static HubSettingsSnapshot of(HubSettings settings) {
+        return new HubSettingsSnapshot(
+                settings.getId(),
+                settings.getProcessingEnabled(),
+                settings.getKsefAutoConnect(),
+                settings.getUpdatedAt(),
+                settings.getUpdatedBy()
+        );
+    }
+
+    /**
+     * Czy migawka odpowiada wersji zapisanej w bazie (id + data modyfikacji)
+     */
+    public boolean isSameVersion(Long otherId, OffsetDateTime otherUpdatedAt) {
+        return Objects.equals(id, otherId)
+                && (updatedAt == null ? otherUpdatedAt == null
+                        : otherUpdatedAt != null && updatedAt.isEqual(otherUpdatedAt));
+    }
+}
@@ -0,0 +1,184 @@
+package pl.ksef.hub.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pl.ksef.hub.domain.entity.IdempotencyRecord.Status;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Magazyn wyników żądań z nagłówkiem Idempotency-Key
+ *
+ * Dwa poziomy:
+ * - w pamięci - żądania w toku na tym węźle (ConcurrentHashMap, blokady per kubełek); ponowienie
+ *   czeka na wynik oryginału zamiast odpytywać bazę,
+ * - tabela idempotency_keys - zajęcie klucza (IN_PROGRESS, wspólne dla węzłów) i zakończone
+ *   odpowiedzi (COMPLETED) przechowywane przez hub.idempotency.ttl-hours.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    private static final String FIND_SQL =
+            "SELECT request_hash, status, response_status, content_type, response_body " +
+            "FROM idempotency_keys WHERE key_hash = ? AND expires_at > ?";
+
+    private static final String CLAIM_SQL =
+            "INSERT INTO idempotency_keys (key_hash, request_hash, status, created_at, expires_at) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private static final String COMPLETE_SQL =
+            "UPDATE idempotency_keys SET status = ?, response_status = ?, content_type = ?, response_body = ?, " +
+            "expires_at = ? WHERE key_hash = ?";
+
+    private static final String RELEASE_SQL =
+            "DELETE FROM idempotency_keys WHERE key_hash = ? AND status = ?";
+
+    private static final String PURGE_SQL =
+            "DELETE FROM idempotency_keys WHERE expires_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WorkPartitionService workPartitionService;
+    private final Duration ttl;
+    private final Duration inProgressTtl;
+
+    private final ConcurrentHashMap<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong joinedInFlight = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+
+    public IdempotencyService(JdbcTemplate jdbcTemplate,
+                              WorkPartitionService workPartitionService,
+                              @Value("${hub.idempotency.ttl-hours:24}") long ttlHours,
+                              @Value("${hub.idempotency.in-progress-ttl-ms:300000}") long inProgressTtlMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.workPartitionService = workPartitionService;
+        this.ttl = Duration.ofHours(ttlHours);
+        this.inProgressTtl = Duration.ofMillis(inProgressTtlMs);
+    }
+
+    /**
+     * Rejestruje żądanie w toku na tym węźle
+     *
+     * @return wynik trwającego już żądania z tym kluczem albo null, gdy wywołujący jest pierwszy
+     */
+    public CompletableFuture<StoredResponse> joinInFlight(String keyHash, CompletableFuture<StoredResponse> own) {
+        CompletableFuture<StoredResponse> existing = inFlight.putIfAbsent(keyHash, own);
+        if (existing != null) {
+            joinedInFlight.incrementAndGet();
+        }
+        return existing;
+    }
+
+    /**
+     * Kończy żądanie w toku - oczekujące ponowienia otrzymują wynik (null - do ponowienia)
+     */
+    public void leaveInFlight(String keyHash, CompletableFuture<StoredResponse> own, StoredResponse response) {
+        inFlight.remove(keyHash, own);
+        own.complete(response);
+    }
+
+    /**
+     * Zapisana odpowiedź lub zajęcie klucza, jeśli nie wygasły
+     */
+    public Optional<StoredEntry> find(String keyHash) {
+        List<StoredEntry> entries = jdbcTemplate.query(FIND_SQL, (rs, rowNum) -> new StoredEntry(
+                rs.getString("request_hash"),
+                Status.valueOf(rs.getString("status")),
+                rs.getObject("response_status") != null
+                        ? new StoredResponse(rs.getInt("response_status"), rs.getString("content_type"),
+                                rs.getString("response_body"))
+                        : null),
+                keyHash, Timestamp.valueOf(LocalDateTime.now()));
+        return entries.stream().findFirst();
+    }
+
+    /**
+     * Zajmuje klucz w bazie (atomowo, także między węzłami)
+     *
+     * @return false, jeśli klucz jest już zajęty lub zakończony
+     */
+    public boolean claim(String keyHash, String requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            jdbcTemplate.update(CLAIM_SQL, keyHash, requestHash, Status.IN_PROGRESS.name(),
+                    Timestamp.valueOf(now), Timestamp.valueOf(now.plus(inProgressTtl)));
+            return true;
+        } catch (DuplicateKeyException e) {
+            // Wygasły wiersz (np. po awarii węzła w trakcie żądania) nie blokuje klucza
+            if (jdbcTemplate.update(PURGE_SQL + " AND key_hash = ?", Timestamp.valueOf(now), keyHash) > 0) {
+                return claim(keyHash, requestHash);
+            }
+            return false;
+        }
+    }
+
+    public void complete(String keyHash, StoredResponse response) {
+        jdbcTemplate.update(COMPLETE_SQL, Status.COMPLETED.name(), response.status(), response.contentType(),
+                response.body(), Timestamp.valueOf(LocalDateTime.now().plus(ttl)), keyHash);
+        executed.incrementAndGet();
+    }
+
+    /**
+     * Zwalnia klucz żądania zakończonego błędem serwera - ponowienie wykona operację od nowa
+     */
+    public void release(String keyHash) {
+        jdbcTemplate.update(RELEASE_SQL, keyHash, Status.IN_PROGRESS.name());
+    }
+
+    public void recordReplay() {
+        replayed.incrementAndGet();
+    }
+
+    public void recordConflict() {
+        conflicts.incrementAndGet();
+    }
+
+    public void recordMismatch() {
+        mismatches.incrementAndGet();
+    }
+
+    @Scheduled(fixedDelayString = "${hub.idempotency.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        if (!workPartitionService.isLeader()) {
+            return;
+        }
+        try {
+            int deleted = jdbcTemplate.update(PURGE_SQL, Timestamp.valueOf(LocalDateTime.now()));
+            if (deleted > 0) {
+                log.info("Purged {} expired idempotency keys", deleted);
+            }
+        } catch (Exception e) {
+            log.error("Idempotency key purge failed", e);
+        }
+    }
+
+    public IdempotencyStats getStats() {
+        return new IdempotencyStats(inFlight.size(), executed.get(), replayed.get(), joinedInFlight.get(),
+                conflicts.get(), mismatches.get());
+    }
+
+    public record StoredResponse(int status, String contentType, String body) {
+    }
+
+    public record StoredEntry(String requestHash, Status status, StoredResponse response) {
+    }
+
+    public record IdempotencyStats(int inFlight, long executed, long replayed, long joinedInFlight,
+                                   long conflicts, long mismatches) {
+    }
+}
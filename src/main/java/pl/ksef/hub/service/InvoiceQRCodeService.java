@@ -0,0 +1,111 @@
+package pl.ksef.hub.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+import pl.ksef.hub.config.CacheConfig;
+import pl.ksef.hub.domain.entity.Invoice;
+import pl.ksef.hub.exception.ResourceNotFoundException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renderowanie kodów QR faktur na żądanie.
+ *
+ * Obraz nie jest przechowywany w bazie - powstaje z danych weryfikacyjnych faktury
+ * przy pierwszym odczycie i trafia do ograniczonego rozmiarem cache w pamięci.
+ * Klucz cache i ETag wynikają z samych danych, więc zmiana faktury (np. nadanie
+ * numeru KSeF) automatycznie daje nowy obraz.
+ */
+@Slf4j
+@Service
+public class InvoiceQRCodeService {
+
+    private final QRCodeService qrCodeService;
+    private final Cache cache;
+
+    public InvoiceQRCodeService(QRCodeService qrCodeService, CacheManager cacheManager) {
+        this.qrCodeService = qrCodeService;
+        this.cache = cacheManager.getCache(CacheConfig.QR_CODES);
+    }
+
+    /**
+     * ETag obrazu - liczony bez renderowania, aby odpowiedź 304 nie wymagała pracy
+     */
+    public String getETag(Invoice invoice, QRCodeService.ImageFormat format) {
+        return "\"" + DigestUtils.md5DigestAsHex(cacheKey(invoice, format).getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * Zwraca obraz kodu QR (z cache lub renderuje go)
+     */
+    public byte[] render(Invoice invoice, QRCodeService.ImageFormat format) {
+        String key = cacheKey(invoice, format);
+        return cache.get(key, () -> {
+            log.debug("Rendering {} QR code for invoice {}", format, invoice.getId());
+            String data = generateQRCodeData(invoice);
+            return format == QRCodeService.ImageFormat.SVG
+                    ? qrCodeService.generateQRCodeSvg(data)
+                    : qrCodeService.generateQRCodeBytes(data);
+        });
+    }
+
+    /**
+     * Zwraca obrazy kodów QR dla wielu faktur (np. zestawienie miesięczne).
+     * Brakujące w cache obrazy renderowane są równolegle jedną partią.
+     *
+     * @return mapa id faktury -> obraz, w kolejności wejściowej listy
+     */
+    public Map<Long, byte[]> renderAll(List<Invoice> invoices, QRCodeService.ImageFormat format) {
+        Map<Long, byte[]> images = new LinkedHashMap<>();
+        List<Invoice> missing = new ArrayList<>();
+
+        for (Invoice invoice : invoices) {
+            byte[] cached = cache.get(cacheKey(invoice, format), byte[].class);
+            images.put(invoice.getId(), cached);
+            if (cached == null) {
+                missing.add(invoice);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<String> data = missing.stream().map(this::generateQRCodeData).toList();
+            List<byte[]> rendered = qrCodeService.generateQRCodeBatch(data, format);
+            for (int i = 0; i < missing.size(); i++) {
+                images.put(missing.get(i).getId(), rendered.get(i));
+                cache.put(format.name() + ":" + data.get(i), rendered.get(i));
+            }
+            log.debug("Rendered {} of {} QR codes ({} from cache)",
+                    missing.size(), invoices.size(), invoices.size() - missing.size());
+        }
+        return images;
+    }
+
+    /**
+     * Dane weryfikacyjne kodowane w QR
+     */
+    public String generateQRCodeData(Invoice invoice) {
+        if (invoice.getKsefNumber() == null) {
+            throw new ResourceNotFoundException("QR code not available for invoice " + invoice.getId()
+                    + " - invoice has no KSeF number yet");
+        }
+        // Format: numer_faktury|data_wystawienia|kwota_brutto|nip_sprzedawcy|nip_nabywcy|ksef_number
+        return String.format("%s|%s|%.2f|%s|%s|%s",
+                invoice.getInvoiceNumber(),
+                invoice.getInvoiceDate(),
+                invoice.getGrossAmount(),
+                invoice.getSellerNip(),
+                invoice.getBuyerNip(),
+                invoice.getKsefNumber());
+    }
+
+    private String cacheKey(Invoice invoice, QRCodeService.ImageFormat format) {
+        return format.name() + ":" + generateQRCodeData(invoice);
+    }
+}
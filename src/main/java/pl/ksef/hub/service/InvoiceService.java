@@ -2,6 +2,7 @@ package pl.ksef.hub.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -10,6 +11,7 @@ import pl.ksef.hub.domain.entity.Invoice;
 import pl.ksef.hub.domain.entity.Tenant;
 import pl.ksef.hub.domain.repository.InvoiceRepository;
 import pl.ksef.hub.exception.ResourceNotFoundException;
+import pl.ksef.hub.integration.ksef.service.UpoStorageService;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -22,7 +24,8 @@ public class InvoiceService {
 
     private final InvoiceRepository invoiceRepository;
     private final TenantService tenantService;
-    private final QRCodeService qrCodeService;
+    private final UpoStorageService upoStorageService;
+    private final PipelineMetrics pipelineMetrics;
 
     @Transactional(readOnly = true)
     public Page<Invoice> findByTenant(Long tenantId, Pageable pageable) {
@@ -36,8 +39,8 @@ public class InvoiceService {
     }
 
     @Transactional(readOnly = true)
-    public Invoice findByKsefNumber(String ksefNumber) {
-        return invoiceRepository.findByKsefNumber(ksefNumber)
+    public Invoice findByKsefNumber(Long tenantId, String ksefNumber) {
+        return invoiceRepository.findByTenantIdAndKsefNumber(tenantId, ksefNumber)
                 .orElseThrow(() -> new ResourceNotFoundException("Invoice not found with KSeF number: " + ksefNumber));
     }
 
@@ -64,7 +67,15 @@ public class InvoiceService {
         invoice.setStatus(Invoice.InvoiceStatus.DRAFT);
         
         log.info("Creating new invoice: {} for tenant: {}", invoice.getInvoiceNumber(), tenantId);
-        return invoiceRepository.save(invoice);
+        Invoice saved;
+        try {
+            // Flush od razu - równoległe utworzenie tego samego numeru kończy się naruszeniem indeksu unikalnego
+            saved = invoiceRepository.saveAndFlush(invoice);
+        } catch (DataIntegrityViolationException e) {
+            throw new IllegalArgumentException("Invoice with number " + invoice.getInvoiceNumber() + " already exists");
+        }
+        pipelineMetrics.recordTransition(null, Invoice.InvoiceStatus.DRAFT);
+        return saved;
     }
 
     @Transactional
@@ -85,6 +96,7 @@ public class InvoiceService {
     @Transactional
     public void updateStatus(Long id, Invoice.InvoiceStatus status) {
         Invoice invoice = findById(id);
+        Invoice.InvoiceStatus previousStatus = invoice.getStatus();
         invoice.setStatus(status);
         
         if (status == Invoice.InvoiceStatus.SENT) {
@@ -94,6 +106,7 @@ public class InvoiceService {
         }
         
         invoiceRepository.save(invoice);
+        pipelineMetrics.recordTransition(previousStatus, status);
         log.info("Updated invoice {} status to: {}", id, status);
     }
 
@@ -101,24 +114,18 @@ public class InvoiceService {
     public void updateKsefNumber(Long id, String ksefNumber) {
         Invoice invoice = findById(id);
         invoice.setKsefNumber(ksefNumber);
-        
-        // Generate QR code for the invoice
-        try {
-            String qrCodeData = generateQRCodeData(invoice);
-            String qrCodeBase64 = qrCodeService.generateQRCodeBase64(qrCodeData);
-            invoice.setQrCode(qrCodeBase64);
-        } catch (Exception e) {
-            log.error("Failed to generate QR code for invoice {}", id, e);
-        }
-        
+        // Kod QR renderowany jest na żądanie (InvoiceQRCodeService)
         invoiceRepository.save(invoice);
         log.info("Updated invoice {} with KSeF number: {}", id, ksefNumber);
     }
 
+    /**
+     * @param upoContent UPO w postaci zwracanej przez KSeF (XML w Base64)
+     */
     @Transactional
     public void updateUpo(Long id, String upoContent) {
         Invoice invoice = findById(id);
-        invoice.setUpoContent(upoContent);
+        upoStorageService.storeInto(invoice, upoContent);
         invoiceRepository.save(invoice);
         log.info("Updated invoice {} with UPO", id);
     }
@@ -134,15 +141,4 @@ public class InvoiceService {
         log.info("Deleting invoice: {}", id);
         invoiceRepository.delete(invoice);
     }
-
-    private String generateQRCodeData(Invoice invoice) {
-        // Format: numer_faktury|data_wystawienia|kwota_brutto|nip_sprzedawcy|nip_nabywcy|ksef_number
-        return String.format("%s|%s|%.2f|%s|%s|%s",
-                invoice.getInvoiceNumber(),
-                invoice.getInvoiceDate(),
-                invoice.getGrossAmount(),
-                invoice.getSellerNip(),
-                invoice.getBuyerNip(),
-                invoice.getKsefNumber());
-    }
 }
@@ -0,0 +1,57 @@
+package pl.ksef.hub.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Zadanie okresowe usuwające stare powiadomienia systemowe
+ *
+ * Na PostgreSQL najpierw usuwane są całe partycje miesięczne starsze niż okres retencji,
+ * a pozostałe wiersze z miesiąca granicznego usuwane są porcjami.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NotificationRetentionJob {
+
+    private final SystemNotificationService notificationService;
+    private final PartitionMaintenanceService partitionMaintenanceService;
+    private final WorkPartitionService workPartitionService;
+
+    @Value("${hub.notifications.retention.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hub.notifications.retention.days:30}")
+    private int daysToKeep;
+
+    @Value("${hub.notifications.retention.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${hub.notifications.retention.pause-ms:100}")
+    private long pauseMs;
+
+    @Scheduled(cron = "${hub.notifications.retention.cron:0 30 3 * * *}")
+    public void purgeOldNotifications() {
+        // Jedna instancja w klastrze - właściciel partycji wiodącej
+        if (!enabled || !workPartitionService.isLeader()) {
+            return;
+        }
+
+        log.info("Starting notification retention purge (keep {} days)", daysToKeep);
+        try {
+            partitionMaintenanceService.dropPartitionsOlderThan(
+                    PartitionMaintenanceService.NOTIFICATIONS_TABLE,
+                    LocalDate.now().minusDays(daysToKeep));
+
+            int deleted = notificationService.cleanupOldNotifications(daysToKeep, chunkSize, pauseMs);
+            log.info("Notification retention purge finished, deleted: {}", deleted);
+        } catch (Exception e) {
+            log.error("Notification retention purge failed", e);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package pl.ksef.hub.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import pl.ksef.hub.domain.entity.SystemNotification;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchroniczny (write-behind) zapis powiadomień systemowych.
+ *
+ * Powiadomienia trafiają do ograniczonego bufora w pamięci, gdzie są łączone
+ * po kluczu (kategoria, poziom, tytuł) w obrębie okna czasowego - seria
+ * identycznych zdarzeń (np. "flapping" połączenia z KSeF) daje jeden wiersz
+ * z licznikiem wystąpień. Wątek w tle zapisuje gotowe wpisy wsadowym INSERT-em.
+ * Wywołujący nigdy nie czeka na bazę danych.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NotificationWriter {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO system_notifications " +
+            "(category, level, title, message, details, is_read, occurrence_count, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${hub.notifications.writer.capacity:1000}")
+    private int capacity;
+
+    @Value("${hub.notifications.writer.coalesce-window-ms:10000}")
+    private long coalesceWindowMs;
+
+    @Value("${hub.notifications.writer.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    @Value("${hub.notifications.writer.batch-size:100}")
+    private int batchSize;
+
+    @Value("${hub.notifications.writer.drop-report-interval-ms:60000}")
+    private long dropReportIntervalMs;
+
+    // Dostęp chroniony monitorem 'pending' - operacje są O(1), więc blokada jest krótka
+    private final Map<NotificationKey, PendingNotification> pending = new LinkedHashMap<>();
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    // Co najwyżej jeden wymuszony zapis w kolejce wykonawcy
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // Odrzucenia logowane zbiorczo, nie dla każdego powiadomienia
+    private final AtomicLong droppedReported = new AtomicLong();
+    private volatile long lastDropReportAt;
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "notification-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushSafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Notification writer started (capacity: {}, coalesce window: {} ms, batch size: {})",
+                capacity, coalesceWindowMs, batchSize);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Zapisz wszystko co zostało w buforze (np. powiadomienie o zatrzymaniu Huba)
+        flush(true);
+    }
+
+    /**
+     * Dodaje powiadomienie do bufora. Nie blokuje i nie wykonuje I/O.
+     *
+     * @return false jeśli bufor jest pełny i powiadomienie zostało odrzucone
+     */
+    public boolean submit(SystemNotification.NotificationCategory category,
+                          SystemNotification.NotificationLevel level,
+                          String title,
+                          String message,
+                          String details) {
+        NotificationKey key = new NotificationKey(category, level, title);
+        LocalDateTime now = LocalDateTime.now();
+
+        synchronized (pending) {
+            PendingNotification existing = pending.get(key);
+            if (existing != null) {
+                existing.occurrences++;
+                existing.message = message;
+                existing.details = details;
+                coalesced.incrementAndGet();
+                return true;
+            }
+            if (pending.size() >= capacity) {
+                dropped.incrementAndGet();
+                log.debug("Notification buffer full ({}), dropping notification: {} - {} - {}",
+                        capacity, category, level, title);
+                return false;
+            }
+            pending.put(key, new PendingNotification(key, message, details, now));
+            accepted.incrementAndGet();
+        }
+
+        // Presja zwrotna: przy zapełnieniu bufora w 3/4 nie czekamy na koniec okna
+        if (executor != null && pendingCount() >= capacity * 3 / 4 && flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::forceFlush);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Zapisuje wpisy, których okno łączenia minęło (lub wszystkie, gdy force=true)
+     *
+     * @return liczba zapisanych wierszy
+     */
+    public int flush(boolean force) {
+        List<PendingNotification> ready = drainReady(force);
+        if (ready.isEmpty()) {
+            return 0;
+        }
+
+        int total = 0;
+        for (int from = 0; from < ready.size(); from += batchSize) {
+            List<PendingNotification> chunk = ready.subList(from, Math.min(from + batchSize, ready.size()));
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, chunk, chunk.size(), (ps, n) -> {
+                    ps.setString(1, n.key.category().name());
+                    ps.setString(2, n.key.level().name());
+                    ps.setString(3, n.key.title());
+                    ps.setString(4, n.message);
+                    ps.setString(5, n.details);
+                    ps.setBoolean(6, false);
+                    ps.setInt(7, n.occurrences);
+                    ps.setTimestamp(8, Timestamp.valueOf(n.createdAt));
+                });
+                written.addAndGet(chunk.size());
+                total += chunk.size();
+            } catch (Exception e) {
+                failed.addAndGet(chunk.size());
+                log.error("Failed to write {} notifications: {}", chunk.size(), e.getMessage());
+            }
+        }
+        log.debug("Flushed {} notifications", total);
+        return total;
+    }
+
+    /**
+     * Liczba powiadomień oczekujących na zapis
+     */
+    public int pendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Statystyki bufora (przyjęte, połączone, odrzucone, zapisane, błędne)
+     */
+    public WriterStats getStats() {
+        return new WriterStats(pendingCount(), capacity, accepted.get(), coalesced.get(),
+                dropped.get(), written.get(), failed.get());
+    }
+
+    private void flushSafely() {
+        try {
+            flush(false);
+        } catch (Exception e) {
+            log.error("Notification writer flush failed", e);
+        }
+        reportDropped();
+    }
+
+    private void forceFlush() {
+        // Flaga zdejmowana przed zapisem - powiadomienia dodane w jego trakcie mogą zlecić kolejny
+        flushScheduled.set(false);
+        try {
+            flush(true);
+        } catch (Exception e) {
+            log.error("Notification writer flush failed", e);
+        }
+    }
+
+    /**
+     * Loguje liczbę powiadomień odrzuconych od ostatniego raportu (co najwyżej raz na dropReportIntervalMs)
+     */
+    void reportDropped() {
+        long now = System.currentTimeMillis();
+        if (now - lastDropReportAt < dropReportIntervalMs) {
+            return;
+        }
+        long total = dropped.get();
+        long sinceLastReport = total - droppedReported.getAndSet(total);
+        if (sinceLastReport > 0) {
+            lastDropReportAt = now;
+            log.warn("Notification buffer full ({}), dropped {} notifications since last report ({} in total)",
+                    capacity, sinceLastReport, total);
+        }
+    }
+
+    private List<PendingNotification> drainReady(boolean force) {
+        LocalDateTime windowStart = LocalDateTime.now().minusNanos(coalesceWindowMs * 1_000_000L);
+        List<PendingNotification> ready = new ArrayList<>();
+
+        synchronized (pending) {
+            Iterator<PendingNotification> it = pending.values().iterator();
+            while (it.hasNext()) {
+                PendingNotification notification = it.next();
+                if (force || !notification.createdAt.isAfter(windowStart)) {
+                    ready.add(notification);
+                    it.remove();
+                }
+            }
+        }
+        return ready;
+    }
+
+    // === Klasy pomocnicze ===
+
+    private record NotificationKey(SystemNotification.NotificationCategory category,
+                                   SystemNotification.NotificationLevel level,
+                                   String title) {
+    }
+
+    private static class PendingNotification {
+        private final NotificationKey key;
+        private final LocalDateTime createdAt;
+        private String message;
+        private String details;
+        private int occurrences = 1;
+
+        private PendingNotification(NotificationKey key, String message, String details, LocalDateTime createdAt) {
+            this.key = key;
+            this.message = message;
+            this.details = details;
+            this.createdAt = createdAt;
+        }
+    }
+
+    public record WriterStats(int pending, int capacity, long accepted, long coalesced,
+                              long dropped, long written, long failed) {
+    }
+}
@@ -0,0 +1,175 @@
+package pl.ksef.hub.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import pl.ksef.hub.config.DatabaseDialect;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Utrzymanie partycji miesięcznych tabel system_notifications i audit_logs (PostgreSQL)
+ *
+ * - z wyprzedzeniem tworzy partycje na kolejne miesiące,
+ * - wiersze, które trafiły do partycji DEFAULT (np. po przerwie w utrzymaniu), przenosi do partycji
+ *   ich miesiąca - create_range_partition (V14) odłącza DEFAULT na czas tworzenia partycji,
+ * - retencję realizuje przez DETACH + DROP całej partycji (bez DELETE i VACUUM).
+ *
+ * Na innych bazach (np. H2 w profilu h2) serwis jest nieaktywny.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PartitionMaintenanceService {
+
+    public static final String NOTIFICATIONS_TABLE = "system_notifications";
+    public static final String AUDIT_LOGS_TABLE = "audit_logs";
+
+    private static final List<String> PARTITIONED_TABLES = List.of(NOTIFICATIONS_TABLE, AUDIT_LOGS_TABLE);
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DatabaseDialect databaseDialect;
+    private final WorkPartitionService workPartitionService;
+
+    @Value("${hub.partitioning.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hub.partitioning.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${hub.partitioning.audit-logs.retention-months:24}")
+    private int auditRetentionMonths;
+
+    private volatile boolean supported;
+
+    @PostConstruct
+    void init() {
+        supported = enabled && databaseDialect.isPostgreSql();
+        if (supported) {
+            drainDefaultPartitions();
+            createUpcomingPartitions();
+        } else {
+            log.info("Table partitioning maintenance disabled (enabled: {}, database: {})",
+                    enabled, databaseDialect.getDatabase());
+        }
+    }
+
+    /**
+     * Czy partycjonowanie jest aktywne na bieżącej bazie
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Zadanie okresowe: tworzenie partycji z wyprzedzeniem, opróżnianie DEFAULT i retencja audit_logs
+     */
+    @Scheduled(cron = "${hub.partitioning.cron:0 0 2 * * *}")
+    public void maintainPartitions() {
+        if (!supported || !workPartitionService.isLeader()) {
+            return;
+        }
+        drainDefaultPartitions();
+        createUpcomingPartitions();
+        dropPartitionsOlderThan(AUDIT_LOGS_TABLE, LocalDate.now().minusMonths(auditRetentionMonths));
+    }
+
+    /**
+     * Tworzy partycje dla bieżącego miesiąca i monthsAhead kolejnych (idempotentnie)
+     */
+    public void createUpcomingPartitions() {
+        LocalDate today = LocalDate.now();
+        for (String table : PARTITIONED_TABLES) {
+            for (int i = 0; i <= monthsAhead; i++) {
+                ensurePartition(MonthlyPartition.of(table, today.plusMonths(i)));
+            }
+        }
+        log.debug("Ensured partitions for {} months ahead", monthsAhead);
+    }
+
+    /**
+     * Tworzy partycje dla miesięcy, których wiersze leżą w partycji DEFAULT, przenosząc te wiersze
+     *
+     * @return liczba przeniesionych wierszy
+     */
+    public int drainDefaultPartitions() {
+        int moved = 0;
+        for (String table : PARTITIONED_TABLES) {
+            List<LocalDate> months;
+            try {
+                months = jdbcTemplate.queryForList(
+                        "SELECT DISTINCT CAST(date_trunc('month', created_at) AS DATE) FROM " + table + "_default",
+                        LocalDate.class);
+            } catch (Exception e) {
+                log.error("Failed to inspect default partition of {}: {}", table, e.getMessage());
+                continue;
+            }
+            for (LocalDate month : months) {
+                moved += ensurePartition(MonthlyPartition.of(table, month));
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Tworzy partycję (idempotentnie), przenosząc do niej pasujące wiersze z DEFAULT
+     *
+     * @return liczba przeniesionych wierszy
+     */
+    int ensurePartition(MonthlyPartition partition) {
+        try {
+            Integer moved = jdbcTemplate.queryForObject("SELECT create_range_partition(?, ?, ?, ?)", Integer.class,
+                    partition.table(), partition.name(), Date.valueOf(partition.from()), Date.valueOf(partition.to()));
+            int count = moved != null ? moved : 0;
+            if (count > 0) {
+                log.info("Moved {} rows from default partition of {} to {}", count, partition.table(), partition.name());
+            }
+            return count;
+        } catch (Exception e) {
+            log.error("Failed to create partition {}: {}", partition.name(), e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Odłącza i usuwa partycje, których cały zakres jest starszy niż cutoff
+     *
+     * @return liczba usuniętych partycji
+     */
+    public int dropPartitionsOlderThan(String table, LocalDate cutoff) {
+        if (!supported) {
+            return 0;
+        }
+        try {
+            Integer dropped = jdbcTemplate.queryForObject("SELECT drop_monthly_partitions_before(?, ?)",
+                    Integer.class, table, Date.valueOf(cutoff));
+            int count = dropped != null ? dropped : 0;
+            if (count > 0) {
+                log.info("Dropped {} partitions of {} older than {}", count, table, cutoff);
+            }
+            return count;
+        } catch (Exception e) {
+            log.error("Failed to drop old partitions of {}: {}", table, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Partycja miesięczna: nazwa tabela_RRRR_MM, zakres [pierwszy dzień miesiąca, pierwszy dzień następnego)
+     */
+    public record MonthlyPartition(String table, String name, LocalDate from, LocalDate to) {
+
+        public static MonthlyPartition of(String table, LocalDate date) {
+            LocalDate from = date.withDayOfMonth(1);
+            return new MonthlyPartition(table, table + "_" + from.format(SUFFIX), from, from.plusMonths(1));
+        }
+    }
+}
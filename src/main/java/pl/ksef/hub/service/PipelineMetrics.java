@@ -0,0 +1,187 @@
+package pl.ksef.hub.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import pl.ksef.hub.domain.entity.Invoice.InvoiceStatus;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Metryki etapów wysyłki do KSeF (Micrometer, eksport przez /actuator/prometheus).
+ *
+ * - ksef.pipeline.stage - timer z histogramem percentyli per etap (generowanie XML, walidacja,
+ *   podpis, weryfikacja podpisu, każdy endpoint KSeF), tagi: stage, tenant, outcome, status (kod HTTP),
+ * - ksef.invoice.status.transitions - licznik przejść statusów faktury (tagi: from, to),
+ * - ksef.scheduler.wait / ksef.scheduler.queued - czas oczekiwania i liczba zadań w kolejce
+ *   KsefWorkScheduler (tagi: lane, tenant).
+ *
+ * Klient, dla którego wykonywana jest praca, przekazywany jest przez tenantScope() -
+ * dzięki temu etapy głębiej w stosie (np. KsefApiClient) nie potrzebują tenantId w sygnaturze.
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String STAGE_TIMER = "ksef.pipeline.stage";
+    public static final String STATUS_TRANSITIONS = "ksef.invoice.status.transitions";
+    public static final String SCHEDULER_WAIT = "ksef.scheduler.wait";
+    public static final String SCHEDULER_QUEUED = "ksef.scheduler.queued";
+
+    private static final String NONE = "none";
+
+    private static final ThreadLocal<Long> CURRENT_TENANT = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+
+    // Tag tenant domyślnie wyłączony - kardynalność metryk i identyfikatory klientów w /actuator/prometheus
+    @Value("${hub.metrics.tenant-tag:false}")
+    private boolean tenantTag;
+
+    public PipelineMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Ustawia klienta dla metryk bieżącego wątku do czasu zamknięcia zwróconego zakresu
+     */
+    public TenantScope tenantScope(Long tenantId) {
+        Long previous = CURRENT_TENANT.get();
+        CURRENT_TENANT.set(tenantId);
+        return () -> {
+            if (previous != null) {
+                CURRENT_TENANT.set(previous);
+            } else {
+                CURRENT_TENANT.remove();
+            }
+        };
+    }
+
+    /**
+     * Mierzy etap lokalny (bez HTTP)
+     */
+    public <T> T time(String stage, Supplier<T> call) {
+        return record(stage, false, call);
+    }
+
+    /**
+     * Mierzy wywołanie KSeF - tag status zawiera kod HTTP odpowiedzi błędnej (lub 2xx)
+     */
+    public <T> T timeHttp(String stage, Supplier<T> call) {
+        return record(stage, true, call);
+    }
+
+    /**
+     * Mierzy etap lokalny rzucający wyjątki kontrolowane
+     */
+    public <T> T timeChecked(String stage, Callable<T> call) throws Exception {
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            return call.call();
+        } catch (Exception e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            timer(stage, outcome, NONE).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Zlicza przejście statusu faktury (from == null dla nowej faktury)
+     */
+    public void recordTransition(InvoiceStatus from, InvoiceStatus to) {
+        recordTransitions(from, to, 1);
+    }
+
+    public void recordTransitions(InvoiceStatus from, InvoiceStatus to, long count) {
+        if (count <= 0 || from == to) {
+            return;
+        }
+        Counter.builder(STATUS_TRANSITIONS)
+                .description("Invoice status transitions")
+                .tag("from", from != null ? from.name() : NONE)
+                .tag("to", to.name())
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    /**
+     * Czas oczekiwania zadania w kolejce KsefWorkScheduler do przydzielenia wątku
+     */
+    public void recordQueueWait(String lane, Long tenantId, long nanos) {
+        Timer.builder(SCHEDULER_WAIT)
+                .description("Time KSeF-bound work waited in the fair scheduler queue")
+                .tag("lane", lane)
+                .tag("tenant", tenantTag(tenantId))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Liczba zadań oczekujących w kolejce KsefWorkScheduler (odczytywana przy eksporcie)
+     */
+    public void registerQueueGauge(String lane, Supplier<Number> queued) {
+        Gauge.builder(SCHEDULER_QUEUED, queued)
+                .description("KSeF-bound work waiting in the fair scheduler queue")
+                .tag("lane", lane)
+                .register(meterRegistry);
+    }
+
+    private <T> T record(String stage, boolean http, Supplier<T> call) {
+        long start = System.nanoTime();
+        String outcome = "success";
+        String status = http ? "2xx" : NONE;
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            outcome = "error";
+            status = http ? httpStatus(e) : NONE;
+            throw e;
+        } finally {
+            timer(stage, outcome, status).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(String stage, String outcome, String status) {
+        return Timer.builder(STAGE_TIMER)
+                .description("Duration of KSeF send pipeline stages")
+                .tag("stage", stage)
+                .tag("tenant", tenantTag(CURRENT_TENANT.get()))
+                .tag("outcome", outcome)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private String tenantTag(Long tenantId) {
+        return !tenantTag ? "all" : tenantId != null ? tenantId.toString() : NONE;
+    }
+
+    /**
+     * Kod HTTP z łańcucha przyczyn (KsefApiClient opakowuje WebClientResponseException)
+     */
+    private static String httpStatus(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof WebClientResponseException response) {
+                return String.valueOf(response.getStatusCode().value());
+            }
+        }
+        return "io_error";
+    }
+
+    /**
+     * Zakres klienta dla metryk - do użycia w try-with-resources
+     */
+    @FunctionalInterface
+    public interface TenantScope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -3,23 +3,32 @@ package pl.ksef.hub.service;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * Service for generating QR codes for invoices
+ *
+ * PNG is written directly from the BitMatrix as a 1-bit grayscale image
+ * (no BufferedImage / ImageIO), the writer and hints are shared between calls
+ * and batches are rendered in parallel.
  */
 @Slf4j
 @Service
@@ -28,6 +37,30 @@ public class QRCodeService {
     private static final int QR_CODE_WIDTH = 300;
     private static final int QR_CODE_HEIGHT = 300;
 
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    // QRCodeWriter jest bezstanowy, a hinty są tylko odczytywane - współdzielone przez wszystkie wątki
+    private static final QRCodeWriter QR_CODE_WRITER = new QRCodeWriter();
+    private static final Map<EncodeHintType, Object> HINTS = createHints();
+
+    /**
+     * Supported QR code image formats
+     */
+    public enum ImageFormat {
+        PNG("image/png"),
+        SVG("image/svg+xml");
+
+        private final String contentType;
+
+        ImageFormat(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
     /**
      * Generate QR code as Base64 encoded PNG image
      *
@@ -46,29 +79,60 @@ public class QRCodeService {
      * @return PNG image bytes
      */
     public byte[] generateQRCodeBytes(String data) throws WriterException, IOException {
-        BitMatrix bitMatrix = generateBitMatrix(data);
-        BufferedImage image = MatrixToImageWriter.toBufferedImage(bitMatrix);
+        return writePng(generateBitMatrix(data));
+    }
 
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "PNG", outputStream);
-            return outputStream.toByteArray();
+    /**
+     * Generate QR code as SVG document (one path, one subpath per run of dark modules)
+     *
+     * @param data Data to encode in QR code
+     * @return SVG document bytes (UTF-8)
+     */
+    public byte[] generateQRCodeSvg(String data) throws WriterException {
+        // Matryca bez skalowania (1 moduł = 1 jednostka), skalowanie po stronie viewBox
+        BitMatrix bitMatrix = generateBitMatrix(data, 0, 0);
+        int width = bitMatrix.getWidth();
+        int height = bitMatrix.getHeight();
+
+        StringBuilder svg = new StringBuilder(4096)
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(QR_CODE_WIDTH)
+                .append("\" height=\"").append(QR_CODE_HEIGHT).append("\" viewBox=\"0 0 ")
+                .append(width).append(' ').append(height)
+                .append("\" shape-rendering=\"crispEdges\"><rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>")
+                .append("<path fill=\"#000\" d=\"");
+        for (int y = 0; y < height; y++) {
+            int x = 0;
+            while (x < width) {
+                if (!bitMatrix.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < width && bitMatrix.get(x, y)) {
+                    x++;
+                }
+                svg.append('M').append(start).append(',').append(y)
+                        .append('h').append(x - start).append("v1h-").append(x - start).append('z');
+            }
         }
+        svg.append("\"/></svg>");
+        return svg.toString().getBytes(StandardCharsets.UTF_8);
     }
 
     /**
-     * Generate BitMatrix for QR code
+     * Generate QR codes for many inputs in parallel
      *
-     * @param data Data to encode
-     * @return BitMatrix representation of QR code
+     * @param data Data to encode, one entry per QR code
+     * @param format Image format
+     * @return Images in the same order as the input
      */
-    private BitMatrix generateBitMatrix(String data) throws WriterException {
-        Map<EncodeHintType, Object> hints = new HashMap<>();
-        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
-        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
-        hints.put(EncodeHintType.MARGIN, 1);
-
-        QRCodeWriter qrCodeWriter = new QRCodeWriter();
-        return qrCodeWriter.encode(data, BarcodeFormat.QR_CODE, QR_CODE_WIDTH, QR_CODE_HEIGHT, hints);
+    public List<byte[]> generateQRCodeBatch(List<String> data, ImageFormat format) {
+        long start = System.currentTimeMillis();
+        List<byte[]> images = data.parallelStream()
+                .map(item -> generate(item, format))
+                .toList();
+        log.debug("Generated {} {} QR codes in {} ms", images.size(), format, System.currentTimeMillis() - start);
+        return images;
     }
 
     /**
@@ -79,9 +143,120 @@ public class QRCodeService {
      * @param grossAmount Gross amount
      * @return Base64 encoded QR code
      */
-    public String generateInvoiceQRCode(String ksefNumber, String invoiceNumber, String grossAmount) 
+    public String generateInvoiceQRCode(String ksefNumber, String invoiceNumber, String grossAmount)
             throws WriterException, IOException {
         String qrData = String.format("KSeF:%s|Invoice:%s|Amount:%s", ksefNumber, invoiceNumber, grossAmount);
         return generateQRCodeBase64(qrData);
     }
+
+    private byte[] generate(String data, ImageFormat format) {
+        try {
+            return format == ImageFormat.SVG ? generateQRCodeSvg(data) : generateQRCodeBytes(data);
+        } catch (WriterException e) {
+            throw new IllegalArgumentException("Failed to encode QR code: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write QR code", e);
+        }
+    }
+
+    /**
+     * Generate BitMatrix for QR code
+     *
+     * @param data Data to encode
+     * @return BitMatrix representation of QR code
+     */
+    private BitMatrix generateBitMatrix(String data) throws WriterException {
+        return generateBitMatrix(data, QR_CODE_WIDTH, QR_CODE_HEIGHT);
+    }
+
+    private BitMatrix generateBitMatrix(String data, int width, int height) throws WriterException {
+        return QR_CODE_WRITER.encode(data, BarcodeFormat.QR_CODE, width, height, HINTS);
+    }
+
+    /**
+     * PNG 1-bit, skala szarości (0 = czarny, 1 = biały), wiersze bez filtrowania.
+     * Sąsiednie wiersze przeskalowanej matrycy są zwykle identyczne - spakowany wiersz jest wtedy powtarzany.
+     */
+    private byte[] writePng(BitMatrix bitMatrix) throws IOException {
+        int width = bitMatrix.getWidth();
+        int height = bitMatrix.getHeight();
+        int rowBytes = (width + 7) / 8;
+
+        ByteArrayOutputStream idat = new ByteArrayOutputStream(rowBytes * height / 8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream zlib = new DeflaterOutputStream(idat, deflater, 8192)) {
+            BitArray row = new BitArray(width);
+            int[] previousBits = null;
+            byte[] packed = new byte[rowBytes + 1]; // bajt filtra (0) + piksele
+
+            for (int y = 0; y < height; y++) {
+                row = bitMatrix.getRow(y, row);
+                int[] bits = row.getBitArray();
+                if (previousBits == null || !Arrays.equals(bits, previousBits)) {
+                    packRow(row, width, packed);
+                    previousBits = bits.clone();
+                }
+                zlib.write(packed);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream(idat.size() + 64);
+        png.write(PNG_SIGNATURE);
+
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 1;  // bit depth
+        header[9] = 0;  // grayscale
+        header[10] = 0; // deflate
+        header[11] = 0; // adaptive filtering
+        header[12] = 0; // no interlace
+        writeChunk(png, "IHDR", header);
+        writeChunk(png, "IDAT", idat.toByteArray());
+        writeChunk(png, "IEND", new byte[0]);
+        return png.toByteArray();
+    }
+
+    private static void packRow(BitArray row, int width, byte[] packed) {
+        Arrays.fill(packed, (byte) 0);
+        for (int x = 0; x < width; x++) {
+            if (!row.get(x)) {
+                packed[1 + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+            }
+        }
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, String type, byte[] data) {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] length = new byte[4];
+        putInt(length, 0, data.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        byte[] checksum = new byte[4];
+        putInt(checksum, 0, (int) crc.getValue());
+
+        out.writeBytes(length);
+        out.writeBytes(typeBytes);
+        out.writeBytes(data);
+        out.writeBytes(checksum);
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    private static Map<EncodeHintType, Object> createHints() {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        hints.put(EncodeHintType.MARGIN, 1);
+        return Map.copyOf(hints);
+    }
 }
@@ -0,0 +1,85 @@
+package pl.ksef.hub.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.DigestUtils;
+import pl.ksef.hub.domain.entity.Invoice;
+import pl.ksef.hub.domain.entity.Tenant;
+import pl.ksef.hub.domain.repository.CollectionVersion;
+import pl.ksef.hub.domain.repository.InvoiceRepository;
+import pl.ksef.hub.domain.repository.TenantRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * Słabe ETagi faktur i klientów dla warunkowych GET (If-None-Match)
+ *
+ * Zasób: (id, updatedAt). Lista: liczba wierszy + najpóźniejsze updatedAt całej kolekcji oraz parametry
+ * strony - dodanie, zmiana i usunięcie wiersza zmieniają ETag. Wersja sprawdzana jest jednym lekkim
+ * zapytaniem, więc odpowiedź 304 nie ładuje ani nie serializuje encji. Zapisy JDBC z pominięciem JPA
+ * (UpoHarvester, synchronizacja faktur zakupowych) muszą ustawiać updated_at.
+ */
+@Service
+@RequiredArgsConstructor
+public class ResourceVersionService {
+
+    private final InvoiceRepository invoiceRepository;
+    private final TenantRepository tenantRepository;
+
+    /**
+     * @return ETag faktury lub null, jeśli nie istnieje (obsługa 404 pozostaje w kontrolerze)
+     */
+    @Transactional(readOnly = true)
+    public String invoiceETag(Long id) {
+        return invoiceRepository.findUpdatedAtById(id)
+                .map(updatedAt -> eTag("invoice", id, updatedAt))
+                .orElse(null);
+    }
+
+    /**
+     * ETag wczytanej encji - zgodny z wersją z bazy (encja świeżo zapisana może mieć większą precyzję czasu)
+     */
+    public String invoiceETag(Invoice invoice) {
+        return eTag("invoice", invoice.getId(), invoice.getUpdatedAt());
+    }
+
+    @Transactional(readOnly = true)
+    public String invoicesETag(Long tenantId, Pageable pageable) {
+        return eTag("invoices", tenantId, invoiceRepository.findVersionByTenantId(tenantId), pageable);
+    }
+
+    @Transactional(readOnly = true)
+    public String tenantETag(Long id) {
+        return tenantRepository.findUpdatedAtById(id)
+                .map(updatedAt -> eTag("tenant", id, updatedAt))
+                .orElse(null);
+    }
+
+    public String tenantETag(Tenant tenant) {
+        return tenantETag(tenant.getId(), tenant.getUpdatedAt());
+    }
+
+    public String tenantETag(Long id, LocalDateTime updatedAt) {
+        return eTag("tenant", id, updatedAt);
+    }
+
+    @Transactional(readOnly = true)
+    public String tenantsETag(Pageable pageable) {
+        return eTag("tenants", null, tenantRepository.findVersion(), pageable);
+    }
+
+    private static String eTag(String type, Long id, LocalDateTime updatedAt) {
+        return weak(type + ":" + id + ":" + updatedAt);
+    }
+
+    private static String eTag(String type, Long scope, CollectionVersion version, Pageable pageable) {
+        return weak(type + ":" + scope + ":" + version.getTotal() + ":" + version.getLastModified() + ":" + pageable);
+    }
+
+    private static String weak(String value) {
+        return "W/\"" + DigestUtils.md5DigestAsHex(value.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+}
@@ -21,37 +21,28 @@ import java.util.Optional;
 public class SystemNotificationService {
 
     private final SystemNotificationRepository notificationRepository;
+    private final NotificationWriter notificationWriter;
 
     /**
      * Utwórz nowe powiadomienie
+     * Zapis jest asynchroniczny - powiadomienie trafia do bufora NotificationWriter,
+     * a identyczne powiadomienia w oknie czasowym są łączone w jeden wiersz
      */
-    @Transactional
-    public SystemNotification createNotification(
+    public void createNotification(
             SystemNotification.NotificationCategory category,
             SystemNotification.NotificationLevel level,
             String title,
             String message,
             String details
     ) {
-        SystemNotification notification = SystemNotification.builder()
-                .category(category)
-                .level(level)
-                .title(title)
-                .message(message)
-                .details(details)
-                .isRead(false)
-                .createdAt(LocalDateTime.now())
-                .build();
-
-        SystemNotification saved = notificationRepository.save(notification);
-        log.info("Created notification: {} - {} - {}", category, level, title);
-        return saved;
+        if (notificationWriter.submit(category, level, title, message, details)) {
+            log.info("Queued notification: {} - {} - {}", category, level, title);
+        }
     }
 
     /**
      * Powiadomienie o uruchomieniu Huba
      */
-    @Transactional
     public void notifyHubStarted(String details) {
         createNotification(
                 SystemNotification.NotificationCategory.HUB,
@@ -65,7 +56,6 @@ public class SystemNotificationService {
     /**
      * Powiadomienie o zatrzymaniu Huba
      */
-    @Transactional
     public void notifyHubStopped(String reason) {
         createNotification(
                 SystemNotification.NotificationCategory.HUB,
@@ -79,7 +69,6 @@ public class SystemNotificationService {
     /**
      * Powiadomienie o błędzie Huba
      */
-    @Transactional
     public void notifyHubError(String title, String message, String details) {
         createNotification(
                 SystemNotification.NotificationCategory.HUB,
@@ -93,7 +82,6 @@ public class SystemNotificationService {
     /**
      * Powiadomienie informacyjne o Hubie
      */
-    @Transactional
     public void notifyHubInfo(String title, String message) {
         createNotification(
                 SystemNotification.NotificationCategory.HUB,
@@ -107,7 +95,6 @@ public class SystemNotificationService {
     /**
      * Powiadomienie o udanym połączeniu z KSeF
      */
-    @Transactional
     public void notifyKsefConnected(String environment, String url) {
         String message = String.format(
                 "Połączono z serwerem KSeF. Środowisko: %s, URL: %s",
@@ -130,7 +117,6 @@ public class SystemNotificationService {
     /**
      * Powiadomienie o nieudanym połączeniu z KSeF
      */
-    @Transactional
     public void notifyKsefConnectionFailed(String reason, String details) {
         String message = String.format(
                 "Nie udało się połączyć z serwerem KSeF. Powód: %s",
@@ -149,7 +135,6 @@ public class SystemNotificationService {
     /**
      * Powiadomienie o rozłączeniu z KSeF
      */
-    @Transactional
     public void notifyKsefDisconnected(String reason) {
         createNotification(
                 SystemNotification.NotificationCategory.KSEF,
@@ -160,6 +145,32 @@ public class SystemNotificationService {
         );
     }
 
+    /**
+     * Zbiorcze powiadomienie o certyfikatach wygaszonych w jednym przebiegu
+     */
+    public void notifyCertificatesExpired(int count, String details) {
+        createNotification(
+                SystemNotification.NotificationCategory.HUB,
+                SystemNotification.NotificationLevel.WARNING,
+                "Wygasłe certyfikaty",
+                String.format("Oznaczono jako wygasłe %d certyfikatów - wysyłka dla tych klientów wymaga nowego certyfikatu", count),
+                details
+        );
+    }
+
+    /**
+     * Zbiorcze ostrzeżenie o certyfikatach, których ważność wkrótce się kończy
+     */
+    public void notifyCertificatesExpiring(int count, int daysAhead, String details) {
+        createNotification(
+                SystemNotification.NotificationCategory.HUB,
+                SystemNotification.NotificationLevel.WARNING,
+                "Certyfikaty bliskie wygaśnięcia",
+                String.format("Ważność %d certyfikatów kończy się w ciągu %d dni", count, daysAhead),
+                details
+        );
+    }
+
     /**
      * Pobierz najnowsze powiadomienia (limit 5)
      */
@@ -205,21 +216,10 @@ public class SystemNotificationService {
     /**
      * Oznacz wszystkie powiadomienia jako przeczytane
      */
-    @Transactional
     public int markAllAsRead() {
-        List<SystemNotification> unread = notificationRepository.findByIsReadFalseOrderByCreatedAtDesc(
-                PageRequest.of(0, 1000)
-        );
-        
-        LocalDateTime now = LocalDateTime.now();
-        unread.forEach(notification -> {
-            notification.setIsRead(true);
-            notification.setReadAt(now);
-        });
-        
-        notificationRepository.saveAll(unread);
-        log.info("Marked {} notifications as read", unread.size());
-        return unread.size();
+        int updated = notificationRepository.markAllAsRead(LocalDateTime.now());
+        log.info("Marked {} notifications as read", updated);
+        return updated;
     }
 
     /**
@@ -230,12 +230,32 @@ public class SystemNotificationService {
     }
 
     /**
-     * Usuń stare powiadomienia (starsze niż 30 dni)
+     * Usuń stare powiadomienia (starsze niż podana liczba dni)
+     * Usuwa porcjami po chunkSize wierszy z przerwą pauseMs między porcjami,
+     * aby nie blokować tabeli i nie obciążać bazy jednym dużym DELETE
+     *
+     * @return liczba usuniętych powiadomień
      */
-    @Transactional
-    public void cleanupOldNotifications(int daysToKeep) {
+    public int cleanupOldNotifications(int daysToKeep, int chunkSize, long pauseMs) {
         LocalDateTime cutoffDate = LocalDateTime.now().minusDays(daysToKeep);
-        notificationRepository.deleteByCreatedAtBefore(cutoffDate);
-        log.info("Cleaned up notifications older than {} days", daysToKeep);
+        int total = 0;
+        int deleted;
+
+        do {
+            deleted = notificationRepository.deleteChunkCreatedBefore(cutoffDate, chunkSize);
+            total += deleted;
+
+            if (deleted == chunkSize && pauseMs > 0) {
+                try {
+                    Thread.sleep(pauseMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } while (deleted == chunkSize);
+
+        log.info("Cleaned up {} notifications older than {} days", total, daysToKeep);
+        return total;
     }
 }
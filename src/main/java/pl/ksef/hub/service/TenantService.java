@@ -2,14 +2,18 @@ package pl.ksef.hub.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import pl.ksef.hub.config.CacheConfig;
 import pl.ksef.hub.domain.entity.Tenant;
 import pl.ksef.hub.domain.repository.TenantRepository;
 import pl.ksef.hub.exception.ResourceNotFoundException;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Slf4j
@@ -35,6 +39,15 @@ public class TenantService {
                 .orElseThrow(() -> new ResourceNotFoundException("Tenant not found with id: " + id));
     }
 
+    /**
+     * Dane klienta do odczytu (z cache) - niemutowalna kopia, nie encja
+     */
+    @Cacheable(cacheNames = CacheConfig.TENANTS, key = "#id")
+    @Transactional(readOnly = true)
+    public CachedTenant findCachedById(Long id) {
+        return CachedTenant.of(findById(id));
+    }
+
     @Transactional(readOnly = true)
     public Tenant findByNip(String nip) {
         return tenantRepository.findByNip(nip)
@@ -51,6 +64,7 @@ public class TenantService {
         return tenantRepository.save(tenant);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.TENANTS, key = "#id")
     @Transactional
     public Tenant update(Long id, Tenant tenantData) {
         Tenant tenant = findById(id);
@@ -68,6 +82,7 @@ public class TenantService {
         return tenantRepository.save(tenant);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.TENANTS, key = "#id")
     @Transactional
     public void delete(Long id) {
         Tenant tenant = findById(id);
@@ -75,6 +90,7 @@ public class TenantService {
         tenantRepository.delete(tenant);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.TENANTS, key = "#id")
     @Transactional
     public void activate(Long id) {
         Tenant tenant = findById(id);
@@ -84,6 +100,7 @@ public class TenantService {
         log.info("Activated tenant: {}", id);
     }
 
+    @CacheEvict(cacheNames = CacheConfig.TENANTS, key = "#id")
     @Transactional
     public void deactivate(Long id) {
         Tenant tenant = findById(id);
@@ -92,4 +109,15 @@ public class TenantService {
         tenantRepository.save(tenant);
         log.info("Deactivated tenant: {}", id);
     }
+
+    public record CachedTenant(Long id, String nip, String name, String fullName, String email, String phone,
+                               String address, Boolean active, Tenant.TenantStatus status, String notes,
+                               LocalDateTime createdAt, LocalDateTime updatedAt) {
+
+        static CachedTenant of(Tenant tenant) {
+            return new CachedTenant(tenant.getId(), tenant.getNip(), tenant.getName(), tenant.getFullName(),
+                    tenant.getEmail(), tenant.getPhone(), tenant.getAddress(), tenant.getActive(), tenant.getStatus(),
+                    tenant.getNotes(), tenant.getCreatedAt(), tenant.getUpdatedAt());
+        }
+    }
 }
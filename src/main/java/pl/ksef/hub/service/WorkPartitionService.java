@@ -0,0 +1,325 @@
+package pl.ksef.hub.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import pl.ksef.hub.domain.entity.HubNode;
+import pl.ksef.hub.domain.entity.WorkPartition;
+import pl.ksef.hub.domain.repository.HubNodeRepository;
+import pl.ksef.hub.domain.repository.WorkPartitionRepository;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Podział pracy w tle między węzły Huba.
+ *
+ * Klienci przypisani są do partycji (tenant_id mod liczba partycji). Każdy węzeł co
+ * heartbeat-interval-ms zgłasza się w hub_nodes, przedłuża swoje dzierżawy w work_partitions
+ * i wyrównuje ich liczbę do swojego udziału (partycje / żywe węzły): nadmiar zwalnia,
+ * brakujące przejmuje spośród wolnych lub wygasłych. Dołączenie lub odejście węzła
+ * powoduje automatyczne przeniesienie partycji w ciągu kilku heartbeatów.
+ *
+ * Przejęcie partycji zwiększa jej fencing token - zadania mogą nim warunkować zapisy,
+ * aby węzeł, który utracił dzierżawę (np. po długiej pauzie GC), nie nadpisał pracy nowego właściciela.
+ *
+ * Heartbeat działa na własnym wątku, a nie we wspólnym harmonogramie @Scheduled - zadanie blokujące
+ * (wywołanie KSeF, DDL partycji) nie może go opóźnić ponad lease-ttl-ms - heartbeat-interval-ms,
+ * bo węzeł utraciłby dzierżawy.
+ *
+ * Zadania jednoinstancyjne (np. retencja) wykonuje właściciel partycji 0 (isLeader).
+ * Przy hub.coordination.enabled=false węzeł traktuje wszystkie partycje jako własne.
+ */
+@Slf4j
+@Service
+public class WorkPartitionService {
+
+    private static final int LEADER_PARTITION = 0;
+
+    private final WorkPartitionRepository workPartitionRepository;
+    private final HubNodeRepository hubNodeRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final int partitions;
+    private final long leaseTtlMs;
+    private final long nodeTimeoutMs;
+    private final long heartbeatIntervalMs;
+    private final String nodeId;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+
+    // Migawka dzierżaw z ostatniego udanego heartbeatu: partycja -> fencing token
+    private volatile Map<Integer, Long> owned = Map.of();
+    private volatile long ownershipValidUntil;
+    private volatile int liveNodes;
+    private volatile boolean partitionsInitialized;
+    private final Map<Integer, Long> allPartitions;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+
+    private ScheduledExecutorService heartbeatExecutor;
+
+    public WorkPartitionService(WorkPartitionRepository workPartitionRepository,
+                                HubNodeRepository hubNodeRepository,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${hub.coordination.enabled:true}") boolean enabled,
+                                @Value("${hub.coordination.partitions:16}") int partitions,
+                                @Value("${hub.coordination.lease-ttl-ms:20000}") long leaseTtlMs,
+                                @Value("${hub.coordination.node-timeout-ms:20000}") long nodeTimeoutMs,
+                                @Value("${hub.coordination.heartbeat-interval-ms:5000}") long heartbeatIntervalMs,
+                                @Value("${hub.coordination.node-id:}") String nodeId) {
+        this.workPartitionRepository = workPartitionRepository;
+        this.hubNodeRepository = hubNodeRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.partitions = partitions;
+        this.leaseTtlMs = leaseTtlMs;
+        this.nodeTimeoutMs = nodeTimeoutMs;
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.nodeId = StringUtils.hasText(nodeId) ? nodeId : generateNodeId();
+
+        Map<Integer, Long> all = new TreeMap<>();
+        IntStream.range(0, partitions).forEach(partition -> all.put(partition, 0L));
+        this.allPartitions = Collections.unmodifiableMap(all);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hub-coordination-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatExecutor.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Heartbeat węzła i wyrównanie dzierżaw do udziału węzła
+     */
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+        long startedMs = System.currentTimeMillis();
+        try {
+            if (!partitionsInitialized) {
+                ensurePartitions();
+            }
+            Map<Integer, Long> current = transactionTemplate.execute(status -> rebalance(LocalDateTime.now()));
+            owned = current;
+            // Migawka ważna krócej niż dzierżawa w bazie - po utracie łączności węzeł przestaje pracować pierwszy
+            ownershipValidUntil = startedMs + leaseTtlMs - heartbeatIntervalMs;
+        } catch (Exception e) {
+            log.error("Work partition heartbeat failed for node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /**
+     * Partycja klienta
+     */
+    public int partitionOf(Long tenantId) {
+        return (int) Math.floorMod(tenantId, (long) partitions);
+    }
+
+    /**
+     * Czy bieżący węzeł obsługuje zadania w tle danego klienta
+     */
+    public boolean ownsTenant(Long tenantId) {
+        return ownedPartitions().containsKey(partitionOf(tenantId));
+    }
+
+    /**
+     * Czy bieżący węzeł wykonuje zadania jednoinstancyjne (właściciel partycji 0)
+     */
+    public boolean isLeader() {
+        return ownedPartitions().containsKey(LEADER_PARTITION);
+    }
+
+    /**
+     * Partycje z ważną dzierżawą (partycja -> fencing token); pusta, gdy heartbeat nie powiódł się na czas
+     */
+    public Map<Integer, Long> ownedPartitions() {
+        if (!enabled) {
+            return allPartitions;
+        }
+        return System.currentTimeMillis() < ownershipValidUntil ? owned : Map.of();
+    }
+
+    /**
+     * Fencing token partycji, jeśli węzeł ją dzierżawi
+     */
+    public OptionalLong fencingToken(int partition) {
+        Long token = ownedPartitions().get(partition);
+        return token != null ? OptionalLong.of(token) : OptionalLong.empty();
+    }
+
+    /**
+     * Sprawdza w bazie, czy węzeł nadal dzierżawi partycję z danym tokenem (przed zapisem niepowtarzalnym)
+     */
+    public boolean isStillOwner(int partition, long token) {
+        if (!enabled) {
+            return true;
+        }
+        return workPartitionRepository.isOwner(partition, nodeId, token, LocalDateTime.now());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getPartitionCount() {
+        return partitions;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Statystyki koordynacji
+     */
+    public CoordinationStats getStats() {
+        return new CoordinationStats(nodeId, enabled, liveNodes, partitions,
+                List.copyOf(ownedPartitions().keySet()), claimed.get(), released.get());
+    }
+
+    /**
+     * Przy zamknięciu węzła zwalnia jego partycje, aby pozostałe przejęły je bez czekania na wygaśnięcie
+     */
+    @PreDestroy
+    void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        if (heartbeatExecutor != null) {
+            heartbeatExecutor.shutdown();
+            try {
+                heartbeatExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Map<Integer, Long> mine = owned;
+        owned = Map.of();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                mine.keySet().forEach(partition -> workPartitionRepository.release(partition, nodeId, now));
+                hubNodeRepository.deleteById(nodeId);
+            });
+            log.info("Node {} released {} work partitions", nodeId, mine.size());
+        } catch (Exception e) {
+            log.warn("Failed to release work partitions of node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    // === Heartbeat ===
+
+    private Map<Integer, Long> rebalance(LocalDateTime now) {
+        if (hubNodeRepository.heartbeat(nodeId, now) == 0) {
+            hubNodeRepository.save(HubNode.builder().nodeId(nodeId).heartbeatAt(now).startedAt(startedAt).build());
+            log.info("Node {} joined work partitioning", nodeId);
+        }
+        hubNodeRepository.deleteStale(now.minus(Duration.ofMillis(nodeTimeoutMs * 10)));
+
+        List<String> live = hubNodeRepository.findLiveNodeIds(now.minus(Duration.ofMillis(nodeTimeoutMs)));
+        liveNodes = live.size();
+        int share = fairShare(partitions, live, nodeId);
+
+        LocalDateTime leaseUntil = now.plus(Duration.ofMillis(leaseTtlMs));
+        workPartitionRepository.renew(nodeId, now, leaseUntil);
+        List<WorkPartition> current = workPartitionRepository.findOwned(nodeId, now);
+
+        if (current.size() > share) {
+            // Nadmiar oddawany od końca - nowe węzły przejmują go przy swoim heartbeacie
+            for (WorkPartition partition : current.subList(share, current.size())) {
+                if (workPartitionRepository.release(partition.getPartitionId(), nodeId, now) == 1) {
+                    released.incrementAndGet();
+                }
+            }
+        } else if (current.size() < share) {
+            int missing = share - current.size();
+            for (Integer partitionId : workPartitionRepository.findClaimable(now)) {
+                if (missing == 0 || partitionId >= partitions) {
+                    break;
+                }
+                if (workPartitionRepository.claim(partitionId, nodeId, now, leaseUntil) == 1) {
+                    claimed.incrementAndGet();
+                    missing--;
+                }
+            }
+        }
+
+        Map<Integer, Long> result = new TreeMap<>();
+        for (WorkPartition partition : workPartitionRepository.findOwned(nodeId, now)) {
+            result.put(partition.getPartitionId(), partition.getFencingToken());
+        }
+        if (!result.keySet().equals(owned.keySet())) {
+            log.info("Node {} owns work partitions {} ({} live nodes)", nodeId, result.keySet(), live.size());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Udział węzła: partycje dzielone równo między żywe węzły, reszta trafia do pierwszych w kolejności
+     */
+    static int fairShare(int partitions, List<String> liveNodes, String nodeId) {
+        int index = liveNodes.indexOf(nodeId);
+        if (index < 0) {
+            return 0;
+        }
+        int nodes = liveNodes.size();
+        return partitions / nodes + (index < partitions % nodes ? 1 : 0);
+    }
+
+    private void ensurePartitions() {
+        for (int partition = 0; partition < partitions; partition++) {
+            if (workPartitionRepository.existsById(partition)) {
+                continue;
+            }
+            int partitionId = partition;
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        workPartitionRepository.insertIfAbsent(partitionId, LocalDateTime.now()));
+            } catch (DataIntegrityViolationException e) {
+                // Założona równolegle przez inny węzeł
+            }
+        }
+        partitionsInitialized = true;
+    }
+
+    private static String generateNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public record CoordinationStats(String nodeId, boolean enabled, int liveNodes, int partitions,
+                                    List<Integer> ownedPartitions, long claimed, long released) {
+    }
+}
@@ -0,0 +1,18 @@
+-- Koordynacja zadań w tle między węzłami Huba (WorkPartitionService)
+CREATE TABLE hub_nodes (
+    node_id VARCHAR(100) PRIMARY KEY,
+    heartbeat_at TIMESTAMP NOT NULL,
+    started_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_hub_node_heartbeat ON hub_nodes(heartbeat_at);
+
+-- Wiersze partycji 0..N-1 zakładane są przez aplikację (hub.coordination.partitions)
+CREATE TABLE work_partitions (
+    partition_id INTEGER PRIMARY KEY,
+    owner_node VARCHAR(100),
+    fencing_token BIGINT NOT NULL DEFAULT 0,
+    lease_until TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_work_partition_owner ON work_partitions(owner_node);
@@ -0,0 +1,17 @@
+-- Faktury zakupowe pobierane z KSeF (IncomingInvoiceSyncService)
+ALTER TABLE invoices ADD COLUMN direction VARCHAR(10) NOT NULL DEFAULT 'OUTGOING';
+
+-- Numer KSeF unikalny w obrębie klienta - faktura między dwoma klientami Huba
+-- jest sprzedażą jednego i zakupem drugiego
+ALTER TABLE invoices DROP CONSTRAINT IF EXISTS invoices_ksef_number_key;
+CREATE UNIQUE INDEX uq_invoice_tenant_ksef_number ON invoices(tenant_id, ksef_number);
+CREATE INDEX idx_invoice_tenant_direction_date ON invoices(tenant_id, direction, invoice_date);
+
+CREATE TABLE invoice_sync_state (
+    tenant_id BIGINT PRIMARY KEY REFERENCES tenants(id),
+    high_water_mark TIMESTAMP NOT NULL,
+    last_run_at TIMESTAMP,
+    last_run_synced INTEGER NOT NULL DEFAULT 0,
+    total_synced BIGINT NOT NULL DEFAULT 0,
+    last_error VARCHAR(1000)
+);
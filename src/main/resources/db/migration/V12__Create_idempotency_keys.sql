@@ -0,0 +1,19 @@
+-- Wyniki żądań z nagłówkiem Idempotency-Key (IdempotencyFilter)
+-- Ponowienie z tym samym kluczem otrzymuje zapisaną odpowiedź bez ponownego wykonania operacji
+CREATE TABLE idempotency_keys (
+    key_hash VARCHAR(64) PRIMARY KEY, -- SHA-256(użytkownik + klucz)
+    request_hash VARCHAR(64) NOT NULL, -- SHA-256(metoda + URI + treść) - wykrywa użycie klucza dla innego żądania
+    status VARCHAR(20) NOT NULL, -- IN_PROGRESS, COMPLETED
+    response_status INTEGER,
+    content_type VARCHAR(100),
+    response_body TEXT,
+    created_at TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_idempotency_expires ON idempotency_keys(expires_at);
+
+-- Numer faktury sprzedażowej unikalny w obrębie klienta (sprawdzenie w InvoiceService.create nie jest atomowe).
+-- Faktury zakupowe różnych dostawców mogą mieć ten sam numer.
+CREATE UNIQUE INDEX uq_invoice_tenant_number_outgoing ON invoices(tenant_id, invoice_number)
+    WHERE direction = 'OUTGOING';
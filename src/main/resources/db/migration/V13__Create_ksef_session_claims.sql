@@ -0,0 +1,7 @@
+-- Zajęcie otwierania sesji KSeF klienta przez jeden węzeł (DatabaseKsefSessionStore)
+-- Blokada doradcza obejmuje tylko sprawdzenie magazynu i założenie wiersza - wywołanie KSeF odbywa się bez niej
+CREATE TABLE ksef_session_claims (
+    tenant_id BIGINT PRIMARY KEY REFERENCES tenants(id) ON DELETE CASCADE,
+    claim_id VARCHAR(36) NOT NULL, -- UUID wywołania, które zajęło otwieranie
+    expires_at TIMESTAMP NOT NULL -- po tym czasie zajęcie porzucone przez węzeł przestaje obowiązywać
+);
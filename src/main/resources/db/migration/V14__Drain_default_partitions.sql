@@ -0,0 +1,75 @@
+-- Tworzenie partycji, gdy partycja DEFAULT ma już wiersze z jej zakresu.
+-- CREATE TABLE ... PARTITION OF nie powiedzie się, jeśli DEFAULT zawiera wiersze nowego zakresu
+-- (np. po przerwie w utrzymaniu partycji) - partycja DEFAULT jest wtedy odłączana, wiersze
+-- przenoszone do nowej partycji, a DEFAULT dołączana z powrotem (jedna transakcja).
+-- Klucz partycjonowania obu tabel (system_notifications, audit_logs): created_at.
+
+-- Tworzy partycję o podanej nazwie i zakresie [p_from, p_to) (idempotentnie);
+-- zwraca liczbę wierszy przeniesionych z partycji DEFAULT
+CREATE OR REPLACE FUNCTION create_range_partition(p_parent TEXT, p_name TEXT, p_from DATE, p_to DATE)
+RETURNS INTEGER AS $$
+DECLARE
+    v_default TEXT;
+    v_has_rows BOOLEAN := FALSE;
+    v_moved INTEGER := 0;
+BEGIN
+    IF to_regclass(p_name) IS NOT NULL THEN
+        RETURN 0;
+    END IF;
+
+    SELECT d.relname INTO v_default
+    FROM pg_partitioned_table pt
+    JOIN pg_class p ON p.oid = pt.partrelid
+    JOIN pg_class d ON d.oid = pt.partdefid
+    WHERE p.relname = p_parent;
+
+    IF v_default IS NOT NULL THEN
+        EXECUTE format('SELECT EXISTS (SELECT 1 FROM %I WHERE created_at >= %L AND created_at < %L)',
+                       v_default, p_from, p_to) INTO v_has_rows;
+    END IF;
+
+    IF NOT v_has_rows THEN
+        EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                       p_name, p_parent, p_from, p_to);
+        RETURN 0;
+    END IF;
+
+    EXECUTE format('ALTER TABLE %I DETACH PARTITION %I', p_parent, v_default);
+    EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                   p_name, p_parent, p_from, p_to);
+    EXECUTE format('WITH moved AS (DELETE FROM %I WHERE created_at >= %L AND created_at < %L RETURNING *) '
+                   'INSERT INTO %I SELECT * FROM moved', v_default, p_from, p_to, p_name);
+    GET DIAGNOSTICS v_moved = ROW_COUNT;
+    EXECUTE format('ALTER TABLE %I ATTACH PARTITION %I DEFAULT', p_parent, v_default);
+    RETURN v_moved;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Partycja miesięczna (V6) - teraz także z przeniesieniem wierszy z DEFAULT
+CREATE OR REPLACE FUNCTION create_monthly_partition(p_parent TEXT, p_month DATE)
+RETURNS TEXT AS $$
+DECLARE
+    v_start DATE := date_trunc('month', p_month)::DATE;
+    v_end DATE := (date_trunc('month', p_month) + INTERVAL '1 month')::DATE;
+    v_name TEXT := p_parent || '_' || to_char(v_start, 'YYYY_MM');
+BEGIN
+    PERFORM create_range_partition(p_parent, v_name, v_start, v_end);
+    RETURN v_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Wiersze, które trafiły do DEFAULT przed tą migracją (miesiące zebrane przed odłączeniem DEFAULT)
+DO $$
+DECLARE
+    v_table TEXT;
+    v_months DATE[];
+    v_month DATE;
+BEGIN
+    FOREACH v_table IN ARRAY ARRAY['system_notifications', 'audit_logs'] LOOP
+        EXECUTE format('SELECT array_agg(DISTINCT date_trunc(''month'', created_at)::DATE) FROM %I',
+                       v_table || '_default') INTO v_months;
+        FOREACH v_month IN ARRAY COALESCE(v_months, ARRAY[]::DATE[]) LOOP
+            PERFORM create_monthly_partition(v_table, v_month);
+        END LOOP;
+    END LOOP;
+END $$;
@@ -0,0 +1,3 @@
+-- Wersja listy faktur klienta dla ETagów (ResourceVersionService.invoicesETag):
+-- COUNT(*) i MAX(updated_at) per tenant_id z samego indeksu, bez czytania wierszy faktur
+CREATE INDEX idx_invoice_tenant_updated_at ON invoices(tenant_id, updated_at);
@@ -0,0 +1,2 @@
+-- Licznik połączonych wystąpień powiadomienia (write-behind z łączeniem duplikatów)
+ALTER TABLE system_notifications ADD COLUMN occurrence_count INTEGER NOT NULL DEFAULT 1;
@@ -0,0 +1,138 @@
+-- V6__Partition_notifications_and_audit_logs.sql
+-- Partycjonowanie zakresowe (miesięczne) tabel szeregów czasowych:
+-- system_notifications i audit_logs.
+-- Retencja odbywa się przez odłączenie i usunięcie całej partycji zamiast DELETE wiersz po wierszu.
+
+-- Tworzy partycję miesięczną dla podanej tabeli (idempotentnie)
+CREATE OR REPLACE FUNCTION create_monthly_partition(p_parent TEXT, p_month DATE)
+RETURNS TEXT AS $$
+DECLARE
+    v_start DATE := date_trunc('month', p_month)::DATE;
+    v_end DATE := (date_trunc('month', p_month) + INTERVAL '1 month')::DATE;
+    v_name TEXT := p_parent || '_' || to_char(v_start, 'YYYY_MM');
+BEGIN
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                   v_name, p_parent, v_start, v_end);
+    RETURN v_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Odłącza i usuwa partycje miesięczne, których cały zakres jest starszy niż p_cutoff
+CREATE OR REPLACE FUNCTION drop_monthly_partitions_before(p_parent TEXT, p_cutoff DATE)
+RETURNS INTEGER AS $$
+DECLARE
+    v_child RECORD;
+    v_month DATE;
+    v_dropped INTEGER := 0;
+BEGIN
+    FOR v_child IN
+        SELECT c.relname
+        FROM pg_inherits i
+        JOIN pg_class c ON c.oid = i.inhrelid
+        JOIN pg_class p ON p.oid = i.inhparent
+        WHERE p.relname = p_parent
+          AND c.relname ~ ('^' || p_parent || '_[0-9]{4}_[0-9]{2}$')
+    LOOP
+        v_month := to_date(right(v_child.relname, 7), 'YYYY_MM');
+        IF v_month + INTERVAL '1 month' <= p_cutoff THEN
+            EXECUTE format('ALTER TABLE %I DETACH PARTITION %I', p_parent, v_child.relname);
+            EXECUTE format('DROP TABLE %I', v_child.relname);
+            v_dropped := v_dropped + 1;
+        END IF;
+    END LOOP;
+    RETURN v_dropped;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Tworzy partycje od miesiąca najstarszego wiersza do p_months_ahead miesięcy w przód
+CREATE OR REPLACE FUNCTION create_partitions_for_range(p_parent TEXT, p_from DATE, p_months_ahead INTEGER)
+RETURNS VOID AS $$
+DECLARE
+    v_month DATE := date_trunc('month', COALESCE(p_from, CURRENT_DATE))::DATE;
+    v_last DATE := (date_trunc('month', CURRENT_DATE) + make_interval(months => p_months_ahead))::DATE;
+BEGIN
+    WHILE v_month <= v_last LOOP
+        PERFORM create_monthly_partition(p_parent, v_month);
+        v_month := (v_month + INTERVAL '1 month')::DATE;
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
+
+-- ============================================================
+-- system_notifications
+-- ============================================================
+ALTER TABLE system_notifications RENAME TO system_notifications_legacy;
+
+-- Klucz partycjonowania musi być częścią klucza głównego
+CREATE TABLE system_notifications (
+    id BIGINT NOT NULL DEFAULT nextval('system_notifications_id_seq'),
+    category VARCHAR(50) NOT NULL,
+    level VARCHAR(50) NOT NULL,
+    title VARCHAR(255) NOT NULL,
+    message TEXT NOT NULL,
+    details TEXT,
+    is_read BOOLEAN NOT NULL DEFAULT FALSE,
+    occurrence_count INTEGER NOT NULL DEFAULT 1,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    read_at TIMESTAMP,
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+-- Partycja domyślna - zabezpieczenie na wypadek braku partycji dla danego miesiąca
+CREATE TABLE system_notifications_default PARTITION OF system_notifications DEFAULT;
+
+SELECT create_partitions_for_range('system_notifications',
+        (SELECT MIN(created_at)::DATE FROM system_notifications_legacy), 3);
+
+INSERT INTO system_notifications
+    (id, category, level, title, message, details, is_read, occurrence_count, created_at, read_at)
+SELECT id, category, level, title, message, details, is_read, occurrence_count, created_at, read_at
+FROM system_notifications_legacy;
+
+ALTER SEQUENCE system_notifications_id_seq OWNED BY system_notifications.id;
+DROP TABLE system_notifications_legacy;
+
+CREATE INDEX idx_notifications_category ON system_notifications(category);
+CREATE INDEX idx_notifications_level ON system_notifications(level);
+CREATE INDEX idx_notifications_is_read ON system_notifications(is_read);
+CREATE INDEX idx_notifications_created_at ON system_notifications(created_at DESC);
+
+-- ============================================================
+-- audit_logs
+-- ============================================================
+ALTER TABLE audit_logs RENAME TO audit_logs_legacy;
+
+CREATE TABLE audit_logs (
+    id BIGINT NOT NULL DEFAULT nextval('audit_logs_id_seq'),
+    tenant_id BIGINT REFERENCES tenants(id) ON DELETE SET NULL,
+    user_id BIGINT REFERENCES users(id) ON DELETE SET NULL,
+    action_type VARCHAR(50) NOT NULL,
+    entity_type VARCHAR(100) NOT NULL,
+    entity_id VARCHAR(100),
+    description VARCHAR(200),
+    details TEXT,
+    ip_address VARCHAR(50),
+    user_agent VARCHAR(500),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+CREATE TABLE audit_logs_default PARTITION OF audit_logs DEFAULT;
+
+SELECT create_partitions_for_range('audit_logs',
+        (SELECT MIN(created_at)::DATE FROM audit_logs_legacy), 3);
+
+INSERT INTO audit_logs
+    (id, tenant_id, user_id, action_type, entity_type, entity_id, description, details,
+     ip_address, user_agent, created_at)
+SELECT id, tenant_id, user_id, action_type, entity_type, entity_id, description, details,
+       ip_address, user_agent, created_at
+FROM audit_logs_legacy;
+
+ALTER SEQUENCE audit_logs_id_seq OWNED BY audit_logs.id;
+DROP TABLE audit_logs_legacy;
+
+CREATE INDEX idx_audit_tenant ON audit_logs(tenant_id);
+CREATE INDEX idx_audit_user ON audit_logs(user_id);
+CREATE INDEX idx_audit_created ON audit_logs(created_at);
+CREATE INDEX idx_audit_entity ON audit_logs(entity_type, entity_id);
@@ -0,0 +1,10 @@
+-- UPO przechowywane jako skompresowany XML (GZIP) z kluczowymi polami w indeksowanych kolumnach.
+-- Kolumna upo_content (Base64) pozostaje dla wcześniej pobranych UPO.
+ALTER TABLE invoices ADD COLUMN upo_compressed BYTEA;
+ALTER TABLE invoices ADD COLUMN upo_ksef_number VARCHAR(100);
+ALTER TABLE invoices ADD COLUMN upo_accepted_at TIMESTAMP;
+ALTER TABLE invoices ADD COLUMN upo_document_hash VARCHAR(128);
+
+CREATE INDEX idx_invoice_upo_ksef_number ON invoices(upo_ksef_number);
+CREATE INDEX idx_invoice_upo_accepted_at ON invoices(upo_accepted_at);
+CREATE INDEX idx_invoice_upo_document_hash ON invoices(upo_document_hash);
@@ -0,0 +1,3 @@
+-- Kody QR są renderowane na żądanie z danych faktury (GET /tenants/{tenantId}/invoices/{id}/qrcode)
+-- i przechowywane wyłącznie w cache w pamięci.
+ALTER TABLE invoices DROP COLUMN IF EXISTS qr_code;
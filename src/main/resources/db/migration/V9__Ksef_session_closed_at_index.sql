@@ -0,0 +1,2 @@
+-- Wykrywanie sesji KSeF zamkniętych na innych węzłach (KsefSessionManager.pollInvalidations)
+CREATE INDEX idx_session_closed_at ON ksef_sessions(closed_at);
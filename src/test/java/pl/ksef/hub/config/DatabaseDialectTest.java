@@ -0,0 +1,50 @@
+package pl.ksef.hub.config;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla DatabaseDialect
+ */
+class DatabaseDialectTest {
+
+    @Test
+    void shouldDetectSupportedDatabases() throws SQLException {
+        // When
+        DatabaseDialect postgreSql = new DatabaseDialect(dataSource("PostgreSQL"));
+        DatabaseDialect h2 = new DatabaseDialect(dataSource("H2"));
+
+        // Then
+        assertTrue(postgreSql.isPostgreSql());
+        assertEquals(DatabaseDialect.Database.H2, h2.getDatabase());
+        assertFalse(h2.isPostgreSql());
+    }
+
+    @Test
+    void shouldFailWhenDatabaseCannotBeDetermined() throws SQLException {
+        // Given
+        DataSource unavailable = mock(DataSource.class);
+        when(unavailable.getConnection()).thenThrow(new SQLException("Connection refused"));
+
+        // When / Then - bez cichego przejścia na składnię H2
+        assertThrows(IllegalStateException.class, () -> new DatabaseDialect(unavailable));
+        assertThrows(IllegalStateException.class, () -> new DatabaseDialect(dataSource("MySQL")));
+    }
+
+    private static DataSource dataSource(String productName) throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getMetaData()).thenReturn(metaData);
+        when(metaData.getDatabaseProductName()).thenReturn(productName);
+        return dataSource;
+    }
+}
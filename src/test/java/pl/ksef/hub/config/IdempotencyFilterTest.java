@@ -0,0 +1,169 @@
+package pl.ksef.hub.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import pl.ksef.hub.service.IdempotencyService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy integracyjne dla IdempotencyFilter
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class IdempotencyFilterTest {
+
+    @Autowired
+    private IdempotencyFilter filter;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    void shouldReplayStoredResponseWithoutExecutingAgain() throws Exception {
+        // Given
+        String key = UUID.randomUUID().toString();
+        FilterChain chain = respond(201, "{\"id\":1}");
+        MockHttpServletResponse first = execute(key, "{\"invoiceNumber\":\"FV/1\"}", chain);
+
+        // When
+        MockHttpServletResponse second = execute(key, "{\"invoiceNumber\":\"FV/1\"}", chain);
+
+        // Then
+        assertEquals(1, executions.get());
+        assertEquals(201, first.getStatus());
+        assertNull(first.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        assertEquals(201, second.getStatus());
+        assertEquals("true", second.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        assertEquals("{\"id\":1}", second.getContentAsString());
+    }
+
+    @Test
+    void shouldRejectSameKeyWithDifferentBody() throws Exception {
+        // Given
+        String key = UUID.randomUUID().toString();
+        FilterChain chain = respond(201, "{\"id\":1}");
+        execute(key, "{\"invoiceNumber\":\"FV/1\"}", chain);
+
+        // When
+        MockHttpServletResponse response = execute(key, "{\"invoiceNumber\":\"FV/2\"}", chain);
+
+        // Then
+        assertEquals(422, response.getStatus());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void shouldExecuteConcurrentDuplicateOnlyOnce() throws Exception {
+        // Given - oryginał wstrzymany w kontrolerze
+        String key = UUID.randomUUID().toString();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain chain = (req, res) -> {
+            executions.incrementAndGet();
+            entered.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            res.setContentType("application/json");
+            ((HttpServletResponse) res).setStatus(201);
+            res.getOutputStream().write("{\"id\":7}".getBytes(StandardCharsets.UTF_8));
+        };
+        long joinedBefore = idempotencyService.getStats().joinedInFlight();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // When
+            Future<MockHttpServletResponse> original = executor.submit(() -> execute(key, "{}", chain));
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            Future<MockHttpServletResponse> retry = executor.submit(() -> execute(key, "{}", chain));
+            while (idempotencyService.getStats().joinedInFlight() == joinedBefore) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            // Then
+            assertEquals(201, original.get(10, TimeUnit.SECONDS).getStatus());
+            MockHttpServletResponse replayed = retry.get(10, TimeUnit.SECONDS);
+            assertEquals(201, replayed.getStatus());
+            assertEquals("true", replayed.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+            assertEquals("{\"id\":7}", replayed.getContentAsString());
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldReleaseKeyAfterServerError() throws Exception {
+        // Given
+        String key = UUID.randomUUID().toString();
+        MockHttpServletResponse failed = execute(key, "{}", respond(503, "{\"success\":false}"));
+
+        // When
+        MockHttpServletResponse retried = execute(key, "{}", respond(200, "{\"success\":true}"));
+
+        // Then
+        assertEquals(503, failed.getStatus());
+        assertEquals(200, retried.getStatus());
+        assertNull(retried.getHeader(IdempotencyFilter.REPLAYED_HEADER));
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void shouldPassThroughRequestsWithoutKey() throws Exception {
+        // Given
+        FilterChain chain = respond(201, "{\"id\":1}");
+
+        // When
+        execute(null, "{}", chain);
+        execute(null, "{}", chain);
+
+        // Then
+        assertEquals(2, executions.get());
+    }
+
+    private MockHttpServletResponse execute(String key, String body, FilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/tenants/1/invoices");
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        if (key != null) {
+            request.addHeader(IdempotencyFilter.HEADER, key);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    /**
+     * Atrapa kontrolera - czyta treść żądania i zwraca podaną odpowiedź
+     */
+    private FilterChain respond(int status, String body) {
+        return (req, res) -> {
+            executions.incrementAndGet();
+            req.getInputStream().readAllBytes();
+            res.setContentType("application/json");
+            ((HttpServletResponse) res).setStatus(status);
+            res.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+        };
+    }
+}
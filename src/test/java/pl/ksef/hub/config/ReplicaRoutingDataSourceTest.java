@@ -0,0 +1,246 @@
+package pl.ksef.hub.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla ReplicaRoutingDataSource
+ */
+@ExtendWith(MockitoExtension.class)
+class ReplicaRoutingDataSourceTest {
+
+    private static final long MAX_LAG_MS = 5000;
+    private static final long PROBE_STALE_MS = 5000;
+
+    @Mock
+    private DataSource primary;
+
+    @Mock
+    private DataSource replica1;
+
+    @Mock
+    private DataSource replica2;
+
+    private ReplicaRoutingDataSource routing;
+
+    @BeforeEach
+    void setUp() {
+        routing = routing(PROBE_STALE_MS);
+    }
+
+    private ReplicaRoutingDataSource routing(long probeStaleMs) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica-1", replica1);
+        replicas.put("replica-2", replica2);
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas, MAX_LAG_MS, probeStaleMs,
+                "SELECT probe", "SELECT lsn");
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReplicaRoutingDataSource.clear();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    void shouldRouteReadOnlyRequestTransactionsAcrossReplicas() throws Exception {
+        // Given
+        lag(replica1, 0, 100);
+        lag(replica2, 100, 100);
+        routing.checkReplicaLag();
+        ReplicaRoutingDataSource.bind("tenant:1");
+
+        // When
+        Object first = readOnlyKey();
+        Object second = readOnlyKey();
+
+        // Then
+        assertNotEquals(ReplicaRoutingDataSource.PRIMARY, first);
+        assertNotEquals(ReplicaRoutingDataSource.PRIMARY, second);
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void shouldRouteWritesAndBackgroundReadsToPrimary() throws Exception {
+        // Given
+        lag(replica1, 0, 100);
+        lag(replica2, 0, 100);
+        routing.checkReplicaLag();
+
+        // When - transakcja readOnly poza żądaniem HTTP (zadanie w tle)
+        Object backgroundRead = readOnlyKey();
+        ReplicaRoutingDataSource.bind("tenant:1");
+        Object write = routing.determineCurrentLookupKey();
+
+        // Then
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, backgroundRead);
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, write);
+    }
+
+    @Test
+    void shouldSkipLaggingAndUnavailableReplicas() throws Exception {
+        // Given
+        lag(replica1, MAX_LAG_MS + 1, 100);
+        when(replica2.getConnection()).thenThrow(new SQLException("Connection refused"));
+        routing.checkReplicaLag();
+        ReplicaRoutingDataSource.bind("tenant:1");
+
+        // When
+        Object key = readOnlyKey();
+
+        // Then
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, key);
+        ReplicaRoutingDataSource.RoutingStats stats = routing.getStats();
+        assertFalse(stats.replicas().get(0).available());
+        assertFalse(stats.replicas().get(1).healthy());
+    }
+
+    @Test
+    void shouldReadOwnWritesFromPrimaryUntilReplicaReplaysCommitLsn() throws Exception {
+        // Given - repliki bezczynne (opóźnienie 0), ale jeszcze bez WAL zapisu klienta
+        lag(replica1, 0, 100);
+        lag(replica2, 0, 100);
+        routing.checkReplicaLag();
+        ReplicaRoutingDataSource.bind("tenant:1");
+        primaryLsn(150);
+        commitWrite();
+
+        // When
+        Object ownRead = readOnlyKey();
+        ReplicaRoutingDataSource.bind("tenant:2");
+        Object otherTenantRead = readOnlyKey();
+
+        lag(replica1, 0, 150);
+        lag(replica2, 0, 120);
+        routing.checkReplicaLag();
+        ReplicaRoutingDataSource.bind("tenant:1");
+        Object ownReadAfterReplay = readOnlyKey();
+        Object ownSecondReadAfterReplay = readOnlyKey();
+
+        // Then
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, ownRead);
+        assertNotEquals(ReplicaRoutingDataSource.PRIMARY, otherTenantRead);
+        // tylko replika-1 odtworzyła LSN zapisu
+        assertEquals("replica-1", ownReadAfterReplay);
+        assertEquals("replica-1", ownSecondReadAfterReplay);
+        ReplicaRoutingDataSource.RoutingStats stats = routing.getStats();
+        assertEquals(1, stats.stickyReads());
+        assertEquals(1, stats.trackedWriters());
+    }
+
+    @Test
+    void shouldKeepReadsOnPrimaryWhenCommitLsnIsUnknown() throws Exception {
+        // Given
+        lag(replica1, 0, 100);
+        lag(replica2, 0, 100);
+        routing.checkReplicaLag();
+        ReplicaRoutingDataSource.bind("tenant:1");
+        when(primary.getConnection()).thenThrow(new SQLException("Connection pool exhausted"));
+        commitWrite();
+
+        // When
+        lag(replica1, 0, 1_000_000);
+        lag(replica2, 0, 1_000_000);
+        routing.checkReplicaLag();
+        Object ownRead = readOnlyKey();
+
+        // Then
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, ownRead);
+    }
+
+    @Test
+    void shouldSkipReplicaWithStaleProbe() throws Exception {
+        // Given - pomiar starszy niż probe-stale-ms (np. wstrzymany harmonogram)
+        routing = routing(20);
+        lag(replica1, 0, 100);
+        lag(replica2, 0, 100);
+        routing.checkReplicaLag();
+        ReplicaRoutingDataSource.bind("tenant:1");
+        Thread.sleep(40);
+
+        // When
+        Object key = readOnlyKey();
+
+        // Then
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, key);
+        assertFalse(routing.getStats().replicas().get(0).available());
+    }
+
+    @Test
+    void shouldNotUseReplicasBeforeFirstLagCheck() {
+        // Given
+        ReplicaRoutingDataSource.bind("tenant:1");
+
+        // When
+        Object key = readOnlyKey();
+
+        // Then
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, key);
+    }
+
+    private Object readOnlyKey() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try {
+            return routing.determineCurrentLookupKey();
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+    }
+
+    /**
+     * Transakcja zapisu: wybór primary rejestruje śledzenie zapisu, commit je zatwierdza
+     */
+    private void commitWrite() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertEquals(ReplicaRoutingDataSource.PRIMARY, routing.determineCurrentLookupKey());
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private void lag(DataSource replica, long lagMs, long replayedLsn) throws SQLException {
+        ResultSet rs = result(replica);
+        lenient().when(rs.getLong(1)).thenReturn(lagMs);
+        lenient().when(rs.getLong(2)).thenReturn(replayedLsn);
+    }
+
+    private void primaryLsn(long lsn) throws SQLException {
+        when(result(primary).getLong(1)).thenReturn(lsn);
+    }
+
+    private static ResultSet result(DataSource dataSource) throws SQLException {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        return rs;
+    }
+}
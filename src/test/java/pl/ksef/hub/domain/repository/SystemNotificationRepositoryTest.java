@@ -0,0 +1,69 @@
+package pl.ksef.hub.domain.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+import pl.ksef.hub.domain.entity.SystemNotification;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy integracyjne operacji zbiorczych na powiadomieniach
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+@Transactional
+class SystemNotificationRepositoryTest {
+
+    @Autowired
+    private SystemNotificationRepository notificationRepository;
+
+    @Test
+    void shouldMarkAllUnreadNotificationsInSingleUpdate() {
+        // Given
+        for (int i = 0; i < 5; i++) {
+            notificationRepository.save(notification("unread " + i, LocalDateTime.now()));
+        }
+
+        // When
+        int updated = notificationRepository.markAllAsRead(LocalDateTime.now());
+
+        // Then
+        assertTrue(updated >= 5);
+        assertEquals(0, notificationRepository.countByIsReadFalse());
+    }
+
+    @Test
+    void shouldDeleteOldNotificationsInChunks() {
+        // Given
+        LocalDateTime old = LocalDateTime.now().minusDays(60);
+        for (int i = 0; i < 5; i++) {
+            notificationRepository.save(notification("old " + i, old));
+        }
+        SystemNotification recent = notificationRepository.save(notification("recent", LocalDateTime.now()));
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(30);
+
+        // When
+        int firstChunk = notificationRepository.deleteChunkCreatedBefore(cutoff, 3);
+        int secondChunk = notificationRepository.deleteChunkCreatedBefore(cutoff, 3);
+
+        // Then
+        assertEquals(3, firstChunk);
+        assertEquals(2, secondChunk);
+        assertTrue(notificationRepository.findById(recent.getId()).isPresent());
+    }
+
+    private SystemNotification notification(String title, LocalDateTime createdAt) {
+        return SystemNotification.builder()
+                .category(SystemNotification.NotificationCategory.HUB)
+                .level(SystemNotification.NotificationLevel.INFO)
+                .title(title)
+                .message("test")
+                .createdAt(createdAt)
+                .build();
+    }
+}
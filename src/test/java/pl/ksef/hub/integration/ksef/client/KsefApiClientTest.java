@@ -1,9 +1,11 @@
 package pl.ksef.hub.integration.ksef.client;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -11,6 +13,7 @@ import org.springframework.web.reactive.function.client.WebClient;
 import pl.ksef.hub.integration.ksef.dto.KsefInvoiceResponse;
 import pl.ksef.hub.integration.ksef.dto.KsefSessionRequest;
 import pl.ksef.hub.integration.ksef.dto.KsefSessionResponse;
+import pl.ksef.hub.service.PipelineMetrics;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
@@ -44,6 +47,12 @@ class KsefApiClientTest {
     @Mock
     private WebClient.ResponseSpec responseSpec;
 
+    @Mock
+    private KsefPayloadEncryption payloadEncryption;
+
+    @Spy
+    private PipelineMetrics pipelineMetrics = new PipelineMetrics(new SimpleMeterRegistry());
+
     @InjectMocks
     private KsefApiClient ksefApiClient;
 
@@ -120,6 +129,18 @@ class KsefApiClientTest {
         verify(requestBodyUriSpec).uri("/api/online/Invoice/Send");
     }
 
+    @Test
+    void shouldRefusePlainSendWhenEncryptionEnabledWithoutSessionKey() {
+        // Given - sesja otwarta poza tym procesem (brak klucza symetrycznego)
+        when(payloadEncryption.isEnabled()).thenReturn(true);
+
+        // When / Then
+        assertFalse(ksefApiClient.canSendInSession("foreign-session-token"));
+        assertThrows(IllegalStateException.class,
+                () -> ksefApiClient.sendInvoice("foreign-session-token", "<Faktura/>"));
+        verify(ksefWebClient, never()).put();
+    }
+
     @Test
     void shouldTerminateSessionSuccessfully() {
         // Given
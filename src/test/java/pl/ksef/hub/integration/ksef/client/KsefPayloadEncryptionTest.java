@@ -0,0 +1,116 @@
+package pl.ksef.hub.integration.ksef.client;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.ksef.hub.integration.ksef.client.KsefPayloadEncryption.SessionKey;
+import pl.ksef.hub.integration.ksef.dto.KsefInvoiceRequest;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy jednostkowe dla KsefPayloadEncryption
+ */
+class KsefPayloadEncryptionTest {
+
+    private static KeyPair ksefKeyPair;
+
+    private KsefPayloadEncryption encryption;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        if (ksefKeyPair == null) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            ksefKeyPair = generator.generateKeyPair();
+        }
+        encryption = new KsefPayloadEncryption(true, "AES/GCM/NoPadding", 256);
+    }
+
+    @Test
+    void shouldWrapSessionKeyWithKsefPublicKey() throws Exception {
+        // Given
+        String publicKey = Base64.getEncoder().encodeToString(ksefKeyPair.getPublic().getEncoded());
+
+        // When
+        SessionKey sessionKey = encryption.newSessionKey(KsefPayloadEncryption.parsePublicKey(publicKey));
+
+        // Then - KSeF odzyskuje ten sam 256-bitowy klucz
+        SecretKey unwrapped = unwrap(sessionKey.encryptedKey());
+        assertEquals(32, unwrapped.getEncoded().length);
+        assertArrayEquals(sessionKey.key().getEncoded(), unwrapped.getEncoded());
+    }
+
+    @Test
+    void shouldEncryptEachInvoiceWithUniqueIv() throws Exception {
+        // Given
+        SessionKey sessionKey = encryption.newSessionKey(ksefKeyPair.getPublic());
+        byte[] xml = "<Faktura>Zażółć gęślą jaźń</Faktura>".getBytes(StandardCharsets.UTF_8);
+
+        // When
+        Set<String> ivs = new HashSet<>();
+        byte[] encrypted = null;
+        for (int i = 0; i < 1000; i++) {
+            encrypted = encryption.encrypt(sessionKey, xml);
+            ivs.add(Base64.getEncoder().encodeToString(Arrays.copyOf(encrypted, 12)));
+        }
+
+        // Then
+        assertEquals(1000, ivs.size());
+        assertEquals(12 + xml.length + 16, encrypted.length);
+        assertArrayEquals(xml, decrypt(sessionKey.key(), encrypted));
+        assertEquals(1000, encryption.getStats().encryptedPayloads());
+    }
+
+    @Test
+    void shouldBuildEncryptedInvoiceRequest() throws Exception {
+        // Given
+        SessionKey sessionKey = encryption.newSessionKey(ksefKeyPair.getPublic());
+        String xml = "<Faktura>FV/1</Faktura>";
+
+        // When
+        KsefInvoiceRequest request = KsefApiClient.buildInvoiceRequest(xml, encryption, sessionKey);
+
+        // Then - hash faktury jawnej, hash i rozmiar treści zaszyfrowanej
+        KsefInvoiceRequest.InvoicePayload payload = request.getInvoicePayload();
+        byte[] encrypted = Base64.getDecoder().decode(payload.getEncryptedInvoiceBody());
+        assertEquals("encrypted", payload.getType());
+        assertNull(payload.getInvoiceBody());
+        assertEquals(sha256(xml.getBytes(StandardCharsets.UTF_8)), request.getInvoiceHash().getHashSHA().getValue());
+        assertEquals(sha256(encrypted), payload.getEncryptedInvoiceHash().getHashSHA().getValue());
+        assertEquals(encrypted.length, payload.getEncryptedInvoiceHash().getFileSize());
+        assertEquals(xml, new String(decrypt(sessionKey.key(), encrypted), StandardCharsets.UTF_8));
+    }
+
+    private static SecretKey unwrap(String encryptedKey) throws Exception {
+        Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        cipher.init(Cipher.DECRYPT_MODE, ksefKeyPair.getPrivate(),
+                new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT));
+        return new SecretKeySpec(cipher.doFinal(Base64.getDecoder().decode(encryptedKey)), "AES");
+    }
+
+    private static byte[] decrypt(SecretKey key, byte[] ivAndCiphertext) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, ivAndCiphertext, 0, 12));
+        return cipher.doFinal(ivAndCiphertext, 12, ivAndCiphertext.length - 12);
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+}
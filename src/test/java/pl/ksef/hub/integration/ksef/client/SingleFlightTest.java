@@ -0,0 +1,120 @@
+package pl.ksef.hub.integration.ksef.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy jednostkowe dla SingleFlight
+ */
+class SingleFlightTest {
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    @Test
+    void shouldShareResultOfConcurrentIdenticalCalls() throws Exception {
+        // Given
+        int callers = 8;
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+
+        // When
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> singleFlight.execute("getUpo", List.of("token", "REF-1"), () -> {
+                executions.incrementAndGet();
+                await(release);
+                return "upo";
+            })));
+        }
+        // Daj wszystkim wątkom czas na dołączenie do trwającego wywołania
+        while (singleFlight.getStats().getOrDefault("getUpo", new SingleFlight.FlightStats(0, 0)).coalesced()
+                < callers - 1) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        // Then
+        for (Future<String> result : results) {
+            assertEquals("upo", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(new SingleFlight.FlightStats(1, callers - 1), singleFlight.getStats().get("getUpo"));
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldNotShareCallsWithDifferentArguments() {
+        // When
+        String first = singleFlight.execute("getUpo", List.of("token", "REF-1"), () -> "a");
+        String second = singleFlight.execute("getUpo", List.of("token", "REF-2"), () -> "b");
+
+        // Then
+        assertEquals("a", first);
+        assertEquals("b", second);
+        assertEquals(0, singleFlight.getStats().get("getUpo").coalesced());
+    }
+
+    @Test
+    void shouldReleaseKeyAfterFailure() {
+        // Given
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute("initSession", List.of("nip"), () -> {
+            throw new IllegalStateException("KSeF unavailable");
+        }));
+
+        // When
+        String result = singleFlight.execute("initSession", List.of("nip"), () -> "token");
+
+        // Then
+        assertEquals("token", result);
+    }
+
+    @Test
+    void shouldPropagateErrorToJoinedCallersAndReleaseKey() throws Exception {
+        // Given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<String> owner = executor.submit(() -> singleFlight.execute("getUpo", List.of("REF-1"), () -> {
+            started.countDown();
+            await(release);
+            throw new StackOverflowError("simulated");
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> joined = executor.submit(() -> singleFlight.execute("getUpo", List.of("REF-1"), () -> "upo"));
+        while (singleFlight.getStats().getOrDefault("getUpo", new SingleFlight.FlightStats(0, 0)).coalesced() < 1) {
+            Thread.sleep(5);
+        }
+
+        // When
+        release.countDown();
+
+        // Then
+        ExecutionException ownerFailure = assertThrows(ExecutionException.class, () -> owner.get(5, TimeUnit.SECONDS));
+        ExecutionException joinedFailure = assertThrows(ExecutionException.class,
+                () -> joined.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(StackOverflowError.class, ownerFailure.getCause());
+        assertInstanceOf(StackOverflowError.class, joinedFailure.getCause());
+        assertEquals("upo", singleFlight.execute("getUpo", List.of("REF-1"), () -> "upo"));
+        executor.shutdownNow();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
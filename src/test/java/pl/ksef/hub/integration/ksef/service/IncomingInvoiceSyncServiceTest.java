@@ -0,0 +1,258 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.ksef.hub.config.DatabaseDialect;
+import pl.ksef.hub.domain.entity.InvoiceSyncState;
+import pl.ksef.hub.domain.repository.InvoiceRepository;
+import pl.ksef.hub.domain.repository.InvoiceSyncStateRepository;
+import pl.ksef.hub.domain.repository.TenantRepository;
+import pl.ksef.hub.integration.ksef.client.KsefApiClient;
+import pl.ksef.hub.integration.ksef.dto.KsefInvoiceQueryResponse;
+import pl.ksef.hub.service.PipelineMetrics;
+import pl.ksef.hub.service.WorkPartitionService;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla IncomingInvoiceSyncService
+ */
+@ExtendWith(MockitoExtension.class)
+class IncomingInvoiceSyncServiceTest {
+
+    private static final Long TENANT_ID = 1L;
+
+    @Mock
+    private KsefApiClient ksefApiClient;
+
+    @Mock
+    private KsefSessionManager ksefSessionManager;
+
+    @Mock
+    private KsefSessionManager.SessionLease lease;
+
+    @Mock
+    private InvoiceRepository invoiceRepository;
+
+    @Mock
+    private InvoiceSyncStateRepository syncStateRepository;
+
+    @Mock
+    private TenantRepository tenantRepository;
+
+    @Mock
+    private WorkPartitionService workPartitionService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private DatabaseDialect databaseDialect;
+
+    private KsefWorkScheduler ksefWorkScheduler;
+
+    private IncomingInvoiceSyncService syncService;
+
+    @BeforeEach
+    void setUp() {
+        ksefWorkScheduler = new KsefWorkScheduler(new PipelineMetrics(new SimpleMeterRegistry()), 4, 1, 1, 1000);
+        ksefWorkScheduler.start();
+        syncService = new IncomingInvoiceSyncService(ksefApiClient, ksefSessionManager, new InvoiceHeaderParser(),
+                invoiceRepository, syncStateRepository, tenantRepository, workPartitionService,
+                ksefWorkScheduler, jdbcTemplate, transactionTemplate, databaseDialect);
+        ReflectionTestUtils.setField(syncService, "enabled", true);
+        ReflectionTestUtils.setField(syncService, "backfillDays", 365);
+        ReflectionTestUtils.setField(syncService, "windowMinutes", 60L);
+        ReflectionTestUtils.setField(syncService, "maxWindowsPerRun", 31);
+        ReflectionTestUtils.setField(syncService, "overlapMs", 0L);
+        ReflectionTestUtils.setField(syncService, "pageSize", 100);
+        ReflectionTestUtils.setField(syncService, "maxResultsPerRange", 10_000L);
+        ReflectionTestUtils.setField(syncService, "tenantConcurrency", 1);
+        ReflectionTestUtils.setField(syncService, "queryConcurrency", 2);
+        syncService.init();
+
+        lenient().when(ksefSessionManager.leaseIfAvailable(TENANT_ID)).thenReturn(Optional.of(lease));
+        lenient().when(lease.getToken()).thenReturn("session-token");
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(),
+                        any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(inv -> {
+                    int[] counts = new int[inv.<Collection<?>>getArgument(1).size()];
+                    Arrays.fill(counts, 1);
+                    return new int[][]{counts};
+                });
+    }
+
+    @AfterEach
+    void tearDown() {
+        syncService.shutdown();
+        ksefWorkScheduler.shutdown();
+    }
+
+    @Test
+    void shouldDownloadOnlyMissingInvoicesAndAdvanceHighWaterMark() {
+        // Given
+        LocalDateTime highWaterMark = LocalDateTime.now().minusMinutes(30);
+        when(syncStateRepository.findById(TENANT_ID)).thenReturn(Optional.of(state(highWaterMark)));
+        when(ksefApiClient.queryIncomingInvoices(eq("session-token"), any(), any(), eq(100), eq(0)))
+                .thenReturn(page(3, header("KSEF-A"), header("KSEF-B"), header("KSEF-C")));
+        when(invoiceRepository.findExistingKsefNumbers(eq(TENANT_ID), anyCollection()))
+                .thenReturn(List.of("KSEF-A"));
+        when(ksefApiClient.getInvoice(eq("session-token"), anyString())).thenReturn(invoiceXml());
+
+        // When
+        int synced = syncService.syncTenant(TENANT_ID);
+
+        // Then
+        assertEquals(2, synced);
+        verify(ksefApiClient, never()).getInvoice(anyString(), eq("KSEF-A"));
+        verify(ksefApiClient).getInvoice("session-token", "KSEF-B");
+        verify(ksefApiClient).getInvoice("session-token", "KSEF-C");
+        verify(lease).close();
+
+        InvoiceSyncState saved = savedState();
+        assertTrue(saved.getHighWaterMark().isAfter(highWaterMark));
+        assertEquals(2, saved.getLastRunSynced());
+        assertEquals(2L, saved.getTotalSynced());
+        assertNull(saved.getLastError());
+        assertEquals(2, syncService.getStats().inserted());
+        assertEquals(1, syncService.getStats().skippedExisting());
+    }
+
+    @Test
+    void shouldSplitRangeExceedingResultLimit() {
+        // Given - zakres godziny przekracza limit, połówki już nie
+        ReflectionTestUtils.setField(syncService, "maxResultsPerRange", 2L);
+        when(syncStateRepository.findById(TENANT_ID))
+                .thenReturn(Optional.of(state(LocalDateTime.now().minusMinutes(59))));
+        when(ksefApiClient.queryIncomingInvoices(anyString(), any(), any(), anyInt(), eq(0)))
+                .thenAnswer(inv -> {
+                    Duration range = Duration.between(inv.<OffsetDateTime>getArgument(1), inv.<OffsetDateTime>getArgument(2));
+                    return range.toMinutes() > 40 ? page(5) : page(0);
+                });
+
+        // When
+        syncService.syncTenant(TENANT_ID);
+
+        // Then
+        verify(ksefApiClient, times(3)).queryIncomingInvoices(anyString(), any(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void shouldKeepHighWaterMarkAtFirstFailedWindow() {
+        // Given - trzy okna godzinowe, drugie kończy się błędem
+        LocalDateTime highWaterMark = LocalDateTime.now().minusMinutes(150);
+        OffsetDateTime failingFrom = highWaterMark.plusHours(1).atZone(ZoneId.systemDefault()).toOffsetDateTime();
+        when(syncStateRepository.findById(TENANT_ID)).thenReturn(Optional.of(state(highWaterMark)));
+        when(ksefApiClient.queryIncomingInvoices(anyString(), any(), any(), anyInt(), anyInt()))
+                .thenAnswer(inv -> {
+                    if (inv.<OffsetDateTime>getArgument(1).isEqual(failingFrom)) {
+                        throw new RuntimeException("Failed to query invoices: 503");
+                    }
+                    return page(0);
+                });
+
+        // When
+        syncService.syncTenant(TENANT_ID);
+
+        // Then
+        InvoiceSyncState saved = savedState();
+        assertEquals(highWaterMark.plusHours(1), saved.getHighWaterMark());
+        assertEquals("Failed to query invoices: 503", saved.getLastError());
+        assertEquals(1, syncService.getStats().failedRuns());
+    }
+
+    @Test
+    void shouldSplitBackfillIntoBoundedWindows() {
+        // Given
+        ReflectionTestUtils.setField(syncService, "maxWindowsPerRun", 5);
+        LocalDateTime from = LocalDateTime.of(2026, 1, 1, 0, 0);
+
+        // When
+        List<IncomingInvoiceSyncService.TimeRange> windows = syncService.split(from, from.plusDays(2));
+
+        // Then
+        assertEquals(5, windows.size());
+        assertEquals(from, windows.get(0).from());
+        assertEquals(from.plusHours(5), windows.get(4).to());
+    }
+
+    @Test
+    void shouldSkipTenantWithoutKsefSession() {
+        // Given
+        when(ksefSessionManager.leaseIfAvailable(TENANT_ID)).thenReturn(Optional.empty());
+
+        // When
+        int synced = syncService.syncTenant(TENANT_ID);
+
+        // Then
+        assertEquals(0, synced);
+        verifyNoInteractions(ksefApiClient, syncStateRepository);
+    }
+
+    private InvoiceSyncState savedState() {
+        ArgumentCaptor<InvoiceSyncState> captor = ArgumentCaptor.forClass(InvoiceSyncState.class);
+        verify(syncStateRepository).save(captor.capture());
+        return captor.getValue();
+    }
+
+    private static InvoiceSyncState state(LocalDateTime highWaterMark) {
+        return InvoiceSyncState.builder()
+                .tenantId(TENANT_ID)
+                .highWaterMark(highWaterMark)
+                .build();
+    }
+
+    private static KsefInvoiceQueryResponse page(long total, KsefInvoiceQueryResponse.InvoiceHeader... headers) {
+        return KsefInvoiceQueryResponse.builder()
+                .invoiceHeaderList(List.of(headers))
+                .numberOfElements(total)
+                .build();
+    }
+
+    private static KsefInvoiceQueryResponse.InvoiceHeader header(String ksefNumber) {
+        return KsefInvoiceQueryResponse.InvoiceHeader.builder()
+                .ksefReferenceNumber(ksefNumber)
+                .acquisitionTimestamp(OffsetDateTime.now())
+                .gross(new BigDecimal("123.00"))
+                .build();
+    }
+
+    private static String invoiceXml() {
+        return """
+                <Faktura>
+                    <Podmiot1><DaneIdentyfikacyjne><NIP>5260250274</NIP><Nazwa>Dostawca</Nazwa></DaneIdentyfikacyjne></Podmiot1>
+                    <Podmiot2><DaneIdentyfikacyjne><NIP>1234567890</NIP><Nazwa>Test Company</Nazwa></DaneIdentyfikacyjne></Podmiot2>
+                    <Fa><KodWaluty>PLN</KodWaluty><P_1>2026-02-05</P_1><P_2>FZ/1</P_2>
+                    <P_13_1>100.00</P_13_1><P_14_1>23.00</P_14_1><P_15>123.00</P_15></Fa>
+                </Faktura>
+                """;
+    }
+}
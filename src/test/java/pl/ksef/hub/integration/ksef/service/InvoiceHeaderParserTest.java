@@ -0,0 +1,90 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy jednostkowe dla InvoiceHeaderParser
+ */
+class InvoiceHeaderParserTest {
+
+    private static final String INVOICE_XML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <Faktura xmlns="http://crd.gov.pl/wzor/2023/06/29/12648/">
+                <Naglowek><KodFormularza>FA</KodFormularza></Naglowek>
+                <Podmiot1>
+                    <DaneIdentyfikacyjne><NIP>5260250274</NIP><Nazwa>Dostawca Sp. z o.o.</Nazwa></DaneIdentyfikacyjne>
+                </Podmiot1>
+                <Podmiot2>
+                    <DaneIdentyfikacyjne><NIP>1234567890</NIP><Nazwa>Test Company</Nazwa></DaneIdentyfikacyjne>
+                </Podmiot2>
+                <Fa>
+                    <KodWaluty>PLN</KodWaluty>
+                    <P_1>2026-02-05</P_1>
+                    <P_2>FZ/2026/02/017</P_2>
+                    <P_6>2026-02-03</P_6>
+                    <P_13_1>1000.00</P_13_1>
+                    <P_14_1>230.00</P_14_1>
+                    <P_13_2>100.00</P_13_2>
+                    <P_14_2>8.00</P_14_2>
+                    <P_15>1338.00</P_15>
+                    <FaWiersz><NrWierszaFa>1</NrWierszaFa><P_7>Usługa</P_7></FaWiersz>
+                </Fa>
+            </Faktura>
+            """;
+
+    private final InvoiceHeaderParser parser = new InvoiceHeaderParser();
+
+    @Test
+    void shouldExtractHeaderFields() {
+        // When
+        InvoiceHeaderParser.InvoiceHeader header = parser.parse(INVOICE_XML);
+
+        // Then
+        assertEquals("FZ/2026/02/017", header.invoiceNumber());
+        assertEquals(LocalDate.of(2026, 2, 5), header.issueDate());
+        assertEquals(LocalDate.of(2026, 2, 3), header.saleDate());
+        assertEquals("5260250274", header.sellerNip());
+        assertEquals("Dostawca Sp. z o.o.", header.sellerName());
+        assertEquals("1234567890", header.buyerNip());
+        assertEquals("Test Company", header.buyerName());
+        assertEquals("PLN", header.currency());
+    }
+
+    @Test
+    void shouldSumAmountsAcrossVatRates() {
+        // When
+        InvoiceHeaderParser.InvoiceHeader header = parser.parse(INVOICE_XML);
+
+        // Then
+        assertEquals(new BigDecimal("1100.00"), header.netAmount());
+        assertEquals(new BigDecimal("238.00"), header.vatAmount());
+        assertEquals(new BigDecimal("1338.00"), header.grossAmount());
+    }
+
+    @Test
+    void shouldStopBeforeInvoiceLines() {
+        // Given - uszkodzona końcówka dokumentu za P_15 nie jest czytana
+        String truncated = INVOICE_XML.substring(0, INVOICE_XML.indexOf("<FaWiersz>")) + "<FaWiersz><P_7>";
+
+        // When
+        InvoiceHeaderParser.InvoiceHeader header = parser.parse(truncated);
+
+        // Then
+        assertEquals(new BigDecimal("1338.00"), header.grossAmount());
+    }
+
+    @Test
+    void shouldRejectDoctype() {
+        // Given
+        String xxe = "<?xml version=\"1.0\"?><!DOCTYPE Faktura [<!ENTITY x SYSTEM \"file:///etc/passwd\">]>"
+                + "<Faktura><Fa><P_2>&x;</P_2></Fa></Faktura>";
+
+        // When / Then
+        assertThrows(RuntimeException.class, () -> parser.parse(xxe));
+    }
+}
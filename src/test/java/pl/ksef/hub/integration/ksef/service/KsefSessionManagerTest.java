@@ -0,0 +1,372 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.ksef.hub.domain.entity.KsefSession;
+import pl.ksef.hub.domain.entity.KsefSession.SessionType;
+import pl.ksef.hub.integration.ksef.client.KsefApiClient;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla KsefSessionManager
+ */
+@ExtendWith(MockitoExtension.class)
+class KsefSessionManagerTest {
+
+    @Mock
+    private KsefSessionService ksefSessionService;
+
+    @Mock
+    private KsefApiClient ksefApiClient;
+
+    @Mock
+    private KsefSessionStore sessionStore;
+
+    @InjectMocks
+    private KsefSessionManager sessionManager;
+
+    private final AtomicLong sessionIds = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(sessionManager, "minWarm", 1);
+        ReflectionTestUtils.setField(sessionManager, "maxSessionsPerTenant", 2);
+        ReflectionTestUtils.setField(sessionManager, "maxLeasesPerSession", 8);
+        ReflectionTestUtils.setField(sessionManager, "refreshBeforeMs", 300_000L);
+        ReflectionTestUtils.setField(sessionManager, "idleTimeoutMs", 900_000L);
+        ReflectionTestUtils.setField(sessionManager, "nearCacheTtlMs", 30_000L);
+        ReflectionTestUtils.setField(sessionManager, "openClaimTtlMs", 5_000L);
+        sessionManager.init();
+
+        lenient().when(sessionStore.findValid(anyLong())).thenReturn(List.of());
+        lenient().when(sessionStore.withTenantLock(anyLong(), any()))
+                .thenAnswer(inv -> inv.<Supplier<?>>getArgument(1).get());
+        lenient().when(sessionStore.claimOpening(anyLong(), anyString(), any())).thenReturn(true);
+        lenient().when(ksefApiClient.canSendInSession(anyString())).thenReturn(true);
+        lenient().when(ksefApiClient.isSessionSharable()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionManager.shutdown();
+    }
+
+    @Test
+    void shouldReuseSessionForConsecutiveLeases() {
+        // Given
+        when(ksefSessionService.openSession(eq(1L), eq(SessionType.ONLINE), eq("initial")))
+                .thenAnswer(inv -> session(LocalDateTime.now().plusHours(1)));
+
+        // When
+        String first;
+        String second;
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            first = lease.getToken();
+        }
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            second = lease.getToken();
+        }
+
+        // Then
+        assertEquals(first, second);
+        verify(ksefSessionService, times(1)).openSession(anyLong(), any(), anyString());
+        assertEquals(0, sessionManager.getStats().leased());
+    }
+
+    @Test
+    void shouldAdoptOpenSessionFromStore() {
+        // Given
+        KsefSessionStore.StoredSession stored = stored(LocalDateTime.now().plusHours(1));
+        when(sessionStore.findValid(1L)).thenReturn(List.of(stored));
+
+        // When
+        var lease = sessionManager.leaseIfAvailable(1L);
+
+        // Then
+        assertTrue(lease.isPresent());
+        assertEquals(stored.token(), lease.get().getToken());
+        verify(ksefSessionService, never()).openSession(anyLong(), any(), anyString());
+    }
+
+    @Test
+    void shouldNotAdoptSessionWithoutLocalPayloadKey() {
+        // Given - sesja otwarta przez inny węzeł, klucz szyfrowania treści tylko tam
+        KsefSessionStore.StoredSession stored = stored(LocalDateTime.now().plusHours(1));
+        when(sessionStore.findValid(1L)).thenReturn(List.of(stored));
+        when(ksefApiClient.canSendInSession(stored.token())).thenReturn(false);
+
+        // When
+        var lease = sessionManager.leaseIfAvailable(1L);
+
+        // Then
+        assertTrue(lease.isEmpty());
+        assertEquals(0, sessionManager.getStats().adopted());
+    }
+
+    @Test
+    void shouldRefreshSessionBeforeExpiry() throws Exception {
+        // Given - sesja wygasa za 2 minuty (mniej niż refresh-before)
+        when(ksefSessionService.openSession(eq(1L), eq(SessionType.ONLINE), eq("initial")))
+                .thenAnswer(inv -> session(LocalDateTime.now().plusMinutes(2)))
+                .thenAnswer(inv -> session(LocalDateTime.now().plusHours(1)));
+        String expiring;
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            expiring = lease.getToken();
+        }
+
+        // When - nowa sesja otwierana w tle
+        sessionManager.maintain();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (sessionManager.getStats().refreshed() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // Then
+        verify(ksefSessionService).closeSession(1L);
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            assertNotEquals(expiring, lease.getToken());
+        }
+        assertEquals(1, sessionManager.getStats().refreshed());
+    }
+
+    @Test
+    void shouldNotOpenSessionWithoutInitialToken() {
+        // When
+        var lease = sessionManager.leaseIfAvailable(1L);
+
+        // Then
+        assertTrue(lease.isEmpty());
+        verify(ksefSessionService, never()).openSession(anyLong(), any(), anyString());
+    }
+
+    @Test
+    void shouldAdoptSessionOpenedByAnotherNodeInsteadOfOpening() {
+        // Given - poświadczenie zweryfikowane pierwszą sesją, która potem zostaje unieważniona
+        when(ksefSessionService.openSession(eq(1L), eq(SessionType.ONLINE), eq("initial")))
+                .thenAnswer(inv -> session(LocalDateTime.now().plusHours(1)));
+        Long sessionId;
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            sessionId = lease.getSessionId();
+        }
+        when(sessionStore.findInvalidatedSince(any())).thenReturn(List.of(sessionId));
+        sessionManager.pollInvalidations();
+        // pusty magazyn przy wypożyczeniu, ale pod blokadą inny węzeł już otworzył sesję
+        KsefSessionStore.StoredSession other = stored(LocalDateTime.now().plusHours(1));
+        when(sessionStore.findValid(1L)).thenReturn(List.of(), List.of(other));
+
+        // When
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            // Then
+            assertEquals(other.token(), lease.getToken());
+        }
+        verify(ksefSessionService, times(1)).openSession(anyLong(), any(), anyString());
+        assertEquals(1, sessionManager.getStats().adopted());
+    }
+
+    @Test
+    void shouldWaitForSessionOpenedUnderAnotherNodesClaim() {
+        // Given - poświadczenie zweryfikowane, pierwsza sesja unieważniona
+        when(ksefSessionService.openSession(eq(1L), eq(SessionType.ONLINE), eq("initial")))
+                .thenAnswer(inv -> session(LocalDateTime.now().plusHours(1)));
+        Long sessionId;
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            sessionId = lease.getSessionId();
+        }
+        when(sessionStore.findInvalidatedSince(any())).thenReturn(List.of(sessionId));
+        sessionManager.pollInvalidations();
+        // inny węzeł zajął otwieranie - jego sesja pojawia się w magazynie przy kolejnym sprawdzeniu
+        KsefSessionStore.StoredSession other = stored(LocalDateTime.now().plusHours(1));
+        when(sessionStore.findValid(1L)).thenReturn(List.of(), List.of(), List.of(other));
+        when(sessionStore.claimOpening(eq(1L), anyString(), any())).thenReturn(false);
+
+        // When
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            // Then
+            assertEquals(other.token(), lease.getToken());
+        }
+        verify(ksefSessionService, times(1)).openSession(anyLong(), any(), anyString());
+        verify(sessionStore, never()).releaseOpening(anyLong(), anyString());
+    }
+
+    @Test
+    void shouldOpenOwnSessionWithoutClaimWhenSessionsCannotBeShared() {
+        // Given - szyfrowanie treści: klucz sesji tylko w tym procesie
+        when(ksefApiClient.isSessionSharable()).thenReturn(false);
+        when(ksefSessionService.openSession(eq(1L), eq(SessionType.ONLINE), eq("initial")))
+                .thenAnswer(inv -> session(LocalDateTime.now().plusHours(1)));
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            assertNotNull(lease.getToken());
+        }
+        when(sessionStore.findInvalidatedSince(any())).thenReturn(List.of(1L));
+        sessionManager.pollInvalidations();
+
+        // When
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            // Then
+            assertNotNull(lease.getToken());
+        }
+        verify(sessionStore, never()).withTenantLock(anyLong(), any());
+        verify(sessionStore, never()).claimOpening(anyLong(), anyString(), any());
+        verify(ksefSessionService, times(2)).openSession(anyLong(), any(), anyString());
+    }
+
+    @Test
+    void shouldKeepSessionHeldForClientUntilTerminated() {
+        // Given - sesja wydana klientowi API, bliska odnowienia
+        when(ksefSessionService.openSession(eq(1L), eq(SessionType.ONLINE), eq("initial")))
+                .thenAnswer(inv -> session(LocalDateTime.now().plusMinutes(2)));
+        String token = sessionManager.holdForClient(sessionManager.lease(1L, "initial"));
+
+        // When
+        sessionManager.maintain();
+
+        // Then - wycofywana, ale nie zamknięta pod klientem
+        verify(ksefSessionService, never()).closeSession(anyLong());
+        sessionManager.terminate(token);
+        verify(ksefSessionService).closeSession(1L);
+        verify(ksefApiClient, never()).terminateSession(anyString());
+    }
+
+    @Test
+    void shouldNotHoldPoolLockWhileReadingStore() throws Exception {
+        // Given - near-cache zawsze nieświeży, odczyt magazynu wstrzymany
+        ReflectionTestUtils.setField(sessionManager, "nearCacheTtlMs", 0L);
+        when(ksefSessionService.openSession(eq(1L), eq(SessionType.ONLINE), eq("initial")))
+                .thenAnswer(inv -> session(LocalDateTime.now().plusHours(1)));
+        sessionManager.lease(1L, "initial").close();
+        KsefSessionStore.StoredSession current = new KsefSessionStore.StoredSession(1L, "token-1",
+                LocalDateTime.now().plusHours(1));
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(sessionStore.findValid(1L)).thenAnswer(inv -> {
+            reading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(current);
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            // When
+            Future<String> leased = executor.submit(() -> {
+                try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+                    return lease.getToken();
+                }
+            });
+            assertTrue(reading.await(5, TimeUnit.SECONDS));
+            long started = System.nanoTime();
+            boolean usable = sessionManager.hasUsableSession(1L, "initial");
+            long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            release.countDown();
+
+            // Then - pula dostępna w trakcie odczytu magazynu
+            assertTrue(usable);
+            assertTrue(waitedMs < 1000, "pool monitor held during store read: " + waitedMs + " ms");
+            assertEquals("token-1", leased.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldRejectNonPositiveOpenClaimTtl() {
+        // Given
+        KsefSessionManager manager = new KsefSessionManager(ksefSessionService, ksefApiClient, sessionStore);
+        ReflectionTestUtils.setField(manager, "openClaimTtlMs", 0L);
+
+        // When / Then
+        assertThrows(IllegalStateException.class, manager::init);
+    }
+
+    @Test
+    void shouldRejectLeaseWithNonMatchingInitialToken() {
+        // Given
+        when(ksefSessionService.openSession(eq(1L), eq(SessionType.ONLINE), eq("initial")))
+                .thenAnswer(inv -> session(LocalDateTime.now().plusHours(1)));
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            assertNotNull(lease.getToken());
+        }
+
+        // When
+        RuntimeException rejected = assertThrows(RuntimeException.class, () -> sessionManager.lease(1L, "forged"));
+
+        // Then - odrzucony token nie zastępuje poświadczenia puli
+        assertTrue(rejected.getMessage().contains("does not match"));
+        assertFalse(sessionManager.hasUsableSession(1L, "forged"));
+        assertTrue(sessionManager.hasUsableSession(1L, "initial"));
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            assertNotNull(lease.getToken());
+        }
+        verify(ksefSessionService, never()).openSession(anyLong(), any(), eq("forged"));
+        assertEquals(1, sessionManager.getStats().rejected());
+    }
+
+    @Test
+    void shouldVerifyUnknownInitialTokenWithKsefInsteadOfAdopting() {
+        // Given - w magazynie sesja otwarta przez inny węzeł, pula nie zna jeszcze poświadczenia
+        KsefSessionStore.StoredSession other = stored(LocalDateTime.now().plusHours(1));
+        lenient().when(sessionStore.findValid(1L)).thenReturn(List.of(other));
+        when(ksefSessionService.openSession(eq(1L), eq(SessionType.ONLINE), eq("unverified")))
+                .thenThrow(new RuntimeException("KSeF rejected initial token"));
+
+        // When / Then
+        assertThrows(RuntimeException.class, () -> sessionManager.lease(1L, "unverified"));
+        assertFalse(sessionManager.hasUsableSession(1L, "unverified"));
+        assertEquals(0, sessionManager.getStats().adopted());
+    }
+
+    @Test
+    void shouldEvictSessionInvalidatedOnAnotherNode() {
+        // Given
+        when(ksefSessionService.openSession(eq(1L), eq(SessionType.ONLINE), eq("initial")))
+                .thenAnswer(inv -> session(LocalDateTime.now().plusHours(1)));
+        Long sessionId;
+        try (KsefSessionManager.SessionLease lease = sessionManager.lease(1L, "initial")) {
+            sessionId = lease.getSessionId();
+        }
+        when(sessionStore.findInvalidatedSince(any())).thenReturn(List.of(sessionId));
+
+        // When
+        sessionManager.pollInvalidations();
+
+        // Then - sesja usunięta z puli bez wywołania KSeF
+        assertFalse(sessionManager.hasUsableSession(1L, "initial"));
+        assertEquals(1, sessionManager.getStats().invalidated());
+        verify(ksefSessionService, never()).closeSession(anyLong());
+    }
+
+    private KsefSessionStore.StoredSession stored(LocalDateTime expiresAt) {
+        long id = sessionIds.incrementAndGet();
+        return new KsefSessionStore.StoredSession(id, "token-" + id, expiresAt);
+    }
+
+    private KsefSession session(LocalDateTime expiresAt) {
+        long id = sessionIds.incrementAndGet();
+        return KsefSession.builder()
+                .id(id)
+                .referenceNumber("REF-" + id)
+                .sessionType(SessionType.ONLINE)
+                .accessToken("token-" + id)
+                .tokenExpiresAt(expiresAt)
+                .build();
+    }
+}
@@ -0,0 +1,181 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pl.ksef.hub.integration.ksef.service.KsefWorkScheduler.Lane;
+import pl.ksef.hub.service.PipelineMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy jednostkowe dla KsefWorkScheduler
+ */
+class KsefWorkSchedulerTest {
+
+    private KsefWorkScheduler scheduler;
+
+    private final List<Long> executionOrder = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void shouldInterleaveTenantsWithinLane() throws Exception {
+        // Given - jeden wątek zajęty, klient 1 kolejkuje 5 zadań przed 2 zadaniami klienta 2
+        start(1, 0, 1);
+        CountDownLatch gate = occupyWorker(Lane.BULK);
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(recorded(1L, Lane.BULK, 1));
+        }
+        futures.add(recorded(2L, Lane.BULK, 1));
+        futures.add(recorded(2L, Lane.BULK, 1));
+
+        // When
+        gate.countDown();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(List.of(1L, 2L, 1L, 2L, 1L, 1L, 1L), executionOrder);
+    }
+
+    @Test
+    void shouldChargeTaskCostAgainstDeficit() throws Exception {
+        // Given - quantum 2: zadania klienta 1 kosztują 2, klienta 2 - 1
+        start(1, 0, 2);
+        CountDownLatch gate = occupyWorker(Lane.BULK);
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            futures.add(recorded(1L, Lane.BULK, 2));
+        }
+        for (int i = 0; i < 4; i++) {
+            futures.add(recorded(2L, Lane.BULK, 1));
+        }
+
+        // When
+        gate.countDown();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(List.of(1L, 2L, 2L, 1L, 2L, 2L), executionOrder);
+    }
+
+    @Test
+    void shouldRunInteractiveWorkBeforeQueuedBulkWork() throws Exception {
+        // Given
+        start(1, 0, 1);
+        CountDownLatch gate = occupyWorker(Lane.INTERACTIVE);
+        CompletableFuture<Long> bulk = recorded(1L, Lane.BULK, 1);
+        CompletableFuture<Long> interactive = recorded(2L, Lane.INTERACTIVE, 1);
+
+        // When
+        gate.countDown();
+        CompletableFuture.allOf(bulk, interactive).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(List.of(2L, 1L), executionOrder);
+    }
+
+    @Test
+    void shouldKeepReservedWorkersFreeForInteractiveWork() throws Exception {
+        // Given - 2 wątki, 1 zarezerwowany; praca w tle blokuje swój wątek
+        start(2, 1, 1);
+        CountDownLatch gate = occupyWorker(Lane.BULK);
+        CompletableFuture<Long> queuedBulk = recorded(1L, Lane.BULK, 1);
+
+        // When
+        Long result = scheduler.call(2L, Lane.INTERACTIVE, () -> 2L);
+
+        // Then
+        assertEquals(2L, result);
+        KsefWorkScheduler.SchedulerStats stats = scheduler.getStats();
+        assertEquals(1, stats.lanes().get(Lane.BULK).running());
+        assertEquals(1, stats.lanes().get(Lane.BULK).queued());
+        assertFalse(queuedBulk.isDone());
+
+        gate.countDown();
+        queuedBulk.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void shouldRejectWorkAboveTenantQueueLimitAndPropagateErrors() throws Exception {
+        // Given
+        scheduler = new KsefWorkScheduler(new PipelineMetrics(new SimpleMeterRegistry()), 1, 0, 1, 1);
+        scheduler.start();
+        CountDownLatch gate = occupyWorker(Lane.BULK);
+        recorded(1L, Lane.BULK, 1);
+
+        // When / Then
+        assertThrows(RuntimeException.class, () -> recorded(1L, Lane.BULK, 1));
+        assertEquals(1, scheduler.getStats().tenants().stream()
+                .filter(tenant -> tenant.tenantId() == 1L)
+                .findFirst().orElseThrow().rejected());
+
+        gate.countDown();
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> scheduler.call(3L, Lane.INTERACTIVE, () -> {
+                    throw new IllegalStateException("KSeF unavailable");
+                }));
+        assertEquals("KSeF unavailable", error.getMessage());
+    }
+
+    @Test
+    void shouldChargeSendByPayloadSizeAndRecordQueueWait() {
+        // Given
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        scheduler = new KsefWorkScheduler(new PipelineMetrics(registry), 1, 0, 32, 1000);
+        scheduler.start();
+
+        // When
+        String result = scheduler.call(1L, Lane.INTERACTIVE, KsefWorkScheduler.payloadCost("x".repeat(40 * 1024)),
+                () -> "sent");
+
+        // Then - zadanie droższe niż quantum wykonywane po zgromadzeniu deficytu
+        assertEquals("sent", result);
+        assertEquals(1, KsefWorkScheduler.payloadCost(""));
+        assertEquals(2, KsefWorkScheduler.payloadCost("x".repeat(1025)));
+        assertEquals(1L, registry.get(PipelineMetrics.SCHEDULER_WAIT).tag("lane", "INTERACTIVE").timer().count());
+    }
+
+    private void start(int workers, int reservedInteractive, int quantum) {
+        scheduler = new KsefWorkScheduler(new PipelineMetrics(new SimpleMeterRegistry()),
+                workers, reservedInteractive, quantum, 1000);
+        scheduler.start();
+    }
+
+    /**
+     * Zajmuje wątek zadaniem klienta 99 do zwolnienia zwróconej zapory
+     */
+    private CountDownLatch occupyWorker(Lane lane) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        scheduler.submit(99L, lane, () -> {
+            started.countDown();
+            try {
+                return gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return gate;
+    }
+
+    private CompletableFuture<Long> recorded(Long tenantId, Lane lane, int cost) {
+        return scheduler.submit(tenantId, lane, cost, () -> {
+            executionOrder.add(tenantId);
+            return tenantId;
+        });
+    }
+}
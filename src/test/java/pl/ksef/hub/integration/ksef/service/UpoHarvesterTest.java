@@ -0,0 +1,216 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.ksef.hub.domain.entity.Invoice.InvoiceStatus;
+import pl.ksef.hub.domain.repository.InvoiceRepository;
+import pl.ksef.hub.domain.repository.InvoiceRepository.PendingUpoView;
+import pl.ksef.hub.integration.ksef.client.KsefApiClient;
+import pl.ksef.hub.integration.ksef.dto.KsefUpoResponse;
+import pl.ksef.hub.service.PipelineMetrics;
+import pl.ksef.hub.service.WorkPartitionService;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla UpoHarvester
+ */
+@ExtendWith(MockitoExtension.class)
+class UpoHarvesterTest {
+
+    @Mock
+    private InvoiceRepository invoiceRepository;
+
+    @Mock
+    private KsefApiClient ksefApiClient;
+
+    @Mock
+    private KsefSessionManager ksefSessionManager;
+
+    @Mock
+    private UpoStorageService upoStorageService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private WorkPartitionService workPartitionService;
+
+    @Spy
+    private PipelineMetrics pipelineMetrics = new PipelineMetrics(new SimpleMeterRegistry());
+
+    @Mock
+    private KsefWorkScheduler ksefWorkScheduler;
+
+    @InjectMocks
+    private UpoHarvester harvester;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(harvester, "batchSize", 200);
+        ReflectionTestUtils.setField(harvester, "initialDelayMs", 5000L);
+        ReflectionTestUtils.setField(harvester, "maxDelayMs", 600_000L);
+
+        when(workPartitionService.ownedPartitions()).thenReturn(Map.of(0, 1L));
+        when(workPartitionService.getPartitionCount()).thenReturn(1);
+        KsefSessionManager.SessionLease lease = mock(KsefSessionManager.SessionLease.class);
+        lenient().when(lease.getToken()).thenReturn("session-token");
+        lenient().when(ksefSessionManager.leaseIfAvailable(anyLong())).thenReturn(Optional.of(lease));
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    void shouldSaveSuccessfulPollsWhenAnotherPollFails() {
+        // Given - zadanie faktury 2 kończy się błędem poza fetchUpo (np. zatrzymanie harmonogramu)
+        page(invoice(1L), invoice(2L));
+        when(ksefWorkScheduler.submit(anyLong(), any(), any())).thenAnswer(inv -> {
+            Supplier<?> work = inv.getArgument(2);
+            return CompletableFuture.completedFuture(work.get());
+        }).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("KSeF work scheduler stopped")));
+        upoAvailable();
+        updateCounts(1);
+
+        // When
+        int accepted = harvester.harvestOnce().join();
+
+        // Then
+        assertEquals(1, accepted);
+        assertEquals(1, harvester.getStats().accepted());
+        assertEquals(1, harvester.getStats().tracked()); // faktura 2 odroczona
+    }
+
+    @Test
+    void shouldCountOnlyRowsActuallyUpdated() {
+        // Given - wiersz faktury 2 odrzucony (partycja przejęta przez inny węzeł)
+        page(invoice(1L), invoice(2L));
+        runInline();
+        upoAvailable();
+        updateCounts(1, 0);
+
+        // When
+        int accepted = harvester.harvestOnce().join();
+
+        // Then
+        assertEquals(1, accepted);
+        assertEquals(1, harvester.getStats().accepted());
+    }
+
+    @Test
+    void shouldPrunePollStateOfInvoicesThatLeftThePage() {
+        // Given - UPO faktury 1 jeszcze niedostępne
+        page(invoice(1L));
+        runInline();
+        when(ksefApiClient.getUpo(anyString(), anyString())).thenReturn(null);
+        harvester.harvestOnce().join();
+        assertEquals(1, harvester.getStats().tracked());
+
+        // When - faktura zaakceptowana przez inny proces, nie ma jej już w kolejce
+        page();
+        harvester.harvestOnce().join();
+
+        // Then
+        assertEquals(0, harvester.getStats().tracked());
+    }
+
+    @Test
+    void shouldNotBlockSchedulerThreadWhilePollsAreQueued() {
+        // Given - pobranie UPO czeka w kolejce BULK
+        ReflectionTestUtils.setField(harvester, "enabled", true);
+        page(invoice(1L));
+        upoAvailable();
+        updateCounts(1);
+        CompletableFuture<Object> queued = new CompletableFuture<>();
+        AtomicReference<Supplier<?>> work = new AtomicReference<>();
+        when(ksefWorkScheduler.submit(anyLong(), any(), any())).thenAnswer(inv -> {
+            work.set(inv.getArgument(2));
+            return queued;
+        });
+
+        // When - przebieg zleca pracę i wraca; kolejny nie startuje przed zakończeniem poprzedniego
+        harvester.harvest();
+        harvester.harvest();
+
+        // Then
+        verify(invoiceRepository, times(1)).findPendingUpo(any(), anyLong(), anyInt(), any(), any());
+        verifyNoInteractions(jdbcTemplate);
+
+        queued.complete(work.get().get());
+        assertEquals(1, harvester.getStats().accepted());
+        harvester.harvest();
+        verify(invoiceRepository, times(2)).findPendingUpo(any(), anyLong(), anyInt(), any(), any());
+    }
+
+    private void page(PendingUpoView... invoices) {
+        when(invoiceRepository.findPendingUpo(eq(InvoiceStatus.SENT), anyLong(), anyInt(), any(), any()))
+                .thenReturn(List.of(invoices));
+    }
+
+    private void runInline() {
+        when(ksefWorkScheduler.submit(anyLong(), any(), any())).thenAnswer(inv -> {
+            Supplier<?> work = inv.getArgument(2);
+            return CompletableFuture.completedFuture(work.get());
+        });
+    }
+
+    private void upoAvailable() {
+        when(ksefApiClient.getUpo(anyString(), anyString()))
+                .thenReturn(KsefUpoResponse.builder().upo("UPO").build());
+        when(upoStorageService.store("UPO")).thenReturn(
+                new UpoStorageService.StoredUpo(new byte[]{1}, "KSEF-1", LocalDateTime.now(), "hash"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void updateCounts(int... counts) {
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenReturn(new int[][]{counts});
+    }
+
+    private static PendingUpoView invoice(Long id) {
+        return new PendingUpoView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getKsefNumber() {
+                return "KSEF-" + id;
+            }
+
+            @Override
+            public Long getTenantId() {
+                return 1L;
+            }
+
+            @Override
+            public LocalDateTime getSentToKsefAt() {
+                return LocalDateTime.now().minusMinutes(1);
+            }
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package pl.ksef.hub.integration.ksef.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy jednostkowe dla UpoStorageService
+ */
+class UpoStorageServiceTest {
+
+    private static final String UPO_XML = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <Potwierdzenie xmlns="http://upo.schematy.mf.gov.pl/KSeF/v4-2">
+                <NazwaPodmiotuPrzyjmujacego>Ministerstwo Finansów</NazwaPodmiotuPrzyjmujacego>
+                <Dokument>
+                    <NipSprzedawcy>1234567890</NipSprzedawcy>
+                    <NumerKSeFDokumentu>1234567890-20260205-ABCDEF123456-01</NumerKSeFDokumentu>
+                    <NumerFaktury>FV/2026/02/001</NumerFaktury>
+                    <DataNadaniaNumeruKSeF>2026-02-05T10:15:30</DataNadaniaNumeruKSeF>
+                    <SkrotDokumentu>q1w2e3r4t5y6u7i8o9p0ZXCVBNMasdfghjkl+/=</SkrotDokumentu>
+                </Dokument>
+            </Potwierdzenie>
+            """;
+
+    private final UpoStorageService upoStorageService = new UpoStorageService();
+
+    @Test
+    void shouldExtractKeyFieldsFromUpo() {
+        // When
+        UpoStorageService.StoredUpo upo = upoStorageService.store(encode(UPO_XML));
+
+        // Then
+        assertEquals("1234567890-20260205-ABCDEF123456-01", upo.ksefNumber());
+        assertEquals(LocalDateTime.of(2026, 2, 5, 10, 15, 30), upo.acceptedAt());
+        assertEquals("q1w2e3r4t5y6u7i8o9p0ZXCVBNMasdfghjkl+/=", upo.documentHash());
+    }
+
+    @Test
+    void shouldRestoreOriginalContentFromCompressedForm() {
+        // Given
+        String base64 = encode(UPO_XML);
+
+        // When
+        UpoStorageService.StoredUpo upo = upoStorageService.store(base64);
+
+        // Then
+        assertEquals(UPO_XML, upoStorageService.readXml(upo.compressed()));
+        assertEquals(base64, upoStorageService.readBase64(upo.compressed()));
+    }
+
+    @Test
+    void shouldRejectInvalidXml() {
+        // Expect
+        assertThrows(RuntimeException.class, () -> upoStorageService.store(encode("<Potwierdzenie><Dokument>")));
+        assertThrows(IllegalArgumentException.class, () -> upoStorageService.store(""));
+    }
+
+    private static String encode(String xml) {
+        return Base64.getEncoder().encodeToString(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,180 @@
+package pl.ksef.hub.integration.ksef.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import pl.ksef.hub.integration.ksef.client.KsefApiClient;
+import pl.ksef.hub.integration.ksef.client.KsefPayloadEncryption;
+import pl.ksef.hub.integration.ksef.dto.KsefInvoiceQueryResponse;
+import pl.ksef.hub.integration.ksef.dto.KsefInvoiceResponse;
+import pl.ksef.hub.integration.ksef.dto.KsefSessionResponse;
+import pl.ksef.hub.integration.ksef.dto.KsefUpoResponse;
+import pl.ksef.hub.integration.ksef.service.InvoiceHeaderParser;
+import pl.ksef.hub.service.PipelineMetrics;
+import pl.ksef.hub.service.SystemNotificationService;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Testy jednostkowe dla KsefSimulator - prawdziwy KsefApiClient przeciw symulatorowi na losowym porcie
+ */
+class KsefSimulatorTest {
+
+    private KsefSimulator simulator;
+
+    @AfterEach
+    void tearDown() {
+        simulator.stop();
+    }
+
+    @Test
+    void shouldServeFullInvoiceFlowForKsefApiClient() {
+        // Given
+        KsefApiClient client = client(start(0.0, 0));
+
+        // When
+        KsefSessionResponse session = client.initSession("1234567890", "initial-token");
+        KsefInvoiceResponse sent = client.sendInvoice(session.getToken(), "<Faktura>Zażółć</Faktura>");
+        KsefUpoResponse upo = client.getUpo(session.getToken(), sent.getElementReferenceNumber());
+        client.terminateSession(session.getToken());
+
+        // Then
+        assertTrue(sent.getElementReferenceNumber().startsWith("1234567890-"));
+        String upoXml = new String(Base64.getDecoder().decode(upo.getUpo()), StandardCharsets.UTF_8);
+        assertTrue(upoXml.contains(sent.getElementReferenceNumber()));
+        assertTrue(client.checkApiStatus());
+        assertEquals(0, simulator.getStats().sessions());
+        assertEquals(1, simulator.getStats().endpoints().get("Invoice/Send").ok());
+    }
+
+    @Test
+    void shouldAcceptEncryptedInvoicesInEncryptedSession() {
+        // Given
+        KsefApiClient client = client(start(0.0, 0), true);
+        KsefSessionResponse session = client.initSession("1234567890", "initial-token");
+
+        // When - symulator odszyfrowuje treść i weryfikuje hash faktury jawnej
+        KsefInvoiceResponse first = client.sendInvoice(session.getToken(), "<Faktura>Zażółć</Faktura>");
+        KsefInvoiceResponse second = client.sendInvoice(session.getToken(), "<Faktura>gęślą jaźń</Faktura>");
+
+        // Then
+        assertNotEquals(first.getElementReferenceNumber(), second.getElementReferenceNumber());
+        assertEquals(2, simulator.getStats().endpoints().get("Invoice/Send").ok());
+        assertEquals(1, simulator.getStats().endpoints().get("security/public-key-certificates").requests());
+        client.terminateSession(session.getToken());
+
+        // Klucz publiczny KSeF pobrany raz dla kolejnych sesji
+        client.terminateSession(client.initSession("1234567890", "initial-token").getToken());
+        assertEquals(1, simulator.getStats().endpoints().get("security/public-key-certificates").requests());
+    }
+
+    @Test
+    void shouldThrottleAboveRateLimit() {
+        // Given - limit 2 żądania na sekundę
+        WebClient webClient = webClient(start(0.0, 2));
+
+        // When
+        webClient.get().uri("/common/Status").retrieve().toBodilessEntity().block();
+        webClient.get().uri("/common/Status").retrieve().toBodilessEntity().block();
+        WebClientResponseException throttled = assertThrows(WebClientResponseException.class,
+                () -> webClient.get().uri("/common/Status").retrieve().toBodilessEntity().block());
+
+        // Then
+        assertEquals(429, throttled.getStatusCode().value());
+        assertEquals("1", throttled.getHeaders().getFirst("Retry-After"));
+        assertEquals(1, simulator.getStats().endpoints().get("common/Status").throttled());
+    }
+
+    @Test
+    void shouldRejectUnknownSessionAndInjectErrors() {
+        // Given - każde żądanie kończy się błędem 500
+        KsefApiClient client = client(start(1.0, 0));
+
+        // When / Then
+        RuntimeException unauthorized = assertThrows(RuntimeException.class,
+                () -> client.sendInvoice("unknown-token", "<Faktura/>"));
+        assertEquals(401, ((WebClientResponseException) unauthorized.getCause()).getStatusCode().value());
+
+        RuntimeException failed = assertThrows(RuntimeException.class,
+                () -> client.initSession("1234567890", "initial-token"));
+        assertEquals(500, ((WebClientResponseException) failed.getCause()).getStatusCode().value());
+    }
+
+    @Test
+    void shouldReturnServiceUnavailableDuringOutage() {
+        // Given
+        WebClient webClient = webClient(start(0.0, 0));
+        webClient.post().uri("/sim/outage?durationMs=60000").retrieve().toBodilessEntity().block();
+
+        // When
+        WebClientResponseException unavailable = assertThrows(WebClientResponseException.class,
+                () -> webClient.get().uri("/common/Status").retrieve().toBodilessEntity().block());
+
+        // Then
+        assertEquals(503, unavailable.getStatusCode().value());
+        assertTrue(simulator.getStats().outage());
+    }
+
+    @Test
+    void shouldServeDeterministicIncomingInvoices() {
+        // Given - jedna faktura zakupowa na sekundę
+        KsefApiClient client = client(start(0.0, 0, 3600));
+        KsefSessionResponse session = client.initSession("1234567890", "initial-token");
+        OffsetDateTime to = OffsetDateTime.now();
+        OffsetDateTime from = to.minusMinutes(1);
+
+        // When
+        KsefInvoiceQueryResponse page = client.queryIncomingInvoices(session.getToken(), from, to, 10, 0);
+        KsefInvoiceQueryResponse again = client.queryIncomingInvoices(session.getToken(), from, to, 10, 0);
+        KsefInvoiceQueryResponse.InvoiceHeader first = page.getInvoiceHeaderList().get(0);
+        String xml = client.getInvoice(session.getToken(), first.getKsefReferenceNumber());
+
+        // Then
+        assertTrue(page.getNumberOfElements() >= 59 && page.getNumberOfElements() <= 61);
+        assertEquals(10, page.getInvoiceHeaderList().size());
+        assertEquals(first.getKsefReferenceNumber(), again.getInvoiceHeaderList().get(0).getKsefReferenceNumber());
+        InvoiceHeaderParser.InvoiceHeader parsed = new InvoiceHeaderParser().parse(xml);
+        assertEquals(first.getInvoiceReferenceNumber(), parsed.invoiceNumber());
+        assertEquals(0, first.getGross().compareTo(parsed.grossAmount()));
+        assertEquals("1234567890", parsed.buyerNip());
+        assertThrows(RuntimeException.class, () -> client.getInvoice(session.getToken(), "5260250274-20260101-XYZ-00"));
+    }
+
+    private String start(double errorRate, int rateLimit) {
+        return start(errorRate, rateLimit, 0);
+    }
+
+    private String start(double errorRate, int rateLimit, int incomingPerHour) {
+        simulator = new KsefSimulator(new ObjectMapper().findAndRegisterModules(), "localhost", 0,
+                0, 0, errorRate, rateLimit, 1, 0, 0, 3600, 0, incomingPerHour);
+        simulator.start();
+        return "http://localhost:" + simulator.getPort();
+    }
+
+    private static WebClient webClient(String baseUrl) {
+        return WebClient.builder().baseUrl(baseUrl).build();
+    }
+
+    private static KsefApiClient client(String baseUrl) {
+        return client(baseUrl, false);
+    }
+
+    private static KsefApiClient client(String baseUrl, boolean encryption) {
+        KsefApiClient client = new KsefApiClient(webClient(baseUrl), mock(SystemNotificationService.class),
+                new PipelineMetrics(new SimpleMeterRegistry()),
+                new KsefPayloadEncryption(encryption, "AES/GCM/NoPadding", 256));
+        ReflectionTestUtils.setField(client, "timeout", 5000);
+        ReflectionTestUtils.setField(client, "baseUrl", baseUrl);
+        ReflectionTestUtils.setField(client, "environment", "SIMULATOR");
+        return client;
+    }
+}
@@ -0,0 +1,81 @@
+package pl.ksef.hub.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla JwtAuthenticationFilter
+ */
+@ExtendWith(MockitoExtension.class)
+class JwtAuthenticationFilterTest {
+
+    @Mock
+    private JwtService jwtService;
+
+    @Mock
+    private UserPrincipalCache principalCache;
+
+    @InjectMocks
+    private JwtAuthenticationFilter filter;
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void shouldTakeRoleFromPrincipalCacheNotFromToken() throws Exception {
+        // Given - token wydany przed odebraniem uprawnień administratora
+        Claims claims = Jwts.claims().subject("user@example.com").add(JwtService.CLAIM_ROLE, "ADMIN").build();
+        when(jwtService.parseToken("token")).thenReturn(claims);
+        when(principalCache.get("user@example.com"))
+                .thenReturn(new UserPrincipalCache.CachedPrincipal(1L, "user@example.com", "USER", 1L, true));
+
+        // When
+        filter.doFilter(request("token"), new MockHttpServletResponse(), new MockFilterChain());
+
+        // Then
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertNotNull(authentication);
+        assertEquals(List.of("ROLE_USER"),
+                authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+    }
+
+    @Test
+    void shouldRejectTokenOfInactiveUser() throws Exception {
+        // Given
+        Claims claims = Jwts.claims().subject("user@example.com").add(JwtService.CLAIM_ROLE, "ADMIN").build();
+        when(jwtService.parseToken("token")).thenReturn(claims);
+        when(principalCache.get("user@example.com"))
+                .thenReturn(new UserPrincipalCache.CachedPrincipal(1L, "user@example.com", "ADMIN", 1L, false));
+
+        // When
+        filter.doFilter(request("token"), new MockHttpServletResponse(), new MockFilterChain());
+
+        // Then
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    private MockHttpServletRequest request(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/tenants");
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+}
@@ -0,0 +1,49 @@
+package pl.ksef.hub.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy jednostkowe dla JwtService
+ */
+class JwtServiceTest {
+
+    @Test
+    void shouldSignAndParseTokenWithBase64Secret() {
+        // Given
+        JwtService jwtService = jwtService(Base64.getEncoder().encodeToString(new byte[32]));
+        UserDetails user = new User("user@example.com", "password", List.of());
+
+        // When
+        String token = jwtService.generateToken(user);
+
+        // Then
+        assertEquals("user@example.com", jwtService.extractUsername(token));
+        assertTrue(jwtService.isTokenValid(token, user));
+    }
+
+    @Test
+    void shouldFailAtStartupForInvalidSecret() {
+        // Then - ani tekst spoza Base64, ani za krótki klucz nie są zamieniane na inny klucz
+        assertThrows(IllegalStateException.class,
+                () -> jwtService("your-secret-key-change-in-production-minimum-256-bits-long"));
+        assertThrows(IllegalStateException.class,
+                () -> jwtService(Base64.getEncoder().encodeToString(new byte[16])));
+    }
+
+    private static JwtService jwtService(String secret) {
+        JwtService jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secretKey", secret);
+        ReflectionTestUtils.setField(jwtService, "jwtExpiration", 60_000L);
+        ReflectionTestUtils.setField(jwtService, "refreshExpiration", 120_000L);
+        jwtService.init();
+        return jwtService;
+    }
+}
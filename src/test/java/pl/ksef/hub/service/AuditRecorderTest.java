@@ -0,0 +1,290 @@
+package pl.ksef.hub.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.ksef.hub.domain.entity.AuditLog.ActionType;
+import pl.ksef.hub.security.UserPrincipalCache;
+import pl.ksef.hub.service.AuditRecorder.OverflowPolicy;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla AuditRecorder
+ */
+@ExtendWith(MockitoExtension.class)
+class AuditRecorderTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private UserPrincipalCache principalCache;
+
+    private AuditRecorder recorder;
+
+    /** Opisy zdarzeń w kolejności zapisu (kolumna description) */
+    private final List<String> writtenDescriptions = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void tearDown() {
+        if (recorder != null) {
+            recorder.stop();
+        }
+    }
+
+    @Test
+    void shouldWriteBufferedEventsInSingleBatch() throws Exception {
+        // Given
+        start(16, OverflowPolicy.DROP_NEWEST);
+        stubBatchInsert();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(recorder.record(ActionType.UPDATE, 1L, "Invoice", i, "event-" + i));
+        }
+
+        // When
+        int flushed = recorder.flush();
+
+        // Then
+        assertEquals(3, flushed);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyCollection(), eq(3),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(List.of("event-0", "event-1", "event-2"), writtenDescriptions);
+        AuditRecorder.AuditStats stats = recorder.getStats();
+        assertEquals(3, stats.written());
+        assertEquals(0, stats.pending());
+    }
+
+    @Test
+    void shouldDropNewestEventsWhenBufferIsFull() throws Exception {
+        // Given
+        start(4, OverflowPolicy.DROP_NEWEST);
+        stubBatchInsert();
+
+        // When
+        List<Boolean> accepted = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            accepted.add(recorder.record(ActionType.UPDATE, 1L, "Invoice", i, "event-" + i));
+        }
+        recorder.flush();
+
+        // Then
+        assertEquals(List.of(true, true, true, true, false, false), accepted);
+        assertEquals(List.of("event-0", "event-1", "event-2", "event-3"), writtenDescriptions);
+        assertEquals(2, recorder.getStats().dropped());
+    }
+
+    @Test
+    void shouldDropOldestEventsWhenBufferIsFull() throws Exception {
+        // Given
+        start(4, OverflowPolicy.DROP_OLDEST);
+        stubBatchInsert();
+
+        // When
+        for (int i = 0; i < 6; i++) {
+            assertTrue(recorder.record(ActionType.UPDATE, 1L, "Invoice", i, "event-" + i));
+        }
+        recorder.flush();
+
+        // Then
+        assertEquals(List.of("event-2", "event-3", "event-4", "event-5"), writtenDescriptions);
+        assertEquals(2, recorder.getStats().dropped());
+    }
+
+    @Test
+    void shouldWriteSynchronouslyInCallerThreadWhenBufferIsFull() throws Exception {
+        // Given
+        start(4, OverflowPolicy.CALLER_RUNS);
+        stubBatchInsert();
+
+        // When
+        for (int i = 0; i < 6; i++) {
+            assertTrue(recorder.record(ActionType.UPDATE, 1L, "Invoice", i, "event-" + i));
+        }
+
+        // Then - nadmiarowe zdarzenia zapisane od razu, reszta czeka w buforze
+        assertEquals(List.of("event-4", "event-5"), writtenDescriptions);
+        AuditRecorder.AuditStats stats = recorder.getStats();
+        assertEquals(2, stats.callerRuns());
+        assertEquals(4, stats.pending());
+        assertEquals(0, stats.dropped());
+
+        recorder.flush();
+        assertEquals(6, writtenDescriptions.size());
+    }
+
+    @Test
+    void shouldFallBackToRowInsertsWhenBatchFails() throws Exception {
+        // Given - drugi wiersz narusza ograniczenie
+        start(16, OverflowPolicy.DROP_NEWEST);
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class)))
+                .thenThrow(new RuntimeException("violates foreign key constraint"));
+        when(jdbcTemplate.update(anyString(), any(PreparedStatementSetter.class)))
+                .thenReturn(1)
+                .thenThrow(new RuntimeException("violates foreign key constraint"))
+                .thenReturn(1);
+        for (int i = 0; i < 3; i++) {
+            recorder.record(ActionType.CREATE, 1L, "Invoice", i, "event-" + i);
+        }
+
+        // When
+        recorder.flush();
+
+        // Then
+        verify(jdbcTemplate, times(3)).update(anyString(), any(PreparedStatementSetter.class));
+        AuditRecorder.AuditStats stats = recorder.getStats();
+        assertEquals(2, stats.written());
+        assertEquals(1, stats.failed());
+    }
+
+    @Test
+    void shouldResolveUserIdOfExplicitUserAtWriteTime() throws Exception {
+        // Given
+        start(16, OverflowPolicy.DROP_NEWEST);
+        PreparedStatement ps = stubBatchInsert();
+        when(principalCache.get("jan@example.com"))
+                .thenReturn(new UserPrincipalCache.CachedPrincipal(7L, "jan@example.com", "USER", 1L, true));
+        recorder.record(ActionType.LOGIN, 1L, "jan@example.com", "User", 7L, "User logged in", null);
+
+        // When
+        recorder.flush();
+
+        // Then
+        verify(ps).setObject(1, 1L);
+        verify(ps).setObject(2, 7L);
+        verify(ps).setString(3, "LOGIN");
+        verify(ps).setString(5, "7");
+    }
+
+    @Test
+    void shouldNotRecordWhenDisabled() {
+        // Given
+        recorder = new AuditRecorder(jdbcTemplate, principalCache, new SimpleMeterRegistry(),
+                false, 16, 1000, 60_000, OverflowPolicy.DROP_NEWEST);
+        recorder.start();
+
+        // When
+        boolean accepted = recorder.record(ActionType.CREATE, 1L, "Invoice", 1L, "event");
+
+        // Then
+        assertFalse(accepted);
+        assertEquals(0, recorder.flush());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void shouldDeliverEveryItemOnceWithConcurrentProducersAndConsumers() throws Exception {
+        // Given
+        AuditRecorder.RingBuffer<Integer> ring = new AuditRecorder.RingBuffer<>(1024);
+        int producers = 4;
+        int perProducer = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers + 2);
+        CountDownLatch startGate = new CountDownLatch(1);
+        CountDownLatch producersDone = new CountDownLatch(producers);
+        Set<Integer> received = Collections.synchronizedSet(new HashSet<>());
+        List<Integer> duplicates = Collections.synchronizedList(new ArrayList<>());
+
+        try {
+            // When
+            for (int p = 0; p < producers; p++) {
+                int base = p * perProducer;
+                executor.submit(() -> {
+                    startGate.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!ring.offer(base + i)) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                    producersDone.countDown();
+                    return null;
+                });
+            }
+            List<Future<?>> consumers = new ArrayList<>();
+            for (int c = 0; c < 2; c++) {
+                consumers.add(executor.submit(() -> {
+                    startGate.await();
+                    while (producersDone.getCount() > 0 || ring.size() > 0) {
+                        Integer item = ring.poll();
+                        if (item == null) {
+                            Thread.onSpinWait();
+                        } else if (!received.add(item)) {
+                            duplicates.add(item);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            startGate.countDown();
+            for (Future<?> consumer : consumers) {
+                consumer.get(30, TimeUnit.SECONDS);
+            }
+
+            // Then
+            assertEquals(producers * perProducer, received.size());
+            assertTrue(duplicates.isEmpty());
+            assertEquals(0, ring.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void start(int capacity, OverflowPolicy overflowPolicy) throws InterruptedException {
+        // batch-size powyżej pojemności i długi interwał - wątek zapisu nie wyprzedza testu
+        recorder = new AuditRecorder(jdbcTemplate, principalCache, new SimpleMeterRegistry(),
+                true, capacity, 1000, 60_000, overflowPolicy);
+        recorder.start();
+        Thread writer = (Thread) ReflectionTestUtils.getField(recorder, "writer");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (writer.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Wsad wiąże każde zdarzenie na atrapie PreparedStatement i zbiera kolumnę description
+     */
+    @SuppressWarnings("unchecked")
+    private PreparedStatement stubBatchInsert() throws Exception {
+        PreparedStatement ps = mock(PreparedStatement.class);
+        doAnswer(inv -> {
+            if (inv.<Integer>getArgument(0) == 6) {
+                writtenDescriptions.add(inv.getArgument(1));
+            }
+            return null;
+        }).when(ps).setString(anyInt(), any());
+        when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class)))
+                .thenAnswer(inv -> {
+                    ParameterizedPreparedStatementSetter<Object> setter = inv.getArgument(3);
+                    Collection<Object> events = inv.getArgument(1);
+                    for (Object event : events) {
+                        setter.setValues(ps, event);
+                    }
+                    return new int[][]{new int[events.size()]};
+                });
+        return ps;
+    }
+}
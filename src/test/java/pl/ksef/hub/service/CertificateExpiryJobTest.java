@@ -0,0 +1,142 @@
+package pl.ksef.hub.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.ksef.hub.domain.entity.Certificate;
+import pl.ksef.hub.domain.entity.Tenant;
+import pl.ksef.hub.service.CertificateService.ExpiredCertificate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla CertificateExpiryJob
+ */
+@ExtendWith(MockitoExtension.class)
+class CertificateExpiryJobTest {
+
+    @Mock
+    private CertificateService certificateService;
+
+    @Mock
+    private SystemNotificationService notificationService;
+
+    @Mock
+    private WorkPartitionService workPartitionService;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private CertificateExpiryJob job;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(job, "enabled", true);
+        ReflectionTestUtils.setField(job, "warningDays", 30);
+        lenient().when(workPartitionService.isLeader()).thenReturn(true);
+    }
+
+    @Test
+    void shouldSendSingleAggregatedNotificationPerSweep() throws Exception {
+        // Given - więcej wygaszonych certyfikatów niż mieści lista w szczegółach
+        List<ExpiredCertificate> expired = IntStream.rangeClosed(1, CertificateExpiryJob.MAX_LISTED + 10)
+                .mapToObj(i -> new ExpiredCertificate((long) i, 1L, "cert-" + i, LocalDateTime.now().minusDays(1)))
+                .toList();
+        when(certificateService.updateExpiredCertificates()).thenReturn(expired);
+
+        // When
+        job.expireCertificates();
+
+        // Then
+        ArgumentCaptor<String> details = ArgumentCaptor.forClass(String.class);
+        verify(notificationService, times(1)).notifyCertificatesExpired(eq(expired.size()), details.capture());
+        JsonNode json = objectMapper.readTree(details.getValue());
+        assertEquals(expired.size(), json.get("count").asInt());
+        assertTrue(json.get("truncated").asBoolean());
+        assertEquals(CertificateExpiryJob.MAX_LISTED, json.get("certificates").size());
+        assertEquals("cert-50", json.get("certificates").get(CertificateExpiryJob.MAX_LISTED - 1)
+                .get("certificate_id").asText());
+    }
+
+    @Test
+    void shouldEscapeCertificateIdentifiersInDetails() throws Exception {
+        // Given - identyfikator z cudzysłowem i ukośnikiem odwrotnym
+        String certificateId = "cert-\"1\"\\x";
+        LocalDateTime expiresAt = LocalDateTime.of(2031, 5, 10, 12, 0);
+        when(certificateService.updateExpiredCertificates())
+                .thenReturn(List.of(new ExpiredCertificate(1L, 2L, certificateId, expiresAt)));
+
+        // When
+        job.expireCertificates();
+
+        // Then
+        ArgumentCaptor<String> details = ArgumentCaptor.forClass(String.class);
+        verify(notificationService).notifyCertificatesExpired(eq(1), details.capture());
+        JsonNode certificate = objectMapper.readTree(details.getValue()).get("certificates").get(0);
+        assertEquals(certificateId, certificate.get("certificate_id").asText());
+        assertEquals(2L, certificate.get("tenant_id").asLong());
+        assertEquals("2031-05-10T12:00", certificate.get("expires_at").asText());
+    }
+
+    @Test
+    void shouldNotNotifyWhenNothingExpired() {
+        // Given
+        when(certificateService.updateExpiredCertificates()).thenReturn(List.of());
+
+        // When
+        job.expireCertificates();
+
+        // Then
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    void shouldSkipSweepOnNonLeaderNode() {
+        // Given
+        when(workPartitionService.isLeader()).thenReturn(false);
+
+        // When
+        job.expireCertificates();
+        job.warnAboutExpiringCertificates();
+
+        // Then
+        verifyNoInteractions(certificateService, notificationService);
+    }
+
+    @Test
+    void shouldWarnAboutCertificatesExpiringWithinHorizon() throws Exception {
+        // Given
+        Certificate expiring = Certificate.builder()
+                .id(7L)
+                .tenant(Tenant.builder().id(3L).build())
+                .certificateId("cert-7")
+                .expiresAt(LocalDateTime.now().plusDays(5))
+                .build();
+        when(certificateService.findExpiringCertificates(30)).thenReturn(List.of(expiring));
+
+        // When
+        job.warnAboutExpiringCertificates();
+
+        // Then
+        ArgumentCaptor<String> details = ArgumentCaptor.forClass(String.class);
+        verify(notificationService).notifyCertificatesExpiring(eq(1), eq(30), details.capture());
+        JsonNode json = objectMapper.readTree(details.getValue());
+        assertEquals(3L, json.get("certificates").get(0).get("tenant_id").asLong());
+        assertFalse(json.get("truncated").asBoolean());
+    }
+}
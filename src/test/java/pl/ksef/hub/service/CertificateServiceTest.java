@@ -0,0 +1,163 @@
+package pl.ksef.hub.service;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.transaction.TestTransaction;
+import org.springframework.transaction.annotation.Transactional;
+import pl.ksef.hub.config.CacheConfig;
+import pl.ksef.hub.domain.entity.Certificate;
+import pl.ksef.hub.domain.entity.Tenant;
+import pl.ksef.hub.domain.repository.CertificateRepository;
+import pl.ksef.hub.domain.repository.TenantRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy integracyjne wygaszania certyfikatów
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+@Transactional
+class CertificateServiceTest {
+
+    @Autowired
+    private CertificateService certificateService;
+
+    @Autowired
+    private CertificateRepository certificateRepository;
+
+    @Autowired
+    private TenantRepository tenantRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void shouldExpireAllOverdueCertificatesInSingleUpdate() {
+        // Given - dwóch klientów, certyfikaty po terminie, ważne i już nieaktywne
+        Tenant first = tenant();
+        Tenant second = tenant();
+        LocalDateTime now = LocalDateTime.now();
+        Certificate overdueFirst = certificate(first, Certificate.CertificateStatus.ACTIVE, now.minusDays(1));
+        Certificate overdueSecond = certificate(second, Certificate.CertificateStatus.ACTIVE, now.minusHours(1));
+        Certificate valid = certificate(first, Certificate.CertificateStatus.ACTIVE, now.plusDays(10));
+        Certificate revoked = certificate(second, Certificate.CertificateStatus.REVOKED, now.minusDays(5));
+
+        // putIfAbsent trafia do cache od razu, put czekałby na commit transakcji testu
+        Cache activeCertificates = cacheManager.getCache(CacheConfig.ACTIVE_CERTIFICATES);
+        activeCertificates.putIfAbsent(first.getId(), List.of());
+        activeCertificates.putIfAbsent(second.getId(), List.of());
+        Long untouchedTenant = Long.MAX_VALUE;
+        activeCertificates.putIfAbsent(untouchedTenant, List.of());
+
+        // When
+        List<CertificateService.ExpiredCertificate> expired = certificateService.updateExpiredCertificates();
+
+        // Then
+        entityManager.clear();
+        assertEquals(List.of(overdueFirst.getId(), overdueSecond.getId()), expired.stream()
+                .map(CertificateService.ExpiredCertificate::id)
+                .sorted()
+                .toList());
+        assertEquals(Certificate.CertificateStatus.EXPIRED, status(overdueFirst));
+        assertEquals(Certificate.CertificateStatus.EXPIRED, status(overdueSecond));
+        assertEquals(Certificate.CertificateStatus.ACTIVE, status(valid));
+        assertEquals(Certificate.CertificateStatus.REVOKED, status(revoked));
+
+        // wpisy usuwane dopiero po zatwierdzeniu transakcji
+        assertNotNull(activeCertificates.get(first.getId()));
+        TestTransaction.flagForCommit();
+        TestTransaction.end();
+        try {
+            assertNull(activeCertificates.get(first.getId()));
+            assertNull(activeCertificates.get(second.getId()));
+            assertNotNull(activeCertificates.get(untouchedTenant));
+            assertTrue(certificateService.updateExpiredCertificates().isEmpty());
+        } finally {
+            activeCertificates.evict(untouchedTenant);
+            certificateRepository.deleteAllById(List.of(overdueFirst.getId(), overdueSecond.getId(),
+                    valid.getId(), revoked.getId()));
+            tenantRepository.deleteAllById(List.of(first.getId(), second.getId()));
+        }
+    }
+
+    @Test
+    void shouldNotServeCertificateThatExpiredAfterBeingCached() {
+        // Given - wpis w cache sprzed terminu ważności (np. wygaszenie wykonane na innym węźle)
+        Tenant tenant = tenant();
+        LocalDateTime now = LocalDateTime.now();
+        Certificate valid = certificate(tenant, Certificate.CertificateStatus.ACTIVE, now.plusDays(10));
+        Certificate expired = certificate(tenant, Certificate.CertificateStatus.ACTIVE, now.minusMinutes(1));
+        Cache activeCertificates = cacheManager.getCache(CacheConfig.ACTIVE_CERTIFICATES);
+        activeCertificates.putIfAbsent(tenant.getId(), List.of(
+                CertificateService.CachedCertificate.of(tenant.getId(), valid),
+                CertificateService.CachedCertificate.of(tenant.getId(), expired)));
+
+        // When
+        List<CertificateService.CachedCertificate> active = certificateService.findActiveCertificates(tenant.getId());
+
+        // Then
+        assertEquals(List.of(valid.getId()), active.stream().map(CertificateService.CachedCertificate::id).toList());
+        activeCertificates.evict(tenant.getId());
+    }
+
+    @Test
+    void shouldCacheCertificateCopiesReadableOutsideSession() {
+        // Given
+        Tenant tenant = tenant();
+        Certificate valid = certificate(tenant, Certificate.CertificateStatus.ACTIVE, LocalDateTime.now().plusDays(10));
+        entityManager.clear();
+
+        // When
+        certificateService.findActiveCertificates(tenant.getId());
+        TestTransaction.end();
+
+        // Then - kopia z cache czytelna po zamknięciu sesji, bez odwołań do encji
+        Cache.ValueWrapper cached = cacheManager.getCache(CacheConfig.ACTIVE_CERTIFICATES).get(tenant.getId());
+        assertNotNull(cached);
+        List<?> certificates = (List<?>) cached.get();
+        assertEquals(1, certificates.size());
+        CertificateService.CachedCertificate certificate = (CertificateService.CachedCertificate) certificates.get(0);
+        assertEquals(valid.getId(), certificate.id());
+        assertEquals(tenant.getId(), certificate.tenantId());
+        assertEquals(valid.getCertificateId(), certificate.certificateId());
+        assertTrue(certificate.isValid());
+        cacheManager.getCache(CacheConfig.ACTIVE_CERTIFICATES).evict(tenant.getId());
+    }
+
+    private Certificate.CertificateStatus status(Certificate certificate) {
+        return certificateRepository.findById(certificate.getId()).orElseThrow().getStatus();
+    }
+
+    private Tenant tenant() {
+        return tenantRepository.save(Tenant.builder()
+                .nip(String.valueOf(1_000_000_000L + (long) (Math.random() * 8_999_999_999L)))
+                .name("Certificate test tenant")
+                .build());
+    }
+
+    private Certificate certificate(Tenant tenant, Certificate.CertificateStatus status, LocalDateTime expiresAt) {
+        return certificateRepository.saveAndFlush(Certificate.builder()
+                .tenant(tenant)
+                .certificateId(UUID.randomUUID().toString())
+                .type(Certificate.CertificateType.KSEF_TOKEN)
+                .status(status)
+                .subjectDn("CN=Test")
+                .issuerDn("CN=Test CA")
+                .issuedAt(expiresAt.minusYears(1))
+                .expiresAt(expiresAt)
+                .build());
+    }
+}
@@ -0,0 +1,166 @@
+package pl.ksef.hub.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import pl.ksef.hub.domain.entity.HubSettings;
+import pl.ksef.hub.domain.repository.HubSettingsRepository;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla HubControlService
+ */
+@ExtendWith(MockitoExtension.class)
+class HubControlServiceTest {
+
+    @Mock
+    private HubSettingsRepository hubSettingsRepository;
+
+    @Mock
+    private SystemNotificationService notificationService;
+
+    @InjectMocks
+    private HubControlService hubControlService;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void shouldReadSettingsFromSnapshotWithoutQueryingDatabase() {
+        // Given
+        when(hubSettingsRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.of(settings(1L, true)));
+
+        // When
+        boolean first = hubControlService.isProcessingEnabled();
+        boolean second = hubControlService.isProcessingEnabled();
+
+        // Then
+        assertTrue(first);
+        assertTrue(second);
+        verify(hubSettingsRepository, times(1)).findFirstByOrderByIdDesc();
+    }
+
+    @Test
+    void shouldPublishSnapshotOnlyAfterCommit() {
+        // Given
+        HubSettings stored = settings(1L, true);
+        when(hubSettingsRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.of(stored));
+        when(hubSettingsRepository.saveAndFlush(any(HubSettings.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        assertTrue(hubControlService.isProcessingEnabled());
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        hubControlService.stopProcessing();
+
+        // Then - przed commitem obowiązuje poprzednia migawka
+        assertTrue(hubControlService.isProcessingEnabled());
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertFalse(hubControlService.isProcessingEnabled());
+    }
+
+    @Test
+    void shouldKeepSnapshotWhenTransactionRollsBack() {
+        // Given
+        when(hubSettingsRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.of(settings(1L, true)));
+        when(hubSettingsRepository.saveAndFlush(any(HubSettings.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        assertTrue(hubControlService.isProcessingEnabled());
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        hubControlService.stopProcessing();
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        // Then
+        assertTrue(hubControlService.isProcessingEnabled());
+    }
+
+    @Test
+    void shouldNotReloadWhenDatabaseVersionMatchesSnapshot() {
+        // Given - wersja z bazy w innej strefie, ale ta sama chwila
+        HubSettings stored = settings(1L, true);
+        when(hubSettingsRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.of(stored));
+        hubControlService.getSettings();
+        when(hubSettingsRepository.findLatestVersion())
+                .thenReturn(Optional.of(version(1L, stored.getUpdatedAt().withOffsetSameInstant(ZoneOffset.UTC))));
+
+        // When
+        hubControlService.refreshIfChanged();
+
+        // Then
+        verify(hubSettingsRepository, times(1)).findFirstByOrderByIdDesc();
+    }
+
+    @Test
+    void shouldReloadWhenSettingsChangedElsewhere() {
+        // Given
+        HubSettings stored = settings(1L, true);
+        HubSettings changed = settings(1L, false);
+        changed.setUpdatedAt(stored.getUpdatedAt().plusSeconds(1));
+        when(hubSettingsRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.of(stored), Optional.of(changed));
+        assertTrue(hubControlService.isProcessingEnabled());
+        when(hubSettingsRepository.findLatestVersion()).thenReturn(Optional.of(version(1L, changed.getUpdatedAt())));
+
+        // When
+        hubControlService.refreshIfChanged();
+
+        // Then
+        assertFalse(hubControlService.isProcessingEnabled());
+    }
+
+    @Test
+    void shouldStoreUpdateTimeWithDatabasePrecision() {
+        // Given
+        HubSettings settings = settings(1L, true);
+
+        // When
+        ReflectionTestUtils.invokeMethod(settings, "onUpdate");
+
+        // Then - zapisana encja i wiersz w bazie (mikrosekundy) dają tę samą wersję
+        OffsetDateTime updatedAt = settings.getUpdatedAt();
+        assertEquals(updatedAt.truncatedTo(ChronoUnit.MICROS), updatedAt);
+        assertTrue(HubSettingsSnapshot.of(settings).isSameVersion(1L, updatedAt.truncatedTo(ChronoUnit.MICROS)));
+    }
+
+    private static HubSettings settings(Long id, boolean processingEnabled) {
+        return HubSettings.builder()
+                .id(id)
+                .processingEnabled(processingEnabled)
+                .ksefAutoConnect(true)
+                .updatedAt(OffsetDateTime.now().truncatedTo(ChronoUnit.MICROS))
+                .updatedBy("SYSTEM")
+                .build();
+    }
+
+    private static HubSettingsRepository.SettingsVersion version(Long id, OffsetDateTime updatedAt) {
+        return new HubSettingsRepository.SettingsVersion() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public OffsetDateTime getUpdatedAt() {
+                return updatedAt;
+            }
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package pl.ksef.hub.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import pl.ksef.hub.config.CacheConfig;
+import pl.ksef.hub.domain.entity.Invoice;
+import pl.ksef.hub.exception.ResourceNotFoundException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy jednostkowe dla InvoiceQRCodeService
+ */
+class InvoiceQRCodeServiceTest {
+
+    private InvoiceQRCodeService invoiceQRCodeService;
+    private Invoice invoice;
+
+    @BeforeEach
+    void setUp() {
+        invoiceQRCodeService = new InvoiceQRCodeService(new QRCodeService(),
+                new ConcurrentMapCacheManager(CacheConfig.QR_CODES));
+
+        invoice = new Invoice();
+        invoice.setId(1L);
+        invoice.setInvoiceNumber("FV/2026/02/001");
+        invoice.setInvoiceDate(LocalDate.of(2026, 2, 5));
+        invoice.setGrossAmount(new BigDecimal("1230.00"));
+        invoice.setSellerNip("1234567890");
+        invoice.setBuyerNip("9876543210");
+        invoice.setKsefNumber("1234567890-20260205-ABCDEF123456-01");
+    }
+
+    @Test
+    void shouldRenderOnceAndServeFromCache() {
+        // When
+        byte[] first = invoiceQRCodeService.render(invoice, QRCodeService.ImageFormat.PNG);
+        byte[] second = invoiceQRCodeService.render(invoice, QRCodeService.ImageFormat.PNG);
+
+        // Then
+        assertSame(first, second);
+        assertEquals((byte) 0x89, first[0]);
+        assertEquals('P', first[1]);
+    }
+
+    @Test
+    void shouldRenderSvg() {
+        // When
+        byte[] svg = invoiceQRCodeService.render(invoice, QRCodeService.ImageFormat.SVG);
+
+        // Then
+        assertTrue(new String(svg, StandardCharsets.UTF_8).startsWith("<svg"));
+    }
+
+    @Test
+    void shouldChangeETagWhenVerificationDataChanges() {
+        // Given
+        String eTag = invoiceQRCodeService.getETag(invoice, QRCodeService.ImageFormat.PNG);
+
+        // When
+        invoice.setKsefNumber("1234567890-20260205-ABCDEF123456-02");
+
+        // Then
+        assertNotEquals(eTag, invoiceQRCodeService.getETag(invoice, QRCodeService.ImageFormat.PNG));
+        assertNotEquals(invoiceQRCodeService.getETag(invoice, QRCodeService.ImageFormat.PNG),
+                invoiceQRCodeService.getETag(invoice, QRCodeService.ImageFormat.SVG));
+    }
+
+    @Test
+    void shouldRejectInvoiceWithoutKsefNumber() {
+        // Given
+        invoice.setKsefNumber(null);
+
+        // Expect
+        assertThrows(ResourceNotFoundException.class,
+                () -> invoiceQRCodeService.render(invoice, QRCodeService.ImageFormat.PNG));
+    }
+}
@@ -0,0 +1,127 @@
+package pl.ksef.hub.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.ksef.hub.domain.entity.SystemNotification.NotificationCategory;
+import pl.ksef.hub.domain.entity.SystemNotification.NotificationLevel;
+
+import java.util.Collection;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla NotificationWriter
+ */
+@ExtendWith(MockitoExtension.class)
+class NotificationWriterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private NotificationWriter notificationWriter;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(notificationWriter, "capacity", 3);
+        ReflectionTestUtils.setField(notificationWriter, "coalesceWindowMs", 60_000L);
+        ReflectionTestUtils.setField(notificationWriter, "batchSize", 2);
+    }
+
+    @Test
+    void shouldCoalesceIdenticalNotifications() {
+        // When
+        for (int i = 0; i < 5; i++) {
+            notificationWriter.submit(NotificationCategory.KSEF, NotificationLevel.ERROR,
+                    "Błąd połączenia z KSeF", "attempt " + i, null);
+        }
+
+        // Then
+        NotificationWriter.WriterStats stats = notificationWriter.getStats();
+        assertEquals(1, stats.pending());
+        assertEquals(1, stats.accepted());
+        assertEquals(4, stats.coalesced());
+    }
+
+    @Test
+    void shouldDropWhenBufferIsFull() {
+        // When
+        for (int i = 0; i < 4; i++) {
+            notificationWriter.submit(NotificationCategory.HUB, NotificationLevel.INFO,
+                    "title " + i, "message", null);
+        }
+
+        // Then
+        NotificationWriter.WriterStats stats = notificationWriter.getStats();
+        assertEquals(3, stats.pending());
+        assertEquals(1, stats.dropped());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldKeepNotificationsInsideWindowUntilForced() {
+        // Given
+        notificationWriter.submit(NotificationCategory.HUB, NotificationLevel.INFO, "a", "m", null);
+        notificationWriter.submit(NotificationCategory.HUB, NotificationLevel.INFO, "b", "m", null);
+        notificationWriter.submit(NotificationCategory.HUB, NotificationLevel.INFO, "c", "m", null);
+
+        // When
+        int flushedInWindow = notificationWriter.flush(false);
+        int flushedForced = notificationWriter.flush(true);
+
+        // Then
+        assertEquals(0, flushedInWindow);
+        assertEquals(3, flushedForced);
+        assertEquals(0, notificationWriter.pendingCount());
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    @Test
+    void shouldScheduleSingleForcedFlushUnderPressure() {
+        // Given - wymuszony zapis czeka w kolejce wykonawcy
+        ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+        ReflectionTestUtils.setField(notificationWriter, "executor", executor);
+        ReflectionTestUtils.setField(notificationWriter, "capacity", 4);
+
+        // When - kolejne zgłoszenia powyżej 3/4 pojemności
+        for (int i = 0; i < 6; i++) {
+            notificationWriter.submit(NotificationCategory.HUB, NotificationLevel.INFO,
+                    "title " + i, "message", null);
+        }
+
+        // Then
+        verify(executor, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void shouldReportDroppedNotificationsOncePerInterval() {
+        // Given
+        ReflectionTestUtils.setField(notificationWriter, "dropReportIntervalMs", 60_000L);
+        for (int i = 0; i < 5; i++) {
+            notificationWriter.submit(NotificationCategory.HUB, NotificationLevel.INFO,
+                    "title " + i, "message", null);
+        }
+
+        // When
+        notificationWriter.reportDropped();
+        notificationWriter.submit(NotificationCategory.HUB, NotificationLevel.INFO, "title 5", "message", null);
+        notificationWriter.reportDropped();
+
+        // Then - drugi raport wstrzymany do końca okresu, licznik odrzuceń bez zmian
+        assertEquals(3, notificationWriter.getStats().dropped());
+        assertEquals(2L, ((AtomicLong)
+                ReflectionTestUtils.getField(notificationWriter, "droppedReported")).get());
+    }
+}
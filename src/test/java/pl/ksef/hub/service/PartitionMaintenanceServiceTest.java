@@ -0,0 +1,115 @@
+package pl.ksef.hub.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.ksef.hub.config.DatabaseDialect;
+import pl.ksef.hub.service.PartitionMaintenanceService.MonthlyPartition;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla PartitionMaintenanceService
+ */
+@ExtendWith(MockitoExtension.class)
+class PartitionMaintenanceServiceTest {
+
+    private static final String SQL = "SELECT create_range_partition(?, ?, ?, ?)";
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DatabaseDialect databaseDialect;
+
+    @Mock
+    private WorkPartitionService workPartitionService;
+
+    @InjectMocks
+    private PartitionMaintenanceService service;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "monthsAhead", 3);
+    }
+
+    @Test
+    void shouldComputeMonthlyPartitionNameAndRange() {
+        // When
+        MonthlyPartition midMonth = MonthlyPartition.of("audit_logs", LocalDate.of(2031, 5, 17));
+        MonthlyPartition december = MonthlyPartition.of("system_notifications", LocalDate.of(2031, 12, 31));
+
+        // Then - zakres [od, do), do = pierwszy dzień następnego miesiąca
+        assertEquals("audit_logs_2031_05", midMonth.name());
+        assertEquals(LocalDate.of(2031, 5, 1), midMonth.from());
+        assertEquals(LocalDate.of(2031, 6, 1), midMonth.to());
+        assertEquals("system_notifications_2031_12", december.name());
+        assertEquals(LocalDate.of(2031, 12, 1), december.from());
+        assertEquals(LocalDate.of(2032, 1, 1), december.to());
+    }
+
+    @Test
+    void shouldCreateCurrentAndUpcomingMonthsForBothTables() {
+        // Given
+        LocalDate month = LocalDate.now().withDayOfMonth(1);
+
+        // When
+        service.createUpcomingPartitions();
+
+        // Then
+        for (String table : List.of(PartitionMaintenanceService.NOTIFICATIONS_TABLE,
+                PartitionMaintenanceService.AUDIT_LOGS_TABLE)) {
+            for (int i = 0; i <= 3; i++) {
+                MonthlyPartition expected = MonthlyPartition.of(table, month.plusMonths(i));
+                verify(jdbcTemplate).queryForObject(SQL, Integer.class, table, expected.name(),
+                        Date.valueOf(expected.from()), Date.valueOf(expected.to()));
+            }
+        }
+        verify(jdbcTemplate, times(8)).queryForObject(eq(SQL), eq(Integer.class), any(), any(), any(), any());
+    }
+
+    @Test
+    void shouldCreatePartitionsForMonthsFoundInDefaultPartition() {
+        // Given
+        when(jdbcTemplate.queryForList(contains("FROM system_notifications_default"), eq(LocalDate.class)))
+                .thenReturn(List.of(LocalDate.of(2031, 5, 1), LocalDate.of(2032, 1, 1)));
+        when(jdbcTemplate.queryForList(contains("FROM audit_logs_default"), eq(LocalDate.class)))
+                .thenReturn(List.of());
+        when(jdbcTemplate.queryForObject(eq(SQL), eq(Integer.class), any(), any(), any(), any()))
+                .thenReturn(2, 1);
+
+        // When
+        int moved = service.drainDefaultPartitions();
+
+        // Then
+        assertEquals(3, moved);
+        verify(jdbcTemplate).queryForObject(SQL, Integer.class, "system_notifications", "system_notifications_2031_05",
+                Date.valueOf("2031-05-01"), Date.valueOf("2031-06-01"));
+        verify(jdbcTemplate).queryForObject(SQL, Integer.class, "system_notifications", "system_notifications_2032_01",
+                Date.valueOf("2032-01-01"), Date.valueOf("2032-02-01"));
+    }
+
+    @Test
+    void shouldContinueWhenPartitionCreationFails() {
+        // Given
+        when(jdbcTemplate.queryForObject(eq(SQL), eq(Integer.class), any(), any(), any(), any()))
+                .thenThrow(new RuntimeException("lock timeout"));
+
+        // When
+        int moved = service.ensurePartition(MonthlyPartition.of("audit_logs", LocalDate.of(2031, 5, 1)));
+
+        // Then
+        assertEquals(0, moved);
+    }
+}
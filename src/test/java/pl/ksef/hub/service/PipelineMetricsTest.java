@@ -0,0 +1,86 @@
+package pl.ksef.hub.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import pl.ksef.hub.domain.entity.Invoice.InvoiceStatus;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy jednostkowe dla PipelineMetrics
+ */
+class PipelineMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PipelineMetrics pipelineMetrics = new PipelineMetrics(registry);
+
+    @Test
+    void shouldTagStageWithTenantFromScope() {
+        // Given
+        ReflectionTestUtils.setField(pipelineMetrics, "tenantTag", true);
+
+        // When
+        try (PipelineMetrics.TenantScope scope = pipelineMetrics.tenantScope(42L)) {
+            pipelineMetrics.time("xml.generate", () -> "<Faktura/>");
+        }
+        pipelineMetrics.time("xml.generate", () -> "<Faktura/>");
+
+        // Then
+        Timer tenantTimer = registry.find(PipelineMetrics.STAGE_TIMER)
+                .tags("stage", "xml.generate", "tenant", "42", "outcome", "success", "status", "none")
+                .timer();
+        assertNotNull(tenantTimer);
+        assertEquals(1, tenantTimer.count());
+        assertNotNull(registry.find(PipelineMetrics.STAGE_TIMER).tags("tenant", "none").timer());
+    }
+
+    @Test
+    void shouldAggregateTenantsByDefault() {
+        // When
+        try (PipelineMetrics.TenantScope scope = pipelineMetrics.tenantScope(42L)) {
+            pipelineMetrics.time("xml.generate", () -> "<Faktura/>");
+        }
+
+        // Then
+        assertNotNull(registry.find(PipelineMetrics.STAGE_TIMER).tags("tenant", "all").timer());
+        assertNull(registry.find(PipelineMetrics.STAGE_TIMER).tags("tenant", "42").timer());
+    }
+
+    @Test
+    void shouldRecordHttpStatusOfWrappedKsefError() {
+        // Given - KsefApiClient opakowuje WebClientResponseException w RuntimeException
+        WebClientResponseException httpError = WebClientResponseException.create(
+                HttpStatus.TOO_MANY_REQUESTS.value(), "Too Many Requests", null, null, null);
+
+        // When
+        assertThrows(RuntimeException.class, () -> pipelineMetrics.timeHttp("api.sendInvoice", () -> {
+            throw new RuntimeException("Failed to send invoice", httpError);
+        }));
+
+        // Then
+        Timer timer = registry.find(PipelineMetrics.STAGE_TIMER)
+                .tags("stage", "api.sendInvoice", "outcome", "error", "status", "429")
+                .timer();
+        assertNotNull(timer);
+        assertEquals(1, timer.count());
+    }
+
+    @Test
+    void shouldCountStatusTransitions() {
+        // When
+        pipelineMetrics.recordTransition(null, InvoiceStatus.DRAFT);
+        pipelineMetrics.recordTransitions(InvoiceStatus.SENT, InvoiceStatus.ACCEPTED, 3);
+        pipelineMetrics.recordTransition(InvoiceStatus.SENT, InvoiceStatus.SENT);
+
+        // Then
+        assertEquals(1.0, registry.get(PipelineMetrics.STATUS_TRANSITIONS)
+                .tags("from", "none", "to", "DRAFT").counter().count());
+        assertEquals(3.0, registry.get(PipelineMetrics.STATUS_TRANSITIONS)
+                .tags("from", "SENT", "to", "ACCEPTED").counter().count());
+        assertNull(registry.find(PipelineMetrics.STATUS_TRANSITIONS).tags("to", "SENT").counter());
+    }
+}
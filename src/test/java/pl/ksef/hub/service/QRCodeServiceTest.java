@@ -0,0 +1,70 @@
+package pl.ksef.hub.service;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy jednostkowe dla QRCodeService
+ */
+class QRCodeServiceTest {
+
+    private static final String DATA = "FV/2026/02/001|2026-02-05|1230.00|1234567890|9876543210|1234567890-20260205-ABCDEF123456-01";
+
+    private final QRCodeService qrCodeService = new QRCodeService();
+
+    @Test
+    void shouldWriteDecodablePng() throws Exception {
+        // When
+        byte[] png = qrCodeService.generateQRCodeBytes(DATA);
+
+        // Then
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertNotNull(image);
+        assertEquals(300, image.getWidth());
+        assertEquals(300, image.getHeight());
+        assertEquals(DATA, decode(image));
+    }
+
+    @Test
+    void shouldRenderBatchInInputOrder() throws Exception {
+        // Given
+        List<String> data = IntStream.range(0, 20).mapToObj(i -> DATA + "-" + i).toList();
+
+        // When
+        List<byte[]> images = qrCodeService.generateQRCodeBatch(data, QRCodeService.ImageFormat.PNG);
+
+        // Then
+        assertEquals(20, images.size());
+        assertEquals(data.get(7), decode(ImageIO.read(new ByteArrayInputStream(images.get(7)))));
+    }
+
+    @Test
+    void shouldRenderSvg() throws Exception {
+        // When
+        String svg = new String(qrCodeService.generateQRCodeSvg(DATA), StandardCharsets.UTF_8);
+
+        // Then
+        assertTrue(svg.startsWith("<svg"));
+        assertTrue(svg.endsWith("</svg>"));
+        assertTrue(svg.contains("<path"));
+    }
+
+    private static String decode(BufferedImage image) throws Exception {
+        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(image)));
+        Result result = new QRCodeReader().decode(bitmap);
+        return result.getText();
+    }
+}
@@ -0,0 +1,143 @@
+package pl.ksef.hub.service;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+import pl.ksef.hub.domain.entity.Invoice;
+import pl.ksef.hub.domain.entity.Tenant;
+import pl.ksef.hub.domain.repository.InvoiceRepository;
+import pl.ksef.hub.domain.repository.TenantRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testy integracyjne dla ResourceVersionService
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+@Transactional
+class ResourceVersionServiceTest {
+
+    @Autowired
+    private ResourceVersionService resourceVersionService;
+
+    @Autowired
+    private InvoiceRepository invoiceRepository;
+
+    @Autowired
+    private TenantRepository tenantRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void shouldComputeSameInvoiceETagFromVersionQueryAndEntity() {
+        // Given
+        Invoice invoice = invoice(tenant());
+        entityManager.clear();
+
+        // When
+        String fromQuery = resourceVersionService.invoiceETag(invoice.getId());
+        String fromEntity = resourceVersionService.invoiceETag(invoiceRepository.findById(invoice.getId()).orElseThrow());
+
+        // Then
+        assertTrue(fromQuery.startsWith("W/\""));
+        assertEquals(fromQuery, fromEntity);
+        assertNull(resourceVersionService.invoiceETag(Long.MAX_VALUE));
+    }
+
+    @Test
+    void shouldChangeInvoiceETagWhenInvoiceIsUpdated() throws InterruptedException {
+        // Given
+        Invoice invoice = invoice(tenant());
+        String before = resourceVersionService.invoiceETag(invoice.getId());
+
+        // When
+        Thread.sleep(2);
+        invoice.setStatus(Invoice.InvoiceStatus.ACCEPTED);
+        invoiceRepository.saveAndFlush(invoice);
+
+        // Then
+        assertNotEquals(before, resourceVersionService.invoiceETag(invoice.getId()));
+    }
+
+    @Test
+    void shouldChangeCollectionETagWhenInvoiceIsAddedOrDeleted() {
+        // Given
+        Tenant tenant = tenant();
+        Tenant other = tenant();
+        Invoice first = invoice(tenant);
+        PageRequest page = PageRequest.of(0, 20);
+        String initial = resourceVersionService.invoicesETag(tenant.getId(), page);
+
+        // When
+        invoice(other);
+        String afterOtherTenant = resourceVersionService.invoicesETag(tenant.getId(), page);
+        Invoice second = invoice(tenant);
+        String afterAdd = resourceVersionService.invoicesETag(tenant.getId(), page);
+        invoiceRepository.delete(second);
+        invoiceRepository.flush();
+        String afterDelete = resourceVersionService.invoicesETag(tenant.getId(), page);
+
+        // Then
+        assertEquals(initial, afterOtherTenant);
+        assertNotEquals(initial, afterAdd);
+        assertEquals(initial, afterDelete);
+        assertNotEquals(initial, resourceVersionService.invoicesETag(tenant.getId(), PageRequest.of(1, 20)));
+        assertNotNull(first.getId());
+    }
+
+    @Test
+    void shouldChangeTenantETagsWhenTenantIsUpdated() throws InterruptedException {
+        // Given
+        Tenant tenant = tenant();
+        PageRequest page = PageRequest.of(0, 20);
+        String tenantBefore = resourceVersionService.tenantETag(tenant.getId());
+        String listBefore = resourceVersionService.tenantsETag(page);
+
+        // When
+        Thread.sleep(2);
+        tenant.setName("Renamed tenant");
+        tenantRepository.saveAndFlush(tenant);
+        entityManager.clear();
+
+        // Then
+        String tenantAfter = resourceVersionService.tenantETag(tenant.getId());
+        assertNotEquals(tenantBefore, tenantAfter);
+        assertEquals(tenantAfter, resourceVersionService.tenantETag(tenantRepository.findById(tenant.getId()).orElseThrow()));
+        assertNotEquals(listBefore, resourceVersionService.tenantsETag(page));
+    }
+
+    private Tenant tenant() {
+        return tenantRepository.saveAndFlush(Tenant.builder()
+                .nip(String.valueOf(1_000_000_000L + (long) (Math.random() * 8_999_999_999L)))
+                .name("ETag test tenant")
+                .build());
+    }
+
+    private Invoice invoice(Tenant tenant) {
+        return invoiceRepository.saveAndFlush(Invoice.builder()
+                .tenant(tenant)
+                .invoiceNumber("FV/" + UUID.randomUUID())
+                .type(Invoice.InvoiceType.FA_VAT)
+                .status(Invoice.InvoiceStatus.DRAFT)
+                .invoiceDate(LocalDate.now())
+                .saleDate(LocalDate.now())
+                .sellerNip("1234567890")
+                .sellerName("Seller")
+                .buyerNip("9876543210")
+                .buyerName("Buyer")
+                .netAmount(new BigDecimal("100.00"))
+                .vatAmount(new BigDecimal("23.00"))
+                .grossAmount(new BigDecimal("123.00"))
+                .build());
+    }
+}
@@ -0,0 +1,158 @@
+package pl.ksef.hub.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.ksef.hub.domain.entity.WorkPartition;
+import pl.ksef.hub.domain.repository.HubNodeRepository;
+import pl.ksef.hub.domain.repository.WorkPartitionRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testy jednostkowe dla WorkPartitionService
+ */
+@ExtendWith(MockitoExtension.class)
+class WorkPartitionServiceTest {
+
+    private static final String NODE = "node-b";
+
+    @Mock
+    private WorkPartitionRepository workPartitionRepository;
+
+    @Mock
+    private HubNodeRepository hubNodeRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().when(workPartitionRepository.existsById(anyInt())).thenReturn(true);
+        lenient().when(hubNodeRepository.heartbeat(eq(NODE), any())).thenReturn(1);
+    }
+
+    @Test
+    void shouldSplitPartitionsEvenlyBetweenLiveNodes() {
+        // Given
+        List<String> nodes = List.of("node-a", "node-b", "node-c");
+
+        // When
+        List<Integer> shares = nodes.stream()
+                .map(node -> WorkPartitionService.fairShare(16, nodes, node))
+                .toList();
+
+        // Then
+        assertEquals(List.of(6, 5, 5), shares);
+        assertEquals(0, WorkPartitionService.fairShare(16, nodes, "node-x"));
+    }
+
+    @Test
+    void shouldClaimFreePartitionsUpToShare() {
+        // Given - jedyny żywy węzeł, wszystkie partycje wolne
+        WorkPartitionService service = service(true);
+        when(hubNodeRepository.findLiveNodeIds(any())).thenReturn(List.of(NODE));
+        when(workPartitionRepository.findClaimable(any())).thenReturn(List.of(0, 1, 2, 3));
+        when(workPartitionRepository.claim(anyInt(), eq(NODE), any(), any())).thenReturn(1);
+        when(workPartitionRepository.findOwned(eq(NODE), any()))
+                .thenReturn(List.of())
+                .thenReturn(partitions(0, 1, 2, 3));
+
+        // When
+        service.heartbeat();
+
+        // Then
+        verify(workPartitionRepository, times(4)).claim(anyInt(), eq(NODE), any(), any());
+        assertTrue(service.isLeader());
+        assertTrue(service.ownsTenant(5L));
+        assertEquals(1L, service.fencingToken(1).orElseThrow());
+    }
+
+    @Test
+    void shouldReleaseExcessPartitionsWhenNodeJoins() {
+        // Given - węzeł ma wszystkie 4 partycje, dołączył node-a
+        WorkPartitionService service = service(true);
+        when(hubNodeRepository.findLiveNodeIds(any())).thenReturn(List.of("node-a", NODE));
+        when(workPartitionRepository.release(anyInt(), eq(NODE), any())).thenReturn(1);
+        when(workPartitionRepository.findOwned(eq(NODE), any()))
+                .thenReturn(partitions(0, 1, 2, 3))
+                .thenReturn(partitions(0, 1));
+
+        // When
+        service.heartbeat();
+
+        // Then
+        verify(workPartitionRepository).release(eq(2), eq(NODE), any());
+        verify(workPartitionRepository).release(eq(3), eq(NODE), any());
+        verify(workPartitionRepository, never()).claim(anyInt(), any(), any(), any());
+        assertTrue(service.ownsTenant(4L));
+        assertFalse(service.ownsTenant(6L));
+    }
+
+    @Test
+    void shouldHeartbeatOnDedicatedThread() {
+        // Given
+        WorkPartitionService service = service(true);
+        when(hubNodeRepository.findLiveNodeIds(any())).thenReturn(List.of(NODE));
+        when(workPartitionRepository.findOwned(eq(NODE), any())).thenReturn(partitions(0, 1, 2, 3));
+        AtomicReference<String> thread = new AtomicReference<>();
+        when(hubNodeRepository.heartbeat(eq(NODE), any())).thenAnswer(inv -> {
+            thread.set(Thread.currentThread().getName());
+            return 1;
+        });
+
+        // When
+        service.start();
+
+        // Then - pierwszy heartbeat bez czekania na harmonogram @Scheduled
+        try {
+            verify(hubNodeRepository, timeout(5_000)).heartbeat(eq(NODE), any());
+            assertEquals("hub-coordination-heartbeat", thread.get());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void shouldOwnEverythingWhenCoordinationDisabled() {
+        // Given
+        WorkPartitionService service = service(false);
+
+        // When
+        service.heartbeat();
+
+        // Then
+        assertTrue(service.isLeader());
+        assertEquals(4, service.ownedPartitions().size());
+        verifyNoInteractions(workPartitionRepository, hubNodeRepository);
+    }
+
+    private WorkPartitionService service(boolean enabled) {
+        return new WorkPartitionService(workPartitionRepository, hubNodeRepository, transactionTemplate,
+                enabled, 4, 20_000L, 20_000L, 5_000L, NODE);
+    }
+
+    private static List<WorkPartition> partitions(int... ids) {
+        return IntStream.of(ids)
+                .mapToObj(id -> WorkPartition.builder()
+                        .partitionId(id)
+                        .ownerNode(NODE)
+                        .fencingToken(1L)
+                        .leaseUntil(LocalDateTime.now().plusSeconds(20))
+                        .build())
+                .toList();
+    }
+}